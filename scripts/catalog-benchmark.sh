@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Compares the cost of one book write on the catalog snapshots: a full rebuild (refresh, what every write did before)
+# against applying the written book (update). The catalog is generated in memory, no database is needed,
+# so the database time of the full rebuild is not included. See CatalogSnapshotBenchmark.
+#
+# Usage: scripts/catalog-benchmark.sh [BOOKS] [WRITES]
+set -euo pipefail
+
+BOOKS=${1:-50000}
+WRITES=${2:-200}
+
+./mvnw -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+java -Xmx1g -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    com.it120p.librarymanagementsystem.service.catalog.CatalogSnapshotBenchmark "$BOOKS" "$WRITES"
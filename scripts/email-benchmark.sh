@@ -0,0 +1,12 @@
+#!/usr/bin/env bash
+# Measures the time and the memory allocated to build and render one order summary email with 1, 10 and 50 books.
+# The orders and covers are served from memory, no database or mail server is needed. See EmailRendererBenchmark.
+#
+# Usage: scripts/email-benchmark.sh [EMAILS]
+set -euo pipefail
+
+EMAILS=${1:-2000}
+
+./mvnw -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    com.it120p.librarymanagementsystem.security.services.EmailRendererBenchmark "$EMAILS"
@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Measures the nightly fine accrual over OPEN_LOANS open loans generated by the loadtest profile,
+# on an H2 database file under target, no MySQL is needed. See FineAccrualBenchmark.
+# A million open loans take a few GB of heap and about half an hour to generate on one CPU.
+# The data is kept in target/fine-benchmark.mv.db and reused by the next runs, delete it to change OPEN_LOANS.
+#
+# Usage: scripts/fine-benchmark.sh [OPEN_LOANS]
+set -euo pipefail
+
+OPEN_LOANS=${1:-1000000}
+
+./mvnw -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+java -Xmx5g -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    com.it120p.librarymanagementsystem.service.FineAccrualBenchmark "$OPEN_LOANS"
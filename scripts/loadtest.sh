@@ -0,0 +1,29 @@
+#!/usr/bin/env bash
+# Runs the load test: starts the application with the loadtest profile (embedded H2 filled by SyntheticDataGenerator),
+# waits until it is up, drives it with scripts/loadtest/LoadDriver.java and prints p50/p99 latency and throughput
+# per endpoint. The application log is written to target/loadtest.log. Needs Java 21 or later for the driver.
+#
+# Usage: scripts/loadtest.sh [CLIENTS] [DURATION_SECONDS] [WARMUP_SECONDS]
+set -euo pipefail
+
+CLIENTS=${1:-20}
+DURATION=${2:-60}
+WARMUP=${3:-10}
+URL=http://localhost:8080
+JAR=target/lms-backend-0.0.1-SNAPSHOT.jar
+
+./mvnw -q -DskipTests package
+java -jar "$JAR" --spring.profiles.active=loadtest > target/loadtest.log 2>&1 &
+APP=$!
+trap 'kill $APP' EXIT
+
+# Requests are accepted before the data is generated, wait for the generator to finish
+until grep -q "Generated .* users\|skipping the data generation" target/loadtest.log; do
+    if ! kill -0 "$APP" 2> /dev/null; then
+        echo "The application did not start, see target/loadtest.log" >&2
+        exit 1
+    fi
+    sleep 1
+done
+
+java scripts/loadtest/LoadDriver.java --url="$URL" --clients="$CLIENTS" --duration="$DURATION" --warmup="$WARMUP"
@@ -0,0 +1,258 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The LoadDriver class runs the library workload against a running instance and reports the latency of every endpoint.
+ *
+ * Every client repeats one visit: sign in, browse a genre, open a book, download its cover, check it out, renew the order
+ * and return it. The clients sign in as the users made by SyntheticDataGenerator, so the loadtest profile has to be active.
+ * Requests made during the warm-up are sent but not counted.
+ *
+ * It has no dependencies and runs as a single source file, see scripts/loadtest.sh.
+ */
+public class LoadDriver {
+    private static final String[] GENRES = {"FICTION", "NON_FICTION", "MYSTERY", "FANTASY", "BIOGRAPHY"};
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final Pattern IMAGE_PATH = Pattern.compile("\"imagePath\":\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private final Map<String, Stats> stats = new ConcurrentSkipListMap<>();
+
+    private final String baseUrl;
+    private final String password;
+    private final int userCount;
+    private volatile boolean recording;
+
+    LoadDriver(String baseUrl, String password, int userCount) {
+        this.baseUrl = baseUrl;
+        this.password = password;
+        this.userCount = userCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "20"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int users = Integer.parseInt(options.getOrDefault("users", "1000"));
+        String password = options.getOrDefault("password", "loadtest123");
+
+        LoadDriver driver = new LoadDriver(url, password, users);
+        System.out.printf("%d clients against %s, %ds warm-up, %ds measured%n", clients, url, warmup, duration);
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(duration);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    while (System.nanoTime() < end) {
+                        driver.visit();
+                    }
+                });
+            }
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(warmupEnd - System.nanoTime())));
+            driver.recording = true;
+        }
+        driver.report(duration);
+    }
+
+    /**
+     * One visit of a user. A failed step ends the visit, the next one starts with a new sign in.
+     */
+    void visit() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String username = "lt-user-" + (1 + random.nextInt(userCount));
+        String signin = call("signin", HttpRequest.newBuilder(uri("/api/auth/signin"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}")));
+        if (signin == null) {
+            return;
+        }
+        String token = "Bearer " + find(TOKEN, signin);
+        String userId = find(ID, signin);
+
+        String books = call("browse", get("/books?genre=" + GENRES[random.nextInt(GENRES.length)], token));
+        if (books == null) {
+            return;
+        }
+        List<String> bookIds = findAll(ID, books);
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        String bookId = bookIds.get(random.nextInt(bookIds.size()));
+
+        String book = call("book", get("/book/" + bookId, token));
+        if (book == null) {
+            return;
+        }
+        String imagePath = find(IMAGE_PATH, book);
+        if (imagePath != null) {
+            // The download endpoint takes the file name, the image path is the storage key
+            download("cover", get("/book/download/" + imagePath.substring(imagePath.lastIndexOf('/') + 1), token));
+        }
+
+        String order = call("checkout", HttpRequest.newBuilder(uri("/order"))
+                .header("Authorization", token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"user\":{\"id\":" + userId + "},\"books\":[{\"id\":" + bookId + "}]}")));
+        if (order == null) {
+            return;
+        }
+        String orderId = find(ID, order);
+        call("renew", put("/order/renew/" + orderId, token));
+        call("return", put("/order/return/" + orderId, token));
+    }
+
+    private HttpRequest.Builder get(String path, String token) {
+        return HttpRequest.newBuilder(uri(path)).header("Authorization", token).GET();
+    }
+
+    private HttpRequest.Builder put(String path, String token) {
+        return HttpRequest.newBuilder(uri(path)).header("Authorization", token).PUT(HttpRequest.BodyPublishers.noBody());
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    /**
+     * Sends a request and records its latency.
+     *
+     * @return the response body, or null if the request failed.
+     */
+    private String call(String endpoint, HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            boolean ok = response.statusCode() < 400;
+            record(endpoint, start, ok);
+            return ok ? response.body() : null;
+        } catch (Exception e) {
+            record(endpoint, start, false);
+            return null;
+        }
+    }
+
+    /**
+     * Downloads a binary response without keeping it, and records its latency.
+     */
+    private void download(String endpoint, HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            record(endpoint, start, response.statusCode() < 400);
+        } catch (Exception e) {
+            record(endpoint, start, false);
+        }
+    }
+
+    private void record(String endpoint, long start, boolean ok) {
+        if (recording) {
+            stats.computeIfAbsent(endpoint, name -> new Stats()).add(System.nanoTime() - start, ok);
+        }
+    }
+
+    private void report(int seconds) {
+        System.out.printf("%-10s %8s %7s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "max ms");
+        stats.forEach((endpoint, s) -> {
+            long[] sorted = s.sorted();
+            System.out.printf("%-10s %8d %7d %9.1f %9.2f %9.2f %9.2f%n", endpoint, sorted.length, s.errors(),
+                    (double) sorted.length / seconds, percentile(sorted, 50), percentile(sorted, 99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        });
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String find(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static List<String> findAll(Pattern pattern, String text) {
+        List<String> values = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            values.add(matcher.group(1));
+        }
+        return values;
+    }
+
+    /**
+     * Reads --name=value options.
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new ConcurrentSkipListMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    /**
+     * The latencies of one endpoint, in nanoseconds.
+     */
+    static final class Stats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void add(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(latencies, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        synchronized int errors() {
+            return errors;
+        }
+    }
+}
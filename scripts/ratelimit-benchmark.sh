@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+# Measures the throughput of the rate limiter under contention, from 1 to THREADS threads:
+# one shared token bucket (lock-free and locked), one client per thread, one hot client, and a flood of new clients.
+# No database or server is needed. See RateLimiterBenchmark.
+#
+# Usage: scripts/ratelimit-benchmark.sh [THREADS]
+set -euo pipefail
+
+THREADS=${1:-$(nproc)}
+
+./mvnw -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+    com.it120p.librarymanagementsystem.security.ratelimit.RateLimiterBenchmark "$THREADS"
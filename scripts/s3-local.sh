@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Starts MinIO on localhost as an S3 stand-in for the s3-local profile.
+# The API listens on port 9000 and the web console on port 9001 (user and password minioadmin).
+# Objects are kept in a named volume, remove it with: docker volume rm lms-minio-data
+#
+# Usage: scripts/s3-local.sh
+set -euo pipefail
+
+docker run --rm --name lms-minio \
+    -p 9000:9000 -p 9001:9001 \
+    -e MINIO_ROOT_USER=minioadmin \
+    -e MINIO_ROOT_PASSWORD=minioadmin \
+    -v lms-minio-data:/data \
+    minio/minio server /data --console-address ":9001"
@@ -0,0 +1,31 @@
+#!/usr/bin/env bash
+# Compares the startup time of the default build against the fast-startup profile.
+# Each variant is started RUNS times, the context exits right after refresh and the
+# "Started ... in X seconds" line is collected. Needs the MySQL database from application.properties.
+#
+# Usage: scripts/startup-benchmark.sh [RUNS]
+set -euo pipefail
+
+RUNS=${1:-5}
+JAR=target/lms-backend-0.0.1-SNAPSHOT.jar
+JSA=target/lms-backend.jsa
+
+measure() {
+    local label=$1
+    shift
+    local total=0
+    for i in $(seq 1 "$RUNS"); do
+        local seconds
+        seconds=$(java "$@" -Dspring.context.exit=onRefresh -jar "$JAR" 2>&1 \
+            | sed -n 's/.*Started .* in \([0-9.]*\) seconds.*/\1/p')
+        echo "$label run $i: ${seconds}s"
+        total=$(echo "$total + $seconds" | bc -l)
+    done
+    echo "$label average: $(echo "scale=3; $total / $RUNS" | bc -l)s"
+}
+
+./mvnw -q -DskipTests clean package
+measure default
+
+./mvnw -q -DskipTests -Pfast-startup clean package
+measure fast-startup -XX:SharedArchiveFile="$JSA" -Dspring.aot.enabled=true -Dspring.profiles.active=fast-startup
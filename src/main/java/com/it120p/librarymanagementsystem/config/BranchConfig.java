@@ -0,0 +1,35 @@
+package com.it120p.librarymanagementsystem.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizer;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionManager;
+
+/**
+ * The BranchConfig class sets up the scoping of queries by library branch.
+ *
+ * Books and orders carry the ID of their branch. The branch of a request comes from the BranchFilter,
+ * and the BranchScopedTransactionManager enables the matching Hibernate filter for every transaction,
+ * see BranchContext.
+ */
+@Configuration
+public class BranchConfig {
+
+    /**
+     * Replaces the transaction manager of Spring Boot with one that applies the branch filter.
+     * The spring.transaction.* settings and the transaction execution listeners are applied to it like to the default one.
+     *
+     * @param customizers the transaction manager customizers, in order.
+     * @return the transaction manager.
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizer<?>> customizers) {
+        BranchScopedTransactionManager transactionManager = new BranchScopedTransactionManager();
+        // Each customizer is only applied if it accepts this type of transaction manager
+        TransactionManagerCustomizers.of(customizers.orderedStream().toList()).customize((TransactionManager) transactionManager);
+        return transactionManager;
+    }
+}
@@ -0,0 +1,124 @@
+package com.it120p.librarymanagementsystem.config;
+
+import java.util.function.Supplier;
+
+/**
+ * The BranchContext class holds the library branch the current request works in.
+ *
+ * The branch is set by the BranchFilter: the home branch of a user, or the X-Branch-Id header of an admin.
+ * While it is set, every transaction enables the branch filter of Hibernate, so the queries on Book and Order
+ * only see the rows of that branch, see BranchScopedTransactionManager. Without a branch (an admin without the header,
+ * scheduled jobs, background threads) the queries see every branch.
+ *
+ * The filter applies to queries only. A lookup by primary key, a native query and a bulk UPDATE are not filtered,
+ * callers that need the branch check use isVisible.
+ */
+public final class BranchContext {
+    /** The name of the Hibernate filter on Book and Order */
+    public static final String FILTER = "branchFilter";
+
+    /** The parameter of the filter */
+    public static final String PARAMETER = "branchId";
+
+    /** The request header naming the branch */
+    public static final String HEADER = "X-Branch-Id";
+
+    /** The branch of rows created without a branch, also the column default of existing rows */
+    public static final Long DEFAULT_BRANCH_ID = 1L;
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private BranchContext() {
+    }
+
+    /**
+     * Gets the branch of the current request.
+     *
+     * @return the ID of the branch, or null if the request is not scoped to a branch.
+     */
+    public static Long current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Gets the branch new rows are created in.
+     *
+     * @return the ID of the current branch, or the default branch if there is none.
+     */
+    public static Long currentOrDefault() {
+        Long branchId = CURRENT.get();
+        return branchId != null ? branchId : DEFAULT_BRANCH_ID;
+    }
+
+    /**
+     * Checks if a row of the given branch can be seen from the current request.
+     *
+     * @param branchId the branch of the row.
+     * @return true if the request is not scoped or the row belongs to its branch.
+     */
+    public static boolean isVisible(Long branchId) {
+        Long current = CURRENT.get();
+        return current == null || current.equals(branchId);
+    }
+
+    /**
+     * Runs work that has to see every branch, e.g. rebuilding a cache of all branches from a request.
+     * The work has to start its own transaction, a transaction that is already running keeps its filter.
+     *
+     * @param work the work to run.
+     * @return the result of the work.
+     */
+    public static <T> T callUnscoped(Supplier<T> work) {
+        Long previous = CURRENT.get();
+        CURRENT.remove();
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs work on another thread in the branch of the request that started it, e.g. the body of a streamed response.
+     * The branch has to be read with current() on the request thread, the ThreadLocal is not inherited.
+     *
+     * @param branchId the branch of the request, or null to see every branch.
+     * @param work the work to run.
+     * @throws E the exception thrown by the work.
+     */
+    public static <E extends Exception> void runIn(Long branchId, ScopedWork<E> work) throws E {
+        Long previous = CURRENT.get();
+        if (branchId != null) {
+            CURRENT.set(branchId);
+        } else {
+            CURRENT.remove();
+        }
+        try {
+            work.run();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    static void set(Long branchId) {
+        CURRENT.set(branchId);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Work run with runIn, it may throw a checked exception such as the IOException of a StreamingResponseBody.
+     */
+    @FunctionalInterface
+    public interface ScopedWork<E extends Exception> {
+        void run() throws E;
+    }
+}
@@ -0,0 +1,110 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * The BranchFilter class extends the OncePerRequestFilter class from Spring.
+ *
+ * It reads the X-Branch-Id header and sets the BranchContext for the rest of the request.
+ * A header that is not one of the configured branches gets a 400 (Bad Request) before any database access.
+ *
+ * A user who is not an admin is bound to their home branch: the request is scoped to it even without the header,
+ * and a header naming another branch gets a 403 (Forbidden). An admin picks the branch with the header,
+ * and an admin request without it is not scoped to a branch, e.g. for reports over every branch.
+ * Anonymous requests only reach the public catalog, they are scoped by the header alone.
+ *
+ * The filter is not a bean on purpose, it is added to the security filter chain in WebSecurityConfig.
+ */
+public class BranchFilter extends OncePerRequestFilter {
+
+    private static final byte[] UNKNOWN_BRANCH_BODY =
+            "{\"error\":\"Unknown branch in the X-Branch-Id header.\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] OTHER_BRANCH_BODY =
+            "{\"error\":\"You can only work in your own branch.\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Set<Long> branchIds;
+
+    public BranchFilter(Set<Long> branchIds) {
+        this.branchIds = Set.copyOf(branchIds);
+    }
+
+    /**
+     * Sets the branch of the request and clears it once the request is done.
+     *
+     * @param request the HttpServletRequest which houses the details of the request.
+     * @param response the HttpServletResponse which houses the details of the response to be sent.
+     * @param filterChain the FilterChain which allows the request to proceed further in the filter chain.
+     * @throws ServletException if the request for the GET/POST could not be handled
+     * @throws IOException if an input or output exception occurred
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Long homeBranchId = homeBranchOf(SecurityContextHolder.getContext().getAuthentication());
+        String header = request.getHeader(BranchContext.HEADER);
+        Long branchId = homeBranchId;
+        if (header != null && !header.isBlank()) {
+            branchId = parse(header.trim());
+            if (branchId == null || !branchIds.contains(branchId)) {
+                reject(response, HttpServletResponse.SC_BAD_REQUEST, UNKNOWN_BRANCH_BODY);
+                return;
+            }
+            if (homeBranchId != null && !homeBranchId.equals(branchId)) {
+                reject(response, HttpServletResponse.SC_FORBIDDEN, OTHER_BRANCH_BODY);
+                return;
+            }
+        }
+        if (branchId == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        BranchContext.set(branchId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            BranchContext.clear();
+        }
+    }
+
+    /**
+     * Gets the branch the authenticated user is bound to.
+     *
+     * @param authentication the authentication of the request, set by the AuthTokenFilter.
+     * @return the home branch of a user who is not an admin, or null for admins and anonymous requests.
+     */
+    private static Long homeBranchOf(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl user && !user.isAdmin()) {
+            return user.getBranchId() != null ? user.getBranchId() : BranchContext.DEFAULT_BRANCH_ID;
+        }
+        return null;
+    }
+
+    private static void reject(HttpServletResponse response, int status, byte[] body) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static Long parse(String header) {
+        try {
+            return Long.valueOf(header);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.it120p.librarymanagementsystem.config;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The BranchScopedTransactionManager class is the JpaTransactionManager that turns the branch filter on and off.
+ *
+ * Every repository call runs in a transaction, so switching the filter when a transaction begins scopes every query
+ * without touching the repositories. The filter is switched on the EntityManager of the transaction, which may be
+ * the one kept open for the whole request (open-in-view), so it is also turned off again when there is no branch.
+ *
+ * It also tells the ReplicaRoutingDataSource which transactions were opened by a @ReadFromReplica method,
+ * the transaction definition is only known here.
+ */
+public class BranchScopedTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ReplicaRoutingDataSource.beginTransaction(definition.isReadOnly() && definition instanceof TransactionAttribute attribute
+                && attribute.getLabels().contains(ReplicaRoutingDataSource.LABEL));
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            // A transaction that failed to begin is not cleaned up
+            ReplicaRoutingDataSource.endTransaction();
+            throw e;
+        }
+
+        EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(obtainEntityManagerFactory());
+        if (holder == null) {
+            return;
+        }
+        EntityManager entityManager = holder.getEntityManager();
+        Session session = entityManager.unwrap(Session.class);
+
+        Long branchId = BranchContext.current();
+        if (branchId != null) {
+            session.enableFilter(BranchContext.FILTER).setParameter(BranchContext.PARAMETER, branchId);
+        } else {
+            session.disableFilter(BranchContext.FILTER);
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            ReplicaRoutingDataSource.endTransaction();
+        }
+    }
+}
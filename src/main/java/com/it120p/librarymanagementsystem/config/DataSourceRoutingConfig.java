@@ -0,0 +1,87 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * The DataSourceRoutingConfig class sets up read/write splitting between a primary and a replica database.
+ *
+ * It is only active when it120p.app.replica.enabled is true, otherwise Spring Boot creates the usual single pool.
+ * The primary pool uses the spring.datasource settings, the replica pool the it120p.app.replica settings.
+ * Both pools are beans, so the Hikari metrics of each pool are published with the pool name as a tag.
+ * The DataSource used by JPA is a LazyConnectionDataSourceProxy around the ReplicaRoutingDataSource.
+ */
+@Configuration
+@ConditionalOnProperty(name = "it120p.app.replica.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Value("${it120p.app.replica.url}")
+    private String replicaUrl;
+
+    @Value("${it120p.app.replica.username}")
+    private String replicaUsername;
+
+    @Value("${it120p.app.replica.password}")
+    private String replicaPassword;
+
+    @Value("${it120p.app.replica.maxLagMs}")
+    private long maxLagMs;
+
+    @Bean
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(ReplicaRoutingDataSource.REPLICA);
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        dataSource.setJdbcUrl(replicaUrl);
+        dataSource.setUsername(replicaUsername);
+        dataSource.setPassword(replicaPassword);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                               @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                               MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(primaryDataSource, replicaDataSource, maxLagMs, meterRegistry);
+    }
+
+    /**
+     * Defines the DataSource used by JPA and the transaction manager.
+     *
+     * @return the routing DataSource wrapped in a LazyConnectionDataSourceProxy.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReplicaLagMonitor replicaLagMonitor,
+                                 MeterRegistry meterRegistry) {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(replicaLagMonitor::isLagging, meterRegistry);
+        routingDataSource.setTargetDataSources(Map.of(
+                ReplicaRoutingDataSource.PRIMARY, primaryDataSource,
+                ReplicaRoutingDataSource.REPLICA, replicaDataSource));
+        routingDataSource.setDefaultTargetDataSource(primaryDataSource);
+        routingDataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
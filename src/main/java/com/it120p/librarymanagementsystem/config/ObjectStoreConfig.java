@@ -0,0 +1,111 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.it120p.librarymanagementsystem.service.storage.CachingObjectStore;
+import com.it120p.librarymanagementsystem.service.storage.LocalObjectStore;
+import com.it120p.librarymanagementsystem.service.storage.ObjectStore;
+import com.it120p.librarymanagementsystem.service.storage.S3ObjectStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * The ObjectStoreConfig class chooses where the cover images are stored.
+ *
+ * With it120p.app.storage.type=local (the default) the images are files under it120p.app.storageRoot.
+ * With it120p.app.storage.type=s3 they are objects in an S3-compatible bucket shared by all nodes,
+ * fronted by a local read-through cache under storageRoot/cache.
+ * An empty endpoint uses AWS, any other endpoint (e.g. http://localhost:9000 for MinIO) is used as is.
+ * Empty keys fall back to the default AWS credential chain (environment, profile, instance role).
+ */
+@Configuration
+public class ObjectStoreConfig {
+
+    @Value("${it120p.app.storageRoot}")
+    private String storageRoot;
+
+    @Bean
+    @ConditionalOnProperty(name = "it120p.app.storage.type", havingValue = "local", matchIfMissing = true)
+    public ObjectStore localObjectStore() {
+        return new LocalObjectStore(root());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "it120p.app.storage.type", havingValue = "s3")
+    public S3Client s3Client(@Value("${it120p.app.storage.s3.endpoint}") String endpoint,
+                             @Value("${it120p.app.storage.s3.region}") String region,
+                             @Value("${it120p.app.storage.s3.accessKey}") String accessKey,
+                             @Value("${it120p.app.storage.s3.secretKey}") String secretKey,
+                             @Value("${it120p.app.storage.s3.pathStyle}") boolean pathStyle) {
+        var builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials(accessKey, secretKey))
+                .forcePathStyle(pathStyle);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "it120p.app.storage.type", havingValue = "s3")
+    public S3Presigner s3Presigner(@Value("${it120p.app.storage.s3.endpoint}") String endpoint,
+                                   @Value("${it120p.app.storage.s3.region}") String region,
+                                   @Value("${it120p.app.storage.s3.accessKey}") String accessKey,
+                                   @Value("${it120p.app.storage.s3.secretKey}") String secretKey,
+                                   @Value("${it120p.app.storage.s3.pathStyle}") boolean pathStyle) {
+        var builder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials(accessKey, secretKey))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build());
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "it120p.app.storage.type", havingValue = "s3")
+    public ObjectStore s3ObjectStore(S3Client s3Client, S3Presigner s3Presigner,
+                                     @Value("${it120p.app.storage.s3.bucket}") String bucket,
+                                     @Value("${it120p.app.storage.s3.partSize}") int partSize,
+                                     @Value("${it120p.app.storage.s3.presignedDownloads}") boolean presignedDownloads,
+                                     @Value("${it120p.app.storage.s3.presignTtlSeconds}") long presignTtlSeconds,
+                                     @Value("${it120p.app.storage.s3.createBucket}") boolean createBucket,
+                                     @Value("${it120p.app.storage.cacheEntries}") int cacheEntries) throws IOException {
+        S3ObjectStore store = new S3ObjectStore(s3Client, presignedDownloads ? s3Presigner : null,
+                bucket, partSize, Duration.ofSeconds(presignTtlSeconds));
+        if (createBucket) {
+            store.createBucketIfMissing();
+        }
+        if (cacheEntries <= 0) {
+            return store;
+        }
+        return new CachingObjectStore(store, root().resolve("cache"), cacheEntries);
+    }
+
+    private Path root() {
+        return Paths.get(storageRoot).toAbsolutePath().normalize();
+    }
+
+    private AwsCredentialsProvider credentials(String accessKey, String secretKey) {
+        if (accessKey.isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+    }
+}
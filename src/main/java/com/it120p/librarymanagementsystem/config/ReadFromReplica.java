@@ -0,0 +1,24 @@
+package com.it120p.librarymanagementsystem.config;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The ReadFromReplica annotation marks the query service methods that may be served by the replica database.
+ *
+ * It is a @Transactional(readOnly = true) that carries the replica label. Only these transactions are routed to the
+ * replica, see ReplicaRoutingDataSource. Every other read-only transaction, like the default ones of the
+ * Spring Data repositories, stays on the primary, so a read made right after a write always sees it.
+ * Use it for reads that may be a moment behind, such as exports and history pages.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true, label = ReplicaRoutingDataSource.LABEL)
+public @interface ReadFromReplica {
+}
@@ -0,0 +1,80 @@
+package com.it120p.librarymanagementsystem.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * The ReplicaLagMonitor class measures how far the replica is behind the primary.
+ *
+ * It writes a heartbeat to the replication_heartbeat table on the primary and reads the last one that
+ * reached the replica. If the replica is further behind than the allowed lag, or cannot be read at all,
+ * it is marked as lagging and the ReplicaRoutingDataSource sends read-only transactions to the primary.
+ * The measured lag is exposed as the it120p.datasource.replica.lag gauge.
+ */
+public class ReplicaLagMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxLagMs;
+
+    /** Start as lagging, so no read goes to the replica before the first check */
+    private volatile boolean lagging = true;
+    private volatile long lagMs = -1;
+
+    public ReplicaLagMonitor(DataSource primaryDataSource, DataSource replicaDataSource, long maxLagMs, MeterRegistry meterRegistry) {
+        this.primary = new JdbcTemplate(primaryDataSource);
+        this.replica = new JdbcTemplate(replicaDataSource);
+        this.maxLagMs = maxLagMs;
+        Gauge.builder("it120p.datasource.replica.lag", this, monitor -> monitor.lagMs)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks if the replica is too far behind the primary.
+     *
+     * @return true if read-only transactions should use the primary.
+     */
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    /**
+     * Writes a new heartbeat and measures the lag of the replica.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.replica.lagCheckMs}")
+    public void check() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update("update replication_heartbeat set beat = ? where id = 1", now) == 0) {
+                primary.update("insert into replication_heartbeat (id, beat) values (1, ?)", now);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Could not write the replication heartbeat: {}", e.getMessage());
+        }
+
+        try {
+            List<Long> beats = replica.queryForList("select beat from replication_heartbeat where id = 1", Long.class);
+            // The replica has not received any heartbeat yet, treat it as lagging
+            lagMs = beats.isEmpty() ? -1 : now - beats.get(0);
+        } catch (DataAccessException e) {
+            logger.warn("Could not read the replication heartbeat from the replica: {}", e.getMessage());
+            lagMs = -1;
+        }
+
+        boolean nowLagging = lagMs < 0 || lagMs > maxLagMs;
+        if (nowLagging != lagging) {
+            logger.info("Replica is {} (lag {} ms)", nowLagging ? "lagging, reading from the primary" : "caught up", lagMs);
+        }
+        lagging = nowLagging;
+    }
+}
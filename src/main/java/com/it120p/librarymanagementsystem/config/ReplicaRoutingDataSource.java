@@ -0,0 +1,104 @@
+package com.it120p.librarymanagementsystem.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The ReplicaRoutingDataSource class picks the connection pool for every new connection.
+ *
+ * Only the transactions that opt in with @ReadFromReplica go to the replica pool. Everything else goes to the
+ * primary pool, including the read-only transactions the Spring Data repositories open on their own and reads
+ * outside of a transaction. When the replica is lagging, the opted in transactions fall back to the primary as well.
+ *
+ * The transaction manager tells it which transactions opted in when they begin, see BranchScopedTransactionManager.
+ * It has to be wrapped in a LazyConnectionDataSourceProxy, so the connection is only fetched
+ * after the transaction has begun.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    /** The transaction label set by @ReadFromReplica */
+    public static final String LABEL = "it120p.replica";
+
+    /** Whether each transaction open on the current thread opted in, the innermost first */
+    private static final ThreadLocal<Deque<Boolean>> TRANSACTIONS = new ThreadLocal<>();
+
+    private final BooleanSupplier replicaLagging;
+
+    private final Counter primaryRoutes;
+    private final Counter primaryReadRoutes;
+    private final Counter replicaRoutes;
+    private final Counter fallbackRoutes;
+
+    /**
+     * Constructs the ReplicaRoutingDataSource.
+     *
+     * @param replicaLagging tells if the replica is currently too far behind the primary.
+     * @param meterRegistry the registry for the routing counters.
+     */
+    public ReplicaRoutingDataSource(BooleanSupplier replicaLagging, MeterRegistry meterRegistry) {
+        this.replicaLagging = replicaLagging;
+        this.primaryRoutes = meterRegistry.counter("it120p.datasource.routes", "pool", PRIMARY, "reason", "write");
+        this.primaryReadRoutes = meterRegistry.counter("it120p.datasource.routes", "pool", PRIMARY, "reason", "read-only");
+        this.replicaRoutes = meterRegistry.counter("it120p.datasource.routes", "pool", REPLICA, "reason", "opted-in");
+        this.fallbackRoutes = meterRegistry.counter("it120p.datasource.routes", "pool", PRIMARY, "reason", "replica-lagging");
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryRoutes.increment();
+            return PRIMARY;
+        }
+        if (!isReplicaTransaction()) {
+            primaryReadRoutes.increment();
+            return PRIMARY;
+        }
+        if (replicaLagging.getAsBoolean()) {
+            fallbackRoutes.increment();
+            return PRIMARY;
+        }
+        replicaRoutes.increment();
+        return REPLICA;
+    }
+
+    /**
+     * Records that a transaction begins on the current thread, called by the transaction manager.
+     *
+     * @param replica true if the transaction opted in to the replica.
+     */
+    static void beginTransaction(boolean replica) {
+        Deque<Boolean> transactions = TRANSACTIONS.get();
+        if (transactions == null) {
+            transactions = new ArrayDeque<>();
+            TRANSACTIONS.set(transactions);
+        }
+        transactions.push(replica);
+    }
+
+    /**
+     * Records that the innermost transaction of the current thread ended, the suspended one is routed again.
+     */
+    static void endTransaction() {
+        Deque<Boolean> transactions = TRANSACTIONS.get();
+        if (transactions == null) {
+            return;
+        }
+        transactions.poll();
+        if (transactions.isEmpty()) {
+            TRANSACTIONS.remove();
+        }
+    }
+
+    private static boolean isReplicaTransaction() {
+        Deque<Boolean> transactions = TRANSACTIONS.get();
+        return transactions != null && Boolean.TRUE.equals(transactions.peek());
+    }
+}
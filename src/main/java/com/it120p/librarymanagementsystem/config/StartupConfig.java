@@ -0,0 +1,40 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.it120p.librarymanagementsystem.security.jwt.SecurityEventLog;
+import com.it120p.librarymanagementsystem.security.ratelimit.RateLimiter;
+import com.it120p.librarymanagementsystem.service.FineService;
+import com.it120p.librarymanagementsystem.service.HoldService;
+import com.it120p.librarymanagementsystem.service.JobLeaseService;
+import com.it120p.librarymanagementsystem.service.OrderEventStream;
+import com.it120p.librarymanagementsystem.service.OrderService;
+import com.it120p.librarymanagementsystem.service.OutboxRelay;
+import com.it120p.librarymanagementsystem.service.catalog.CatalogSnapshotService;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * The StartupConfig class holds the settings for the fast-startup profile.
+ *
+ * The fast-startup profile turns on lazy initialization, so non-critical beans like EmailServiceImpl,
+ * StorageService and the mail and Thymeleaf auto-configuration are only created on first use.
+ * Beans that do their work without being called by a request have to stay eager, otherwise they never start.
+ */
+@Configuration
+@Profile("fast-startup")
+public class StartupConfig {
+
+    /**
+     * Keeps the beans with scheduled jobs eager.
+     * A lazy bean is never created if nothing injects it, so its @Scheduled methods would never be registered.
+     *
+     * @return a filter that excludes the scheduled beans from lazy initialization.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter scheduledBeansExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(OrderService.class, OutboxRelay.class, RateLimiter.class,
+                HoldService.class, OrderEventStream.class, CatalogSnapshotService.class, SecurityEventLog.class,
+                FineService.class, JobLeaseService.class);
+    }
+}
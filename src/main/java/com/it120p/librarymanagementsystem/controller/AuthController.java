@@ -1,27 +1,26 @@
 package com.it120p.librarymanagementsystem.controller;
 
 
+import com.it120p.librarymanagementsystem.exception.UserAlreadyExistsException;
 import com.it120p.librarymanagementsystem.exception.UserNotFoundException;
-import com.it120p.librarymanagementsystem.model.ERole;
-import com.it120p.librarymanagementsystem.model.Role;
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
 import com.it120p.librarymanagementsystem.model.User;
 import com.it120p.librarymanagementsystem.payload.request.LoginRequest;
 import com.it120p.librarymanagementsystem.payload.request.SignupRequest;
 import com.it120p.librarymanagementsystem.payload.request.UpdateUserRequest;
 import com.it120p.librarymanagementsystem.payload.response.JwtResponse;
 import com.it120p.librarymanagementsystem.payload.response.MessageResponse;
-import com.it120p.librarymanagementsystem.repository.RoleRepository;
 import com.it120p.librarymanagementsystem.repository.UserRepository;
 import com.it120p.librarymanagementsystem.security.jwt.JwtUtils;
 import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import com.it120p.librarymanagementsystem.service.ActivityLog;
+import com.it120p.librarymanagementsystem.service.RegistrationService;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.it120p.librarymanagementsystem.security.services.impl.EmailServiceImpl;
 import jakarta.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,7 +36,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 /**
  * The AuthController class manages the authentication operations for User entities.
- * It uses the UserRepository and RoleRepository to interact with the database.
+ * It uses the UserRepository to interact with the database, new accounts are created by the RegistrationService.
  * It also uses the AuthenticationManager, PasswordEncoder, and JwtUtils for authentication and authorization.
  */
 
@@ -74,24 +73,23 @@ public class AuthController {
     UserRepository userRepository;
 
     /**
-     * RoleRepository is an interface which extends JpaRepository. It will
-     * perform all the CRUD operations on Role entity.
+     * RegistrationService creates the user accounts for signup and create.
      */
     @Autowired
-    RoleRepository roleRepository;
+    RegistrationService registrationService;
 
     /**
-     * PasswordEncoder is an interface which provides the encode() method.
-     * It is used to perform one-way encryption on passwords.
+     * ActivityLog records the logins and the users created by admins.
      */
     @Autowired
-    PasswordEncoder encoder;
+    ActivityLog activityLog;
 
     /**
-     * EmailServiceImpl is a class which provides the sendSimpleMailMessage() method.
+     * PasswordEncoder is an interface which provides the encode() method.
+     * It is used to perform one-way encryption on passwords.
      */
     @Autowired
-    EmailServiceImpl emailServiceImpl;
+    PasswordEncoder encoder;
 
     /**
      * JwtUtils is a class which provides the generateJwtToken() method.
@@ -120,6 +118,8 @@ public class AuthController {
 
         // Get the UserDetailsImpl from the authentication principal
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        activityLog.record(LibraryLogAction.LOGIN, userDetails.getId(), userDetails.getUsername(),
+                LibraryLog.TARGET_USER, userDetails.getId(), null);
         // Get the roles of the user
         List<String> roles = userDetails.getAuthorities().stream()
                 .map(item -> item.getAuthority())
@@ -142,64 +142,22 @@ public class AuthController {
      */
     @PostMapping("/signup")
     public ResponseEntity<?> registerUser(@Valid @RequestBody SignupRequest signUpRequest) {
-        // Check if the username is already taken
-        if (userRepository.existsByUsername(signUpRequest.getUsername())) {
-            // Return a bad request response with the message
-            return ResponseEntity
-                    .badRequest()
-                    .body(new MessageResponse("Error: Username is already taken!"));
-        }
-
-        // Check if the email is already in use
-        if (userRepository.existsByEmail(signUpRequest.getEmail())) {
-            // Return a bad request response with the message
-            return ResponseEntity
-                    .badRequest()
-                    .body(new MessageResponse("Error: Email is already in use!"));
-        }
-
         // Create a new User entity with the details from the signup request
         User user = new User(signUpRequest.getUsername(),
                 signUpRequest.getName(),
                 signUpRequest.getEmail(),
-                // Encode the password using the PasswordEncoder
-                encoder.encode(signUpRequest.getPassword()));
-
-        // Set the roles for the user
-        Set<String> strRoles = signUpRequest.getRole();
-        // Create a new HashSet to store the roles
-        Set<Role> roles = new HashSet<>();
+                signUpRequest.getPassword());
 
-        // Check if the roles are null, if they are, then add the ROLE_USER role
-        if (strRoles == null) {
-            Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                    .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-            roles.add(userRole);
-        } else {
-            // If the roles are not null, then add the roles to the user
-            strRoles.forEach(role -> {
-                switch (role) {
-                    // If the role is an admin role, then add the ROLE_ADMIN role
-                    case "admin":
-                        Role adminRole = roleRepository.findByName(ERole.ROLE_ADMIN)
-                                .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-                        roles.add(adminRole);
-
-                        break;
-                    default:
-                        Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                                .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-                        roles.add(userRole);
-                }
-            });
+        try {
+            // The service encodes the password, sets the roles and queues the welcome email
+            registrationService.register(user, signUpRequest.getRole(), true);
+        } catch (UserAlreadyExistsException e) {
+            // Return a bad request response with the message
+            return ResponseEntity
+                    .badRequest()
+                    .body(new MessageResponse(e.getMessage()));
         }
 
-        // Set the roles for the user
-        user.setRoles(roles);
-        // Save the user to the database
-        userRepository.save(user);
-        emailServiceImpl.sendSimpleMailMessage(user.getEmail(), "New User Account Created:" + user.getUsername(), "Your account has been created successfully!", user.getName());
-
         return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
     }
 
@@ -229,57 +187,20 @@ public class AuthController {
      */
     @PostMapping("/create")
     User createUser(@RequestBody User newUser) {
-        // Check if the username is already taken
-        if (userRepository.existsByUsername(newUser.getUsername())) {
-            // Return a bad request response with the message
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: Username is already taken!");
-        }
-
-        // Check if the email is already in use
-        if (userRepository.existsByEmail(newUser.getEmail())) {
-            // Return a bad request response with the message
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: Email is already in use!");
-        }
-
-        // Set the roles for the user
-        // use a stream for the roles and map the roles to a set of strings
-        // collect the strings to a set
-        Set<String> strRoles = newUser.getRoles().stream().map(role -> role.getName().toString()).collect(Collectors.toSet());
-        // Create a new HashSet to store the roles
-        Set<Role> roles = new HashSet<>();
-
-        // Check if the roles are null, if they are, then add the ROLE_USER role
-        if (strRoles == null) {
-            Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                    .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-            roles.add(userRole);
-        } else {
-            // If the roles are not null, then add the roles to the user
-            strRoles.forEach(role -> {
-                switch (role) {
-                    // If the role is an admin role, then add the ROLE_ADMIN role
-                    case "admin":
-                        Role adminRole = roleRepository.findByName(ERole.ROLE_ADMIN)
-                                .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-                        roles.add(adminRole);
-
-                        break;
-                    case "user":
-                        Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                                .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
-                        roles.add(userRole);
-                        break;
-                }
-            });
+        // Map the roles of the request to their names, the RegistrationService resolves them again
+        Set<String> strRoles = newUser.getRoles() == null ? null : newUser.getRoles().stream()
+                .filter(role -> role.getName() != null)
+                .map(role -> role.getName().name())
+                .collect(Collectors.toSet());
+
+        try {
+            // Save the user to the database
+            User savedUser = registrationService.register(newUser, strRoles, false);
+            activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_USER, savedUser.getId(),
+                    "User created: " + savedUser.getUsername());
+            return savedUser;
+        } catch (UserAlreadyExistsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
-
-        // Set the roles for the user
-        newUser.setRoles(roles);
-
-        // Encode the password using the PasswordEncoder
-        newUser.setPassword(encoder.encode(newUser.getPassword()));
-
-        // Save the user to the database
-        return userRepository.save(newUser);
     }
 }
\ No newline at end of file
@@ -1,11 +1,27 @@
 package com.it120p.librarymanagementsystem.controller;
 
+import com.it120p.librarymanagementsystem.config.BranchContext;
 import com.it120p.librarymanagementsystem.exception.BookNotFoundException;
+import com.it120p.librarymanagementsystem.exception.ImageTooLargeException;
+import com.it120p.librarymanagementsystem.exception.ImportJobNotFoundException;
+import com.it120p.librarymanagementsystem.exception.InvalidImageException;
 import com.it120p.librarymanagementsystem.model.Book;
 import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.model.ImportJob;
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
 import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.ImportJobRepository;
+import com.it120p.librarymanagementsystem.service.ActivityLog;
 import com.it120p.librarymanagementsystem.service.StorageService;
+import com.it120p.librarymanagementsystem.service.catalog.CatalogImportService;
+import com.it120p.librarymanagementsystem.service.catalog.CatalogSnapshot;
+import com.it120p.librarymanagementsystem.service.catalog.CatalogSnapshotService;
+import com.it120p.librarymanagementsystem.service.export.ExportFormat;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,7 +31,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +41,7 @@ import java.util.Optional;
  * The BookController class manages the CRUD operations for Book entities.
  * It uses the BookRepository to interact with the database.
  * It also uses the StorageService for handling book images.
+ * Catalog reads are served from the CatalogSnapshotService, every write here updates the snapshot with the written books.
  */
 @RestController
 /** @CrossOrigin is used to handle the request from a different origin.
@@ -36,6 +55,18 @@ public class BookController {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private CatalogImportService catalogImportService;
+
+    @Autowired
+    private ImportJobRepository importJobRepository;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Autowired
+    private ActivityLog activityLog;
+
     /**
      * Creates a new Book entity and saves it to the database.
      * The book's image is stored using the StorageService.
@@ -51,10 +82,10 @@ public class BookController {
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PostMapping("/book")
     public ResponseEntity<?> newBook(@RequestParam("image") MultipartFile file, @RequestParam("title") String title, @RequestParam("author") String author, @RequestParam("genre") String genre, @RequestParam("description") String description) throws IOException {
+        // Convert the String genre to an EGenre enum, before the image takes a reference in the store
+        EGenre eGenre = EGenre.valueOf(genre.toUpperCase());
         // Save the image to the file system
         String imagePath = service.uploadImageToFileSystem(file, title);
-        // Convert the String genre to an EGenre enum
-        EGenre eGenre = EGenre.valueOf(genre.toUpperCase());
         // Create the new Book entity
         Book newBook = Book.builder()
                 .title(title)
@@ -63,45 +94,130 @@ public class BookController {
                 .description(description)
                 .imagePath(imagePath)
                 .build();
-        Book savedBook = bookRepository.save(newBook);
+        Book savedBook = saveWithImage(newBook, imagePath, null);
+        catalogSnapshotService.update(List.of(savedBook), List.of());
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, savedBook.getId(), "Book created: " + title);
         return ResponseEntity.status(HttpStatus.OK)
                 .body(savedBook);
     }
 
     /**
      * Creates new Book entities and saves them to the database.
+     * An image path has to be the storage key of an image that is already stored, each book takes a reference to it.
      *
      * @param newBooks the list of Book entities to be created.
      * @return the list of created Book entities.
+     * @throws InvalidImageException if an image path does not name a stored image.
      */
     @PostMapping("/books")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     List<Book> newBooks(@RequestBody List<Book> newBooks) {
-        return bookRepository.saveAll(newBooks);
+        List<String> acquired = new ArrayList<>();
+        List<Book> savedBooks;
+        try {
+            for (Book book : newBooks) {
+                if (book.getImagePath() != null) {
+                    if (!service.acquireImage(book.getImagePath())) {
+                        throw new InvalidImageException(book.getImagePath() + " is not the storage key of a stored image");
+                    }
+                    acquired.add(book.getImagePath());
+                }
+            }
+            savedBooks = bookRepository.saveAll(newBooks);
+        } catch (RuntimeException e) {
+            acquired.forEach(service::releaseImage);
+            throw e;
+        }
+        catalogSnapshotService.update(savedBooks, List.of());
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, null, savedBooks.size() + " books created");
+        return savedBooks;
+    }
+
+    /**
+     * Starts a bulk import of books from a CSV or NDJSON file.
+     * The file is imported in the background, the progress can be followed with GET /books/import/{id}.
+     *
+     * @param file the CSV or NDJSON file.
+     * @param format the format of the file (csv or ndjson), taken from the file name when it is not given.
+     * @return the created import job.
+     * @throws IOException if the upload cannot be saved.
+     */
+    @PostMapping("/books/import")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> importBooks(@RequestParam("file") MultipartFile file, @RequestParam(value = "format", required = false) String format) throws IOException {
+        if (format == null) {
+            String fileName = file.getOriginalFilename();
+            format = fileName != null && fileName.toLowerCase().endsWith(".csv") ? "csv" : "ndjson";
+        }
+        ImportJob job = catalogImportService.startImport(file, ExportFormat.valueOf(format.toUpperCase()));
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, null,
+                "Import job " + job.getId() + " started: " + file.getOriginalFilename());
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(job);
     }
 
     /**
-     * Retrieves all Book entities from the database.
+     * Retrieves the progress of a bulk import.
      *
-     * @return the list of all Book entities.
+     * @param id the ID of the import job.
+     * @return the import job with its counters and the first validation errors.
+     * @throws ImportJobNotFoundException if the import job is not found.
+     */
+    @GetMapping("/books/import/{id}")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    ImportJob getImportJob(@PathVariable Long id) {
+        return importJobRepository.findById(id).orElseThrow(() -> new ImportJobNotFoundException(id));
+    }
+
+    /**
+     * Retrieves all books, optionally only those of a genre and/or an author.
+     * The JSON comes ready-made from the catalog snapshot, and a client that already has
+     * the current catalog (If-None-Match) gets a 304 without a body.
+     *
+     * @param genre the genre to filter on, optional.
+     * @param author the author to filter on ignoring case, optional.
+     * @param ifNoneMatch the entity tag the client already has, optional.
+     * @return the JSON array of the books.
      */
     @GetMapping("/books")
     @PreAuthorize("hasRole('ROLE_ADMIN') or hasRole('ROLE_USER')")
-    List<Book> listAllBooks() {
-        return bookRepository.findAll();
+    ResponseEntity<byte[]> listAllBooks(@RequestParam(value = "genre", required = false) String genre,
+                                        @RequestParam(value = "author", required = false) String author,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CatalogSnapshot snapshot = catalogSnapshotService.current();
+        if (snapshot.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.etag())
+                    .varyBy(BranchContext.HEADER)
+                    .build();
+        }
+
+        EGenre eGenre = genre == null ? null : EGenre.valueOf(genre.toUpperCase());
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.etag())
+                // Each branch has its own catalog
+                .varyBy(BranchContext.HEADER)
+                .body(snapshot.filter(eGenre, author));
     }
 
     /**
-     * Retrieves a Book entity by its ID from the database.
+     * Retrieves a book by its ID, from the catalog snapshot when it is there.
      *
      * @param id the ID of the Book entity.
-     * @return the Book entity with the specified ID.
+     * @return the JSON of the book with the specified ID.
      * @throws BookNotFoundException if the Book entity is not found.
      */
     @GetMapping("/book/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN') or hasRole('ROLE_USER')")
-    Book getBookById(@PathVariable Long id) {
-        return bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException(id));
+    ResponseEntity<byte[]> getBookById(@PathVariable Long id) {
+        byte[] json = catalogSnapshotService.bookJson(id);
+        if (json == null) {
+            throw new BookNotFoundException(id);
+        }
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json);
     }
 
     /**
@@ -115,17 +231,9 @@ public class BookController {
     @PutMapping("/book/{id}")
     public ResponseEntity<?> editBook(@PathVariable Long id, @RequestParam(value = "image", required = false) Optional<MultipartFile> file, @RequestParam("title") String title, @RequestParam("author") String author, @RequestParam("genre") String genre, @RequestParam("description") String description) throws IOException {
         // Find the book by its ID
-        Book bookToUpdate = bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException(id));
-
-        String imagePath = bookToUpdate.getImagePath(); // Use the existing image path by default
+        Book bookToUpdate = findInBranch(id).orElseThrow(() -> new BookNotFoundException(id));
 
-        // Check if a new image has been provided
-        if (file.isPresent()) {
-            // Save the new image to the file system
-            imagePath = service.uploadImageToFileSystem(file.get(), title);
-        }
-
-        // Convert the String genre to an EGenre enum
+        // Convert the String genre to an EGenre enum, before a new image takes a reference in the store
         EGenre eGenre = EGenre.valueOf(genre.toUpperCase());
 
         // Update the book details
@@ -133,10 +241,54 @@ public class BookController {
         bookToUpdate.setAuthor(author);
         bookToUpdate.setGenre(eGenre);
         bookToUpdate.setDescription(description);
-        bookToUpdate.setImagePath(imagePath);
 
-        // Save the updated book to the database
-        Book updatedBook = bookRepository.save(bookToUpdate);
+        // Save the updated book to the database, with the new image if one has been provided
+        Book updatedBook;
+        if (file.isPresent()) {
+            String oldImagePath = bookToUpdate.getImagePath();
+            String imagePath = service.uploadImageToFileSystem(file.get(), title);
+            bookToUpdate.setImagePath(imagePath);
+            updatedBook = saveWithImage(bookToUpdate, imagePath, oldImagePath);
+        } else {
+            updatedBook = bookRepository.save(bookToUpdate);
+        }
+        catalogSnapshotService.update(List.of(updatedBook), List.of());
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, id, "Book edited");
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(updatedBook);
+    }
+
+    /**
+     * Replaces the image of a Book entity with the raw request body.
+     *
+     * The body is the image itself (Content-Type image/png or image/jpeg), not a multipart form,
+     * so it is streamed straight into the StorageService without being buffered first.
+     * A Content-Length above the limit is rejected before any byte is read.
+     *
+     * @param id the ID of the Book entity.
+     * @param request the HttpServletRequest whose body is the image.
+     * @return the updated Book entity.
+     * @throws IOException if an error occurs while storing the image.
+     * @throws BookNotFoundException if the Book entity is not found.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PutMapping(value = "/book/{id}/image", consumes = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE})
+    public ResponseEntity<?> replaceBookImage(@PathVariable Long id, HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > service.getMaxImageBytes()) {
+            throw new ImageTooLargeException(service.getMaxImageBytes());
+        }
+
+        // Find the book by its ID
+        Book bookToUpdate = findInBranch(id).orElseThrow(() -> new BookNotFoundException(id));
+        String oldImagePath = bookToUpdate.getImagePath();
+
+        // Stream the body into the store
+        String imagePath = service.uploadImageStream(request.getInputStream(), bookToUpdate.getTitle());
+        bookToUpdate.setImagePath(imagePath);
+        Book updatedBook = saveWithImage(bookToUpdate, imagePath, oldImagePath);
+        catalogSnapshotService.update(List.of(updatedBook), List.of());
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, id, "Book image replaced");
 
         return ResponseEntity.status(HttpStatus.OK)
                 .body(updatedBook);
@@ -152,9 +304,14 @@ public class BookController {
     @DeleteMapping("/book/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     ResponseEntity<String> deleteBook(@PathVariable Long id) {
-    if(bookRepository.existsById(id)){
+    Optional<Book> book = findInBranch(id);
+    if(book.isPresent()){
         try {
             bookRepository.deleteById(id);
+            catalogSnapshotService.update(List.of(), List.of(id));
+            activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_BOOK, id, "Book deleted");
+            // Release the image, the file is deleted if no other book uses it
+            service.releaseImage(book.get().getImagePath());
             return ResponseEntity.status(HttpStatus.OK)
                     .body("Book with ID: " + id + " has been deleted.");
         } catch (Exception e) {
@@ -167,22 +324,65 @@ public class BookController {
 }
 
     /**
-     * Downloads the image of a Book entity from the file system.
+     * Downloads the image of a Book entity.
+     *
+     * When the object store can serve the image itself (presigned S3 URLs), the client is redirected there,
+     * otherwise the image is streamed from the store without being loaded in memory.
+     * Content-addressed images never change, so they can be cached by the browser for a long time.
      *
      * @param imageName the name of the image file.
-     * @return the image file.
+     * @return the image file, or a redirect to it.
      * @throws IOException if an error occurs while downloading the image.
      */
     @GetMapping("/book/download/{imageName}")
     public ResponseEntity<?> downloadImageFromFileSystem(@PathVariable String imageName) throws IOException {
-        // Download the image from the file system using the StorageService
-        // byte[] is used to store the image data
-        byte[] images = service.downloadImageFromFileSystem(imageName);
+        Optional<URI> downloadUrl = service.downloadUrl(imageName);
+        if (downloadUrl.isPresent()) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(downloadUrl.get())
+                    .build();
+        }
+
+        // Stream the image from the store using the StorageService
+        InputStreamResource image = new InputStreamResource(service.openImage(imageName));
         // Return the image as a ResponseEntity
         return ResponseEntity.status(HttpStatus.OK)
-                // Set the content type of the response to image/png
-                .contentType(MediaType.valueOf("image/png"))
-                // Set the content length of the response to the length of the image data
-                .body(images);
+                // Set the content type of the response to the type of the image
+                .contentType(MediaType.valueOf(service.contentTypeOf(imageName)))
+                .body(image);
+    }
+
+    /**
+     * Finds a book of the branch of the request. A lookup by ID is not scoped by the branch filter, see BranchContext.
+     *
+     * @param id the ID of the book.
+     * @return the book, or an empty Optional if it does not exist or belongs to another branch.
+     */
+    /**
+     * Saves a book that points to a freshly uploaded image, and settles the references the upload took.
+     *
+     * Every upload adds a reference to its image, even when it is the image the book already had.
+     * Once the book is saved, the reference of the old image is released, so re-uploading the same cover
+     * leaves its count where it was. If the save fails, the reference of the new image is released instead.
+     *
+     * @param book the book to save, its image path already set to the new image.
+     * @param imagePath the storage key returned by the upload.
+     * @param oldImagePath the storage key the book pointed to before, or null for a new book.
+     * @return the saved book.
+     */
+    private Book saveWithImage(Book book, String imagePath, String oldImagePath) {
+        Book savedBook;
+        try {
+            savedBook = bookRepository.save(book);
+        } catch (RuntimeException e) {
+            service.releaseImage(imagePath);
+            throw e;
+        }
+        service.releaseImage(oldImagePath);
+        return savedBook;
+    }
+
+    private Optional<Book> findInBranch(Long id) {
+        return bookRepository.findById(id).filter(book -> BranchContext.isVisible(book.getBranchId()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.service.export.ExportFormat;
+import com.it120p.librarymanagementsystem.service.export.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * The ExportController class serves full exports of the orders, books and users.
+ *
+ * The response body is a StreamingResponseBody, so the records are written while they are read from the database
+ * instead of being collected in a List first. The format is chosen with the format parameter (ndjson or csv).
+ * The body runs on an async thread in the branch of the request, see BranchContext.runIn.
+ * All methods in this class require the user to have the 'ADMIN' role.
+ */
+@RestController
+@CrossOrigin("http://localhost:3000")
+@PreAuthorize("hasRole('ADMIN')")
+public class ExportController {
+
+    @Autowired
+    private ExportService exportService;
+
+    /**
+     * Exports all orders, with the IDs of their books.
+     *
+     * @param format the export format, ndjson or csv.
+     * @return the streamed export.
+     */
+    @GetMapping("/export/orders")
+    ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        return stream(exportFormat, "orders", out -> exportService.exportOrders(exportFormat, out));
+    }
+
+    /**
+     * Exports all books.
+     *
+     * @param format the export format, ndjson or csv.
+     * @return the streamed export.
+     */
+    @GetMapping("/export/books")
+    ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        return stream(exportFormat, "books", out -> exportService.exportBooks(exportFormat, out));
+    }
+
+    /**
+     * Exports all users, without their passwords.
+     *
+     * @param format the export format, ndjson or csv.
+     * @return the streamed export.
+     */
+    @GetMapping("/export/users")
+    ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        return stream(exportFormat, "users", out -> exportService.exportUsers(exportFormat, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(ExportFormat format, String name, StreamingResponseBody body) {
+        // The body is written on an async thread, it has to export the branch of the request
+        Long branchId = BranchContext.current();
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8"))
+                // Let the browser save the export as a file
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .body(out -> BranchContext.runIn(branchId, () -> body.writeTo(out)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.exception.FinePaymentNotAllowedException;
+import com.it120p.librarymanagementsystem.model.FineBalance;
+import com.it120p.librarymanagementsystem.model.FineLedgerEntry;
+import com.it120p.librarymanagementsystem.payload.request.FinePaymentRequest;
+import com.it120p.librarymanagementsystem.service.FineService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * The FineController class shows users the fines they owe and lets admins record payments.
+ * It uses the FineService, the fines themselves are charged by its nightly accrual.
+ */
+@RestController
+@CrossOrigin("http://localhost:3000")
+public class FineController {
+    /** The largest page that can be requested */
+    private static final int MAX_PAGE_SIZE = 200;
+
+    @Autowired
+    private FineService fineService;
+
+    /**
+     * Retrieves the fine balance of a user. It is read from the stored total, the ledger is not summed.
+     *
+     * @param userId the ID of the user.
+     * @return the balance of the user.
+     */
+    @PreAuthorize("@ownership.isSelfOrAdmin(authentication, #userId)")
+    @GetMapping("/user/{userId}/fines")
+    public FineBalance getBalance(@PathVariable Long userId) {
+        return fineService.getBalance(userId);
+    }
+
+    /**
+     * Retrieves a page of the fine ledger of a user, newest first.
+     *
+     * @param userId the ID of the user.
+     * @param page the page number, starting at 0.
+     * @param size the page size, at most 200.
+     * @return the page of ledger entries.
+     */
+    @PreAuthorize("@ownership.isSelfOrAdmin(authentication, #userId)")
+    @GetMapping("/user/{userId}/fines/ledger")
+    public Page<FineLedgerEntry> getLedger(@PathVariable Long userId,
+                                           @RequestParam(value = "page", defaultValue = "0") int page,
+                                           @RequestParam(value = "size", defaultValue = "50") int size) {
+        return fineService.getLedger(userId, PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Records a payment towards the fines of a user.
+     *
+     * @param userId the ID of the user.
+     * @param payment the amount paid.
+     * @return the ledger entry of the payment, with the balance left.
+     * @throws FinePaymentNotAllowedException if the user owes less than the amount.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping("/user/{userId}/fines/payments")
+    public ResponseEntity<FineLedgerEntry> recordPayment(@PathVariable Long userId, @Valid @RequestBody FinePaymentRequest payment) {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(fineService.recordPayment(userId, payment.getAmount()));
+    }
+}
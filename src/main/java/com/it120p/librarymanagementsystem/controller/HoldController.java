@@ -0,0 +1,84 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.model.Hold;
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import com.it120p.librarymanagementsystem.service.HoldService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HoldController class manages the waiting lists of books.
+ * It uses the HoldService, which keeps the queues fair when several users return and borrow at the same time.
+ */
+@RestController
+@CrossOrigin("http://localhost:3000")
+public class HoldController {
+
+    @Autowired
+    private HoldService holdService;
+
+    /**
+     * Puts the authenticated user in the queue of a book.
+     *
+     * @param bookId the ID of the book.
+     * @param principal the authenticated user.
+     * @return the new hold and the number of users ahead of it.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_USER')")
+    @PostMapping("/book/{bookId}/hold")
+    public ResponseEntity<?> placeHold(@PathVariable Long bookId, @AuthenticationPrincipal UserDetailsImpl principal) {
+        Hold hold = holdService.placeHold(bookId, principal.getId());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("hold", hold);
+        response.put("position", holdService.getPosition(hold));
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(response);
+    }
+
+    /**
+     * Retrieves the holds of the authenticated user, newest first.
+     *
+     * @param principal the authenticated user.
+     * @return the holds of the user.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_USER')")
+    @GetMapping("/holds")
+    public List<Hold> getMyHolds(@AuthenticationPrincipal UserDetailsImpl principal) {
+        return holdService.getHolds(principal.getId());
+    }
+
+    /**
+     * Retrieves the queue of a book.
+     *
+     * @param bookId the ID of the book.
+     * @return the WAITING and READY holds of the book in queue order.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping("/book/{bookId}/holds")
+    public List<Hold> getQueue(@PathVariable Long bookId) {
+        return holdService.getQueue(bookId);
+    }
+
+    /**
+     * Cancels a hold. Users can cancel their own holds, admins any hold.
+     *
+     * @param id the ID of the hold.
+     * @param principal the authenticated user.
+     * @return a message indicating the hold has been cancelled.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_USER')")
+    @DeleteMapping("/hold/{id}")
+    public String cancelHold(@PathVariable Long id, @AuthenticationPrincipal UserDetailsImpl principal) {
+        holdService.cancelHold(id, principal.getId(), principal.isAdmin());
+        return "Hold with ID: " + id + " has been cancelled.";
+    }
+}
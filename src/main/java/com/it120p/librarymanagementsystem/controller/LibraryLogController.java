@@ -0,0 +1,96 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.exception.InvalidLogFilterException;
+import com.it120p.librarymanagementsystem.exception.LibraryLogsNotFoundException;
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
+import com.it120p.librarymanagementsystem.repository.LibraryLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Arrays;
+
+/**
+ * The LibraryLogController class lets admins browse the library activity log.
+ * It uses the LibraryLogRepository, the entries are written by the ActivityLog.
+ */
+@RestController
+@CrossOrigin("http://localhost:3000")
+public class LibraryLogController {
+    /** The largest page that can be requested */
+    private static final int MAX_PAGE_SIZE = 200;
+
+    @Autowired
+    private LibraryLogRepository libraryLogRepository;
+
+    /**
+     * Retrieves a page of the activity log, newest first.
+     * The filters can be combined, an entry has to match all the filters that are given.
+     * The next page is read with beforeId set to the ID of the last entry of the page, which reads it straight
+     * from the index. A page number still works, but every entry before the page is read again to skip it.
+     * The page is a Slice, it tells if there is a next page without counting all the matching entries.
+     *
+     * @param page the page number, starting at 0, counted from beforeId.
+     * @param size the page size, at most 200.
+     * @param beforeId only the entries older than this ID, optional.
+     * @param actorId only the entries of this user, optional.
+     * @param action only the entries of this action, optional.
+     * @param targetType only the entries about this kind of record, used with targetId, optional.
+     * @param targetId only the entries about this record, used with targetType, optional.
+     * @return the page of entries.
+     * @throws InvalidLogFilterException if the action is unknown or only one of targetType and targetId is given.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping("/logs")
+    public Slice<LibraryLog> getLogs(@RequestParam(value = "page", defaultValue = "0") int page,
+                                     @RequestParam(value = "size", defaultValue = "50") int size,
+                                     @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                     @RequestParam(value = "actorId", required = false) Long actorId,
+                                     @RequestParam(value = "action", required = false) String action,
+                                     @RequestParam(value = "targetType", required = false) String targetType,
+                                     @RequestParam(value = "targetId", required = false) Long targetId) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE));
+
+        if ((targetType == null) != (targetId == null)) {
+            throw new InvalidLogFilterException("targetType and targetId have to be given together");
+        }
+        return libraryLogRepository.findPage(actorId, parseAction(action),
+                targetType == null ? null : targetType.toUpperCase(), targetId, beforeId, pageable);
+    }
+
+    /**
+     * Retrieves one entry of the activity log.
+     *
+     * @param id the ID of the entry.
+     * @return the entry.
+     * @throws LibraryLogsNotFoundException if the entry is not found.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping("/log/{id}")
+    public LibraryLog getLog(@PathVariable Long id) {
+        return libraryLogRepository.findById(id).orElseThrow(() -> new LibraryLogsNotFoundException(id));
+    }
+
+    /**
+     * Converts the action parameter to a LibraryLogAction.
+     *
+     * @param action the name of the action, in any case, or null.
+     * @return the action, or null if no action is given.
+     * @throws InvalidLogFilterException if there is no action with that name.
+     */
+    private static LibraryLogAction parseAction(String action) {
+        if (action == null) {
+            return null;
+        }
+        try {
+            return LibraryLogAction.valueOf(action.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidLogFilterException("unknown action " + action + ", expected one of "
+                    + Arrays.toString(LibraryLogAction.values()));
+        }
+    }
+}
@@ -1,29 +1,46 @@
 package com.it120p.librarymanagementsystem.controller;
 
+import com.it120p.librarymanagementsystem.config.BranchContext;
 import com.it120p.librarymanagementsystem.exception.BookNotFoundException;
+import com.it120p.librarymanagementsystem.exception.OrderConflictException;
 import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.exception.OrderVersionRequiredException;
 import com.it120p.librarymanagementsystem.exception.UserNotFoundException;
 import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
 import com.it120p.librarymanagementsystem.model.Order;
 import com.it120p.librarymanagementsystem.model.OrderStatus;
 import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.payload.request.PatchOrderRequest;
+import com.it120p.librarymanagementsystem.payload.response.RenewalResponse;
+import com.it120p.librarymanagementsystem.payload.response.TransitionOutcome;
 import com.it120p.librarymanagementsystem.repository.BookRepository;
 import com.it120p.librarymanagementsystem.repository.OrderRepository;
 import com.it120p.librarymanagementsystem.repository.UserRepository;
-import com.it120p.librarymanagementsystem.security.services.EmailService;
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import com.it120p.librarymanagementsystem.service.ActivityLog;
+import com.it120p.librarymanagementsystem.service.BooksReleasedEvent;
+import com.it120p.librarymanagementsystem.service.CirculationService;
+import com.it120p.librarymanagementsystem.service.OrderEventStream;
+import com.it120p.librarymanagementsystem.service.OrderService;
+import com.it120p.librarymanagementsystem.service.RenewalService;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.AccessDeniedException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -44,7 +61,22 @@ public class OrderController {
     private BookRepository bookRepository;
 
     @Autowired
-    private EmailService emailService;
+    private OrderService orderService;
+
+    @Autowired
+    private CirculationService circulationService;
+
+    @Autowired
+    private RenewalService renewalService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private OrderEventStream orderEventStream;
+
+    @Autowired
+    private ActivityLog activityLog;
 
     /**
      * Creates a new Order entity and saves it to the database.
@@ -67,6 +99,8 @@ public class OrderController {
          */
         List<Book> books = newOrder.getBooks().stream()
                 .map(book -> bookRepository.findById(book.getId())
+                        // A book of another branch cannot be borrowed here
+                        .filter(found -> BranchContext.isVisible(found.getBranchId()))
                         .orElseThrow(() -> new BookNotFoundException(book.getId())))
                 // Collect the stream of Book entities back to a list using
                 // Collectors.toList()
@@ -76,17 +110,12 @@ public class OrderController {
         // Save the new order to the database
         newOrder.setBooks(books);
         newOrder.setUser(user);
+        // The order belongs to the branch it is placed at, not to the one in the request body
+        newOrder.setBranchId(BranchContext.currentOrDefault());
 
-        Order savedOrder = orderRepository.save(newOrder);
-
-        // Send an email to the user to confirm the order
-        emailService.sendHtmlEmail(
-                newOrder.getUser().getEmail(),
-                "Order Confirmation",
-                "Your order has been confirmed.",
-                newOrder.getUser().getName(),
-                newOrder
-        );
+        // Save the order, the confirmation email is sent in the background by the OutboxRelay
+        Order savedOrder = orderService.placeOrder(newOrder);
+        activityLog.record(LibraryLogAction.CHECKOUT, LibraryLog.TARGET_ORDER, savedOrder.getId(), "Books " + bookIds(books));
         return savedOrder;
 
     }
@@ -117,54 +146,55 @@ public class OrderController {
      * Retrieves all Order entities associated with a User entity by the user's ID.
      * If the authenticated user is an admin, they can retrieve orders for any user.
      * If the authenticated user is a regular user, they can only retrieve their own orders.
+     * The check uses the principal in the security context, see OwnershipChecker.
      *
-     * @param userId
-     * @return
+     * @param userId the ID of the user.
+     * @return the orders of the user.
      */
-    @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_USER')")
+    @PreAuthorize("@ownership.isSelfOrAdmin(authentication, #userId)")
     @GetMapping("/user/{userId}/orders")
     public List<Order> getOrdersByUserId(@PathVariable Long userId) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String currentPrincipalName = authentication.getName();
-
-        User user = userRepository.findByUsername(currentPrincipalName)
-                .orElseThrow(() -> new UsernameNotFoundException(currentPrincipalName));
-
-        // If the user is not the owner of the orders and does not have the 'ROLE_ADMIN' role, throw an AccessDeniedException
-        if (!user.getId().equals(userId) && !user.getRoles().stream().anyMatch(role -> role.getName().name().equals("ROLE_ADMIN"))) {
-            throw new AccessDeniedException("You do not have permission to access these orders.");
-        }
-
         // Retrieve the orders for the user
         List<Order> orders = orderRepository.findByUserId(userId);
 
         return orders;
     }
 
+    /**
+     * Opens a Server-Sent Events stream of the order events of a user.
+     * The stream tails the outbox, so the client is told about every change that records a notification there:
+     * pickups, returns and overdue orders, whether made one by one or at the desk, and renewals.
+     * It replaces polling GET /user/{userId}/orders. Each event carries the order ID and the event type,
+     * a "resync" event means some events were dropped and the orders should be fetched again.
+     *
+     * @param userId the ID of the user.
+     * @param principal the authenticated user.
+     * @return the event stream.
+     * @throws UserNotFoundException if the user is not found.
+     */
+    @PreAuthorize("@ownership.isSelfOrAdmin(authentication, #userId)")
+    @GetMapping(value = "/user/{userId}/orders/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrderEvents(@PathVariable Long userId, @AuthenticationPrincipal UserDetailsImpl principal) {
+        // The outbox addresses events by email, only an admin watching someone else needs a lookup
+        String email = principal.getId().equals(userId)
+                ? principal.getEmail()
+                : userRepository.findById(userId).map(User::getEmail).orElseThrow(() -> new UserNotFoundException(userId));
+        return orderEventStream.subscribe(email);
+    }
+
     /**
      * Retrieves an Order entity by its ID.
+     * Regular users can only retrieve their own orders, the query itself is limited to their user ID.
      *
      * @param id the ID of the Order entity to be retrieved.
+     * @param principal the authenticated user.
      * @return the Order entity with the given ID.
-     * @throws OrderNotFoundException if no Order entity with the given ID is found.
+     * @throws OrderNotFoundException if no Order entity with the given ID is found for the user.
      */
     @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_USER')")
     @GetMapping("/order/{id}")
-    Order getOrderById(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String currentPrincipalName = authentication.getName();
-
-        User user = userRepository.findByUsername(currentPrincipalName)
-                .orElseThrow(() -> new UsernameNotFoundException(currentPrincipalName));
-
-        Order order = orderRepository.findById(id)
-                .orElseThrow(() -> new OrderNotFoundException(id));
-
-        if (!order.getUser().getId().equals(user.getId()) && !user.getRoles().stream().anyMatch(role -> role.getName().name().equals("ROLE_ADMIN"))) {
-            throw new AccessDeniedException("You do not have permission to access this order.");
-        }
-
-        return order;
+    Order getOrderById(@PathVariable Long id, @AuthenticationPrincipal UserDetailsImpl principal) {
+        return findAccessibleOrder(id, principal);
     }
 
     /**
@@ -177,6 +207,7 @@ public class OrderController {
     @GetMapping("/order/{orderId}/user")
     public User getUserByOrderId(@PathVariable Long orderId) {
         Order order = orderRepository.findById(orderId)
+                .filter(found -> BranchContext.isVisible(found.getBranchId()))
                 .orElseThrow(() -> new OrderNotFoundException(orderId));
         return order.getUser();
     }
@@ -184,36 +215,44 @@ public class OrderController {
     /**
      * Updates an Order entity with the given ID.
      *
+     * The body has to carry the version of the order that was read: without it the answer is 428 (Precondition Required),
+     * with a stale one it is 409 (Conflict).
+     *
      * @param newOrder the new data for the Order entity.
      * @param id the ID of the Order entity to be updated.
      * @return the updated Order entity.
      * @throws OrderNotFoundException if no Order entity with the given ID is found.
+     * @throws OrderVersionRequiredException if the request has no version.
+     * @throws OrderConflictException if the version in the request is not the current one.
      */
     @PutMapping("/order/{id}")
     Order updateOrder(@RequestBody Order newOrder, @PathVariable Long id) {
-        return orderRepository.findById(id)
-                .map(order -> {
-                    order.setBooks(newOrder.getBooks());
-                    order.setUser(newOrder.getUser());
-                    order.setBorrowed_at(newOrder.getBorrowed_at());
-                    order.setDue_date(newOrder.getDue_date());
-                    order.setReturned_at(newOrder.getReturned_at());
-                    order.setPickedUp(newOrder.isPickedUp());
-
-                    // Check if the new status is OVERDUE
-                    if (newOrder.getStatus() == OrderStatus.OVERDUE) {
-                        order.setStatus(OrderStatus.OVERDUE);
-                    } else if (order.isOverdue()) {
-                        order.setStatus(OrderStatus.OVERDUE);
-                    }
-
-                    return orderRepository.save(order);
-                })
-                .orElseThrow(() -> new OrderNotFoundException(id));
+        Order updatedOrder = orderService.updateOrder(id, newOrder);
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_ORDER, id, "Order replaced");
+        return updatedOrder;
+    }
+
+    /**
+     * Changes only the given fields of an Order entity.
+     * The request has to carry the version of the order that was read, a stale version gets a 409 (Conflict).
+     *
+     * @param patch the fields to change and the version of the order.
+     * @param id the ID of the Order entity to be updated.
+     * @return the updated Order entity, with its new version.
+     * @throws OrderNotFoundException if no Order entity with the given ID is found.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping("/order/{id}")
+    Order patchOrder(@Valid @RequestBody PatchOrderRequest patch, @PathVariable Long id) {
+        Order patchedOrder = orderService.patchOrder(id, patch);
+        activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_ORDER, id, "Order patched");
+        return patchedOrder;
     }
 
     /**
      * Marks an Order entity as returned and updates the return date to the current date.
+     * It goes through the CirculationService like the desk, so the return is notified through the outbox
+     * and the books are handed to the users waiting for them. Returning an order twice changes nothing.
      *
      * @param orderId the ID of the Order entity to be returned.
      * @return the updated Order entity.
@@ -221,19 +260,14 @@ public class OrderController {
      */
     @PutMapping("/order/return/{orderId}")
     public Order returnOrder(@PathVariable Long orderId) {
-        return orderRepository.findById(orderId)
-                // Order is mapped to a new Order entity
-                // with the returned_at date set to the current date
-                // to keep track of when the order was returned
-                .map(order -> {
-                    order.setReturned_at(new Date());
-                    order.setStatus(OrderStatus.RETURNED);
-                    return orderRepository.save(order);
-                })
-                .orElseThrow(() -> new OrderNotFoundException(orderId));
+        TransitionOutcome outcome = circulationService.returnOrders(List.of(orderId)).get(orderId);
+        if (outcome == TransitionOutcome.UPDATED) {
+            activityLog.record(LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, orderId, "Order returned");
+        }
+        return findAfterTransition(orderId, outcome);
     }
 
-    /** Marks an Order entity as picked up.
+    /** Marks an Order entity as picked up, and notifies the user through the outbox.
      *
      * @param orderId the ID of the Order entity to be marked as picked up.
      * @return the updated Order entity.
@@ -241,18 +275,11 @@ public class OrderController {
      */
     @PutMapping("/order/pickup/{orderId}")
     public Order pickupOrder(@PathVariable Long orderId) {
-        return orderRepository.findById(orderId)
-                // Order is mapped to a new Order entity
-                // with the returned_at date set to the current date
-                // to keep track of when the order was returned
-                .map(order -> {
-                    order.setPickedUp(true);
-                    return orderRepository.save(order);
-                })
-                .orElseThrow(() -> new OrderNotFoundException(orderId));
+        return findAfterTransition(orderId, circulationService.pickupOrders(List.of(orderId)).get(orderId));
     }
 
-    /** Marks an Order entity as overdue.
+    /** Marks a borrowed Order entity as overdue, and notifies the user through the outbox.
+     * An order that is returned or already overdue is left as it is.
      *
      * @param orderId the ID of the Order entity to be marked as overdue.
      * @return the updated Order entity.
@@ -260,17 +287,72 @@ public class OrderController {
      */
     @PutMapping("/order/overdue/{orderId}")
     public Order overdueOrder(@PathVariable Long orderId) {
+        TransitionOutcome outcome = circulationService.overdueOrders(List.of(orderId)).get(orderId);
+        if (outcome == TransitionOutcome.UPDATED) {
+            activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_ORDER, orderId, "Order marked overdue");
+        }
+        return findAfterTransition(orderId, outcome);
+    }
+
+    /**
+     * Reads an order back after a CirculationService transition of that single order.
+     *
+     * @param orderId the ID of the order.
+     * @param outcome the outcome of the transition.
+     * @return the order in its current state.
+     * @throws OrderNotFoundException if the order does not exist.
+     */
+    private Order findAfterTransition(Long orderId, TransitionOutcome outcome) {
+        if (outcome == TransitionOutcome.NOT_FOUND) {
+            throw new OrderNotFoundException(orderId);
+        }
         return orderRepository.findById(orderId)
-                // Order is mapped to a new Order entity
-                // with the returned_at date set to the current date
-                // to keep track of when the order was returned
-                .map(order -> {
-                    order.setStatus(OrderStatus.OVERDUE);
-                    return orderRepository.save(order);
-                })
+                .filter(order -> BranchContext.isVisible(order.getBranchId()))
                 .orElseThrow(() -> new OrderNotFoundException(orderId));
     }
 
+    /**
+     * Marks several Order entities as returned in one request, used by the circulation desk.
+     *
+     * @param orderIds the IDs of the Order entities to be returned.
+     * @return the outcome for each order ID.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PutMapping("/orders/return")
+    public Map<Long, TransitionOutcome> returnOrders(@RequestBody List<Long> orderIds) {
+        Map<Long, TransitionOutcome> outcomes = circulationService.returnOrders(orderIds);
+        outcomes.forEach((orderId, outcome) -> {
+            if (outcome == TransitionOutcome.UPDATED) {
+                activityLog.record(LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, orderId, "Order returned at the desk");
+            }
+        });
+        return outcomes;
+    }
+
+    /**
+     * Marks several Order entities as picked up in one request, used by the circulation desk.
+     *
+     * @param orderIds the IDs of the Order entities to be marked as picked up.
+     * @return the outcome for each order ID.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PutMapping("/orders/pickup")
+    public Map<Long, TransitionOutcome> pickupOrders(@RequestBody List<Long> orderIds) {
+        return circulationService.pickupOrders(orderIds);
+    }
+
+    /**
+     * Marks several Order entities as overdue in one request, used by the circulation desk.
+     *
+     * @param orderIds the IDs of the Order entities to be marked as overdue.
+     * @return the outcome for each order ID.
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PutMapping("/orders/overdue")
+    public Map<Long, TransitionOutcome> overdueOrders(@RequestBody List<Long> orderIds) {
+        return circulationService.overdueOrders(orderIds);
+    }
+
     /**
      * Deletes an Order entity with the given ID.
      *
@@ -280,8 +362,13 @@ public class OrderController {
      */
     @DeleteMapping("/order/{id}")
     String deleteOrder(@PathVariable Long id) {
-        if(orderRepository.existsById(id)){
+        // A lookup by ID is not filtered by branch, an order of another branch is not deleted from this one
+        if(orderRepository.findById(id).filter(order -> BranchContext.isVisible(order.getBranchId())).isPresent()){
+            // The books of the deleted order are free again
+            List<Long> bookIds = orderRepository.findBookIdsByOrderIdIn(List.of(id));
             orderRepository.deleteById(id);
+            eventPublisher.publishEvent(new BooksReleasedEvent(bookIds));
+            activityLog.record(LibraryLogAction.ADMIN_EDIT, LibraryLog.TARGET_ORDER, id, "Order deleted");
             return "Order with ID: " + id + " has been deleted.";
         } else {
             throw new OrderNotFoundException(id);
@@ -290,52 +377,18 @@ public class OrderController {
 
     /**
      * Renews an Order entity with the given ID, retaining the same order details but updating the due date.
+     * An order can only be renewed while it is borrowed and up to the configured number of times.
      *
      * @param id the ID of the Order entity to be renewed.
-     * @return the renewed Order entity.
+     * @param principal the authenticated user.
+     * @return the new due date of the order.
      */
     @PutMapping("/order/renew/{id}")
-    Order renewOrder(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String currentPrincipalName = authentication.getName();
-
-        User user = userRepository.findByUsername(currentPrincipalName)
-                .orElseThrow(() -> new UsernameNotFoundException(currentPrincipalName));
-
-        Order orderInfo = orderRepository.findById(id)
-                .orElseThrow(() -> new OrderNotFoundException(id));
-
-        if (!orderInfo.getUser().getId().equals(user.getId()) && !user.getRoles().stream().anyMatch(role -> role.getName().name().equals("ROLE_ADMIN"))) {
-            throw new AccessDeniedException("You do not have permission to access this order.");
-        }
-
-        return orderRepository.findById(id)
-                .map(order -> {
-                    LocalDateTime existingDueDate = LocalDateTime.ofInstant(order.getDue_date().toInstant(), ZoneId.systemDefault());
-
-                    // Calculate the remaining days to the due date
-                    long remainingDays = ChronoUnit.DAYS.between(LocalDateTime.now(), existingDueDate);
-
-                    // Can comment this out for testing
-                    // If the remaining days are greater than 2, throw an exception
-//                    if (remainingDays > 2) {
-//                        throw new IllegalStateException("Cannot renew order. The remaining days must be less than or equal to 2.");
-//                    }
-
-                    LocalDateTime dueDate = existingDueDate.plusDays(5);
-                    Date dueDateAsDate = Date.from(dueDate.atZone(ZoneId.systemDefault()).toInstant());
-                    order.setDue_date(dueDateAsDate);
-
-                    emailService.sendSimpleMailMessage(
-                            order.getUser().getEmail(),
-                            "Order Renewal",
-                            "Your order with ID: " + order.getId() + " has been renewed.",
-                            order.getUser().getName()
-                    );
-
-                    return orderRepository.save(order);
-                })
-                .orElseThrow(() -> new OrderNotFoundException(id));
+    RenewalResponse renewOrder(@PathVariable Long id, @AuthenticationPrincipal UserDetailsImpl principal) {
+        // The renewal is a single guarded UPDATE, see RenewalService
+        RenewalResponse renewal = renewalService.renew(id, principal.getId(), principal.isAdmin());
+        activityLog.record(LibraryLogAction.RENEWAL, LibraryLog.TARGET_ORDER, id, "Due date moved to " + renewal.getDueDate());
+        return renewal;
     }
 
     /**
@@ -345,24 +398,15 @@ public class OrderController {
      *
      * @param orderId the ID of the Order entity to be renewed
      * @param bookId the ID of the Book entity to be renewed
+     * @param principal the authenticated user
      */
     @PostMapping("/order/renew-books/{orderId}")
-    public Order renewOrder(@PathVariable Long orderId, @RequestBody List<Long> bookId) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String currentPrincipalName = authentication.getName();
-
-        User user = userRepository.findByUsername(currentPrincipalName)
-                .orElseThrow(() -> new UsernameNotFoundException(currentPrincipalName));
-
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new OrderNotFoundException(orderId));
-
-        if (!order.getUser().getId().equals(user.getId()) && !user.getRoles().stream().anyMatch(role -> role.getName().name().equals("ROLE_ADMIN"))) {
-            throw new AccessDeniedException("You do not have permission to access this order.");
-        }
+    public Order renewOrder(@PathVariable Long orderId, @RequestBody List<Long> bookId, @AuthenticationPrincipal UserDetailsImpl principal) {
+        Order order = findAccessibleOrder(orderId, principal);
 
         List<Book> books = bookId.stream()
                 .map(id -> bookRepository.findById(id)
+                        .filter(book -> BranchContext.isVisible(book.getBranchId()))
                         .orElseThrow(() -> new BookNotFoundException(id)))
                 .collect(Collectors.toList());
 
@@ -387,26 +431,32 @@ public class OrderController {
         Order newOrder = new Order();
         newOrder.setUser(order.getUser());
         newOrder.setBooks(books);
+        newOrder.setBranchId(order.getBranchId());
         newOrder.setBorrowed_at(new Date());
         newOrder.setDue_date(newDueDateAsDate);
         newOrder.setPickedUp(false);
         newOrder.setStatus(OrderStatus.BORROWED);
 
-        Order savedOrder = orderRepository.save(newOrder);
-
-        List<String> bookTitles = savedOrder.getBooks().stream()
-                .map(Book::getTitle)
-                .collect(Collectors.toList());
-
-        String bookTitlesString = String.join(", ", bookTitles);
+        // Save the new order, the renewal email is sent in the background by the OutboxRelay
+        Order renewedOrder = orderService.placeRenewalOrder(newOrder);
+        activityLog.record(LibraryLogAction.RENEWAL, LibraryLog.TARGET_ORDER, renewedOrder.getId(),
+                "Renewed from order " + orderId + ", books " + bookIds(books));
+        return renewedOrder;
+    }
 
-        emailService.sendSimpleMailMessage(
-                newOrder.getUser().getEmail(),
-                "Order Renewal",
-                "Your order has been renewed. Your new order ID is: " + savedOrder.getId() + ", with the book(s): " + bookTitlesString + ".",
-                newOrder.getUser().getName()
-        );
+    private static String bookIds(List<Book> books) {
+        return books.stream().map(book -> String.valueOf(book.getId())).collect(Collectors.joining(", "));
+    }
 
-        return savedOrder;
+    /**
+     * Loads an order the principal may access: any order of the branch for an admin, otherwise only their own.
+     * Orders of other users and of other branches are reported as not found, so their IDs are not revealed.
+     */
+    private Order findAccessibleOrder(Long id, UserDetailsImpl principal) {
+        Optional<Order> order = principal.isAdmin()
+                ? orderRepository.findById(id)
+                : orderRepository.findByIdAndUserId(id, principal.getId());
+        return order.filter(found -> BranchContext.isVisible(found.getBranchId()))
+                .orElseThrow(() -> new OrderNotFoundException(id));
     }
 }
@@ -0,0 +1,9 @@
+package com.it120p.librarymanagementsystem.exception;
+
+import java.math.BigDecimal;
+
+public class FinePaymentNotAllowedException extends RuntimeException {
+    public FinePaymentNotAllowedException(Long userId, BigDecimal amount) {
+        super("Could not record a payment of " + amount + " for the user with the ID: " + userId + ". The user owes less than that.");
+    }
+}
@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class HoldNotAllowedException extends RuntimeException {
+    public HoldNotAllowedException(Long bookId, String reason) {
+        super("Could not complete the request for the book with the ID: " + bookId + ". " + reason);
+    }
+}
@@ -0,0 +1,23 @@
+package com.it120p.librarymanagementsystem.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ControllerAdvice
+public class HoldNotFoundAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(HoldNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public Map<String,String> holdNotFoundHandler(HoldNotFoundException ex){
+        Map<String,String> response = new HashMap<>();
+        response.put("error",ex.getMessage());
+        return response;
+    }
+}
@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class HoldNotFoundException extends RuntimeException {
+    public HoldNotFoundException(Long id) {
+        super("Could not find hold with the ID: " + id);
+    }
+}
@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class ImageTooLargeException extends RuntimeException {
+    public ImageTooLargeException(long maxBytes) {
+        super("The uploaded image is larger than the limit of " + maxBytes + " bytes");
+    }
+}
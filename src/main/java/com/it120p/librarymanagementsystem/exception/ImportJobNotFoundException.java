@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class ImportJobNotFoundException extends RuntimeException {
+    public ImportJobNotFoundException(Long id) {
+        super("Could not find import job with the ID: " + id);
+    }
+}
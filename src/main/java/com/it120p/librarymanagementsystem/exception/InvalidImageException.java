@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class InvalidImageException extends RuntimeException {
+    public InvalidImageException(String reason) {
+        super("The uploaded image was rejected: " + reason);
+    }
+}
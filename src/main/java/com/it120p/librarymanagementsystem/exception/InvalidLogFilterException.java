@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class InvalidLogFilterException extends RuntimeException {
+    public InvalidLogFilterException(String reason) {
+        super("Invalid activity log filter: " + reason);
+    }
+}
@@ -0,0 +1,34 @@
+package com.it120p.librarymanagementsystem.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ControllerAdvice
+public class OrderConflictAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(OrderConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String,String> orderConflictHandler(OrderConflictException ex){
+        Map<String,String> response = new HashMap<>();
+        response.put("error",ex.getMessage());
+        return response;
+    }
+
+    // Raised at commit when the row was changed between the version check and the update
+    @ResponseBody
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String,String> optimisticLockingFailureHandler(ObjectOptimisticLockingFailureException ex){
+        Map<String,String> response = new HashMap<>();
+        response.put("error","The record was changed by someone else, reload it and try again");
+        return response;
+    }
+}
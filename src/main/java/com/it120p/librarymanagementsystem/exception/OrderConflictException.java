@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class OrderConflictException extends RuntimeException {
+    public OrderConflictException(Long id) {
+        super("The order with the ID: " + id + " was changed by someone else, reload it and try again");
+    }
+}
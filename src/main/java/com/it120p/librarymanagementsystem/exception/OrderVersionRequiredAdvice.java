@@ -0,0 +1,24 @@
+package com.it120p.librarymanagementsystem.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ControllerAdvice
+public class OrderVersionRequiredAdvice {
+
+    // A replacement without the version it is based on could overwrite a newer change unnoticed
+    @ResponseBody
+    @ExceptionHandler(OrderVersionRequiredException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_REQUIRED)
+    public Map<String,String> orderVersionRequiredHandler(OrderVersionRequiredException ex){
+        Map<String,String> response = new HashMap<>();
+        response.put("error",ex.getMessage());
+        return response;
+    }
+}
@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class OrderVersionRequiredException extends RuntimeException {
+    public OrderVersionRequiredException(Long id) {
+        super("The version of the order with the ID: " + id + " is required, send the version that was read");
+    }
+}
@@ -0,0 +1,7 @@
+package com.it120p.librarymanagementsystem.exception;
+
+public class RenewalNotAllowedException extends RuntimeException {
+    public RenewalNotAllowedException(Long id, String reason) {
+        super("Could not renew order with the ID: " + id + ". " + reason);
+    }
+}
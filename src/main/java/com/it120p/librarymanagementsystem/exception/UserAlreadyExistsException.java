@@ -0,0 +1,11 @@
+package com.it120p.librarymanagementsystem.exception;
+
+/**
+ * Thrown when a new user has the username or email of an existing user.
+ * The message is the one shown to the client, e.g. "Error: Username is already taken!".
+ */
+public class UserAlreadyExistsException extends RuntimeException {
+    public UserAlreadyExistsException(String message) {
+        super(message);
+    }
+}
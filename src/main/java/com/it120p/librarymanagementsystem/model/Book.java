@@ -1,18 +1,34 @@
 package com.it120p.librarymanagementsystem.model;
 
+import com.it120p.librarymanagementsystem.config.BranchContext;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.ParamDef;
 
 /**
  * The Book class is an entity model object for a Book.
  * It contains fields for the book's ID, title, author, genre, description, and image path.
  * The ID is generated automatically when a Book entity is created.
  * The description field can hold up to 5000 characters.
+ * A book belongs to one library branch, queries only see the books of the branch of the request, see BranchContext.
  */
 @Entity
+@Table(name = "book",
+        indexes = {
+                // The catalog of a branch is read and filtered by genre and author
+                @Index(name = "idx_book_branch_id_genre", columnList = "branch_id, genre"),
+                @Index(name = "idx_book_branch_id_author", columnList = "branch_id, author")
+        })
+// The branch filter is defined once here and also applied to Order
+@FilterDef(name = BranchContext.FILTER, parameters = @ParamDef(name = BranchContext.PARAMETER, type = Long.class),
+        defaultCondition = "branch_id = :" + BranchContext.PARAMETER)
+@Filter(name = BranchContext.FILTER)
 // Used Lombok @Data to automatically generate getters and setters for all fields
 @Data
 // Used Lombok @AllArgsConstructor to generate a constructor with all arguments
@@ -47,4 +63,16 @@ public class Book {
 
     /** The image path of the book */
     private String imagePath;
+
+    /** The branch holding the book, the rows created before branches existed belong to the default branch */
+    @Column(name = "branch_id", nullable = false)
+    @ColumnDefault("1")
+    private Long branchId;
+
+    @PrePersist
+    protected void onCreate() {
+        if (branchId == null) {
+            branchId = BranchContext.currentOrDefault();
+        }
+    }
 }
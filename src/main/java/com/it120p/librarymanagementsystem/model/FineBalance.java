@@ -0,0 +1,40 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * The FineBalance class is an entity model object for the amount of fines a user owes.
+ *
+ * It is the running total of the user's FineLedgerEntry rows, updated together with the ledger,
+ * so the balance is one primary key lookup instead of a sum over the whole history.
+ * A user who was never fined has no row, their balance is zero.
+ */
+@Entity
+@Table(name = "fine_balances")
+@Getter
+@Setter
+@NoArgsConstructor
+public class FineBalance {
+    /** The ID of the user, a user has one balance */
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal balance = BigDecimal.ZERO;
+
+    /** The date of the last accrual or payment */
+    @Column(name = "updated_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updated_at;
+
+    public FineBalance(Long userId) {
+        this.userId = userId;
+    }
+}
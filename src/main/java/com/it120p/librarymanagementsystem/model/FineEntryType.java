@@ -0,0 +1,12 @@
+package com.it120p.librarymanagementsystem.model;
+
+/**
+ * The FineEntryType enum is the kind of an entry in the fine ledger.
+ *
+ * An ACCRUAL is the fine of one overdue order for one day, it is written by the nightly accrual.
+ * A PAYMENT is money paid at the desk, its amount is negative.
+ */
+public enum FineEntryType {
+    ACCRUAL,
+    PAYMENT
+}
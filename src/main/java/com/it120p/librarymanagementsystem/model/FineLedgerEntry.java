@@ -0,0 +1,72 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * The FineLedgerEntry class is an entity model object for one line of the fine ledger of a user.
+ *
+ * The ledger is append only. balance_after is the balance of the user once the entry is applied,
+ * so the history of a user can be read page by page without summing the entries before it.
+ * The current balance is kept separately in FineBalance.
+ *
+ * The unique constraint on order_id and entry_date makes sure an order is fined at most once per day,
+ * even if the accrual of a day runs twice. Payments have no order, the constraint does not apply to them.
+ */
+@Entity
+@Table(name = "fine_ledger",
+        uniqueConstraints = @UniqueConstraint(name = "uk_fine_ledger_order_id_entry_date", columnNames = {"order_id", "entry_date"}),
+        indexes = @Index(name = "idx_fine_ledger_user_id_id", columnList = "user_id, id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class FineLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /** The overdue order of an ACCRUAL, empty for a PAYMENT */
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entry_type", length = 20, nullable = false)
+    private FineEntryType entryType;
+
+    /** The day the fine is for, or the day of the payment */
+    @Column(name = "entry_date", nullable = false)
+    @Temporal(TemporalType.DATE)
+    private Date entry_date;
+
+    /** Positive for an ACCRUAL, negative for a PAYMENT */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "balance_after", nullable = false, precision = 12, scale = 2)
+    private BigDecimal balanceAfter;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created_at;
+
+    public FineLedgerEntry(Long userId, FineEntryType entryType, Date entryDate, BigDecimal amount, BigDecimal balanceAfter) {
+        this.userId = userId;
+        this.entryType = entryType;
+        this.entry_date = entryDate;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        created_at = new Date();
+    }
+}
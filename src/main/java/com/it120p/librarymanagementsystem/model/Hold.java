@@ -0,0 +1,86 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * The Hold class is an entity model object for a place in the waiting list of a book.
+ *
+ * The holds of a book are served first come, first served, in the order of their ID.
+ * The book and user are kept as plain IDs, a hold is always read on its own and never needs the full entities.
+ *
+ * ready_book_id is the book ID while the hold is READY and empty otherwise.
+ * Its unique constraint makes sure a book has at most one READY hold, even when two nodes promote at the same time:
+ * the second promotion fails on the constraint instead of handing the same copy to two users.
+ *
+ * active_book_id works the same way for the WAITING and READY holds: with user_id it is unique, so a double click
+ * on "Place hold" cannot queue the same user twice. MySQL has no partial unique index, a NULL is never a duplicate.
+ */
+@Entity
+@Table(name = "holds",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_holds_ready_book_id", columnNames = "ready_book_id"),
+                @UniqueConstraint(name = "uk_holds_active_book_id_user_id", columnNames = {"active_book_id", "user_id"})
+        },
+        indexes = {
+                // The queue of a book is read in ID order
+                @Index(name = "idx_holds_book_id_status_id", columnList = "book_id, status, id"),
+                @Index(name = "idx_holds_user_id", columnList = "user_id"),
+                @Index(name = "idx_holds_status_expires_at", columnList = "status, expires_at")
+        })
+@Getter
+@Setter
+@NoArgsConstructor
+public class Hold {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private HoldStatus status;
+
+    /** The book ID while the hold is READY, see the class comment */
+    @Column(name = "ready_book_id")
+    private Long readyBookId;
+
+    /** The book ID while the hold is WAITING or READY, see the class comment */
+    @Column(name = "active_book_id")
+    private Long activeBookId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created_at;
+
+    /** The date the book was set aside for the user */
+    @Column(name = "ready_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date ready_at;
+
+    /** The date the READY hold expires if the book is not borrowed */
+    @Column(name = "expires_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expires_at;
+
+    public Hold(Long bookId, Long userId) {
+        this.bookId = bookId;
+        this.userId = userId;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        created_at = new Date();
+        status = HoldStatus.WAITING;
+        activeBookId = bookId;
+    }
+}
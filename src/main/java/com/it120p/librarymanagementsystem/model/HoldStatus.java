@@ -0,0 +1,16 @@
+package com.it120p.librarymanagementsystem.model;
+
+/**
+ * The HoldStatus enum is the state of a hold on a book.
+ *
+ * A hold starts WAITING in the queue of the book. When the book is free, the oldest WAITING hold becomes READY
+ * and the user has a limited time to borrow the book. Borrowing it makes the hold FULFILLED,
+ * not borrowing it in time makes it EXPIRED, and the user can cancel it at any time before that.
+ */
+public enum HoldStatus {
+    WAITING,
+    READY,
+    FULFILLED,
+    EXPIRED,
+    CANCELLED
+}
@@ -0,0 +1,67 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * The ImportJob class is an entity model object for a catalog import.
+ *
+ * The job is kept in the database so its progress can be read from any node, not only the one running it.
+ * The counters are updated with a single UPDATE after every chunk, see ImportJobRepository.
+ * Only the first rejected rows are kept in errors, the rejectedRows counter has the full number.
+ */
+@Entity
+@Table(name = "import_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportJob {
+    /** The longest text kept in errors */
+    public static final int MAX_ERRORS_LENGTH = 10000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** The name of the uploaded file */
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private ImportJobStatus status;
+
+    /** The number of rows read so far */
+    @Column(name = "read_rows", nullable = false)
+    private long readRows = 0;
+
+    /** The number of books inserted so far */
+    @Column(name = "imported_rows", nullable = false)
+    private long importedRows = 0;
+
+    /** The number of rows that failed validation */
+    @Column(name = "rejected_rows", nullable = false)
+    private long rejectedRows = 0;
+
+    /** The first validation errors, one per line */
+    @Column(length = MAX_ERRORS_LENGTH)
+    private String errors;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created_at;
+
+    @Column(name = "finished_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date finished_at;
+
+    @PrePersist
+    protected void onCreate() {
+        created_at = new Date();
+        status = ImportJobStatus.RUNNING;
+    }
+}
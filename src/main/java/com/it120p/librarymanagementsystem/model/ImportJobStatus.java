@@ -0,0 +1,10 @@
+package com.it120p.librarymanagementsystem.model;
+
+/**
+ * The ImportJobStatus enum is the state of a catalog import job.
+ */
+public enum ImportJobStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,77 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.util.Date;
+
+/**
+ * The JobLease class is an entity model object for the lease of one shard of a scheduled job for one run.
+ *
+ * Every app instance runs the same @Scheduled methods, the lease decides which instance does the work.
+ * There is one lease per job, shard and run key (e.g. the date of a nightly run).
+ * An instance owns a shard while lease_until is in the future.
+ * The completed_at column is set once the shard is done, so it is not processed twice for the same run,
+ * and a lease that expired without being completed shows a failed shard that still has to be redone for its run.
+ *
+ * The ID is assigned by the application, Persistable is implemented so that saving a new lease
+ * always runs an INSERT and fails if another instance created the row first, instead of overwriting it.
+ */
+@Entity
+@Table(name = "job_leases",
+        indexes = @Index(name = "idx_job_leases_completed_at_lease_until", columnList = "completed_at, lease_until"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class JobLease implements Persistable<String> {
+    /** The ID of the lease, made of the job name, the shard number and the run key */
+    @Id
+    @Column(length = 100)
+    private String id;
+
+    @Column(name = "job_name", length = 80, nullable = false)
+    private String jobName;
+
+    @Column(nullable = false)
+    private int shard;
+
+    @Column(name = "run_key", length = 40)
+    private String runKey;
+
+    /** The instance holding the lease */
+    @Column(length = 100)
+    private String owner;
+
+    @Column(name = "lease_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseUntil;
+
+    @Column(name = "completed_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date completedAt;
+
+    @Transient
+    private boolean isNew = false;
+
+    public JobLease(String id, String jobName, int shard, String runKey) {
+        this.isNew = true;
+        this.id = id;
+        this.jobName = jobName;
+        this.shard = shard;
+        this.runKey = runKey;
+        this.leaseUntil = new Date(0);
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostPersist
+    protected void onPersist() {
+        isNew = false;
+    }
+}
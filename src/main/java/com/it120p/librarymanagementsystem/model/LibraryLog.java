@@ -0,0 +1,67 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * The LibraryLog class is an entity model object for one entry of the library activity log.
+ *
+ * Entries are written in batches by the ActivityLog writer, never through this entity, so it is only used for reading.
+ * The actor is copied into the row, so the log stays readable after the user is deleted.
+ */
+@Entity
+@Table(name = "library_logs",
+        // The log is browsed newest first, overall, per user or per action
+        indexes = {
+                @Index(name = "idx_library_logs_actor_id", columnList = "actor_id, id"),
+                @Index(name = "idx_library_logs_action", columnList = "action, id"),
+                @Index(name = "idx_library_logs_target", columnList = "target_type, target_id, id")
+        })
+@Getter
+@Setter
+@NoArgsConstructor
+public class LibraryLog {
+    /** The longest text kept in detail */
+    public static final int MAX_DETAIL_LENGTH = 500;
+
+    /** The target types */
+    public static final String TARGET_ORDER = "ORDER";
+    public static final String TARGET_BOOK = "BOOK";
+    public static final String TARGET_USER = "USER";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private LibraryLogAction action;
+
+    /** The ID of the user who did it, empty for anonymous actions */
+    @Column(name = "actor_id")
+    private Long actorId;
+
+    /** The username of the user who did it */
+    @Column(name = "actor_name", length = 20)
+    private String actorName;
+
+    /** The kind of record the action was about, e.g. ORDER or BOOK */
+    @Column(name = "target_type", length = 20)
+    private String targetType;
+
+    /** The ID of the record the action was about */
+    @Column(name = "target_id")
+    private Long targetId;
+
+    @Column(length = MAX_DETAIL_LENGTH)
+    private String detail;
+
+    /** The time of the action, not the time the entry was written */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created_at;
+}
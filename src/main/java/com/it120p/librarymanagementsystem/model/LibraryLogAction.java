@@ -0,0 +1,21 @@
+package com.it120p.librarymanagementsystem.model;
+
+/**
+ * The LibraryLogAction enum represents the actions recorded in the library activity log.
+ */
+public enum LibraryLogAction {
+    /** Books were borrowed */
+    CHECKOUT,
+
+    /** Books were returned */
+    RETURN,
+
+    /** An order was renewed */
+    RENEWAL,
+
+    /** A user signed in */
+    LOGIN,
+
+    /** An admin created, changed or deleted a book, order or user */
+    ADMIN_EDIT
+}
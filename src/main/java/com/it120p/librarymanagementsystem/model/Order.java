@@ -2,9 +2,13 @@ package com.it120p.librarymanagementsystem.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.it120p.librarymanagementsystem.config.BranchContext;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Filter;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
@@ -19,9 +23,21 @@ import java.util.List;
  * The borrowed date is set to the current date when an Order entity is created.
  * The status is set to BORROWED when an Order entity is created.
  * The due date is set to 7 days after the borrowed date when an Order entity is created.
+ * The due date is only extended by a renewal, see RenewalService.
  */
 @Entity
-@Table (name = "orders")
+@Table (name = "orders",
+        indexes = {
+                // The nightly overdue and fine jobs scan the open orders of all branches by due date, see FineService
+                @Index(name = "idx_orders_status_due_date", columnList = "status, due_date"),
+                // The queries of a request only read the orders of its branch, see BranchContext
+                @Index(name = "idx_orders_branch_id_user_id", columnList = "branch_id, user_id"),
+                @Index(name = "idx_orders_branch_id_status_due_date", columnList = "branch_id, status, due_date")
+        })
+// The filter is defined on Book
+@Filter(name = BranchContext.FILTER)
+// Only the changed columns are written on update, so a pickup does not rewrite the whole row
+@DynamicUpdate
 public class Order {
     @Setter
     @Getter
@@ -85,6 +101,9 @@ public class Order {
     // This is to avoid errors when the borrowed_at field is not set
     @PrePersist
     protected void onCreate() {
+        if (branchId == null) {
+            branchId = BranchContext.currentOrDefault();
+        }
         borrowed_at = new Date();
         // The status is set to BORROWED when the order is created
         status = OrderStatus.BORROWED;
@@ -99,21 +118,6 @@ public class Order {
         due_date = cal.getTime();
     }
 
-    // The @PreUpdate annotation is used to specify a callback method
-    // that is called before the entity is updated
-    // This is to extend the due date by 5 days when the status is BORROWED
-    @PreUpdate
-    protected void onUpdate() {
-        // Check if the status is BORROWED
-        if (status == OrderStatus.BORROWED) {
-            // If the status is BORROWED, extend the due date by 5 days
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(due_date);
-            cal.add(Calendar.DAY_OF_MONTH, 5);
-            due_date = cal.getTime();
-        }
-    }
-
     @Setter
     @Getter
     private Date due_date;
@@ -126,6 +130,30 @@ public class Order {
     @Column(name = "is_picked_up", nullable = false)
     private boolean isPickedUp = false;
 
+    @Getter
+    // The version is increased by every update, an update made from an older version is rejected
+    // instead of overwriting the newer data, see OrderService.patchOrder
+    // It stays null until the order is saved, so a request body without a version can be told apart
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
+    @Setter
+    @Getter
+    // The number of times the order has been renewed, it is only changed by RenewalService
+    @Column(name = "renew_count", nullable = false)
+    @ColumnDefault("0")
+    private int renewCount = 0;
+
+    @Setter
+    @Getter
+    // The branch the order was placed at, set from the request when the order is created, see BranchContext
+    // The rows created before branches existed belong to the default branch
+    @Column(name = "branch_id", nullable = false)
+    @ColumnDefault("1")
+    private Long branchId;
+
     /**
      * Sets the borrowed date of the Order entity and updates the status to BORROWED.
      *
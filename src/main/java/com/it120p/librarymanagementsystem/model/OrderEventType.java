@@ -0,0 +1,47 @@
+package com.it120p.librarymanagementsystem.model;
+
+/**
+ * The OrderEventType enum represents the order lifecycle events that send a notification to the user.
+ * It also covers the few account events that are sent through the same outbox.
+ */
+public enum OrderEventType {
+    /**
+     * The order was created, the user gets the HTML order summary.
+     */
+    CREATED,
+
+    /**
+     * The order was renewed.
+     */
+    RENEWED,
+
+    /**
+     * The order was picked up at the circulation desk.
+     */
+    PICKED_UP,
+
+    /**
+     * The order was returned at the circulation desk.
+     */
+    RETURNED,
+
+    /**
+     * The order was flagged as overdue.
+     */
+    OVERDUE,
+
+    /**
+     * The order is due tomorrow.
+     */
+    DUE_TOMORROW,
+
+    /**
+     * A book the user was waiting for is set aside for them.
+     */
+    HOLD_READY,
+
+    /**
+     * A user account was created, the user gets the welcome email.
+     */
+    ACCOUNT_CREATED
+}
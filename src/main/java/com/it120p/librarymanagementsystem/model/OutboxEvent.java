@@ -0,0 +1,88 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * The OutboxEvent class is an entity model object for a pending notification.
+ *
+ * Outbox events are written in the same transaction as the order change that caused them,
+ * so a notification is never lost when the application stops between the save and the email.
+ * The OutboxRelay sends the events in the background and sets sent_at once the email is out.
+ * The recipient is copied into the row so the relay does not have to load the User entity.
+ *
+ * A relay claims a batch of events before sending them, by setting claimed_by and claimed_until on the rows,
+ * so two app instances never send the same batch. A claim that was not finished ends at claimed_until.
+ */
+@Entity
+@Table(name = "outbox_events",
+        // The relay looks for unsent events in insertion order
+        indexes = @Index(name = "idx_outbox_events_sent_at_id", columnList = "sent_at, id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** The type of the order event */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", length = 20, nullable = false)
+    private OrderEventType eventType;
+
+    /** The ID of the order, it is empty for notices that cover several orders */
+    @Column(name = "order_id")
+    private Long orderId;
+
+    /** The email address of the recipient */
+    @Column(name = "recipient_email", nullable = false)
+    private String recipientEmail;
+
+    /** The name of the recipient used in the greeting */
+    @Column(name = "recipient_name")
+    private String recipientName;
+
+    /** The subject of the email */
+    private String subject;
+
+    /** The body of the email, CREATED events render the HTML template instead. A notice listing many books can be long */
+    @Lob
+    @Column(length = 65535)
+    private String text;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created_at;
+
+    /** The date the email was sent, it is empty while the event is pending */
+    @Column(name = "sent_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date sent_at;
+
+    /** The number of failed delivery attempts */
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    /** The error message of the last failed attempt */
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    /** The ID of the relay batch the event is claimed by */
+    @Column(name = "claimed_by", length = 36)
+    private String claimedBy;
+
+    /** The date the claim ends if the relay does not finish the event */
+    @Column(name = "claimed_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date claimedUntil;
+
+    @PrePersist
+    protected void onCreate() {
+        created_at = new Date();
+    }
+}
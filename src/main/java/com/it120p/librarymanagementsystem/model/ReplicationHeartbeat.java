@@ -0,0 +1,26 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The ReplicationHeartbeat class is an entity model object for the replica lag check.
+ *
+ * The table holds a single row. The ReplicaLagMonitor writes the current time to it on the primary
+ * and reads it back from the replica, the difference is how far the replica is behind.
+ */
+@Entity
+@Table(name = "replication_heartbeat")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ReplicationHeartbeat {
+    @Id
+    private Integer id;
+
+    /** The time of the last heartbeat in milliseconds since the epoch */
+    @Column(nullable = false)
+    private long beat;
+}
@@ -0,0 +1,70 @@
+package com.it120p.librarymanagementsystem.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * The StoredImage class is an entity model object for a cover image in the content-addressed store.
+ *
+ * The ID is the SHA-256 hash of the image bytes, so identical uploads share one row and one file.
+ * The reference count is the number of books using the image, the file is deleted when it drops to zero.
+ * Like JobLease, it implements Persistable so saving a new image always INSERTs and never overwrites a row
+ * created concurrently by another upload of the same bytes.
+ */
+@Entity
+@Table(name = "stored_images")
+@Getter
+@Setter
+@NoArgsConstructor
+public class StoredImage implements Persistable<String> {
+    /** The SHA-256 hash of the image as 64 hex characters */
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    /** The storage key of the image, e.g. ab/cd/abcd....png */
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(name = "content_type", length = 50)
+    private String contentType;
+
+    /** The size of the image in bytes */
+    @Column(nullable = false)
+    private long size;
+
+    /** The number of books using the image */
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Transient
+    private boolean isNew = false;
+
+    public StoredImage(String hash, String storageKey, String contentType, long size) {
+        this.isNew = true;
+        this.hash = hash;
+        this.storageKey = storageKey;
+        this.contentType = contentType;
+        this.size = size;
+        this.refCount = 1;
+    }
+
+    @Override
+    public String getId() {
+        return hash;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostPersist
+    @PostLoad
+    protected void markNotNew() {
+        isNew = false;
+    }
+}
@@ -1,10 +1,12 @@
 package com.it120p.librarymanagementsystem.model;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.it120p.librarymanagementsystem.config.BranchContext;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.HashSet;
 import java.util.List;
@@ -70,6 +72,21 @@ public class User {
     @JsonManagedReference
     private List<Order> orders;
 
+    /**
+     * The home branch of the user, a user who is not an admin only works in this branch, see BranchFilter.
+     * The users registered before branches existed belong to the default branch.
+     */
+    @Column(name = "branch_id", nullable = false)
+    @ColumnDefault("1")
+    private Long branchId;
+
+    @PrePersist
+    protected void onCreate() {
+        if (branchId == null) {
+            branchId = BranchContext.currentOrDefault();
+        }
+    }
+
     public Set<Role> getRoles() {
         return roles;
     }
@@ -143,4 +160,12 @@ public class User {
     public void setOrders(List<Order> orders) {
         this.orders = orders;
     }
+
+    public Long getBranchId() {
+        return branchId;
+    }
+
+    public void setBranchId(Long branchId) {
+        this.branchId = branchId;
+    }
 }
@@ -0,0 +1,21 @@
+package com.it120p.librarymanagementsystem.payload.request;
+
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * The FinePaymentRequest class holds the amount a user paid towards their fines.
+ */
+@Getter
+@Setter
+public class FinePaymentRequest {
+    @NotNull
+    @Positive
+    @Digits(integer = 10, fraction = 2)
+    private BigDecimal amount;
+}
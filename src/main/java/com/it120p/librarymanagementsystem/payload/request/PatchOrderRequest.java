@@ -0,0 +1,31 @@
+package com.it120p.librarymanagementsystem.payload.request;
+
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The PatchOrderRequest class holds the fields of an order to change.
+ * Fields left out (null) are not changed.
+ * The version is the version of the order the client read, it is required so concurrent edits can be detected.
+ */
+@Getter
+@Setter
+public class PatchOrderRequest {
+    @NotNull
+    private Long version;
+
+    private OrderStatus status;
+
+    private Boolean pickedUp;
+
+    private Date dueDate;
+
+    private Date returnedAt;
+
+    private List<Long> bookIds;
+}
@@ -0,0 +1,47 @@
+package com.it120p.librarymanagementsystem.payload.response;
+
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+
+import java.util.Date;
+
+/**
+ * The OrderStreamEvent class is the data pushed to a client over the order event stream.
+ * It only says what happened to which order, the client fetches the order again if it needs the details.
+ */
+public class OrderStreamEvent {
+    private Long orderId;
+    private OrderEventType type;
+    private String subject;
+    private Date createdAt;
+
+    /**
+     * Constructor for the OrderStreamEvent with all fields.
+     *
+     * @param orderId the ID of the order, or null if the event covers several orders.
+     * @param type the type of the event.
+     * @param subject the short description of the event.
+     * @param createdAt the date the event happened.
+     */
+    public OrderStreamEvent(Long orderId, OrderEventType type, String subject, Date createdAt) {
+        this.orderId = orderId;
+        this.type = type;
+        this.subject = subject;
+        this.createdAt = createdAt;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public OrderEventType getType() {
+        return type;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
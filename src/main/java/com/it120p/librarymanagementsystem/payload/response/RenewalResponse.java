@@ -0,0 +1,38 @@
+package com.it120p.librarymanagementsystem.payload.response;
+
+import java.util.Date;
+
+/**
+ * The RenewalResponse class is a model for the data returned after an order is renewed.
+ * It contains the order's ID, the new due date and how many renewals are left.
+ */
+public class RenewalResponse {
+    private Long orderId;
+    private Date dueDate;
+    private int renewalsLeft;
+
+    /**
+     * Constructor for the RenewalResponse with all fields.
+     *
+     * @param orderId the ID of the renewed order.
+     * @param dueDate the new due date of the order.
+     * @param renewalsLeft the number of renewals still allowed for the order.
+     */
+    public RenewalResponse(Long orderId, Date dueDate, int renewalsLeft) {
+        this.orderId = orderId;
+        this.dueDate = dueDate;
+        this.renewalsLeft = renewalsLeft;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    public int getRenewalsLeft() {
+        return renewalsLeft;
+    }
+}
@@ -0,0 +1,21 @@
+package com.it120p.librarymanagementsystem.payload.response;
+
+/**
+ * The TransitionOutcome enum represents the result of a bulk state change for a single order.
+ */
+public enum TransitionOutcome {
+    /**
+     * The order was moved to the new state.
+     */
+    UPDATED,
+
+    /**
+     * The order was already in the new state, or its current state does not allow the change.
+     */
+    UNCHANGED,
+
+    /**
+     * No order exists with the given ID.
+     */
+    NOT_FOUND
+}
@@ -1,9 +1,17 @@
 package com.it120p.librarymanagementsystem.repository;
 
 import com.it120p.librarymanagementsystem.model.Book;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * The BookRepository interface is a Spring Data JPA repository for Book entities.
@@ -17,6 +25,9 @@ import java.util.Optional;
  * In this case, the repository is for Book entities, and the ID of the Book entity is of type Long.
  *
  * The findByImagePathContaining method is a query method that finds a book by its image path containing a specific string.
+ *
+ * The inherited read methods such as findAll() and findById() run in read-only transactions on the primary.
+ * They only read from the replica when called from a @ReadFromReplica service method.
  */
 public interface BookRepository extends JpaRepository<Book, Long>{
     /**
@@ -27,4 +38,34 @@ public interface BookRepository extends JpaRepository<Book, Long>{
      * @param imageName the specific string to be searched in the image path.
      * @return an Optional of Book that contains the book if found, or an empty Optional if not.
      */
-    Optional<Book> findByImagePathContaining(String imageName);}
+    @Transactional(readOnly = true)
+    Optional<Book> findByImagePathContaining(String imageName);
+
+    /**
+     * Streams every book ordered by ID for the export.
+     * The MySQL URL sets useCursorFetch=true, so the driver reads the rows from a server-side cursor 1000 at a time
+     * instead of the whole result first. The fetch size is positive so the H2 driver of the local profiles accepts it too.
+     * The stream has to be consumed inside a transaction and closed afterwards.
+     *
+     * @return the stream of all books.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select b from Book b order by b.id")
+    Stream<Book> streamAllBy();
+
+    /**
+     * Locks the row of a book until the end of the transaction, used to serialize the checkouts and the hold promotions
+     * of a book. It is a native query, the branch filter does not apply to it.
+     * The lock should be the first statement of the transaction, so on MySQL the reads after it see every change
+     * committed by the transaction that held the lock before.
+     *
+     * @param id the ID of the book.
+     * @return the ID of the book, or null if it does not exist.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "select id from book where id = :id for update", nativeQuery = true)
+    Long lockById(@Param("id") Long id);
+}
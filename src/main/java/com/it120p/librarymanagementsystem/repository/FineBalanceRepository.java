@@ -0,0 +1,59 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.FineBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * The FineBalanceRepository interface is a Spring Data JPA repository for FineBalance entities.
+ *
+ * Balances are only changed with single statements, in the same transaction as the ledger entries they sum up.
+ */
+public interface FineBalanceRepository extends JpaRepository<FineBalance, Long> {
+
+    /**
+     * Moves the balances of a shard to the last balance written by the current accrual, one statement for all users.
+     * Users fined for the first time get a balance row.
+     *
+     * @param fromId the highest ledger ID before the accrual, see FineLedgerRepository.findMaxId.
+     * @param now the update date of the balances.
+     * @param shards the number of shards.
+     * @param shard the shard that was accrued.
+     * @return the number of rows changed, as reported by the database.
+     */
+    @Modifying
+    @Query(value = "insert into fine_balances (user_id, balance, updated_at) " +
+            "select l.user_id, max(l.balance_after), :now from fine_ledger l " +
+            "where l.id > :fromId and l.entry_type = 'ACCRUAL' and mod(l.user_id, :shards) = :shard group by l.user_id " +
+            "on duplicate key update balance = values(balance), updated_at = values(updated_at)",
+            nativeQuery = true)
+    int applyAccruals(@Param("fromId") long fromId, @Param("now") Date now,
+                      @Param("shards") int shards, @Param("shard") int shard);
+
+    /**
+     * Takes a payment off a balance, only if the user owes at least that much.
+     *
+     * @param userId the ID of the user.
+     * @param amount the amount paid.
+     * @param now the update date of the balance.
+     * @return 1 if the payment was applied, 0 otherwise.
+     */
+    @Modifying
+    @Query("update FineBalance b set b.balance = b.balance - :amount, b.updated_at = :now " +
+            "where b.userId = :userId and b.balance >= :amount")
+    int pay(@Param("userId") Long userId, @Param("amount") BigDecimal amount, @Param("now") Date now);
+
+    /**
+     * Reads the balance of a user straight from the database, after pay changed it.
+     *
+     * @param userId the ID of the user.
+     * @return the balance.
+     */
+    @Query("select b.balance from FineBalance b where b.userId = :userId")
+    BigDecimal findBalance(@Param("userId") Long userId);
+}
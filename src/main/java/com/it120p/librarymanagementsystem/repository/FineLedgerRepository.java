@@ -0,0 +1,61 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.FineLedgerEntry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * The FineLedgerRepository interface is a Spring Data JPA repository for FineLedgerEntry entities.
+ *
+ * The accrual is a single INSERT ... SELECT over the open orders of a shard, no order is loaded into the application.
+ */
+public interface FineLedgerRepository extends JpaRepository<FineLedgerEntry, Long> {
+
+    Page<FineLedgerEntry> findByUserIdOrderByIdDesc(Long userId, Pageable pageable);
+
+    /**
+     * Finds the highest ledger ID, the entries written after it belong to the current accrual.
+     *
+     * @return the highest ID, 0 if the ledger is empty.
+     */
+    @Query("select coalesce(max(l.id), 0) from FineLedgerEntry l")
+    long findMaxId();
+
+    /**
+     * Writes one day of fines for every open order of a shard that was due before the day started.
+     *
+     * The orders are found through the (status, due_date) index. The balance after each entry is the user's stored
+     * balance plus the fines of the user written so far by this statement, numbered in order ID order.
+     * Orders already fined for the day are skipped, so running the accrual of a day twice does not fine twice.
+     * The rows are inserted in that order, so the ledger IDs of a user follow the running balance.
+     * The amount is cast to the type of the column, H2 would otherwise type it like row_number() and drop the cents.
+     * The shard is picked by user, all the fines of a user are written by the same statement.
+     *
+     * @param day the day the fines are for.
+     * @param dayStart the start of the day, orders due before it are fined.
+     * @param amount the fine per order per day.
+     * @param now the creation date of the entries.
+     * @param shards the number of shards.
+     * @param shard the shard to accrue.
+     * @return the number of entries written.
+     */
+    @Modifying
+    @Query(value = "insert into fine_ledger (user_id, order_id, entry_type, entry_date, amount, balance_after, created_at) " +
+            "select o.user_id, o.id, 'ACCRUAL', :day, cast(:amount as decimal(12, 2)), " +
+            "coalesce(b.balance, 0) + cast(:amount as decimal(12, 2)) * row_number() over (partition by o.user_id order by o.id), :now " +
+            "from orders o left join fine_balances b on b.user_id = o.user_id " +
+            "where o.status in ('BORROWED', 'OVERDUE') and o.due_date < :dayStart and mod(o.user_id, :shards) = :shard " +
+            "and not exists (select 1 from fine_ledger l where l.order_id = o.id and l.entry_date = :day) " +
+            "order by o.user_id, o.id",
+            nativeQuery = true)
+    int accrue(@Param("day") LocalDate day, @Param("dayStart") Date dayStart, @Param("amount") BigDecimal amount,
+               @Param("now") Date now, @Param("shards") int shards, @Param("shard") int shard);
+}
@@ -0,0 +1,139 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.Hold;
+import com.it120p.librarymanagementsystem.model.HoldStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The HoldRepository interface is a Spring Data JPA repository for Hold entities.
+ *
+ * Every state change is a single UPDATE guarded by the expected current status, so two nodes acting on the same hold
+ * cannot both succeed: the one that updates 0 rows lost the race and moves on.
+ */
+public interface HoldRepository extends JpaRepository<Hold, Long> {
+
+    List<Hold> findByUserIdOrderByIdDesc(Long userId);
+
+    List<Hold> findByBookIdAndStatusInOrderByIdAsc(Long bookId, Collection<HoldStatus> statuses);
+
+    boolean existsByBookIdAndUserIdAndStatusIn(Long bookId, Long userId, Collection<HoldStatus> statuses);
+
+    /**
+     * Checks if other users come before a user in the queue of a book.
+     *
+     * A user who has the book set aside is never blocked. Otherwise the user is blocked by a READY hold of someone else,
+     * and by any WAITING hold placed before the user's own WAITING hold, or by any WAITING hold if the user has none.
+     *
+     * @param bookId the ID of the book.
+     * @param userId the ID of the user borrowing the book.
+     * @return true if another user is ahead in the queue of the book or has it set aside.
+     */
+    @Query("select count(h) > 0 from Hold h where h.bookId = :bookId and h.userId <> :userId " +
+            "and not exists (select m.id from Hold m where m.readyBookId = :bookId and m.userId = :userId) " +
+            "and (h.status = com.it120p.librarymanagementsystem.model.HoldStatus.READY " +
+            "or (h.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING " +
+            "and not exists (select m.id from Hold m where m.bookId = :bookId and m.userId = :userId " +
+            "and m.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING and m.id < h.id)))")
+    boolean existsAheadOf(@Param("bookId") Long bookId, @Param("userId") Long userId);
+
+    /**
+     * Counts the WAITING holds of a book that were placed before the given hold.
+     *
+     * @param bookId the ID of the book.
+     * @param holdId the ID of the hold.
+     * @return the number of holds ahead in the queue.
+     */
+    @Query("select count(h) from Hold h where h.bookId = :bookId and h.id < :holdId " +
+            "and h.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING")
+    long countAhead(@Param("bookId") Long bookId, @Param("holdId") Long holdId);
+
+    /**
+     * Finds the oldest WAITING holds of a book, the head of its queue.
+     *
+     * @param bookId the ID of the book.
+     * @param pageable the number of holds to return.
+     * @return the IDs of the oldest WAITING holds.
+     */
+    @Query("select h.id from Hold h where h.bookId = :bookId " +
+            "and h.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING order by h.id")
+    List<Long> findQueueHead(@Param("bookId") Long bookId, Pageable pageable);
+
+    /**
+     * Checks if a book has a READY hold.
+     *
+     * @param bookId the ID of the book.
+     * @return true if the book is set aside for a user.
+     */
+    @Query("select count(h) > 0 from Hold h where h.readyBookId = :bookId")
+    boolean existsReady(@Param("bookId") Long bookId);
+
+    /**
+     * Finds the IDs of books that have a WAITING hold but no READY hold, used by the sweep to catch missed promotions.
+     *
+     * @return the IDs of the books.
+     */
+    @Query("select distinct h.bookId from Hold h where h.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING " +
+            "and not exists (select r.id from Hold r where r.readyBookId = h.bookId)")
+    List<Long> findBooksWithWaitingHolds();
+
+    /**
+     * Finds the READY holds whose pickup time has passed.
+     *
+     * @param now the current date.
+     * @return the expired READY holds.
+     */
+    @Query("select h from Hold h where h.status = com.it120p.librarymanagementsystem.model.HoldStatus.READY and h.expires_at < :now")
+    List<Hold> findExpired(@Param("now") Date now);
+
+    /**
+     * Sets a book aside for a WAITING hold.
+     * It fails on the unique ready_book_id constraint if the book already has a READY hold.
+     *
+     * @param id the ID of the hold.
+     * @param bookId the ID of the book of the hold.
+     * @param readyAt the current date.
+     * @param expiresAt the date the hold expires if the book is not borrowed.
+     * @return 1 if the hold was promoted, 0 if it is no longer WAITING.
+     */
+    @Modifying
+    @Query("update Hold h set h.status = com.it120p.librarymanagementsystem.model.HoldStatus.READY, h.readyBookId = :bookId, " +
+            "h.ready_at = :readyAt, h.expires_at = :expiresAt " +
+            "where h.id = :id and h.status = com.it120p.librarymanagementsystem.model.HoldStatus.WAITING")
+    int promote(@Param("id") Long id, @Param("bookId") Long bookId, @Param("readyAt") Date readyAt,
+                @Param("expiresAt") Date expiresAt);
+
+    /**
+     * Ends a hold, freeing the book if it was READY and letting the user place a new hold on it.
+     *
+     * @param id the ID of the hold.
+     * @param from the statuses the hold may be in.
+     * @param to the new status.
+     * @return 1 if the hold was changed, 0 if it was no longer in one of the expected statuses.
+     */
+    @Modifying
+    @Query("update Hold h set h.status = :to, h.readyBookId = null, h.activeBookId = null where h.id = :id and h.status in :from")
+    int close(@Param("id") Long id, @Param("from") Collection<HoldStatus> from, @Param("to") HoldStatus to);
+
+    /**
+     * Ends the hold of a user on a book when they borrow it, whether the book was set aside for them
+     * or they were at the head of the queue of a free book.
+     *
+     * @param bookId the ID of the book.
+     * @param userId the ID of the user.
+     * @return the number of holds fulfilled.
+     */
+    @Modifying
+    @Query("update Hold h set h.status = com.it120p.librarymanagementsystem.model.HoldStatus.FULFILLED, h.readyBookId = null, " +
+            "h.activeBookId = null " +
+            "where h.bookId = :bookId and h.userId = :userId " +
+            "and h.status in (com.it120p.librarymanagementsystem.model.HoldStatus.WAITING, com.it120p.librarymanagementsystem.model.HoldStatus.READY)")
+    int fulfill(@Param("bookId") Long bookId, @Param("userId") Long userId);
+}
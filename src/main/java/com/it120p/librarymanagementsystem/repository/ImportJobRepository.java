@@ -0,0 +1,52 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.ImportJob;
+import com.it120p.librarymanagementsystem.model.ImportJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+/**
+ * The ImportJobRepository interface is a Spring Data JPA repository for ImportJob entities.
+ *
+ * The import workers run in parallel, so the counters are added with a single UPDATE instead of
+ * a read-modify-write of the entity, which would lose the updates of the other workers.
+ */
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+
+    /**
+     * Adds the result of one chunk to the counters of a job.
+     *
+     * @param id the ID of the job.
+     * @param read the number of rows read in the chunk.
+     * @param imported the number of books inserted.
+     * @param rejected the number of rows rejected.
+     * @return the number of updated rows.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ImportJob j set j.readRows = j.readRows + :read, j.importedRows = j.importedRows + :imported, " +
+            "j.rejectedRows = j.rejectedRows + :rejected where j.id = :id")
+    int addProgress(@Param("id") Long id, @Param("read") long read, @Param("imported") long imported,
+                    @Param("rejected") long rejected);
+
+    /**
+     * Ends a job that is still running.
+     *
+     * @param id the ID of the job.
+     * @param status the final status.
+     * @param errors the first validation errors, or the reason the job failed.
+     * @param finishedAt the date the job ended.
+     * @return the number of updated rows.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ImportJob j set j.status = :status, j.errors = :errors, j.finished_at = :finishedAt " +
+            "where j.id = :id and j.status = com.it120p.librarymanagementsystem.model.ImportJobStatus.RUNNING")
+    int finish(@Param("id") Long id, @Param("status") ImportJobStatus status, @Param("errors") String errors,
+               @Param("finishedAt") Date finishedAt);
+}
@@ -0,0 +1,62 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The JobLeaseRepository interface is a Spring Data JPA repository for JobLease entities.
+ *
+ * The claim and complete methods commit on their own, so a lease is visible to the other instances
+ * as soon as it is taken, even while the job itself is still running.
+ */
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+    /**
+     * Takes the lease if it is free or already owned by this instance, and the run has not been completed yet.
+     * Only one instance can match the WHERE clause, so at most one of them gets the lease.
+     *
+     * @param id the ID of the lease.
+     * @param owner the name of this instance.
+     * @param now the current date.
+     * @param leaseUntil the date the lease expires.
+     * @return 1 if the lease was taken, 0 otherwise.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("update JobLease l set l.owner = :owner, l.leaseUntil = :leaseUntil " +
+            "where l.id = :id and (l.leaseUntil < :now or l.owner = :owner) and l.completedAt is null")
+    int claim(@Param("id") String id, @Param("owner") String owner, @Param("now") Date now,
+              @Param("leaseUntil") Date leaseUntil);
+
+    /**
+     * Records the run of the shard as completed and releases the lease.
+     *
+     * @param id the ID of the lease.
+     * @param owner the name of this instance.
+     * @param now the current date.
+     * @return 1 if this instance still held the lease, 0 otherwise.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("update JobLease l set l.completedAt = :now, l.leaseUntil = :now where l.id = :id and l.owner = :owner")
+    int complete(@Param("id") String id, @Param("owner") String owner, @Param("now") Date now);
+
+    /**
+     * Finds the leases of the shards that were started but not completed, and whose lease has expired.
+     * Their run failed or the instance running it stopped, they have to be redone for the same run key.
+     * A lease that was never claimed is also returned, the instance that created it stopped before claiming.
+     *
+     * @param now the current date.
+     * @return the leases to retry, oldest run first.
+     */
+    @Query("select l from JobLease l where l.completedAt is null and l.leaseUntil < :now and l.runKey is not null " +
+            "order by l.runKey, l.shard")
+    List<JobLease> findUncompleted(@Param("now") Date now);
+}
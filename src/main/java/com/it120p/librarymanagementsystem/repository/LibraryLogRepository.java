@@ -0,0 +1,44 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The LibraryLogRepository interface is a Spring Data JPA repository for LibraryLog entities.
+ *
+ * In this case, the repository is for LibraryLog entities, and the ID of the LibraryLog entity is of type Long.
+ *
+ * The page queries are ordered by ID, newest first, and each filter has an index that ends in the ID,
+ * so a page is read straight from the index. When filters are combined, the database reads the index of one of them
+ * and checks the others on the rows it reads. The entries are inserted by the ActivityLog writer.
+ */
+public interface LibraryLogRepository extends JpaRepository<LibraryLog, Long> {
+
+    /**
+     * Finds a page of entries, newest first. Every filter is optional, the filters that are given are all applied.
+     * A page is returned as a Slice, so the matching entries are not counted on every page.
+     *
+     * @param actorId only the entries of this user, or null.
+     * @param action only the entries of this action, or null.
+     * @param targetType only the entries about this kind of record, or null. It is given together with targetId.
+     * @param targetId only the entries about this record, or null.
+     * @param beforeId only the entries older than this ID, the last ID of the previous page, or null for the first page.
+     * @param pageable the page size, and the page number counted from beforeId.
+     * @return the page of entries.
+     */
+    @Transactional(readOnly = true)
+    @Query("select l from LibraryLog l where (:actorId is null or l.actorId = :actorId) " +
+            "and (:action is null or l.action = :action) " +
+            "and (:targetType is null or (l.targetType = :targetType and l.targetId = :targetId)) " +
+            "and (:beforeId is null or l.id < :beforeId) " +
+            "order by l.id desc")
+    Slice<LibraryLog> findPage(@Param("actorId") Long actorId, @Param("action") LibraryLogAction action,
+                               @Param("targetType") String targetType, @Param("targetId") Long targetId,
+                               @Param("beforeId") Long beforeId, Pageable pageable);
+}
@@ -1,15 +1,251 @@
 package com.it120p.librarymanagementsystem.repository;
 
 import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * The OrderRepository interface is a Spring Data JPA repository for Order entities.
  *
  * In this case, the repository is for Order entities, and the ID of the Order entity is of type Long.
+ *
+ * The bulk update methods run a single UPDATE statement for a list of order IDs.
+ * They skip the persistence context, so they increase the version themselves,
+ * an edit made from the version read before the bulk update is then rejected.
  */
 public interface OrderRepository extends JpaRepository<Order, Long>{
+    @Transactional(readOnly = true)
     List<Order> findByUserId(Long userId);
+
+    /**
+     * Finds an order only if it belongs to the given user, so ownership is checked by the query itself.
+     *
+     * @param id the ID of the order.
+     * @param userId the ID of the user.
+     * @return the order, or an empty Optional if it does not exist or belongs to someone else.
+     */
+    @Transactional(readOnly = true)
+    Optional<Order> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * Checks if a book is in an order that has not been returned yet.
+     *
+     * @param bookId the ID of the book.
+     * @return true if the book is on loan.
+     */
+    @Query("select count(o) > 0 from Order o join o.books b where b.id = :bookId " +
+            "and o.status <> com.it120p.librarymanagementsystem.model.OrderStatus.RETURNED")
+    boolean isOnLoan(@Param("bookId") Long bookId);
+
+    /**
+     * Finds the IDs of the books in the given orders.
+     *
+     * @param ids the IDs of the orders.
+     * @return the IDs of their books, without duplicates.
+     */
+    @Query("select distinct b.id from Order o join o.books b where o.id in :ids")
+    List<Long> findBookIdsByOrderIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * The OrderExportRow interface is one row of the order export.
+     * An order with several books spans several consecutive rows, one per book.
+     */
+    interface OrderExportRow {
+        Long getId();
+        Long getUserId();
+        String getUsername();
+        OrderStatus getStatus();
+        Date getBorrowedAt();
+        Date getDueDate();
+        Date getReturnedAt();
+        Boolean getPickedUp();
+        Integer getRenewCount();
+        Long getBookId();
+    }
+
+    /**
+     * Streams every order, one row per book, ordered by order ID so the rows of an order are next to each other.
+     * The MySQL URL sets useCursorFetch=true, so the driver reads the rows from a server-side cursor 1000 at a time
+     * instead of the whole result first. The fetch size is positive so the H2 driver of the local profiles accepts it too.
+     * The stream has to be consumed inside a transaction and closed afterwards.
+     *
+     * @return the export rows of all orders.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select o.id as id, u.id as userId, u.username as username, o.status as status, o.borrowed_at as borrowedAt, " +
+            "o.due_date as dueDate, o.returned_at as returnedAt, o.isPickedUp as pickedUp, o.renewCount as renewCount, b.id as bookId " +
+            "from Order o join o.user u left join o.books b order by o.id")
+    Stream<OrderExportRow> streamExportRows();
+
+    /**
+     * The OrderSummaryRow interface is one row of the order summary email, one row per book.
+     */
+    interface OrderSummaryRow {
+        Long getId();
+        String getUserName();
+        OrderStatus getStatus();
+        Date getBorrowedAt();
+        Date getDueDate();
+        String getTitle();
+        String getAuthor();
+        String getImagePath();
+    }
+
+    /**
+     * Finds the columns shown in the order summary email in one query, without loading the entity graph.
+     *
+     * @param id the ID of the order.
+     * @return one row per book of the order, no rows if the order does not exist.
+     */
+    @Transactional(readOnly = true)
+    @Query("select o.id as id, u.name as userName, o.status as status, o.borrowed_at as borrowedAt, o.due_date as dueDate, " +
+            "b.title as title, b.author as author, b.imagePath as imagePath " +
+            "from Order o join o.user u left join o.books b where o.id = :id order by b.id")
+    List<OrderSummaryRow> findSummaryRowsById(@Param("id") Long id);
+
+    /**
+     * The OrderState interface is a projection of the columns needed to decide a state transition.
+     * It also carries the user's email and name so notifications can be sent without loading the User entity.
+     */
+    interface OrderState {
+        Long getId();
+        Long getBranchId();
+        OrderStatus getStatus();
+        Boolean getPickedUp();
+        String getUserEmail();
+        String getUserName();
+    }
+
+    /**
+     * Finds the borrowed orders of one shard whose due date has passed.
+     *
+     * @param now the current date.
+     * @param shards the number of shards.
+     * @param shard the shard to search.
+     * @return the overdue orders of the shard that are not flagged yet.
+     */
+    @Query("select o from Order o join fetch o.user where o.status = com.it120p.librarymanagementsystem.model.OrderStatus.BORROWED " +
+            "and o.due_date < :now and mod(o.id, :shards) = :shard")
+    List<Order> findOverdueInShard(@Param("now") Date now, @Param("shards") int shards, @Param("shard") int shard);
+
+    /**
+     * Finds the borrowed orders of one shard that are due within the given range.
+     *
+     * @param from the start of the range, inclusive.
+     * @param to the end of the range, exclusive.
+     * @param shards the number of shards.
+     * @param shard the shard to search.
+     * @return the orders of the shard due within the range.
+     */
+    @Query("select o from Order o join fetch o.user where o.status = com.it120p.librarymanagementsystem.model.OrderStatus.BORROWED " +
+            "and o.due_date >= :from and o.due_date < :to and mod(o.id, :shards) = :shard")
+    List<Order> findDueBetweenInShard(@Param("from") Date from, @Param("to") Date to,
+                                      @Param("shards") int shards, @Param("shard") int shard);
+
+    /**
+     * The RenewalState interface is a projection of the columns needed to renew an order.
+     */
+    interface RenewalState {
+        Long getId();
+        Long getBranchId();
+        Long getUserId();
+        OrderStatus getStatus();
+        Integer getRenewCount();
+        Date getDueDate();
+        String getUserEmail();
+        String getUserName();
+    }
+
+    /**
+     * Finds the columns needed to renew an order without loading the entity graph.
+     *
+     * @param id the ID of the order.
+     * @return the renewal state of the order, or an empty Optional if it does not exist.
+     */
+    @Query("select o.id as id, o.branchId as branchId, u.id as userId, o.status as status, o.renewCount as renewCount, o.due_date as dueDate, " +
+            "u.email as userEmail, u.name as userName from Order o join o.user u where o.id = :id")
+    Optional<RenewalState> findRenewalStateById(@Param("id") Long id);
+
+    /**
+     * Extends the due date of a borrowed order in a single statement.
+     * The renew count has to match the value the caller read, so of two concurrent renewals only one is applied.
+     *
+     * @param id the ID of the order.
+     * @param days the number of days to add to the due date.
+     * @param seenRenewCount the renew count the caller read before renewing.
+     * @param maxRenewals the maximum number of renewals per order.
+     * @return 1 if the order was renewed, 0 otherwise.
+     */
+    @Modifying
+    @Query("update Order o set o.due_date = o.due_date + :days day, o.renewCount = o.renewCount + 1, o.version = o.version + 1 " +
+            "where o.id = :id and o.status = com.it120p.librarymanagementsystem.model.OrderStatus.BORROWED " +
+            "and o.renewCount = :seenRenewCount and o.renewCount < :maxRenewals")
+    int renew(@Param("id") Long id, @Param("days") int days,
+              @Param("seenRenewCount") int seenRenewCount, @Param("maxRenewals") int maxRenewals);
+
+    /**
+     * Finds the current state of several orders in one query and locks them until the transaction ends.
+     * The lock is a locking read, so the state is the last committed one under any isolation level,
+     * and another desk that reads the same orders waits until this transaction commits.
+     * The orders are locked in the order of their IDs, two desks scanning the same orders cannot deadlock.
+     *
+     * @param ids the IDs of the orders.
+     * @return the state of every order that exists.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o.id as id, o.branchId as branchId, o.status as status, o.isPickedUp as pickedUp, u.email as userEmail, u.name as userName " +
+            "from Order o join o.user u where o.id in :ids order by o.id")
+    List<OrderState> findStatesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Marks the orders as picked up, orders that are already picked up are left alone.
+     *
+     * @param ids the IDs of the orders.
+     * @return the number of orders updated.
+     */
+    @Modifying
+    @Query("update Order o set o.isPickedUp = true, o.version = o.version + 1 where o.id in :ids and o.isPickedUp = false")
+    int markPickedUp(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Marks the orders as returned, orders that are already returned are left alone.
+     *
+     * @param ids the IDs of the orders.
+     * @param returnedAt the return date to be set.
+     * @return the number of orders updated.
+     */
+    @Modifying
+    @Query("update Order o set o.status = com.it120p.librarymanagementsystem.model.OrderStatus.RETURNED, o.returned_at = :returnedAt, " +
+            "o.version = o.version + 1 " +
+            "where o.id in :ids and o.status <> com.it120p.librarymanagementsystem.model.OrderStatus.RETURNED")
+    int markReturned(@Param("ids") Collection<Long> ids, @Param("returnedAt") Date returnedAt);
+
+    /**
+     * Marks borrowed orders as overdue, returned or already overdue orders are left alone.
+     *
+     * @param ids the IDs of the orders.
+     * @return the number of orders updated.
+     */
+    @Modifying
+    @Query("update Order o set o.status = com.it120p.librarymanagementsystem.model.OrderStatus.OVERDUE, o.version = o.version + 1 " +
+            "where o.id in :ids and o.status = com.it120p.librarymanagementsystem.model.OrderStatus.BORROWED")
+    int markOverdue(@Param("ids") Collection<Long> ids);
 }
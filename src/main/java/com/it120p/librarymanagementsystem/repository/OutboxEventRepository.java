@@ -0,0 +1,163 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The OutboxEventRepository interface is a Spring Data JPA repository for OutboxEvent entities.
+ *
+ * In this case, the repository is for OutboxEvent entities, and the ID of the OutboxEvent entity is of type Long.
+ */
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    /**
+     * Finds the oldest unsent events that have not used up their delivery attempts and are not claimed by a relay.
+     *
+     * @param maxAttempts the maximum number of delivery attempts.
+     * @param now the current date, claims that ended before it are free again.
+     * @param pageable the batch size.
+     * @return the IDs of a batch of claimable events, oldest first.
+     */
+    @Query("select e.id from OutboxEvent e where e.sent_at is null and e.attempts < :maxAttempts " +
+            "and (e.claimedUntil is null or e.claimedUntil < :now) order by e.id")
+    List<Long> findClaimable(@Param("maxAttempts") int maxAttempts, @Param("now") Date now, Pageable pageable);
+
+    /**
+     * Finds the oldest claimable events, leaving out the event types that are collected into digests.
+     *
+     * @param maxAttempts the maximum number of delivery attempts.
+     * @param digestTypes the event types sent as digests, it must not be empty.
+     * @param now the current date, claims that ended before it are free again.
+     * @param pageable the batch size.
+     * @return the IDs of a batch of claimable events that are sent one by one, oldest first.
+     */
+    @Query("select e.id from OutboxEvent e where e.sent_at is null and e.attempts < :maxAttempts " +
+            "and (e.claimedUntil is null or e.claimedUntil < :now) and e.eventType not in :digestTypes order by e.id")
+    List<Long> findClaimableExcept(@Param("maxAttempts") int maxAttempts,
+                                   @Param("digestTypes") Collection<OrderEventType> digestTypes,
+                                   @Param("now") Date now, Pageable pageable);
+
+    /**
+     * Claims a batch of events for one relay run. The guard only takes the events that are still pending and not claimed,
+     * so when two instances pick the same IDs every event ends up in one of the two batches.
+     *
+     * @param ids the IDs of the events.
+     * @param claim the ID of the claim, the claimed events are read back with it.
+     * @param maxAttempts the maximum number of delivery attempts.
+     * @param now the current date.
+     * @param until the date the claim ends if the relay does not finish the events.
+     * @return the number of events claimed.
+     */
+    @Transactional
+    @Modifying
+    @Query("update OutboxEvent e set e.claimedBy = :claim, e.claimedUntil = :until where e.id in :ids " +
+            "and e.sent_at is null and e.attempts < :maxAttempts and (e.claimedUntil is null or e.claimedUntil < :now)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claim") String claim, @Param("maxAttempts") int maxAttempts,
+              @Param("now") Date now, @Param("until") Date until);
+
+    /**
+     * Claims the pending digest events of several recipients, see claim.
+     *
+     * @param recipients the email addresses of the recipients.
+     * @param digestTypes the event types sent as digests.
+     * @param claim the ID of the claim.
+     * @param maxAttempts the maximum number of delivery attempts.
+     * @param now the current date.
+     * @param until the date the claim ends if the relay does not finish the events.
+     * @return the number of events claimed.
+     */
+    @Transactional
+    @Modifying
+    @Query("update OutboxEvent e set e.claimedBy = :claim, e.claimedUntil = :until where e.recipientEmail in :recipients " +
+            "and e.eventType in :digestTypes and e.sent_at is null and e.attempts < :maxAttempts " +
+            "and (e.claimedUntil is null or e.claimedUntil < :now)")
+    int claimDigestEvents(@Param("recipients") Collection<String> recipients,
+                          @Param("digestTypes") Collection<OrderEventType> digestTypes, @Param("claim") String claim,
+                          @Param("maxAttempts") int maxAttempts, @Param("now") Date now, @Param("until") Date until);
+
+    /**
+     * Finds the events of a claim.
+     *
+     * @param claim the ID of the claim.
+     * @return the claimed events, oldest first.
+     */
+    List<OutboxEvent> findByClaimedByOrderByIdAsc(String claim);
+
+    /**
+     * Finds the recipients whose oldest pending digest event was recorded before the cutoff.
+     * Events of a recipient keep collecting until the first one is older than the digest window.
+     *
+     * @param maxAttempts the maximum number of delivery attempts.
+     * @param digestTypes the event types sent as digests.
+     * @param cutoff the start of the digest window.
+     * @param now the current date, events claimed by another relay are left out.
+     * @param pageable the number of recipients.
+     * @return the email addresses of the recipients with a digest to send.
+     */
+    @Query("select e.recipientEmail from OutboxEvent e where e.sent_at is null and e.attempts < :maxAttempts " +
+            "and (e.claimedUntil is null or e.claimedUntil < :now) and e.eventType in :digestTypes " +
+            "group by e.recipientEmail having min(e.created_at) < :cutoff " +
+            "order by min(e.id)")
+    List<String> findDigestRecipients(@Param("maxAttempts") int maxAttempts,
+                                      @Param("digestTypes") Collection<OrderEventType> digestTypes,
+                                      @Param("cutoff") Date cutoff, @Param("now") Date now, Pageable pageable);
+
+    /**
+     * Finds the highest event ID, the event stream starts tailing the outbox after it.
+     *
+     * @return the highest event ID, or null if the outbox is empty.
+     */
+    @Query("select max(e.id) from OutboxEvent e")
+    Long findMaxId();
+
+    /**
+     * Finds the events recorded after a given event, whether they are sent or not.
+     *
+     * @param id the ID of the last event already read.
+     * @param pageable the batch size.
+     * @return the next events, in ID order.
+     */
+    List<OutboxEvent> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Finds events by their IDs.
+     *
+     * @param ids the IDs of the events.
+     * @return the events that exist, in ID order.
+     */
+    List<OutboxEvent> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    /**
+     * Marks a batch of events as sent and ends their claim.
+     *
+     * @param ids the IDs of the events.
+     * @param sentAt the date the events were sent.
+     * @return the number of events updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("update OutboxEvent e set e.sent_at = :sentAt, e.claimedBy = null, e.claimedUntil = null where e.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Date sentAt);
+
+    /**
+     * Records a failed delivery attempt for a batch of events and ends their claim, so the next run retries them.
+     *
+     * @param ids the IDs of the events.
+     * @param error the error message.
+     * @return the number of events updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("update OutboxEvent e set e.attempts = e.attempts + 1, e.lastError = :error, " +
+            "e.claimedBy = null, e.claimedUntil = null where e.id in :ids")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("error") String error);
+}
@@ -0,0 +1,49 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.StoredImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The StoredImageRepository interface is a Spring Data JPA repository for StoredImage entities.
+ *
+ * The reference count is only changed with single UPDATE statements, so concurrent uploads
+ * and deletes of books sharing an image never lose a count.
+ */
+public interface StoredImageRepository extends JpaRepository<StoredImage, String> {
+    /**
+     * Adds a reference to an existing image.
+     *
+     * @param hash the hash of the image.
+     * @return 1 if the image exists, 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("update StoredImage s set s.refCount = s.refCount + 1 where s.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    /**
+     * Removes a reference from an image.
+     *
+     * @param hash the hash of the image.
+     * @return 1 if a reference was removed, 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("update StoredImage s set s.refCount = s.refCount - 1 where s.hash = :hash and s.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    /**
+     * Deletes an image row once no book uses it anymore.
+     *
+     * @param hash the hash of the image.
+     * @return 1 if the row was deleted and the file can be removed, 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from StoredImage s where s.hash = :hash and s.refCount = 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
@@ -1,10 +1,15 @@
 package com.it120p.librarymanagementsystem.repository;
 
 import com.it120p.librarymanagementsystem.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * The UserRepository interface is a Spring Data JPA repository for User entities.
@@ -40,4 +45,19 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return a Boolean that is true if the user exists, or false if not.
      */
     Boolean existsByEmail(String email);
+
+    /**
+     * Streams every user ordered by ID for the export.
+     * The MySQL URL sets useCursorFetch=true, so the driver reads the rows from a server-side cursor 1000 at a time
+     * instead of the whole result first. The fetch size is positive so the H2 driver of the local profiles accepts it too.
+     * The stream has to be consumed inside a transaction and closed afterwards.
+     *
+     * @return the stream of all users.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select u from User u order by u.id")
+    Stream<User> streamAllBy();
 }
@@ -1,10 +1,16 @@
 package com.it120p.librarymanagementsystem.security;
 
+import com.it120p.librarymanagementsystem.config.BranchFilter;
 import com.it120p.librarymanagementsystem.security.jwt.AuthEntryPointJwt;
 import com.it120p.librarymanagementsystem.security.jwt.AuthTokenFilter;
+import com.it120p.librarymanagementsystem.security.ratelimit.RateLimitFilter;
+import com.it120p.librarymanagementsystem.security.ratelimit.RateLimitProperties;
+import com.it120p.librarymanagementsystem.security.ratelimit.RateLimiter;
 import com.it120p.librarymanagementsystem.security.services.UserDetailsServiceImpl;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -18,6 +24,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Set;
+
 /**
  * The WebSecurityConfig class is annotated with @Configuration, indicating that it is a source of bean definitions.
  * The @EnableMethodSecurity annotation is used to enable method-level security.
@@ -42,6 +50,15 @@ public class WebSecurityConfig { // extends WebSecurityConfigurerAdapter {
     @Autowired
     private AuthEntryPointJwt unauthorizedHandler;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
+    @Value("${it120p.app.branchIds}")
+    private Set<Long> branchIds;
+
     /**
      * Defines the AuthTokenFilter bean.
      *
@@ -128,6 +145,8 @@ public class WebSecurityConfig { // extends WebSecurityConfigurerAdapter {
      * auth.requestMatchers is used to define the authorization rules for the requests.
      *
      * CSRF protection is disabled, and the authenticationEntryPoint is set to the unauthorizedHandler.
+     * The RateLimitFilter runs right after the AuthTokenFilter so it can tell users and anonymous callers apart.
+     * The BranchFilter runs after it, so it can bind users to their branch and a rejected request never reaches the database.
      *
      * @param http the HttpSecurity object.
      * @return the SecurityFilterChain.
@@ -139,7 +158,9 @@ public class WebSecurityConfig { // extends WebSecurityConfigurerAdapter {
                 .exceptionHandling(exception -> exception.authenticationEntryPoint(unauthorizedHandler))
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth ->
-                        auth.requestMatchers("/api/auth/**").permitAll()
+                        // The async dispatch of a stream (SSE, exports) belongs to a request that was already authorized
+                        auth.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                .requestMatchers("/api/auth/**").permitAll()
                                 .requestMatchers("book/download/**").permitAll()
                                 .requestMatchers("books").permitAll()
                                 .requestMatchers("/api/test/**").permitAll()
@@ -149,6 +170,8 @@ public class WebSecurityConfig { // extends WebSecurityConfigurerAdapter {
         http.authenticationProvider(authenticationProvider());
 
         http.addFilterBefore(authenticationJwtTokenFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(new RateLimitFilter(rateLimiter, rateLimitProperties), AuthTokenFilter.class);
+        http.addFilterAfter(new BranchFilter(branchIds), RateLimitFilter.class);
 
         return http.build();
     }
@@ -8,8 +8,6 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
@@ -24,12 +22,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *
  * It serves as the entry point for handling authentication exceptions. When an unauthenticated user tries to access a protected route, the commence method is triggered.
  *
- * The commence method logs the authentication exception, sets the HTTP response status to 401 (Unauthorized), and sends a JSON response with details about the error.
+ * The commence method records the authentication exception in the SecurityEventLog, sets the HTTP response status to 401 (Unauthorized), and sends a JSON response with details about the error.
  */
 @Component
 public class AuthEntryPointJwt implements AuthenticationEntryPoint {
 
-    private static final Logger logger = LoggerFactory.getLogger(AuthEntryPointJwt.class);
+    /** ObjectMapper is thread-safe, one instance serves every 401 */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SecurityEventLog securityEventLog;
+
+    public AuthEntryPointJwt(SecurityEventLog securityEventLog) {
+        this.securityEventLog = securityEventLog;
+    }
 
     /**
      * This method is invoked when an unauthenticated user tries to access a protected route.
@@ -43,9 +48,9 @@ public class AuthEntryPointJwt implements AuthenticationEntryPoint {
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException authException)
             throws IOException, ServletException {
-        // Log the error
+        // Count the error, only a sample of them is logged
         // Set the response status to 401 (Unauthorized)
-        logger.error("Unauthorized error: {}", authException.getMessage());
+        securityEventLog.record(SecurityEventReason.UNAUTHORIZED, request.getServletPath(), authException.getMessage());
 
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -58,10 +63,8 @@ public class AuthEntryPointJwt implements AuthenticationEntryPoint {
         body.put("message", authException.getMessage());
         body.put("path", request.getServletPath());
 
-        // Convert the map to JSON
-        final ObjectMapper mapper = new ObjectMapper();
         // Write the JSON to the response
-        mapper.writeValue(response.getOutputStream(), body);
+        MAPPER.writeValue(response.getOutputStream(), body);
     }
 
 }
\ No newline at end of file
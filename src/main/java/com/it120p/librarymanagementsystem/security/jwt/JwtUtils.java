@@ -4,8 +4,7 @@ import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
 import java.security.Key;
 import java.util.Date;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
@@ -13,6 +12,7 @@ import org.springframework.stereotype.Component;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
 
 /**
  * The JwtUtils class is a utility class that provides methods for generating, parsing, and validating JWTs (JSON Web Tokens).
@@ -28,14 +28,18 @@ import io.jsonwebtoken.security.Keys;
  */
 @Component
 public class JwtUtils {
-    private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
-
     @Value("${it120p.app.jwtSecret}")
     private String jwtSecret;
 
     @Value("${it120p.app.jwtExpirationMs}")
     private int jwtExpirationMs;
 
+    @Autowired
+    private SecurityEventLog securityEventLog;
+
+    /** The signing key, decoded once from jwtSecret */
+    private volatile Key key;
+
     /**
      * Generates a JWT for an authenticated user.
      *
@@ -63,8 +67,13 @@ public class JwtUtils {
      * @return a Key that can be used to sign a JWT.
      */
     private Key key() {
-        // Decode the JWT secret from Base64.
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        // Decode the JWT secret from Base64 the first time, every request with a token needs the key
+        Key current = key;
+        if (current == null) {
+            current = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+            key = current;
+        }
+        return current;
     }
 
     /**
@@ -81,6 +90,7 @@ public class JwtUtils {
 
     /**
      * Validates a JWT.
+     * A rejected token is counted by the SecurityEventLog, which only logs a sample of them.
      *
      * @param authToken the JWT to validate.
      * @return a boolean indicating whether the JWT is valid.
@@ -90,13 +100,16 @@ public class JwtUtils {
             Jwts.parserBuilder().setSigningKey(key()).build().parse(authToken);
             return true;
         } catch (MalformedJwtException e) {
-            logger.error("Invalid JWT token: {}", e.getMessage());
+            securityEventLog.record(SecurityEventReason.MALFORMED_TOKEN, null, e.getMessage());
         } catch (ExpiredJwtException e) {
-            logger.error("JWT token is expired: {}", e.getMessage());
+            securityEventLog.record(SecurityEventReason.EXPIRED_TOKEN, null, e.getMessage());
         } catch (UnsupportedJwtException e) {
-            logger.error("JWT token is unsupported: {}", e.getMessage());
+            securityEventLog.record(SecurityEventReason.UNSUPPORTED_TOKEN, null, e.getMessage());
+        } catch (SecurityException e) {
+            // A wrong signature, or a token signed with a key of the wrong type
+            securityEventLog.record(SecurityEventReason.INVALID_SIGNATURE, null, e.getMessage());
         } catch (IllegalArgumentException e) {
-            logger.error("JWT claims string is empty: {}", e.getMessage());
+            securityEventLog.record(SecurityEventReason.EMPTY_TOKEN, null, e.getMessage());
         }
 
         return false;
@@ -0,0 +1,86 @@
+package com.it120p.librarymanagementsystem.security.jwt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SecurityEventLog class records failed authentications without letting a flood of bad tokens flood the log.
+ *
+ * Every event increments a counter per reason, exposed as the it120p.security.events metric.
+ * Only the first few events of each reason per summary period are logged in detail, the others are only counted
+ * and reported in one summary line at the end of the period. The messages go to the "security-events" logger,
+ * which logback-spring.xml sends through an asynchronous appender that drops entries rather than block a request.
+ */
+@Component
+public class SecurityEventLog {
+    private static final Logger logger = LoggerFactory.getLogger("security-events");
+
+    private final Map<SecurityEventReason, Counter> counters = new EnumMap<>(SecurityEventReason.class);
+
+    /** The events of the current period, per reason */
+    private final Map<SecurityEventReason, LongAdder> periodCounts = new EnumMap<>(SecurityEventReason.class);
+
+    /** The detailed entries still allowed in the current period, per reason */
+    private final Map<SecurityEventReason, AtomicInteger> samplesLeft = new EnumMap<>(SecurityEventReason.class);
+
+    private final int samplesPerPeriod;
+
+    public SecurityEventLog(MeterRegistry meterRegistry,
+                            @Value("${it120p.app.securityLogSamplesPerPeriod}") int samplesPerPeriod) {
+        this.samplesPerPeriod = Math.max(0, samplesPerPeriod);
+        for (SecurityEventReason reason : SecurityEventReason.values()) {
+            counters.put(reason, meterRegistry.counter("it120p.security.events", "reason", reason.name()));
+            periodCounts.put(reason, new LongAdder());
+            samplesLeft.put(reason, new AtomicInteger(this.samplesPerPeriod));
+        }
+    }
+
+    /**
+     * Records a security event.
+     *
+     * @param reason the reason of the event.
+     * @param path the path of the request, or null.
+     * @param detail the message of the error, or null.
+     */
+    public void record(SecurityEventReason reason, String path, String detail) {
+        counters.get(reason).increment();
+        periodCounts.get(reason).increment();
+
+        // Only a sample is logged in detail, the rest shows up in the summary
+        if (samplesLeft.get(reason).getAndDecrement() > 0) {
+            logger.warn("{} on {}: {}", reason, path, detail);
+        }
+    }
+
+    /**
+     * Logs one line with the number of events per reason since the last summary, and starts a new period.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.securityLogSummaryMs}")
+    public void summarize() {
+        StringJoiner summary = new StringJoiner(", ");
+        long total = 0;
+        for (SecurityEventReason reason : SecurityEventReason.values()) {
+            long count = periodCounts.get(reason).sumThenReset();
+            int left = samplesLeft.get(reason).getAndSet(samplesPerPeriod);
+            if (count > 0) {
+                long suppressed = count - (samplesPerPeriod - Math.max(0, left));
+                summary.add(reason + "=" + count + (suppressed > 0 ? " (" + suppressed + " not logged)" : ""));
+                total += count;
+            }
+        }
+        if (total > 0) {
+            logger.warn("{} security events since the last summary: {}", total, summary);
+        }
+    }
+}
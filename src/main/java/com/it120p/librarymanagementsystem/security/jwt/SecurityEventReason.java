@@ -0,0 +1,30 @@
+package com.it120p.librarymanagementsystem.security.jwt;
+
+/**
+ * The SecurityEventReason enum represents why a request could not be authenticated.
+ */
+public enum SecurityEventReason {
+    /** The token could not be parsed */
+    MALFORMED_TOKEN,
+
+    /** The token has expired */
+    EXPIRED_TOKEN,
+
+    /** The token is not a signed JWT */
+    UNSUPPORTED_TOKEN,
+
+    /** The signature of the token does not match */
+    INVALID_SIGNATURE,
+
+    /** The token is empty */
+    EMPTY_TOKEN,
+
+    /** The token is valid but its user no longer exists */
+    UNKNOWN_USER,
+
+    /** Any other error while setting the authentication */
+    AUTHENTICATION_ERROR,
+
+    /** A protected route was called without a valid authentication */
+    UNAUTHORIZED
+}
@@ -0,0 +1,93 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RateLimitFilter class extends the OncePerRequestFilter class from Spring.
+ *
+ * It runs after the AuthTokenFilter, so authenticated users are limited by username and anonymous callers by IP address.
+ * Rejected requests get a 429 (Too Many Requests) with a Retry-After header and a pre-encoded body,
+ * so a scraper being turned away costs no database access and almost no allocation.
+ *
+ * The filter is not a bean on purpose, otherwise Spring Boot would also register it as a plain servlet filter.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final byte[] TOO_MANY_REQUESTS_BODY =
+            "{\"status\":429,\"error\":\"Too Many Requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final RateLimiter rateLimiter;
+
+    private final RateLimitProperties properties;
+
+    public RateLimitFilter(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    /**
+     * Checks the bucket of the caller before letting the request continue.
+     *
+     * @param request the HttpServletRequest which houses the details of the request.
+     * @param response the HttpServletResponse which houses the details of the response to be sent.
+     * @param filterChain the FilterChain which allows the request to proceed further in the filter chain.
+     * @throws ServletException if the request for the GET/POST could not be handled
+     * @throws IOException if an input or output exception occurred
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        int route = rateLimiter.findRoute(request.getServletPath());
+        if (route < 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long waitNanos = rateLimiter.tryAcquire(route, clientKey(request));
+        if (waitNanos > 0) {
+            // Round up so clients never retry before a token is available
+            long retryAfterSeconds = Math.max(1, (TimeUnit.NANOSECONDS.toMillis(waitNanos) + 999) / 1000);
+
+            response.setStatus(429);
+            response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(TOO_MANY_REQUESTS_BODY.length);
+            response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Builds the client key from the authenticated user or the remote address.
+     *
+     * @param request the HttpServletRequest which houses the details of the request.
+     * @return the key of the bucket to use for this caller.
+     */
+    private String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
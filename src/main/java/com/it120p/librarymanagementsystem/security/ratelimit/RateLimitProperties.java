@@ -0,0 +1,58 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The RateLimitProperties class holds the rate limiting settings from the application properties file.
+ *
+ * The values are bound from the "it120p.app.rateLimit" prefix.
+ * Each route has its own limit, the first route whose pattern matches the request path is used.
+ * Requests that do not match any route are not rate limited.
+ */
+@Component
+@ConfigurationProperties(prefix = "it120p.app.rate-limit")
+@Getter
+@Setter
+public class RateLimitProperties {
+
+    /** Turns the rate limiter on or off */
+    private boolean enabled = true;
+
+    /** The number of independent bucket maps, a power of two keeps the stripe lookup cheap */
+    private int stripes = 16;
+
+    /** The maximum number of buckets kept in one stripe before new clients are rejected */
+    private int maxBucketsPerStripe = 4096;
+
+    /** How long a bucket has to be full before it is evicted */
+    private long idleEvictionMs = 300000;
+
+    /** The limits for each route */
+    private List<Route> routes = new ArrayList<>();
+
+    /**
+     * The Route class is the limit for one group of endpoints.
+     * The pattern uses the same Ant style as the request matchers in WebSecurityConfig.
+     */
+    @Getter
+    @Setter
+    public static class Route {
+        /** The Ant style path pattern, e.g. /book/download/** */
+        private String pattern;
+
+        /** The number of requests a client can burst before being limited */
+        private int capacity = 60;
+
+        /** The number of tokens added back every refill period */
+        private int refillTokens = 60;
+
+        /** The length of the refill period in milliseconds */
+        private long refillPeriodMs = 60000;
+    }
+}
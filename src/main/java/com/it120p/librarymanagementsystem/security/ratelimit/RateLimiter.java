@@ -0,0 +1,176 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RateLimiter class keeps one TokenBucket per client and route.
+ *
+ * The buckets are spread over several ConcurrentHashMaps (stripes) chosen by the hash of the client key.
+ * Every stripe has a size cap, so a flood of spoofed IPs cannot grow the heap without bound.
+ * Buckets that have refilled completely carry no state and are removed by a scheduled sweep.
+ * When a stripe is full of active buckets, a new client takes the place of the least recently used of a few
+ * sampled buckets, so new clients are never turned away just because the stripe is full.
+ */
+@Component
+public class RateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    /** How many buckets are compared to pick the one to evict from a full stripe */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final RateLimitProperties properties;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final ConcurrentHashMap<String, TokenBucket>[] stripes;
+
+    private final int stripeMask;
+
+    /**
+     * Constructs the RateLimiter and allocates the stripes.
+     * The stripe count is rounded up to a power of two so the stripe can be picked with a bit mask.
+     *
+     * @param properties the rate limiting settings.
+     */
+    @SuppressWarnings("unchecked")
+    public RateLimiter(RateLimitProperties properties) {
+        this.properties = properties;
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, properties.getStripes() - 1)) << 1;
+        this.stripes = new ConcurrentHashMap[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Finds the route limit for a request path.
+     *
+     * @param path the servlet path of the request.
+     * @return the index of the first matching route, or -1 if the path is not rate limited.
+     */
+    public int findRoute(String path) {
+        List<RateLimitProperties.Route> routes = properties.getRoutes();
+        for (int i = 0; i < routes.size(); i++) {
+            if (pathMatcher.match(routes.get(i).getPattern(), path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tries to take one token for the client on the given route.
+     *
+     * @param routeIndex the index returned by findRoute.
+     * @param clientKey the client key, either the username or the IP address.
+     * @return 0 if the request is allowed, otherwise the nanoseconds until the client may retry.
+     */
+    public long tryAcquire(int routeIndex, String clientKey) {
+        return tryAcquire(routeIndex, clientKey, System.nanoTime());
+    }
+
+    /**
+     * Tries to take one token for the client on the given route at the given time.
+     *
+     * @param routeIndex the index returned by findRoute.
+     * @param clientKey the client key, either the username or the IP address.
+     * @param now the current System.nanoTime() value.
+     * @return 0 if the request is allowed, otherwise the nanoseconds until the client may retry.
+     */
+    long tryAcquire(int routeIndex, String clientKey, long now) {
+        RateLimitProperties.Route route = properties.getRoutes().get(routeIndex);
+        String key = routeIndex + ":" + clientKey;
+
+        ConcurrentHashMap<String, TokenBucket> stripe = stripeFor(key);
+        TokenBucket bucket = stripe.get(key);
+        if (bucket == null) {
+            // Make room before tracking a new client, this keeps memory bounded
+            if (stripe.size() >= properties.getMaxBucketsPerStripe()) {
+                evictIdle(stripe, now);
+                if (stripe.size() >= properties.getMaxBucketsPerStripe()) {
+                    evictLeastRecentlyUsed(stripe);
+                }
+            }
+            bucket = stripe.computeIfAbsent(key, k -> newBucket(route, now));
+        }
+
+        return bucket.tryConsume(now);
+    }
+
+    /**
+     * Removes the buckets that have been full for longer than the idle eviction time.
+     * It runs every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        int before = size();
+        for (ConcurrentHashMap<String, TokenBucket> stripe : stripes) {
+            evictIdle(stripe, now);
+        }
+        logger.debug("Evicted {} idle rate limit buckets", before - size());
+    }
+
+    /**
+     * Counts the buckets across all stripes.
+     *
+     * @return the number of tracked buckets.
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, TokenBucket> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private void evictIdle(ConcurrentHashMap<String, TokenBucket> stripe, long now) {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleEvictionMs());
+        stripe.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+    }
+
+    /**
+     * Removes the least recently used of a few buckets of a full stripe. The bucket with the earliest TAT is the one
+     * that has been used least recently and is closest to full, dropping it loses the least state.
+     * Sampling keeps the cost of a new client constant while a flood of new clients fills every stripe.
+     */
+    private void evictLeastRecentlyUsed(ConcurrentHashMap<String, TokenBucket> stripe) {
+        String oldestKey = null;
+        TokenBucket oldest = null;
+        Iterator<Map.Entry<String, TokenBucket>> entries = stripe.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLES && entries.hasNext(); i++) {
+            Map.Entry<String, TokenBucket> entry = entries.next();
+            if (oldest == null || entry.getValue().getTheoreticalArrivalTime() - oldest.getTheoreticalArrivalTime() < 0) {
+                oldestKey = entry.getKey();
+                oldest = entry.getValue();
+            }
+        }
+        if (oldest != null && stripe.remove(oldestKey, oldest)) {
+            logger.debug("Evicted active rate limit bucket {} from a full stripe", oldestKey);
+        }
+    }
+
+    private ConcurrentHashMap<String, TokenBucket> stripeFor(String key) {
+        int hash = key.hashCode();
+        // Spread the high bits so keys that only differ at the end land in different stripes
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+    private TokenBucket newBucket(RateLimitProperties.Route route, long now) {
+        long emissionInterval = TimeUnit.MILLISECONDS.toNanos(route.getRefillPeriodMs()) / Math.max(1, route.getRefillTokens());
+        long burstTolerance = emissionInterval * Math.max(1, route.getCapacity());
+        return new TokenBucket(emissionInterval, burstTolerance, now - burstTolerance);
+    }
+}
@@ -0,0 +1,83 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TokenBucket class is a lock-free token bucket for a single client.
+ *
+ * Instead of storing a token count and a refill timestamp, which would need a lock to update together,
+ * the bucket keeps a single "theoretical arrival time" (TAT) in an AtomicLong.
+ * Every accepted request pushes the TAT forward by one emission interval (the time it takes to refill one token).
+ * A request is rejected when accepting it would push the TAT further ahead of "now" than the burst capacity allows.
+ * This behaves exactly like a token bucket but only needs one compare-and-set per request.
+ */
+public class TokenBucket {
+
+    /** Nanoseconds needed to refill one token */
+    private final long emissionIntervalNanos;
+
+    /** How far the TAT may run ahead of now, i.e. the burst capacity expressed as time */
+    private final long burstToleranceNanos;
+
+    /** The theoretical arrival time of the next request in System.nanoTime() units */
+    private final AtomicLong theoreticalArrivalTime;
+
+    /**
+     * Constructs a TokenBucket that starts full.
+     *
+     * @param emissionIntervalNanos the nanoseconds needed to refill one token.
+     * @param burstToleranceNanos the burst capacity expressed in nanoseconds.
+     * @param nowNanos the current System.nanoTime() value.
+     */
+    public TokenBucket(long emissionIntervalNanos, long burstToleranceNanos, long nowNanos) {
+        this.emissionIntervalNanos = emissionIntervalNanos;
+        this.burstToleranceNanos = burstToleranceNanos;
+        this.theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Tries to take one token from the bucket.
+     *
+     * @param nowNanos the current System.nanoTime() value.
+     * @return 0 if the token was taken, otherwise the nanoseconds the caller has to wait before retrying.
+     */
+    public long tryConsume(long nowNanos) {
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            // A bucket that has been idle is full, so start counting from now
+            long newTat = Math.max(tat, nowNanos) + emissionIntervalNanos;
+            long aheadBy = newTat - nowNanos;
+
+            // Not enough tokens left, tell the caller how long until one is refilled
+            if (aheadBy > burstToleranceNanos) {
+                return aheadBy - burstToleranceNanos;
+            }
+
+            if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return 0;
+            }
+            // Another thread consumed a token at the same time, retry with the new TAT
+        }
+    }
+
+    /**
+     * Gets the theoretical arrival time, the bucket with the earliest one has been used least recently.
+     *
+     * @return the TAT in System.nanoTime() units.
+     */
+    long getTheoreticalArrivalTime() {
+        return theoreticalArrivalTime.get();
+    }
+
+    /**
+     * Checks if the bucket has been full for at least the given idle time.
+     * Full buckets carry no state, so they can be dropped and recreated later without changing behaviour.
+     *
+     * @param nowNanos the current System.nanoTime() value.
+     * @param idleNanos how long the bucket has to be full before it counts as idle.
+     * @return true if the bucket can be evicted, false otherwise.
+     */
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - theoreticalArrivalTime.get() >= idleNanos;
+    }
+}
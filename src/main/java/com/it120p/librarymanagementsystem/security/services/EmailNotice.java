@@ -0,0 +1,46 @@
+package com.it120p.librarymanagementsystem.security.services;
+
+/**
+ * The EmailNotice class holds the details of one plain text email.
+ * It is used to hand several emails to the EmailService at once, so they can be sent over a single SMTP connection.
+ */
+public class EmailNotice {
+    private final String to;
+
+    private final String subject;
+
+    private final String text;
+
+    private final String name;
+
+    /**
+     * Constructs an EmailNotice with the provided parameters.
+     *
+     * @param to the email address of the recipient.
+     * @param subject the subject of the email.
+     * @param text the body of the email.
+     * @param name the name of the recipient used in the greeting.
+     */
+    public EmailNotice(String to, String subject, String text, String name) {
+        this.to = to;
+        this.subject = subject;
+        this.text = text;
+        this.name = name;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,191 @@
+package com.it120p.librarymanagementsystem.security.services;
+
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.OrderSummaryRow;
+import com.it120p.librarymanagementsystem.service.StorageService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The EmailRenderer class renders the HTML order summary emails on its own thread pool.
+ *
+ * The order is read with one projection query and turned into an OrderSummaryView before rendering,
+ * so the template never walks lazy JPA associations. The template is parsed once when the application starts
+ * and then served from the Thymeleaf template cache. Book covers never change once stored,
+ * so their base64 encoding is kept in a small cache instead of being redone for every email.
+ */
+@Component
+public class EmailRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(EmailRenderer.class);
+
+    public static final String ORDER_SUMMARY_TEMPLATE = "emailTemplate";
+
+    public static final String ORDER_SUMMARY_SUBJECT = "Order Summary - Library Management System";
+
+    private static final String DATE_FORMAT = "MMM d, yyyy";
+
+    private final TemplateEngine templateEngine;
+
+    private final OrderRepository orderRepository;
+
+    private final StorageService storageService;
+
+    private final ExecutorService renderExecutor;
+
+    private final long coverCacheChars;
+
+    private final LinkedHashMap<String, String> coverCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedChars;
+
+    public EmailRenderer(TemplateEngine templateEngine, OrderRepository orderRepository, StorageService storageService,
+                         @Value("${it120p.app.emailRenderThreads}") int renderThreads,
+                         @Value("${it120p.app.emailCoverCacheBytes}") long coverCacheBytes) {
+        this.templateEngine = templateEngine;
+        this.orderRepository = orderRepository;
+        this.storageService = storageService;
+        // Base64 turns 3 bytes into 4 characters
+        this.coverCacheChars = coverCacheBytes / 3 * 4;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.renderExecutor = Executors.newFixedThreadPool(Math.max(1, renderThreads),
+                r -> new Thread(r, "email-render-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Parses the template once at startup, so the first order summary does not pay for it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        renderExecutor.execute(() -> {
+            try {
+                render(new OrderSummaryView(0L, "", "", "", "",
+                        List.of(new OrderSummaryView.BookLine("", "", null))));
+            } catch (RuntimeException e) {
+                logger.warn("Could not warm up the {} template: {}", ORDER_SUMMARY_TEMPLATE, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Loads and renders the summary of an order on the render pool.
+     *
+     * @param orderId the ID of the order.
+     * @return the rendered HTML, or an empty Optional if the order no longer exists.
+     */
+    public CompletableFuture<Optional<String>> renderOrderSummary(Long orderId) {
+        return CompletableFuture.supplyAsync(() -> loadOrderSummary(orderId).map(this::render), renderExecutor);
+    }
+
+    /**
+     * Renders the order summary template from a view model.
+     *
+     * @param view the order summary.
+     * @return the rendered HTML.
+     */
+    public String render(OrderSummaryView view) {
+        Context context = new Context();
+        context.setVariable("order", view);
+        return templateEngine.process(ORDER_SUMMARY_TEMPLATE, context);
+    }
+
+    /**
+     * Builds the view model of an order.
+     *
+     * @param orderId the ID of the order.
+     * @return the order summary, or an empty Optional if the order does not exist.
+     */
+    public Optional<OrderSummaryView> loadOrderSummary(Long orderId) {
+        List<OrderSummaryRow> rows = orderRepository.findSummaryRowsById(orderId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<OrderSummaryView.BookLine> books = new ArrayList<>(rows.size());
+        for (OrderSummaryRow row : rows) {
+            // An order without books still has one row from the left join
+            if (row.getTitle() != null) {
+                books.add(new OrderSummaryView.BookLine(row.getTitle(), row.getAuthor(), coverDataUri(row.getImagePath())));
+            }
+        }
+
+        OrderSummaryRow first = rows.get(0);
+        return Optional.of(new OrderSummaryView(first.getId(), first.getUserName(), String.valueOf(first.getStatus()),
+                format(first.getBorrowedAt()), format(first.getDueDate()), books));
+    }
+
+    /**
+     * Returns the cover of a book as a data URI, reading and encoding it only if it is not cached.
+     *
+     * @param imagePath the image name stored on the book.
+     * @return the data URI, or null if the image cannot be read.
+     */
+    private String coverDataUri(String imagePath) {
+        if (imagePath == null) {
+            return null;
+        }
+        synchronized (coverCache) {
+            String cached = coverCache.get(imagePath);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String dataUri;
+        try {
+            byte[] imageBytes = storageService.downloadImageFromFileSystem(imagePath);
+            dataUri = "data:" + storageService.contentTypeOf(imagePath) + ";base64,"
+                    + Base64.getEncoder().encodeToString(imageBytes);
+        } catch (IOException e) {
+            // A missing cover should not stop the summary from being sent
+            logger.warn("Could not read cover {}: {}", imagePath, e.getMessage());
+            return null;
+        }
+
+        if (dataUri.length() <= coverCacheChars) {
+            synchronized (coverCache) {
+                if (coverCache.put(imagePath, dataUri) == null) {
+                    cachedChars += dataUri.length();
+                }
+                // Evict the least recently used covers until the cache fits again
+                var eldest = coverCache.entrySet().iterator();
+                while (cachedChars > coverCacheChars && eldest.hasNext()) {
+                    Map.Entry<String, String> entry = eldest.next();
+                    cachedChars -= entry.getValue().length();
+                    eldest.remove();
+                }
+            }
+        }
+        return dataUri;
+    }
+
+    private static String format(Date date) {
+        // SimpleDateFormat is not thread-safe, a new one per call is cheaper than locking it
+        return date == null ? "" : new SimpleDateFormat(DATE_FORMAT).format(date);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdownNow();
+    }
+}
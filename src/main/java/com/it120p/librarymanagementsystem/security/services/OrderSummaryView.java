@@ -0,0 +1,95 @@
+package com.it120p.librarymanagementsystem.security.services;
+
+import java.util.List;
+
+/**
+ * The OrderSummaryView class holds everything the order summary email shows, already formatted.
+ * The template only reads these strings, it never touches a JPA entity, so rendering
+ * cannot trigger a lazy load and works on any thread.
+ */
+public class OrderSummaryView {
+    private final Long orderId;
+
+    private final String name;
+
+    private final String status;
+
+    private final String orderDate;
+
+    private final String dueDate;
+
+    private final List<BookLine> books;
+
+    /**
+     * Constructs an OrderSummaryView with the provided parameters.
+     *
+     * @param orderId the ID of the order.
+     * @param name the name of the user who placed the order.
+     * @param status the status of the order.
+     * @param orderDate the formatted borrow date.
+     * @param dueDate the formatted due date.
+     * @param books the books of the order.
+     */
+    public OrderSummaryView(Long orderId, String name, String status, String orderDate, String dueDate, List<BookLine> books) {
+        this.orderId = orderId;
+        this.name = name;
+        this.status = status;
+        this.orderDate = orderDate;
+        this.dueDate = dueDate;
+        this.books = books;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getOrderDate() {
+        return orderDate;
+    }
+
+    public String getDueDate() {
+        return dueDate;
+    }
+
+    public List<BookLine> getBooks() {
+        return books;
+    }
+
+    /**
+     * The BookLine class is one book of the summary.
+     * The cover is a data URI, or null if the book has no readable image.
+     */
+    public static class BookLine {
+        private final String title;
+
+        private final String author;
+
+        private final String coverDataUri;
+
+        public BookLine(String title, String author, String coverDataUri) {
+            this.title = title;
+            this.author = author;
+            this.coverDataUri = coverDataUri;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public String getCoverDataUri() {
+            return coverDataUri;
+        }
+    }
+}
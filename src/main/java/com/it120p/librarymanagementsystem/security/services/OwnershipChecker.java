@@ -0,0 +1,28 @@
+package com.it120p.librarymanagementsystem.security.services;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+/**
+ * The OwnershipChecker class decides if the caller may act on the data of a user.
+ *
+ * It is used in method security expressions, e.g. @PreAuthorize("@ownership.isSelfOrAdmin(authentication, #userId)").
+ * The check only reads the UserDetailsImpl already in the security context, so it costs no database access.
+ */
+@Component("ownership")
+public class OwnershipChecker {
+
+    /**
+     * Checks if the caller is the given user or an admin.
+     *
+     * @param authentication the authentication of the caller.
+     * @param userId the ID of the user owning the data.
+     * @return true if the caller may access the data, false otherwise.
+     */
+    public boolean isSelfOrAdmin(Authentication authentication, Long userId) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImpl principal)) {
+            return false;
+        }
+        return principal.isAdmin() || principal.getId().equals(userId);
+    }
+}
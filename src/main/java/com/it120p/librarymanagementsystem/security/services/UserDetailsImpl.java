@@ -31,6 +31,8 @@ public class UserDetailsImpl implements UserDetails {
 
     private String name;
 
+    private Long branchId;
+
     @JsonIgnore
     private String password;
 
@@ -43,15 +45,17 @@ public class UserDetailsImpl implements UserDetails {
      * @param username the username of the user.
      * @param name the name of the user.
      * @param email the email of the user.
+     * @param branchId the home branch of the user.
      * @param password the password of the user.
      * @param authorities the authorities granted to the user.
      */
-    public UserDetailsImpl(Long id, String username, String name, String email, String password,
+    public UserDetailsImpl(Long id, String username, String name, String email, Long branchId, String password,
                            Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
         this.username = username;
         this.name = name;
         this.email = email;
+        this.branchId = branchId;
         this.password = password;
         this.authorities = authorities;
     }
@@ -69,12 +73,13 @@ public class UserDetailsImpl implements UserDetails {
                 .map(role -> new SimpleGrantedAuthority(role.getName().name()))
                 .collect(Collectors.toList());
 
-        // Return a new UserDetailsImpl object with the user's ID, username, name, email, password, and authorities.
+        // Return a new UserDetailsImpl object with the user's ID, username, name, email, branch, password, and authorities.
         return new UserDetailsImpl(
                 user.getId(),
                 user.getUsername(),
                 user.getName(),
                 user.getEmail(),
+                user.getBranchId(),
                 user.getPassword(),
                 authorities);
     }
@@ -96,10 +101,29 @@ public class UserDetailsImpl implements UserDetails {
         return id;
     }
 
+    /**
+     * Checks if the user has the ROLE_ADMIN authority, without loading the roles from the database.
+     *
+     * @return true if the user is an admin, false otherwise.
+     */
+    @JsonIgnore
+    public boolean isAdmin() {
+        return authorities.stream().anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+    }
+
     public String getEmail() {
         return email;
     }
 
+    /**
+     * Gets the home branch of the user, the only branch a user who is not an admin can work in.
+     *
+     * @return the ID of the branch.
+     */
+    public Long getBranchId() {
+        return branchId;
+    }
+
     @Override
     public String getPassword() {
         return password;
@@ -1,29 +1,27 @@
 package com.it120p.librarymanagementsystem.security.services.impl;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import com.it120p.librarymanagementsystem.model.Book;
-import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.security.services.EmailNotice;
 import com.it120p.librarymanagementsystem.security.services.EmailService;
-import com.it120p.librarymanagementsystem.service.StorageService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.mail.javamail.MimeMessagePreparator;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
-import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
     public static final String NEW_USER_ACCOUNT_CREATED = "New User Account Created";
 
-    private final TemplateEngine templateEngine;
-
     @Value("${spring.mail.host}")
     private String host;
 
@@ -32,22 +30,68 @@ public class EmailServiceImpl implements EmailService {
 
     private final JavaMailSender emailSender;
 
-    private final StorageService storageService;
-
     @Override
     public void sendSimpleMailMessage(String to, String subject, String text, String name) {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setSubject(subject);
-            message.setFrom(fromEmail);
-            message.setTo(to);
-            message.setText("Hello " + name + ",\n\n" + text + "\n\n" + "Thank you for using our service.\n\n" + "Best Regards,\n" + "Library Management System");
+            emailSender.send(buildSimpleMailMessage(to, subject, text, name));
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            throw new RuntimeException("Email sending failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends several plain text emails in one call.
+     * JavaMailSender sends all messages of a single send() call over the same SMTP connection,
+     * and a message the server refuses does not stop the others.
+     *
+     * @param notices the emails to be sent.
+     * @return the emails that could not be sent, with the error of each one. It is empty when every email went out.
+     * @throws RuntimeException if the failure is not tied to single emails, e.g. the SMTP login was refused.
+     */
+    @Override
+    public Map<EmailNotice, String> sendSimpleMailMessages(List<EmailNotice> notices) {
+        Map<EmailNotice, String> failed = new LinkedHashMap<>();
+        if (notices.isEmpty()) {
+            return failed;
+        }
 
-            emailSender.send(message);
+        // SimpleMailMessage compares by content, two equal emails must still map back to their own notice
+        Map<SimpleMailMessage, EmailNotice> byMessage = new IdentityHashMap<>();
+        SimpleMailMessage[] messages = new SimpleMailMessage[notices.size()];
+        for (int i = 0; i < messages.length; i++) {
+            EmailNotice notice = notices.get(i);
+            messages[i] = buildSimpleMailMessage(notice.getTo(), notice.getSubject(), notice.getText(), notice.getName());
+            byMessage.put(messages[i], notice);
+        }
+
+        try {
+            emailSender.send(messages);
+        } catch (MailSendException e) {
+            // The failed messages are the ones handed to send(), every other message went out
+            e.getFailedMessages().forEach((message, error) -> {
+                EmailNotice notice = byMessage.get(message);
+                if (notice != null) {
+                    failed.put(notice, error.getMessage());
+                }
+            });
+            if (failed.isEmpty()) {
+                throw new RuntimeException("Email sending failed: " + e.getMessage());
+            }
         } catch (Exception e) {
             System.out.println(e.getMessage());
             throw new RuntimeException("Email sending failed: " + e.getMessage());
         }
+        return failed;
+    }
+
+    private SimpleMailMessage buildSimpleMailMessage(String to, String subject, String text, String name) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setSubject(subject);
+        message.setFrom(fromEmail);
+        message.setTo(to);
+        message.setText("Hello " + name + ",\n\n" + text + "\n\n" + "Thank you for using our service.\n\n" + "Best Regards,\n" + "Library Management System");
+        return message;
     }
 
     @Override
@@ -65,33 +109,22 @@ public class EmailServiceImpl implements EmailService {
 
     }
 
+    /**
+     * Sends an HTML email that has already been rendered, see EmailRenderer.
+     *
+     * @param to the email address of the recipient.
+     * @param subject the subject of the email.
+     * @param html the rendered body of the email.
+     */
     @Override
-    public void sendHtmlEmail(String to, String subject, String text, String name, Order order) {
+    public void sendHtmlEmail(String to, String subject, String html) {
         try {
-            Context context = new Context();
-            context.setVariable("order", order);
-            context.setVariable("orderId", order.getId());
-            context.setVariable("name", order.getUser().getName());
-            context.setVariable("orderStatus", order.getStatus());
-            context.setVariable("orderDate", order.getBorrowed_at());
-            context.setVariable("dueDate", order.getDue_date());
-            context.setVariable("books", order.getBooks());
-
-            // Add the book images
-            for (Book book : order.getBooks()) {
-                byte[] imageBytes = storageService.downloadImageFromFileSystem(book.getImagePath());
-                String imageBase64 = Base64.getEncoder().encodeToString(imageBytes);
-                context.setVariable("image_" + book.getId(), imageBase64);
-            }
-
-            String process = templateEngine.process("emailTemplate", context);
-
             MimeMessagePreparator messagePreparator = mimeMessage -> {
                 MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
                 messageHelper.setFrom(fromEmail);
                 messageHelper.setTo(to);
-                messageHelper.setSubject("Order Summary - Library Management System");
-                messageHelper.setText(process, true);
+                messageHelper.setSubject(subject);
+                messageHelper.setText(html, true);
             };
 
             emailSender.send(messagePreparator);
@@ -0,0 +1,206 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ActivityLog class records checkouts, returns, renewals, logins and admin edits in the library_logs table.
+ *
+ * Recording an action does not touch the database. The entry is put in a fixed-size ring buffer with one
+ * compare-and-set, and a single writer thread takes the entries out and inserts them with one JDBC batch.
+ * A request therefore only pays for creating the entry. When the writer falls so far behind that the buffer
+ * is full, new entries are dropped and counted instead of blocking the request, the count is logged.
+ * Entries still in the buffer when the application is killed are lost, the log is an audit trail, not a ledger.
+ */
+@Service
+public class ActivityLog {
+    private static final Logger logger = LoggerFactory.getLogger(ActivityLog.class);
+
+    private static final String INSERT_LOG = "insert into library_logs " +
+            "(action, actor_id, actor_name, target_type, target_id, detail, created_at) values (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * One entry waiting to be written.
+     */
+    private record Entry(LibraryLogAction action, Long actorId, String actorName,
+                         String targetType, Long targetId, String detail, long createdAt) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    private final int mask;
+
+    /** The next slot to be claimed by a producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The next slot to be read, only the writer moves it */
+    private volatile long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final int batchSize;
+
+    private final long flushNanos;
+
+    private final Thread writer = new Thread(this::run, "activity-log-writer");
+
+    private volatile boolean running = true;
+
+    public ActivityLog(JdbcTemplate jdbcTemplate,
+                       @Value("${it120p.app.activityLogCapacity}") int capacity,
+                       @Value("${it120p.app.activityLogBatchSize}") int batchSize,
+                       @Value("${it120p.app.activityLogFlushMs}") long flushMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // The slot of a sequence number is found with a mask, so the size is rounded up to a power of two
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMs));
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records an action done by the authenticated user, or by nobody if the request is anonymous.
+     *
+     * @param action the action.
+     * @param targetType the kind of record the action was about, e.g. ORDER.
+     * @param targetId the ID of the record.
+     * @param detail a short description, it is cut to LibraryLog.MAX_DETAIL_LENGTH.
+     */
+    public void record(LibraryLogAction action, String targetType, Long targetId, String detail) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl principal) {
+            record(action, principal.getId(), principal.getUsername(), targetType, targetId, detail);
+        } else {
+            record(action, null, null, targetType, targetId, detail);
+        }
+    }
+
+    /**
+     * Records an action done by the given user.
+     *
+     * @param action the action.
+     * @param actorId the ID of the user, or null.
+     * @param actorName the username of the user, or null.
+     * @param targetType the kind of record the action was about, e.g. ORDER.
+     * @param targetId the ID of the record.
+     * @param detail a short description, it is cut to LibraryLog.MAX_DETAIL_LENGTH.
+     */
+    public void record(LibraryLogAction action, Long actorId, String actorName,
+                       String targetType, Long targetId, String detail) {
+        if (detail != null && detail.length() > LibraryLog.MAX_DETAIL_LENGTH) {
+            detail = detail.substring(0, LibraryLog.MAX_DETAIL_LENGTH);
+        }
+        Entry entry = new Entry(action, actorId, actorName, targetType, targetId, detail, System.currentTimeMillis());
+
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        // The writer waits for the slot to be filled, so a claimed slot is never skipped
+        slots.setRelease((int) sequence & mask, entry);
+    }
+
+    /**
+     * Takes the entries out of the buffer and writes them until the application stops.
+     */
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            drain(batch);
+            if (batch.isEmpty()) {
+                reportDropped();
+                LockSupport.parkNanos(this, flushNanos);
+                continue;
+            }
+            write(batch);
+            batch.clear();
+        }
+
+        // Write what is left on shutdown
+        do {
+            batch.clear();
+            drain(batch);
+            write(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private void drain(List<Entry> batch) {
+        long next = head;
+        while (batch.size() < batchSize) {
+            int slot = (int) next & mask;
+            Entry entry = slots.getAcquire(slot);
+            if (entry == null) {
+                // Either the buffer is empty or a producer claimed the slot and is about to fill it
+                break;
+            }
+            slots.setRelease(slot, null);
+            batch.add(entry);
+            next++;
+        }
+        head = next;
+    }
+
+    private void write(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_LOG, batch, batch.size(), (ps, entry) -> {
+                ps.setString(1, entry.action().name());
+                ps.setObject(2, entry.actorId());
+                ps.setString(3, entry.actorName());
+                ps.setString(4, entry.targetType());
+                ps.setObject(5, entry.targetId());
+                ps.setString(6, entry.detail());
+                ps.setTimestamp(7, new Timestamp(entry.createdAt()));
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not write {} activity log entries: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            logger.warn("Activity log buffer was full, {} entries were dropped", count);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
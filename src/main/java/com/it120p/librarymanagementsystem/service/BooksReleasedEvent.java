@@ -0,0 +1,12 @@
+package com.it120p.librarymanagementsystem.service;
+
+import java.util.Collection;
+
+/**
+ * The BooksReleasedEvent record is published when orders are returned and their books are free again.
+ * The HoldService listens for it after the transaction commits and hands the books to the next users waiting.
+ *
+ * @param bookIds the IDs of the books that were returned.
+ */
+public record BooksReleasedEvent(Collection<Long> bookIds) {
+}
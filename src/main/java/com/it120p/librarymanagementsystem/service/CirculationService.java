@@ -0,0 +1,170 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.payload.response.TransitionOutcome;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.OrderState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The CirculationService class handles the bulk pickup, return and overdue transitions used by the circulation desk.
+ *
+ * Every transition reads and locks all orders in one query and changes them with one conditional UPDATE.
+ * A second desk scanning the same orders waits for the lock and then sees them changed, so a change is applied,
+ * reported and notified once, whatever the isolation level of the database.
+ * The WHERE clause of the UPDATE still repeats the state check.
+ * The notifications are grouped per user and written to the outbox in the same transaction.
+ */
+@Service
+public class CirculationService {
+    private final OrderRepository orderRepository;
+    private final OutboxService outboxService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public CirculationService(OrderRepository orderRepository, OutboxService outboxService,
+                              ApplicationEventPublisher eventPublisher) {
+        this.orderRepository = orderRepository;
+        this.outboxService = outboxService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Marks several orders as picked up.
+     *
+     * @param orderIds the IDs of the orders.
+     * @return the outcome for each order ID.
+     */
+    @Transactional
+    public Map<Long, TransitionOutcome> pickupOrders(List<Long> orderIds) {
+        return transition(orderIds,
+                state -> !state.getPickedUp(),
+                orderRepository::markPickedUp,
+                OrderEventType.PICKED_UP,
+                "Order Picked Up",
+                "The following order(s) have been picked up: ");
+    }
+
+    /**
+     * Marks several orders as returned and sets their return date to now.
+     * The returned books are handed to the users waiting for them once the transaction commits, see HoldService.
+     *
+     * @param orderIds the IDs of the orders.
+     * @return the outcome for each order ID.
+     */
+    @Transactional
+    public Map<Long, TransitionOutcome> returnOrders(List<Long> orderIds) {
+        Date returnedAt = new Date();
+        Map<Long, TransitionOutcome> outcomes = transition(orderIds,
+                state -> state.getStatus() != OrderStatus.RETURNED,
+                ids -> orderRepository.markReturned(ids, returnedAt),
+                OrderEventType.RETURNED,
+                "Order Returned",
+                "The following order(s) have been returned: ");
+
+        List<Long> returned = outcomes.entrySet().stream()
+                .filter(entry -> entry.getValue() == TransitionOutcome.UPDATED)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!returned.isEmpty()) {
+            eventPublisher.publishEvent(new BooksReleasedEvent(orderRepository.findBookIdsByOrderIdIn(returned)));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Marks several borrowed orders as overdue.
+     *
+     * @param orderIds the IDs of the orders.
+     * @return the outcome for each order ID.
+     */
+    @Transactional
+    public Map<Long, TransitionOutcome> overdueOrders(List<Long> orderIds) {
+        return transition(orderIds,
+                state -> state.getStatus() == OrderStatus.BORROWED,
+                orderRepository::markOverdue,
+                OrderEventType.OVERDUE,
+                "Order Overdue",
+                "The following order(s) are now overdue. Please return the book(s) as soon as possible: ");
+    }
+
+    /**
+     * Applies one state change to a list of orders.
+     *
+     * @param orderIds the IDs of the orders.
+     * @param eligible checks if an order can make the change.
+     * @param update the conditional UPDATE, it returns the number of rows changed.
+     * @param eventType the type of the notification.
+     * @param subject the subject of the notification email.
+     * @param text the text of the notification email, the order IDs are appended to it.
+     * @return the outcome for each order ID, in the same order as the request.
+     */
+    private Map<Long, TransitionOutcome> transition(List<Long> orderIds,
+                                                    Predicate<OrderState> eligible,
+                                                    Function<Set<Long>, Integer> update,
+                                                    OrderEventType eventType,
+                                                    String subject,
+                                                    String text) {
+        // Remove duplicate scans but keep the order of the request
+        Set<Long> ids = new LinkedHashSet<>(orderIds);
+        Map<Long, TransitionOutcome> outcomes = new LinkedHashMap<>();
+        ids.forEach(id -> outcomes.put(id, TransitionOutcome.NOT_FOUND));
+        if (ids.isEmpty()) {
+            return outcomes;
+        }
+
+        List<OrderState> states = orderRepository.findStatesByIdIn(ids);
+        List<OrderState> toUpdate = new ArrayList<>();
+        for (OrderState state : states) {
+            if (!BranchContext.isVisible(state.getBranchId())) {
+                // An order of another branch cannot be scanned at this desk, it stays NOT_FOUND
+                continue;
+            }
+            if (eligible.test(state)) {
+                toUpdate.add(state);
+            } else {
+                outcomes.put(state.getId(), TransitionOutcome.UNCHANGED);
+            }
+        }
+
+        if (toUpdate.isEmpty()) {
+            return outcomes;
+        }
+
+        // The orders are locked since the read, so the conditional UPDATE changes every one of them
+        update.apply(toUpdate.stream().map(OrderState::getId).collect(Collectors.toSet()));
+        toUpdate.forEach(state -> outcomes.put(state.getId(), TransitionOutcome.UPDATED));
+
+        notifyUsers(toUpdate, eventType, subject, text);
+        return outcomes;
+    }
+
+    /**
+     * Groups the changed orders per user and records one notification per user in the outbox.
+     */
+    private void notifyUsers(List<OrderState> changed, OrderEventType eventType, String subject, String text) {
+        Map<String, List<OrderState>> byEmail = changed.stream()
+                .collect(Collectors.groupingBy(OrderState::getUserEmail, LinkedHashMap::new, Collectors.toList()));
+
+        byEmail.forEach((email, orders) -> {
+            String orderIds = orders.stream().map(order -> "#" + order.getId()).collect(Collectors.joining(", "));
+            // A notice that covers several orders is not tied to a single order ID
+            Long orderId = orders.size() == 1 ? orders.get(0).getId() : null;
+            outboxService.record(orderId, email, orders.get(0).getUserName(), eventType, subject, text + orderIds + ".");
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.ReadFromReplica;
+import com.it120p.librarymanagementsystem.exception.FinePaymentNotAllowedException;
+import com.it120p.librarymanagementsystem.model.FineBalance;
+import com.it120p.librarymanagementsystem.model.FineEntryType;
+import com.it120p.librarymanagementsystem.model.FineLedgerEntry;
+import com.it120p.librarymanagementsystem.repository.FineBalanceRepository;
+import com.it120p.librarymanagementsystem.repository.FineLedgerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * The FineService class charges fines for overdue orders and keeps the balance every user owes.
+ *
+ * Every night each BORROWED or OVERDUE order past its due date is fined once. The accrual is set based:
+ * per shard one INSERT ... SELECT writes the ledger entries and one INSERT ... ON DUPLICATE KEY UPDATE moves the
+ * balances, both in the same transaction. No order is loaded into the application, so the cost grows with the
+ * number of rows the database writes, not with round trips. The shards are claimed through the JobLeaseService
+ * like the other nightly jobs, and a shard covers whole users, so the running balances of a user are written together.
+ * A shard that fails is redone for its own day by the catch-up sweep of the JobLeaseService, so no day of fines is lost.
+ *
+ * The ledger INSERT reads the balances it starts from with shared locks. A payment made at the same time
+ * either waits for the accrual to commit or is committed before the accrual reads the balance.
+ */
+@Service
+public class FineService {
+    private static final Logger logger = LoggerFactory.getLogger(FineService.class);
+
+    private static final String ACCRUAL_JOB = "accrueFines";
+
+    private final FineLedgerRepository fineLedgerRepository;
+    private final FineBalanceRepository fineBalanceRepository;
+    private final JobLeaseService jobLeaseService;
+    private final TransactionTemplate transactionTemplate;
+    private final BigDecimal finePerDay;
+
+    public FineService(FineLedgerRepository fineLedgerRepository, FineBalanceRepository fineBalanceRepository,
+                       JobLeaseService jobLeaseService, PlatformTransactionManager transactionManager,
+                       @Value("${it120p.app.finePerDay}") BigDecimal finePerDay) {
+        this.fineLedgerRepository = fineLedgerRepository;
+        this.fineBalanceRepository = fineBalanceRepository;
+        this.jobLeaseService = jobLeaseService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.finePerDay = finePerDay;
+        jobLeaseService.register(ACCRUAL_JOB, (runKey, shard) -> accrueShard(LocalDate.parse(runKey), shard));
+    }
+
+    /**
+     * Charges the fines of the day. It runs after the overdue orders are flagged at midnight.
+     */
+    @Scheduled(cron = "${it120p.app.fineAccrualCron}")
+    public void accrueFines() {
+        accrue(LocalDate.now());
+    }
+
+    /**
+     * Fines every open order that was due before the given day started, once for that day.
+     * Every app instance can call it, each shard is accrued by the instance that claims it.
+     *
+     * @param day the day the fines are for.
+     */
+    public void accrue(LocalDate day) {
+        jobLeaseService.runSharded(ACCRUAL_JOB, day.toString());
+    }
+
+    private void accrueShard(LocalDate day, int shard) {
+        Date dayStart = Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        int shards = jobLeaseService.getShardCount();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            long fromId = fineLedgerRepository.findMaxId();
+            Date now = new Date();
+            int fined = fineLedgerRepository.accrue(day, dayStart, finePerDay, now, shards, shard);
+            if (fined > 0) {
+                fineBalanceRepository.applyAccruals(fromId, now, shards, shard);
+            }
+            logger.info("Fined {} orders on shard {} for {}", fined, shard, day);
+        });
+    }
+
+    /**
+     * Gets the balance of a user.
+     *
+     * @param userId the ID of the user.
+     * @return the balance, zero for a user who was never fined.
+     */
+    @Transactional(readOnly = true)
+    public FineBalance getBalance(Long userId) {
+        return fineBalanceRepository.findById(userId).orElseGet(() -> new FineBalance(userId));
+    }
+
+    /**
+     * Gets a page of the ledger of a user, newest first.
+     * The history may be read from the replica, the balance is always read from the primary.
+     *
+     * @param userId the ID of the user.
+     * @param pageable the page to read.
+     * @return the ledger entries.
+     */
+    @ReadFromReplica
+    public Page<FineLedgerEntry> getLedger(Long userId, Pageable pageable) {
+        return fineLedgerRepository.findByUserIdOrderByIdDesc(userId, pageable);
+    }
+
+    /**
+     * Records a payment. The balance is lowered with a guarded UPDATE, so it never goes below zero,
+     * and the payment is added to the ledger with the balance that is left.
+     *
+     * @param userId the ID of the user.
+     * @param amount the amount paid, it has to be positive.
+     * @return the ledger entry of the payment.
+     * @throws FinePaymentNotAllowedException if the user owes less than the amount.
+     */
+    @Transactional
+    public FineLedgerEntry recordPayment(Long userId, BigDecimal amount) {
+        Date now = new Date();
+        if (fineBalanceRepository.pay(userId, amount, now) == 0) {
+            throw new FinePaymentNotAllowedException(userId, amount);
+        }
+        // The UPDATE holds the row lock until the commit, the balance read here is the one after this payment
+        BigDecimal balance = fineBalanceRepository.findBalance(userId);
+        return fineLedgerRepository.save(new FineLedgerEntry(userId, FineEntryType.PAYMENT, now, amount.negate(), balance));
+    }
+}
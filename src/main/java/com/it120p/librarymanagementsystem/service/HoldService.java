@@ -0,0 +1,287 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.exception.BookNotFoundException;
+import com.it120p.librarymanagementsystem.exception.HoldNotAllowedException;
+import com.it120p.librarymanagementsystem.exception.HoldNotFoundException;
+import com.it120p.librarymanagementsystem.model.Hold;
+import com.it120p.librarymanagementsystem.model.HoldStatus;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.HoldRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HoldService class manages the waiting lists of books.
+ *
+ * A user places a hold on a book that is on loan and waits in a first come, first served queue.
+ * When the book is returned, the oldest WAITING hold is promoted to READY and the user is notified through the outbox.
+ * The user then has it120p.app.holdPickupHours to borrow the book, after that the hold expires and the next user is promoted.
+ *
+ * Every step on a hold is a guarded UPDATE, and the unique ready_book_id column guarantees that a book is
+ * set aside for at most one user. Several nodes can promote the same book at the same time, only one of them wins.
+ * A promotion and a checkout of the same book both start by locking the row of the book, so a promotion never sees
+ * the book as free while a checkout of it is being committed, and a checkout never misses a hold promoted meanwhile.
+ * The unique active_book_id and user_id columns keep a user from queueing twice for the same book.
+ * Promotions run after the return is committed, and a periodic sweep catches any promotion that was missed
+ * (e.g. a node stopped right after a return).
+ */
+@Service
+public class HoldService {
+    private static final Logger logger = LoggerFactory.getLogger(HoldService.class);
+
+    private static final List<HoldStatus> ACTIVE = List.of(HoldStatus.WAITING, HoldStatus.READY);
+
+    /** How many times a promotion moves down the queue when the head hold was cancelled concurrently */
+    private static final int MAX_PROMOTION_ATTEMPTS = 5;
+
+    private final HoldRepository holdRepository;
+
+    private final OrderRepository orderRepository;
+
+    private final BookRepository bookRepository;
+
+    private final UserRepository userRepository;
+
+    private final OutboxService outboxService;
+
+    private final TransactionTemplate newTransaction;
+
+    private final long pickupMillis;
+
+    public HoldService(HoldRepository holdRepository, OrderRepository orderRepository, BookRepository bookRepository,
+                       UserRepository userRepository, OutboxService outboxService,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${it120p.app.holdPickupHours}") long pickupHours) {
+        this.holdRepository = holdRepository;
+        this.orderRepository = orderRepository;
+        this.bookRepository = bookRepository;
+        this.userRepository = userRepository;
+        this.outboxService = outboxService;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.pickupMillis = TimeUnit.HOURS.toMillis(pickupHours);
+    }
+
+    /**
+     * Puts a user in the queue of a book.
+     * If the book happens to be free, the hold is promoted right away.
+     *
+     * @param bookId the ID of the book.
+     * @param userId the ID of the user.
+     * @return the new hold.
+     * @throws BookNotFoundException if the book does not exist.
+     * @throws HoldNotAllowedException if the user already has a hold on the book.
+     */
+    public Hold placeHold(Long bookId, Long userId) {
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException(bookId);
+        }
+        if (holdRepository.existsByBookIdAndUserIdAndStatusIn(bookId, userId, ACTIVE)) {
+            throw new HoldNotAllowedException(bookId, "You already have a hold on this book.");
+        }
+
+        Hold hold;
+        try {
+            hold = holdRepository.save(new Hold(bookId, userId));
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request of the same user placed the hold between the check and the insert
+            throw new HoldNotAllowedException(bookId, "You already have a hold on this book.");
+        }
+        promoteNext(bookId);
+        return holdRepository.findById(hold.getId()).orElse(hold);
+    }
+
+    /**
+     * Gets the holds of a user, newest first.
+     *
+     * @param userId the ID of the user.
+     * @return the holds of the user.
+     */
+    public List<Hold> getHolds(Long userId) {
+        return holdRepository.findByUserIdOrderByIdDesc(userId);
+    }
+
+    /**
+     * Gets the queue of a book, the READY hold first if there is one.
+     *
+     * @param bookId the ID of the book.
+     * @return the WAITING and READY holds of the book in queue order.
+     */
+    public List<Hold> getQueue(Long bookId) {
+        return holdRepository.findByBookIdAndStatusInOrderByIdAsc(bookId, ACTIVE);
+    }
+
+    /**
+     * Gets the number of users ahead of a hold in the queue.
+     *
+     * @param hold the hold.
+     * @return the number of WAITING holds placed before it.
+     */
+    public long getPosition(Hold hold) {
+        return holdRepository.countAhead(hold.getBookId(), hold.getId());
+    }
+
+    /**
+     * Cancels a hold. If the book was set aside for it, the next user is promoted.
+     *
+     * @param holdId the ID of the hold.
+     * @param userId the ID of the user asking.
+     * @param isAdmin true if the user asking is an admin.
+     * @throws HoldNotFoundException if the hold does not exist.
+     * @throws AccessDeniedException if the hold belongs to someone else and the user is not an admin.
+     * @throws HoldNotAllowedException if the hold has already ended.
+     */
+    public void cancelHold(Long holdId, Long userId, boolean isAdmin) {
+        Hold hold = holdRepository.findById(holdId).orElseThrow(() -> new HoldNotFoundException(holdId));
+        if (!hold.getUserId().equals(userId) && !isAdmin) {
+            throw new AccessDeniedException("You do not have permission to cancel this hold.");
+        }
+
+        Integer closed = newTransaction.execute(status -> holdRepository.close(holdId, ACTIVE, HoldStatus.CANCELLED));
+        if (closed == null || closed == 0) {
+            throw new HoldNotAllowedException(hold.getBookId(), "The hold has already ended.");
+        }
+        promoteNext(hold.getBookId());
+    }
+
+    /**
+     * Checks the holds of the books of a new order and fulfills the borrower's own holds on them.
+     * It joins the transaction of the order, so a rejected order leaves the holds untouched.
+     * The books are locked in ID order until the order is committed, so two orders cannot deadlock
+     * and no promotion of these books runs meanwhile, see tryPromote. It has to run before the order reads anything.
+     *
+     * @param bookIds the IDs of the books being borrowed.
+     * @param userId the ID of the borrower.
+     * @throws HoldNotAllowedException if another user is waiting for one of the books or has it set aside.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void claimForCheckout(Collection<Long> bookIds, Long userId) {
+        List<Long> sortedIds = bookIds.stream().distinct().sorted().toList();
+        sortedIds.forEach(bookRepository::lockById);
+        for (Long bookId : sortedIds) {
+            if (holdRepository.existsAheadOf(bookId, userId)) {
+                throw new HoldNotAllowedException(bookId, "The book is reserved for another user.");
+            }
+            holdRepository.fulfill(bookId, userId);
+        }
+    }
+
+    /**
+     * Checks if other users are waiting for a book, used to refuse renewals.
+     *
+     * @param bookIds the IDs of the books.
+     * @param userId the ID of the user renewing.
+     * @return true if another user holds one of the books.
+     */
+    public boolean isWantedByOthers(Collection<Long> bookIds, Long userId) {
+        return bookIds.stream().anyMatch(bookId -> holdRepository.existsAheadOf(bookId, userId));
+    }
+
+    /**
+     * Promotes the next holds once the returned books are committed.
+     * fallbackExecution covers the returns that are saved without a surrounding transaction.
+     *
+     * @param event the returned books.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksReleased(BooksReleasedEvent event) {
+        for (Long bookId : event.bookIds()) {
+            promoteNext(bookId);
+        }
+    }
+
+    /**
+     * Expires the READY holds that were not picked up in time, and promotes any book whose promotion was missed.
+     * Every node runs it, the guarded updates make the concurrent runs harmless.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.holdSweepMs}")
+    public void sweepHolds() {
+        for (Hold hold : holdRepository.findExpired(new Date())) {
+            Integer expired = newTransaction.execute(status ->
+                    holdRepository.close(hold.getId(), List.of(HoldStatus.READY), HoldStatus.EXPIRED));
+            if (expired != null && expired == 1) {
+                logger.debug("Hold {} on book {} expired", hold.getId(), hold.getBookId());
+                promoteNext(hold.getBookId());
+            }
+        }
+
+        for (Long bookId : holdRepository.findBooksWithWaitingHolds()) {
+            promoteNext(bookId);
+        }
+    }
+
+    /**
+     * Sets a book aside for the oldest WAITING hold, if the book is free and not already set aside.
+     * Each attempt is its own transaction, so losing the race on the unique constraint only rolls back that attempt.
+     *
+     * @param bookId the ID of the book.
+     */
+    public void promoteNext(Long bookId) {
+        for (int attempt = 0; attempt < MAX_PROMOTION_ATTEMPTS; attempt++) {
+            try {
+                Boolean done = newTransaction.execute(status -> tryPromote(bookId));
+                if (Boolean.TRUE.equals(done)) {
+                    return;
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Another node set the book aside first
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one promotion attempt, holding the lock on the book.
+     *
+     * @return true when there is nothing more to do, false when the head hold was cancelled and the next one should be tried.
+     */
+    private boolean tryPromote(Long bookId) {
+        // Wait for a checkout of the book to commit, then decide on what it left
+        if (bookRepository.lockById(bookId) == null) {
+            return true;
+        }
+        if (orderRepository.isOnLoan(bookId) || holdRepository.existsReady(bookId)) {
+            return true;
+        }
+        List<Long> head = holdRepository.findQueueHead(bookId, PageRequest.of(0, 1));
+        if (head.isEmpty()) {
+            return true;
+        }
+
+        Long holdId = head.get(0);
+        Date now = new Date();
+        if (holdRepository.promote(holdId, bookId, now, new Date(now.getTime() + pickupMillis)) == 0) {
+            return false;
+        }
+
+        Hold hold = holdRepository.findById(holdId).orElseThrow(() -> new HoldNotFoundException(holdId));
+        User user = userRepository.findById(hold.getUserId()).orElse(null);
+        if (user != null) {
+            String title = bookRepository.findById(bookId).map(book -> book.getTitle()).orElse("the book you reserved");
+            outboxService.record(null, user.getEmail(), user.getName(), OrderEventType.HOLD_READY, "Your Hold Is Ready",
+                    "The book " + title + " is ready for you. Please borrow it before " + hold.getExpires_at() + ".");
+        }
+        return true;
+    }
+}
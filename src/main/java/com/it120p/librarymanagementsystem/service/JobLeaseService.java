@@ -0,0 +1,141 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.JobLease;
+import com.it120p.librarymanagementsystem.repository.JobLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JobLeaseService class makes sure a scheduled job runs once across all app instances instead of once per instance.
+ *
+ * The work of a job is split into shards (orders are assigned to a shard by id modulo the shard count).
+ * Every instance walks over all shards and tries to take the lease of each one with a guarded UPDATE
+ * on the job_leases table. An instance only processes the shards it got, so with several instances
+ * the nightly work is spread out instead of repeated.
+ *
+ * A shard that fails, or whose instance dies, keeps its uncompleted lease until it expires.
+ * A catch-up sweep then redoes it for the same run key, so a nightly job that failed on one shard
+ * is finished for that night instead of being skipped until the next one. This is why the jobs register
+ * their work up front: the sweep has to be able to run it for any run key, on any instance.
+ */
+@Service
+public class JobLeaseService {
+    private static final Logger logger = LoggerFactory.getLogger(JobLeaseService.class);
+
+    private final JobLeaseRepository jobLeaseRepository;
+
+    private final String nodeId;
+
+    private final Map<String, ShardWork> jobs = new ConcurrentHashMap<>();
+
+    @Value("${it120p.app.jobShards}")
+    private int shardCount;
+
+    @Value("${it120p.app.jobLeaseMs}")
+    private long leaseMs;
+
+    public JobLeaseService(JobLeaseRepository jobLeaseRepository, @Value("${it120p.app.nodeId:}") String nodeId) {
+        this.jobLeaseRepository = jobLeaseRepository;
+        // Fall back to pid@hostname so every instance gets a different name without extra configuration
+        this.nodeId = StringUtils.hasText(nodeId) ? nodeId : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * Gets the number of shards the jobs are split into.
+     *
+     * @return the shard count.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Registers the work of a job. The job is then run with runSharded, and its failed shards are redone by the sweep.
+     *
+     * @param jobName the name of the job.
+     * @param work the work for one shard of one run.
+     */
+    public void register(String jobName, ShardWork work) {
+        jobs.put(jobName, work);
+    }
+
+    /**
+     * Runs the work of a registered job for every shard this instance can claim.
+     *
+     * @param jobName the name of the job.
+     * @param runKey the key of the current run, a shard is processed once per run key.
+     */
+    public void runSharded(String jobName, String runKey) {
+        ShardWork work = jobs.get(jobName);
+        if (work == null) {
+            throw new IllegalStateException("Job " + jobName + " is not registered");
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            String leaseId = jobName + ":" + shard + ":" + runKey;
+            if (!jobLeaseRepository.existsById(leaseId)) {
+                try {
+                    jobLeaseRepository.save(new JobLease(leaseId, jobName, shard, runKey));
+                } catch (DataIntegrityViolationException e) {
+                    // Another instance created the row at the same time, that is fine
+                }
+            }
+            if (claim(leaseId, runKey)) {
+                run(leaseId, jobName, runKey, shard, work);
+            }
+        }
+    }
+
+    /**
+     * Redoes the shards whose run failed, once their lease has expired.
+     * Shards of jobs this instance has not registered are left to the instances that have.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.jobCatchUpMs}", initialDelayString = "${it120p.app.jobCatchUpMs}")
+    public void catchUp() {
+        for (JobLease lease : jobLeaseRepository.findUncompleted(new Date())) {
+            ShardWork work = jobs.get(lease.getJobName());
+            if (work != null && claim(lease.getId(), lease.getRunKey())) {
+                logger.info("Retrying job {} on shard {} for run {}", lease.getJobName(), lease.getShard(), lease.getRunKey());
+                run(lease.getId(), lease.getJobName(), lease.getRunKey(), lease.getShard(), work);
+            }
+        }
+    }
+
+    private void run(String leaseId, String jobName, String runKey, int shard, ShardWork work) {
+        try {
+            work.run(runKey, shard);
+            jobLeaseRepository.complete(leaseId, nodeId, new Date());
+        } catch (RuntimeException e) {
+            // The lease is not completed, once it expires the shard is retried by the catch-up sweep
+            logger.error("Job {} failed on shard {} for run {}: {}", jobName, shard, runKey, e.getMessage());
+        }
+    }
+
+    private boolean claim(String leaseId, String runKey) {
+        Date now = new Date();
+        boolean claimed = jobLeaseRepository.claim(leaseId, nodeId, now, new Date(now.getTime() + leaseMs)) == 1;
+        if (claimed) {
+            logger.info("Instance {} claimed {} for run {}", nodeId, leaseId, runKey);
+        }
+        return claimed;
+    }
+
+    /**
+     * The work of a job for one shard of one run.
+     * It gets the run key, so a failed run can be redone later for the day it was meant for.
+     */
+    @FunctionalInterface
+    public interface ShardWork {
+        void run(String runKey, int shard);
+    }
+}
@@ -0,0 +1,247 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import com.it120p.librarymanagementsystem.payload.response.OrderStreamEvent;
+import com.it120p.librarymanagementsystem.repository.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The OrderEventStream class pushes order lifecycle events to the clients over Server-Sent Events.
+ *
+ * Every order change already records an outbox event in its transaction, so the stream tails the outbox table
+ * instead of listening for in-process events. That way a client connected to one node also sees the changes
+ * made on the other nodes, and only committed changes are pushed.
+ *
+ * The request thread is released as soon as the stream is opened (async servlet). Each connection gets a
+ * virtual thread that waits on a small bounded queue and writes to the client, sending a heartbeat comment
+ * when nothing happened for a while, so idle connections cost a parked virtual thread each.
+ * A client that does not keep up does not slow down the others: when its queue is full the pending events are
+ * dropped and a single "resync" event tells it to fetch its orders again.
+ */
+@Service
+public class OrderEventStream {
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventStream.class);
+
+    /** How long an ID skipped by the tail is looked for, a transaction still holding it may commit late */
+    private static final long GAP_TIMEOUT_MS = 10_000;
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    @Value("${it120p.app.sseHeartbeatMs}")
+    private long heartbeatMs;
+
+    @Value("${it120p.app.sseQueueSize}")
+    private int queueSize;
+
+    @Value("${it120p.app.sseMaxConnectionsPerUser}")
+    private int maxConnectionsPerUser;
+
+    @Value("${it120p.app.outboxBatchSize}")
+    private int batchSize;
+
+    /** The open connections, by the email address of the user */
+    private final Map<String, Queue<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /** The ID of the last outbox event read, null until the first connection is opened */
+    private Long lastEventId;
+
+    /** The IDs skipped by the tail, with the time they were first missed */
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    public OrderEventStream(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
+
+    /**
+     * Opens a stream for a user.
+     * A user can keep a few streams open (e.g. several tabs), beyond that the oldest one is closed.
+     *
+     * @param email the email address of the user, outbox events are addressed by it.
+     * @return the emitter to return from the controller.
+     */
+    public SseEmitter subscribe(String email) {
+        // No timeout, dead connections are found by the heartbeat
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(email, emitter, queueSize);
+
+        Queue<Subscriber> userSubscribers = subscribers.computeIfAbsent(email, key -> new ConcurrentLinkedQueue<>());
+        userSubscribers.add(subscriber);
+        while (userSubscribers.size() > maxConnectionsPerUser) {
+            Subscriber oldest = userSubscribers.poll();
+            if (oldest != null) {
+                oldest.close();
+            }
+        }
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscriber.start();
+        return emitter;
+    }
+
+    /**
+     * Reads the outbox events recorded since the last run and hands them to the connections of their recipients.
+     * Nothing is read while no client is connected.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.sseTailMs}")
+    public synchronized void tail() {
+        if (subscribers.isEmpty()) {
+            // Start from the end of the outbox again once someone connects
+            lastEventId = null;
+            gaps.clear();
+            return;
+        }
+        if (lastEventId == null) {
+            Long maxId = outboxEventRepository.findMaxId();
+            lastEventId = maxId == null ? 0L : maxId;
+            return;
+        }
+
+        List<OutboxEvent> events = new ArrayList<>();
+        if (!gaps.isEmpty()) {
+            // IDs are handed out before commit, a transaction that started earlier can commit after a later one
+            List<OutboxEvent> lateEvents = outboxEventRepository.findByIdInOrderByIdAsc(gaps.keySet());
+            lateEvents.forEach(event -> gaps.remove(event.getId()));
+            events.addAll(lateEvents);
+        }
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(missedAt -> now - missedAt > GAP_TIMEOUT_MS);
+
+        List<OutboxEvent> newEvents = outboxEventRepository.findByIdGreaterThanOrderByIdAsc(lastEventId, PageRequest.of(0, batchSize));
+        for (OutboxEvent event : newEvents) {
+            // A large jump is not a transaction in flight (e.g. the auto increment moved), it is not tracked
+            if (event.getId() - lastEventId <= batchSize) {
+                for (long id = lastEventId + 1; id < event.getId(); id++) {
+                    gaps.put(id, now);
+                }
+            }
+            lastEventId = event.getId();
+        }
+        events.addAll(newEvents);
+
+        for (OutboxEvent event : events) {
+            Queue<Subscriber> userSubscribers = subscribers.get(event.getRecipientEmail());
+            if (userSubscribers == null) {
+                continue;
+            }
+            OrderStreamEvent streamEvent = new OrderStreamEvent(event.getOrderId(), event.getEventType(),
+                    event.getSubject(), event.getCreated_at());
+            userSubscribers.forEach(subscriber -> subscriber.offer(event.getId(), streamEvent));
+        }
+    }
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return the number of open connections on this node.
+     */
+    public int getConnectionCount() {
+        return subscribers.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(Subscriber::close));
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.email, (email, userSubscribers) -> {
+            userSubscribers.remove(subscriber);
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+    }
+
+    /**
+     * One open connection with its queue and sender thread.
+     */
+    private class Subscriber {
+        private final String email;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Map.Entry<Long, OrderStreamEvent>> queue;
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Thread sender;
+
+        Subscriber(String email, SseEmitter emitter, int queueSize) {
+            this.email = email;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        }
+
+        void start() {
+            sender = Thread.ofVirtual().name("order-event-stream").start(this::run);
+        }
+
+        void offer(Long eventId, OrderStreamEvent event) {
+            if (!queue.offer(Map.entry(eventId, event))) {
+                overflowed.set(true);
+            }
+        }
+
+        private void run() {
+            try {
+                while (!closed.get()) {
+                    if (overflowed.getAndSet(false)) {
+                        queue.clear();
+                        emitter.send(SseEmitter.event().name("resync").data("{}", MediaType.APPLICATION_JSON));
+                        continue;
+                    }
+
+                    Map.Entry<Long, OrderStreamEvent> next = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event()
+                                .id(String.valueOf(next.getKey()))
+                                .name(next.getValue().getType().name())
+                                .data(next.getValue(), MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the emitter is already complete
+                logger.debug("Closing event stream of {}: {}", email, e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            remove(this);
+            if (sender != null && sender != Thread.currentThread()) {
+                sender.interrupt();
+            }
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+    }
+}
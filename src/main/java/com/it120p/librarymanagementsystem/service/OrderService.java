@@ -1,37 +1,231 @@
 package com.it120p.librarymanagementsystem.service;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.exception.BookNotFoundException;
+import com.it120p.librarymanagementsystem.exception.HoldNotAllowedException;
+import com.it120p.librarymanagementsystem.exception.OrderConflictException;
+import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.exception.OrderVersionRequiredException;
 import com.it120p.librarymanagementsystem.model.Book;
 import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
 import com.it120p.librarymanagementsystem.model.OrderStatus;
 import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.payload.request.PatchOrderRequest;
 import com.it120p.librarymanagementsystem.repository.BookRepository;
 import com.it120p.librarymanagementsystem.repository.OrderRepository;
 import com.it120p.librarymanagementsystem.repository.UserRepository;
-import com.it120p.librarymanagementsystem.security.services.EmailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Component
 public class OrderService {
+    private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+
     @Autowired
     private BookRepository bookRepository;
 
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
+    private final JobLeaseService jobLeaseService;
+    private final HoldService holdService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
-    public OrderService(OrderRepository orderRepository, UserRepository userRepository, EmailService emailService) {
+    public OrderService(OrderRepository orderRepository, UserRepository userRepository, OutboxService outboxService,
+                        JobLeaseService jobLeaseService, HoldService holdService, ApplicationEventPublisher eventPublisher,
+                        PlatformTransactionManager transactionManager) {
         this.orderRepository = orderRepository;
         this.userRepository = userRepository;
-        this.emailService = emailService;
+        this.outboxService = outboxService;
+        this.jobLeaseService = jobLeaseService;
+        this.holdService = holdService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        jobLeaseService.register("updateOverdueOrders", (runKey, shard) -> updateOverdueShard(shard));
+        jobLeaseService.register("notifyOrdersDueInOneDay", (runKey, shard) -> notifyDueShard(LocalDate.parse(runKey), shard));
+    }
+
+    /**
+     * Saves a new order and records the order confirmation in the outbox in the same transaction.
+     * Books set aside for another user cannot be borrowed, the borrower's own READY holds are fulfilled.
+     *
+     * @param order the order to be saved, its user and books must already be loaded.
+     * @return the saved order.
+     * @throws HoldNotAllowedException if another user is waiting for one of the books.
+     */
+    @Transactional
+    public Order placeOrder(Order order) {
+        holdService.claimForCheckout(bookIds(order), order.getUser().getId());
+        Order savedOrder = orderRepository.save(order);
+        outboxService.record(savedOrder, OrderEventType.CREATED, "Order Confirmation", "Your order has been confirmed.");
+        return savedOrder;
+    }
+
+    /**
+     * Saves the new order created when some books of an order are renewed,
+     * and records the renewal notification in the outbox in the same transaction.
+     *
+     * @param order the new order to be saved, its user and books must already be loaded.
+     * @return the saved order.
+     * @throws HoldNotAllowedException if another user is waiting for one of the books.
+     */
+    @Transactional
+    public Order placeRenewalOrder(Order order) {
+        holdService.claimForCheckout(bookIds(order), order.getUser().getId());
+        Order savedOrder = orderRepository.save(order);
+
+        String bookTitles = savedOrder.getBooks().stream()
+                .map(Book::getTitle)
+                .collect(Collectors.joining(", "));
+
+        outboxService.record(savedOrder, OrderEventType.RENEWED, "Order Renewal",
+                "Your order has been renewed. Your new order ID is: " + savedOrder.getId() + ", with the book(s): " + bookTitles + ".");
+        return savedOrder;
+    }
+
+    /**
+     * Replaces the fields of an order, used by PUT /order/{id}.
+     * The request has to carry the version it was read at, and it has to match the stored one.
+     * A replacement without a version is refused, it would overwrite any change made since the client read the order.
+     * The books are only replaced when they changed, replacing them rewrites every row of order_books.
+     *
+     * @param id the ID of the order.
+     * @param newOrder the new data for the order.
+     * @return the updated order.
+     * @throws OrderNotFoundException if the order does not exist.
+     * @throws OrderVersionRequiredException if the request has no version.
+     * @throws OrderConflictException if the order was changed since the client read it.
+     */
+    @Transactional
+    public Order updateOrder(Long id, Order newOrder) {
+        Order order = findVisibleOrder(id);
+        boolean wasReturned = order.getStatus() == OrderStatus.RETURNED;
+        if (newOrder.getVersion() == null) {
+            throw new OrderVersionRequiredException(id);
+        }
+        if (!newOrder.getVersion().equals(order.getVersion())) {
+            throw new OrderConflictException(id);
+        }
+
+        if (newOrder.getBooks() != null && !sameBooks(order.getBooks(), newOrder.getBooks().stream().map(Book::getId).toList())) {
+            order.setBooks(newOrder.getBooks());
+        }
+        order.setUser(newOrder.getUser());
+        order.setBorrowed_at(newOrder.getBorrowed_at());
+        order.setDue_date(newOrder.getDue_date());
+        order.setReturned_at(newOrder.getReturned_at());
+        order.setPickedUp(newOrder.isPickedUp());
+
+        // Check if the new status is OVERDUE
+        if (newOrder.getStatus() == OrderStatus.OVERDUE) {
+            order.setStatus(OrderStatus.OVERDUE);
+        } else if (order.isOverdue()) {
+            order.setStatus(OrderStatus.OVERDUE);
+        }
+
+        // Flush here, so a concurrent update is reported as a conflict by this call
+        return saveAndReleaseBooks(order, wasReturned);
+    }
+
+    /**
+     * Changes only the given fields of an order, used by PATCH /order/{id}.
+     *
+     * The version in the request has to match the stored one, otherwise the edit is rejected with a conflict
+     * instead of overwriting the other change. Order uses @DynamicUpdate, so only the changed columns are written,
+     * and order_books is left alone unless the list of books changed.
+     *
+     * @param id the ID of the order.
+     * @param patch the fields to change.
+     * @return the updated order.
+     * @throws OrderNotFoundException if the order does not exist.
+     * @throws OrderConflictException if the order was changed since the client read it.
+     * @throws BookNotFoundException if one of the new books does not exist.
+     */
+    @Transactional
+    public Order patchOrder(Long id, PatchOrderRequest patch) {
+        Order order = findVisibleOrder(id);
+        boolean wasReturned = order.getStatus() == OrderStatus.RETURNED;
+        if (!order.getVersion().equals(patch.getVersion())) {
+            throw new OrderConflictException(id);
+        }
+
+        if (patch.getPickedUp() != null) {
+            order.setPickedUp(patch.getPickedUp());
+        }
+        if (patch.getDueDate() != null) {
+            order.setDue_date(patch.getDueDate());
+        }
+        if (patch.getReturnedAt() != null) {
+            // This also sets the status to RETURNED
+            order.setReturned_at(patch.getReturnedAt());
+        }
+        if (patch.getStatus() != null) {
+            order.setStatus(patch.getStatus());
+        }
+        if (patch.getBookIds() != null && !sameBooks(order.getBooks(), patch.getBookIds())) {
+            List<Book> books = bookRepository.findAllById(patch.getBookIds()).stream()
+                    .filter(book -> BranchContext.isVisible(book.getBranchId()))
+                    .toList();
+            for (Long bookId : patch.getBookIds()) {
+                if (books.stream().noneMatch(book -> book.getId().equals(bookId))) {
+                    throw new BookNotFoundException(bookId);
+                }
+            }
+            order.setBooks(books);
+        }
+
+        // Flush here, so a concurrent update is reported as a conflict by this call
+        return saveAndReleaseBooks(order, wasReturned);
+    }
+
+    /**
+     * Loads an order by its ID. A lookup by primary key is not filtered by branch,
+     * so an order of another branch is reported as not found here.
+     */
+    private Order findVisibleOrder(Long id) {
+        return orderRepository.findById(id)
+                .filter(order -> BranchContext.isVisible(order.getBranchId()))
+                .orElseThrow(() -> new OrderNotFoundException(id));
+    }
+
+    /**
+     * Saves an edited order, and hands its books to the users waiting for them if the edit returned it.
+     */
+    private Order saveAndReleaseBooks(Order order, boolean wasReturned) {
+        Order savedOrder = orderRepository.saveAndFlush(order);
+        if (!wasReturned && savedOrder.getStatus() == OrderStatus.RETURNED) {
+            eventPublisher.publishEvent(new BooksReleasedEvent(bookIds(savedOrder)));
+        }
+        return savedOrder;
+    }
+
+    private List<Long> bookIds(Order order) {
+        return order.getBooks() == null ? List.of() : order.getBooks().stream().map(Book::getId).toList();
+    }
+
+    private boolean sameBooks(List<Book> current, List<Long> bookIds) {
+        if (current == null) {
+            return bookIds.isEmpty();
+        }
+        List<Long> currentIds = current.stream().map(Book::getId).sorted().toList();
+        return currentIds.equals(bookIds.stream().sorted().toList());
     }
 
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
@@ -46,45 +240,61 @@ public class OrderService {
     /**
      * This method will update the status of orders that are overdue.
      * It will run every day at midnight.
-     * It will check all orders in the database and update the status of orders that are overdue.
+     * Every app instance runs it, but each shard of orders is only processed by the instance that claims it.
+     * Each shard is updated in its own transaction.
      */
     // @Scheduled(fixedRate = 10000)
     // for testing purposes
     @Scheduled(cron = "0 0 0 * * ?")
     public void updateOverdueOrders() {
-        List<Order> orders = orderRepository.findAll();
+        jobLeaseService.runSharded("updateOverdueOrders", LocalDate.now().toString());
+    }
+
+    private void updateOverdueShard(int shard) {
+        int shards = jobLeaseService.getShardCount();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Order> orders = orderRepository.findOverdueInShard(new Date(), shards, shard);
 
-        for (Order order : orders) {
-            if (order.isOverdue() && order.getStatus() != OrderStatus.OVERDUE) {
+            for (Order order : orders) {
                 order.setStatus(OrderStatus.OVERDUE);
                 orderRepository.save(order);
-                System.out.println("Order " + order.getId() + " is now overdue.");
-                emailService.sendSimpleMailMessage(order.getUser().getEmail(), "Order Overdue",
-                        "Your order with ID " + order.getId() + " is now overdue. Please return the book(s) as soon as possible.",
-                        order.getUser().getName());
+                logger.debug("Order {} is now overdue", order.getId());
+                outboxService.record(order, OrderEventType.OVERDUE, "Order Overdue",
+                        "Your order with ID " + order.getId() + " is now overdue. Please return the book(s) as soon as possible.");
             }
-        }
+        });
     }
 
     /**
      * This method is a scheduled service that sends an email to users that have
      * orders with 1 day left before the due date.
      * It will run every day at midnight.
+     * Like updateOverdueOrders, the orders are split into shards claimed by the app instances.
+     * A shard retried by the catch-up sweep still notifies the orders due the day after its run.
      */
     // @Scheduled(fixedRate = 10000)
     // for testing purposes
     @Scheduled (cron = "0 0 0 * * ?")
     public void notifyOrdersDueInOneDay() {
-        List<Order> orders = orderRepository.findAll();
-
-        for (Order order : orders) {
-            if (order.getDaysRemaining() == 1) {
-                User user = order.getUser();
-                emailService.sendSimpleMailMessage(user.getEmail(), "Order Due Tomorrow",
-                        "Your order with ID " + order.getId() + " is due tomorrow. Please return the book(s) on time.",
-                        user.getName());
+        jobLeaseService.runSharded("notifyOrdersDueInOneDay", LocalDate.now().toString());
+    }
+
+    private void notifyDueShard(LocalDate today, int shard) {
+        int shards = jobLeaseService.getShardCount();
+
+        // Orders due tomorrow are the ones with a due date between the start of tomorrow and the start of the day after
+        Date from = Date.from(today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date to = Date.from(today.plusDays(2).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Order> orders = orderRepository.findDueBetweenInShard(from, to, shards, shard);
+
+            for (Order order : orders) {
+                outboxService.record(order, OrderEventType.DUE_TOMORROW, "Order Due Tomorrow",
+                        "Your order with ID " + order.getId() + " is due tomorrow. Please return the book(s) on time.");
             }
-        }
+        });
     }
 
     /**
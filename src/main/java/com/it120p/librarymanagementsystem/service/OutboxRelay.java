@@ -0,0 +1,272 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import com.it120p.librarymanagementsystem.repository.OutboxEventRepository;
+import com.it120p.librarymanagementsystem.security.services.EmailNotice;
+import com.it120p.librarymanagementsystem.security.services.EmailRenderer;
+import com.it120p.librarymanagementsystem.security.services.EmailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * The OutboxRelay class sends the notifications recorded in the outbox table.
+ *
+ * It polls for unsent events in batches and only marks them as sent after the email went out,
+ * so every event is delivered at least once. A batch is claimed with a guarded UPDATE before it is read,
+ * so several app instances can run the relay without sending the same events twice.
+ * If an instance stops while sending, its claim ends after outboxLeaseMs and another instance takes the events over. An event that keeps failing is retried until it runs out of attempts.
+ * No database transaction is held open while talking to the SMTP server.
+ * The HTML order summaries of a batch are rendered in parallel by the EmailRenderer while the relay sends them.
+ *
+ * The event types listed in digestEventTypes are not sent one by one. They are collected per recipient
+ * and sent as a single digest once the oldest of them is older than the digest window,
+ * so a user with five overdue loans gets one email at night instead of five.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EmailRenderer emailRenderer;
+    private final EmailService emailService;
+
+    @Value("${it120p.app.outboxBatchSize}")
+    private int batchSize;
+
+    @Value("${it120p.app.outboxMaxAttempts}")
+    private int maxAttempts;
+
+    @Value("${it120p.app.digestWindowMs}")
+    private long digestWindowMs;
+
+    @Value("${it120p.app.outboxLeaseMs}")
+    private long leaseMs;
+
+    private final Set<OrderEventType> digestTypes;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, EmailRenderer emailRenderer, EmailService emailService,
+                       @Value("${it120p.app.digestEventTypes}") Collection<OrderEventType> digestTypes) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.emailRenderer = emailRenderer;
+        this.emailService = emailService;
+        this.digestTypes = digestTypes.isEmpty() ? EnumSet.noneOf(OrderEventType.class) : EnumSet.copyOf(digestTypes);
+        // The order summary is an HTML email of its own, it cannot be merged into a plain text digest
+        this.digestTypes.remove(OrderEventType.CREATED);
+    }
+
+    /**
+     * Sends pending outbox events until the outbox is empty or a batch fails.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.outboxPollMs}")
+    public void relay() {
+        List<Long> ids;
+        boolean sent;
+        do {
+            Date now = new Date();
+            ids = digestTypes.isEmpty()
+                    ? outboxEventRepository.findClaimable(maxAttempts, now, PageRequest.of(0, batchSize))
+                    : outboxEventRepository.findClaimableExcept(maxAttempts, digestTypes, now, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            String claim = UUID.randomUUID().toString();
+            int claimed = outboxEventRepository.claim(ids, claim, maxAttempts, now, new Date(now.getTime() + leaseMs));
+            // When another instance claimed the whole batch first, the next query skips its events
+            sent = claimed == 0 || sendBatch(outboxEventRepository.findByClaimedByOrderByIdAsc(claim));
+        } while (sent && ids.size() == batchSize);
+    }
+
+    /**
+     * Sends the digests whose window has closed, one email per recipient.
+     * The digests of a batch of recipients go out over one SMTP connection.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.digestFlushMs}")
+    public void flushDigests() {
+        if (digestTypes.isEmpty()) {
+            return;
+        }
+
+        List<String> recipients;
+        boolean sent;
+        do {
+            Date now = new Date();
+            Date cutoff = new Date(now.getTime() - digestWindowMs);
+            recipients = outboxEventRepository.findDigestRecipients(maxAttempts, digestTypes, cutoff, now, PageRequest.of(0, batchSize));
+            if (recipients.isEmpty()) {
+                return;
+            }
+            sent = sendDigests(recipients, now);
+        } while (sent && recipients.size() == batchSize);
+    }
+
+    /**
+     * Claims and sends the digests of a batch of recipients.
+     *
+     * @param recipients the email addresses of the recipients.
+     * @param now the current date.
+     * @return true if every digest was sent.
+     */
+    private boolean sendDigests(List<String> recipients, Date now) {
+        String claim = UUID.randomUUID().toString();
+        if (outboxEventRepository.claimDigestEvents(recipients, digestTypes, claim, maxAttempts, now,
+                new Date(now.getTime() + leaseMs)) == 0) {
+            return true;
+        }
+
+        Map<String, List<OutboxEvent>> byRecipient = outboxEventRepository.findByClaimedByOrderByIdAsc(claim).stream()
+                .collect(Collectors.groupingBy(OutboxEvent::getRecipientEmail, LinkedHashMap::new, Collectors.toList()));
+        if (byRecipient.isEmpty()) {
+            return true;
+        }
+
+        Map<EmailNotice, List<Long>> notices = new LinkedHashMap<>();
+        byRecipient.forEach((email, events) -> notices.put(buildDigest(email, events),
+                events.stream().map(OutboxEvent::getId).collect(Collectors.toList())));
+        return sendNotices(notices);
+    }
+
+    /**
+     * Builds the digest of one recipient, each event becomes one line with its subject and text.
+     */
+    private EmailNotice buildDigest(String email, List<OutboxEvent> events) {
+        if (events.size() == 1) {
+            OutboxEvent event = events.get(0);
+            return new EmailNotice(email, event.getSubject(), event.getText(), event.getRecipientName());
+        }
+
+        String text = events.stream()
+                .map(event -> "- " + event.getSubject() + ": " + event.getText())
+                .collect(Collectors.joining("\n", "Here is a summary of your library notifications:\n\n", ""));
+        return new EmailNotice(email, "Library Notifications (" + events.size() + " updates)", text,
+                events.get(0).getRecipientName());
+    }
+
+    /**
+     * Sends one batch of events.
+     *
+     * @param batch the events to be sent.
+     * @return true if every event of the batch was sent.
+     */
+    private boolean sendBatch(List<OutboxEvent> batch) {
+        List<OutboxEvent> simpleEvents = new ArrayList<>();
+        Map<OutboxEvent, CompletableFuture<Optional<String>>> summaries = new LinkedHashMap<>();
+        boolean allSent = true;
+
+        for (OutboxEvent event : batch) {
+            if (event.getEventType() == OrderEventType.CREATED) {
+                // Start rendering right away, the summaries are sent once they are ready
+                summaries.put(event, emailRenderer.renderOrderSummary(event.getOrderId()));
+            } else {
+                simpleEvents.add(event);
+            }
+        }
+
+        for (Map.Entry<OutboxEvent, CompletableFuture<Optional<String>>> summary : summaries.entrySet()) {
+            allSent &= sendOrderSummary(summary.getKey(), summary.getValue());
+        }
+
+        if (!simpleEvents.isEmpty()) {
+            Map<EmailNotice, List<Long>> notices = new LinkedHashMap<>();
+            for (OutboxEvent event : simpleEvents) {
+                notices.put(new EmailNotice(event.getRecipientEmail(), event.getSubject(), event.getText(),
+                        event.getRecipientName()), List.of(event.getId()));
+            }
+            allSent &= sendNotices(notices);
+        }
+
+        return allSent;
+    }
+
+    /**
+     * Sends plain text emails over one SMTP connection and records the result of every email on its own events:
+     * the emails that went out are marked as sent even when others of the batch failed.
+     *
+     * @param notices the emails, each with the IDs of the outbox events it covers.
+     * @return true if every email was sent.
+     */
+    private boolean sendNotices(Map<EmailNotice, List<Long>> notices) {
+        Map<EmailNotice, String> failed;
+        try {
+            failed = emailService.sendSimpleMailMessages(new ArrayList<>(notices.keySet()));
+        } catch (RuntimeException e) {
+            // Nothing went out, e.g. the SMTP server could not be reached
+            failed = new LinkedHashMap<>();
+            for (EmailNotice notice : notices.keySet()) {
+                failed.put(notice, e.getMessage());
+            }
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        // Emails that failed for the same reason are recorded together, an unreachable server costs one UPDATE
+        Map<String, List<Long>> failedIds = new LinkedHashMap<>();
+        for (Map.Entry<EmailNotice, List<Long>> notice : notices.entrySet()) {
+            if (failed.containsKey(notice.getKey())) {
+                failedIds.computeIfAbsent(truncate(failed.get(notice.getKey())), error -> new ArrayList<>()).addAll(notice.getValue());
+            } else {
+                sentIds.addAll(notice.getValue());
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            outboxEventRepository.markSent(sentIds, new Date());
+        }
+        failedIds.forEach((error, ids) -> outboxEventRepository.markFailed(ids, error));
+
+        if (!failed.isEmpty()) {
+            logger.warn("Could not send {} of {} emails: {}", failed.size(), notices.size(), failed.values().iterator().next());
+        }
+        return failed.isEmpty();
+    }
+
+    /**
+     * Sends the HTML order summary of a CREATED event.
+     *
+     * @param event the CREATED event.
+     * @param rendering the rendering of the order summary.
+     * @return true if the email was sent or there is nothing left to send.
+     */
+    private boolean sendOrderSummary(OutboxEvent event, CompletableFuture<Optional<String>> rendering) {
+        try {
+            Optional<String> html = rendering.join();
+            if (html.isEmpty()) {
+                // The order was deleted before the relay got to it, there is nothing to summarise
+                logger.info("Skipping outbox event {}, order {} no longer exists", event.getId(), event.getOrderId());
+                outboxEventRepository.markSent(List.of(event.getId()), new Date());
+                return true;
+            }
+
+            emailService.sendHtmlEmail(event.getRecipientEmail(), EmailRenderer.ORDER_SUMMARY_SUBJECT, html.get());
+            outboxEventRepository.markSent(List.of(event.getId()), new Date());
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not send outbox event {}: {}", event.getId(), e.getMessage());
+            outboxEventRepository.markFailed(List.of(event.getId()), truncate(e.getMessage()));
+            return false;
+        }
+    }
+
+    private String truncate(String message) {
+        if (message == null || message.length() <= 500) {
+            return message;
+        }
+        return message.substring(0, 500);
+    }
+}
@@ -0,0 +1,60 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import com.it120p.librarymanagementsystem.repository.OutboxEventRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The OutboxService class records order notifications in the outbox table.
+ *
+ * The record methods join the transaction of the caller, so the notification is committed or rolled back
+ * together with the order change. The write path only does a local insert, the email is sent by the OutboxRelay.
+ */
+@Service
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    public OutboxService(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
+
+    /**
+     * Records a notification for an order entity.
+     *
+     * @param order the order the event is about, its user is the recipient.
+     * @param eventType the type of the event.
+     * @param subject the subject of the email.
+     * @param text the body of the email.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Order order, OrderEventType eventType, String subject, String text) {
+        record(order.getId(), order.getUser().getEmail(), order.getUser().getName(), eventType, subject, text);
+    }
+
+    /**
+     * Records a notification when only the order ID and recipient are known.
+     *
+     * @param orderId the ID of the order, or null if the notice covers several orders.
+     * @param email the email address of the recipient.
+     * @param name the name of the recipient.
+     * @param eventType the type of the event.
+     * @param subject the subject of the email.
+     * @param text the body of the email.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Long orderId, String email, String name, OrderEventType eventType, String subject, String text) {
+        OutboxEvent event = new OutboxEvent();
+        event.setOrderId(orderId);
+        event.setRecipientEmail(email);
+        event.setRecipientName(name);
+        event.setEventType(eventType);
+        event.setSubject(subject);
+        event.setText(text);
+        outboxEventRepository.save(event);
+    }
+}
@@ -0,0 +1,93 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.exception.UserAlreadyExistsException;
+import com.it120p.librarymanagementsystem.model.ERole;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.Role;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The RegistrationService class creates user accounts.
+ *
+ * The username and email are not checked before the insert, the unique constraints of the users table do that
+ * and a violation is turned into the same error message the checks used to give. The roles come from the RoleTable.
+ * The user, its roles and the welcome email are written in one transaction, the email itself
+ * is sent later by the OutboxRelay, so a signup costs the user insert, the user_roles insert and the outbox insert.
+ */
+@Service
+public class RegistrationService {
+    public static final String USERNAME_TAKEN = "Error: Username is already taken!";
+
+    public static final String EMAIL_IN_USE = "Error: Email is already in use!";
+
+    private final UserRepository userRepository;
+    private final RoleTable roleTable;
+    private final PasswordEncoder encoder;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+
+    public RegistrationService(UserRepository userRepository, RoleTable roleTable, PasswordEncoder encoder,
+                               OutboxService outboxService, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.roleTable = roleTable;
+        this.encoder = encoder;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Creates a user account.
+     *
+     * @param user the new user, with its password in plain text.
+     * @param roleNames the requested role names, a regular user if empty or null.
+     * @param sendWelcomeEmail whether the user gets the account created email.
+     * @return the saved user.
+     * @throws UserAlreadyExistsException if the username or email is already used.
+     */
+    public User register(User user, Collection<String> roleNames, boolean sendWelcomeEmail) {
+        // Hash outside the transaction, it is the slowest step and needs no connection
+        user.setPassword(encoder.encode(user.getPassword()));
+
+        Set<ERole> names = EnumSet.noneOf(ERole.class);
+        if (roleNames == null || roleNames.isEmpty()) {
+            names.add(ERole.ROLE_USER);
+        } else {
+            roleNames.forEach(name -> names.add(RoleTable.parse(name)));
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                Set<Role> roles = new HashSet<>();
+                names.forEach(name -> roles.add(roleTable.reference(name)));
+                user.setRoles(roles);
+
+                User saved = userRepository.saveAndFlush(user);
+                if (sendWelcomeEmail) {
+                    outboxService.record(null, saved.getEmail(), saved.getName(), OrderEventType.ACCOUNT_CREATED,
+                            "New User Account Created:" + saved.getUsername(), "Your account has been created successfully!");
+                }
+                return saved;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Only a failed signup pays for finding out which constraint it hit
+            if (userRepository.existsByUsername(user.getUsername())) {
+                throw new UserAlreadyExistsException(USERNAME_TAKEN);
+            }
+            if (userRepository.existsByEmail(user.getEmail())) {
+                throw new UserAlreadyExistsException(EMAIL_IN_USE);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.exception.RenewalNotAllowedException;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.payload.response.RenewalResponse;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.RenewalState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The RenewalService class renews orders with a single guarded UPDATE instead of loading and saving the entity.
+ *
+ * The UPDATE only matches a BORROWED order whose renew count is still the value that was read and below the limit.
+ * When a user double-clicks the renew button, both requests read the same renew count,
+ * so only the first UPDATE matches and the second one gets a conflict instead of a second extension.
+ */
+@Service
+public class RenewalService {
+
+    private final OrderRepository orderRepository;
+    private final OutboxService outboxService;
+    private final HoldService holdService;
+
+    @Value("${it120p.app.renewalDays}")
+    private int renewalDays;
+
+    @Value("${it120p.app.maxRenewals}")
+    private int maxRenewals;
+
+    public RenewalService(OrderRepository orderRepository, OutboxService outboxService, HoldService holdService) {
+        this.orderRepository = orderRepository;
+        this.outboxService = outboxService;
+        this.holdService = holdService;
+    }
+
+    /**
+     * Renews an order by extending its due date.
+     *
+     * @param orderId the ID of the order to be renewed.
+     * @param currentUserId the ID of the user asking for the renewal.
+     * @param isAdmin true if the user asking for the renewal is an admin.
+     * @return the new due date and the number of renewals left.
+     * @throws OrderNotFoundException if no order with the given ID is found in the branch of the request.
+     * @throws AccessDeniedException if the user does not own the order and is not an admin.
+     * @throws RenewalNotAllowedException if the order is not borrowed, has no renewals left, is wanted by another user
+     *         or was renewed concurrently.
+     */
+    @Transactional
+    public RenewalResponse renew(Long orderId, Long currentUserId, boolean isAdmin) {
+        RenewalState state = orderRepository.findRenewalStateById(orderId)
+                // An order of another branch is not renewed from this one
+                .filter(found -> BranchContext.isVisible(found.getBranchId()))
+                .orElseThrow(() -> new OrderNotFoundException(orderId));
+
+        if (!state.getUserId().equals(currentUserId) && !isAdmin) {
+            throw new AccessDeniedException("You do not have permission to access this order.");
+        }
+        if (state.getStatus() != OrderStatus.BORROWED) {
+            throw new RenewalNotAllowedException(orderId, "Only borrowed orders can be renewed.");
+        }
+        if (state.getRenewCount() >= maxRenewals) {
+            throw new RenewalNotAllowedException(orderId, "The order has already been renewed " + maxRenewals + " time(s).");
+        }
+        if (holdService.isWantedByOthers(orderRepository.findBookIdsByOrderIdIn(List.of(orderId)), state.getUserId())) {
+            throw new RenewalNotAllowedException(orderId, "Another user is waiting for one of the books.");
+        }
+
+        int updated = orderRepository.renew(orderId, renewalDays, state.getRenewCount(), maxRenewals);
+        if (updated == 0) {
+            // Another request changed the order between the read and the update
+            throw new RenewalNotAllowedException(orderId, "The order was changed by another request, please try again.");
+        }
+
+        // The UPDATE matched the due date that was read, so the new one can be computed without another query
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(state.getDueDate());
+        cal.add(Calendar.DAY_OF_MONTH, renewalDays);
+        Date newDueDate = cal.getTime();
+
+        outboxService.record(orderId, state.getUserEmail(), state.getUserName(), OrderEventType.RENEWED,
+                "Order Renewal", "Your order with ID: " + orderId + " has been renewed.");
+
+        return new RenewalResponse(orderId, newDueDate, maxRenewals - state.getRenewCount() - 1);
+    }
+}
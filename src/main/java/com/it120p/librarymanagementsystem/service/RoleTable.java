@@ -0,0 +1,72 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.ERole;
+import com.it120p.librarymanagementsystem.model.Role;
+import com.it120p.librarymanagementsystem.repository.RoleRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RoleTable class keeps the ID of every role in memory.
+ *
+ * Roles are fixed rows, so they are read once at startup instead of once per signup.
+ * A role that is added later is read the first time it is asked for.
+ * The roles handed out are JPA references, assigning them to a user does not load the Role entity.
+ */
+@Component
+public class RoleTable {
+    private final RoleRepository roleRepository;
+
+    private final Map<ERole, Integer> roleIds = new ConcurrentHashMap<>();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public RoleTable(RoleRepository roleRepository) {
+        this.roleRepository = roleRepository;
+    }
+
+    /**
+     * Loads the role IDs when the application starts.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        roleRepository.findAll().forEach(role -> roleIds.put(role.getName(), role.getId()));
+    }
+
+    /**
+     * Returns a reference to a role, it has to be called inside the transaction that uses it.
+     *
+     * @param name the name of the role.
+     * @return a reference to the role.
+     * @throws RuntimeException if the role does not exist.
+     */
+    public Role reference(ERole name) {
+        Integer id = roleIds.get(name);
+        if (id == null) {
+            Role role = roleRepository.findByName(name)
+                    .orElseThrow(() -> new RuntimeException("Error: Role is not found."));
+            roleIds.put(name, role.getId());
+            id = role.getId();
+        }
+        return entityManager.getReference(Role.class, id);
+    }
+
+    /**
+     * Maps a role name from a request to a role.
+     * Both the short names ("admin", "user") and the enum names ("ROLE_ADMIN", "ROLE_USER") are accepted,
+     * anything else is a regular user.
+     *
+     * @param name the role name from the request.
+     * @return the role.
+     */
+    public static ERole parse(String name) {
+        return "admin".equalsIgnoreCase(name) || ERole.ROLE_ADMIN.name().equals(name) ? ERole.ROLE_ADMIN : ERole.ROLE_USER;
+    }
+}
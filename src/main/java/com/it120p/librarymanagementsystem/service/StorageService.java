@@ -1,77 +1,383 @@
 package com.it120p.librarymanagementsystem.service;
 
+import com.it120p.librarymanagementsystem.exception.ImageTooLargeException;
+import com.it120p.librarymanagementsystem.exception.InvalidImageException;
 import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.StoredImage;
 import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.StoredImageRepository;
+import com.it120p.librarymanagementsystem.service.storage.ObjectStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 /**
  * The StorageService class is a service class that handles the storage of book images in the file system.
  *
  * This class is marked with the @Service annotation, meaning that it is a candidate for Spring's component scanning to detect and add to the application context.
  *
- * The BookRepository is autowired and used to fetch book data from the database.
+ * Images are content-addressed: the file name is the SHA-256 hash of the image bytes, so two books with the same cover
+ * share one file, and two different covers can never overwrite each other.
+ * The files are spread over two levels of sub-directories taken from the start of the hash (e.g. ab/cd/abcd....png),
+ * so no single directory grows too large.
+ * Every image has a reference count in the stored_images table, the file is removed when the last book using it is deleted.
  *
- * The uploadImageToFileSystem method is used to upload a book image to the file system. It takes a MultipartFile and a book title as parameters, and returns the path of the uploaded image.
+ * The bytes are kept in an ObjectStore, a local directory or an S3-compatible bucket, see ObjectStoreConfig.
+ * Temporary upload files are written under the it120p.app.storageRoot directory.
  *
- * The downloadImageFromFileSystem method is used to download a book image from the file system. It takes an image name as a parameter, and returns the image as a byte array.
+ * The uploadImageToFileSystem and uploadImageStream methods are used to upload a book image to the file system.
+ * They stream the image through a size limit, a PNG/JPEG signature check and the hash, and return the storage key of the uploaded image.
+ *
+ * The openImage method is used to read a book image, and downloadUrl gives a direct URL when the store can serve the image itself.
  */
 @Service
 public class StorageService {
+    private static final Logger logger = LoggerFactory.getLogger(StorageService.class);
+
+    /** The name of a content-addressed image, 64 hex characters and an extension */
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("^[0-9a-f]{64}\\.(png|jpg)$");
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
 
     @Autowired
     private BookRepository bookRepository;
 
-    // Change the path to your desired directory
-    private final String IMAGE_PATH = "C:/Mapua/3Q2324/IT120P/lms-backend/uploads";
+    @Autowired
+    private StoredImageRepository storedImageRepository;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    private final Path root;
+
+    private final long maxImageBytes;
+
+    private final TransactionTemplate newTransaction;
+
+    public StorageService(@Value("${it120p.app.storageRoot}") String storageRoot,
+                          @Value("${it120p.app.maxImageBytes}") long maxImageBytes,
+                          PlatformTransactionManager transactionManager) throws IOException {
+        this.root = Paths.get(storageRoot).toAbsolutePath().normalize();
+        this.maxImageBytes = maxImageBytes;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Files.createDirectories(this.root.resolve("tmp"));
+    }
 
     /**
      * Uploads a book image to the file system.
      *
      * Multipart file is used to handle file uploads in Spring.
+     * The part is read as a stream, see uploadImageStream.
      *
      * @param file the MultipartFile to be uploaded.
-     * @param bookTitle the title of the book.
-     * @return the path of the uploaded image.
+     * @param bookTitle the title of the book, only used for logging.
+     * @return the storage key of the uploaded image.
      * @throws IOException if an error occurs during file transfer.
      */
     public String uploadImageToFileSystem(MultipartFile file, String bookTitle) throws IOException {
-        // Replace spaces with underscores and remove special characters
-        // to create a sanitized file name
-        String sanitizedTitle = bookTitle.replaceAll("\\s", "_").replaceAll("[^a-zA-Z0-9_]", "");
-        String imagePath = IMAGE_PATH + "/" + sanitizedTitle + ".png";
+        if (file.getSize() > maxImageBytes) {
+            throw new ImageTooLargeException(maxImageBytes);
+        }
+        try (InputStream in = file.getInputStream()) {
+            return uploadImageStream(in, bookTitle);
+        }
+    }
+
+    /**
+     * Uploads a book image from a stream.
+     *
+     * The stream is read once with a fixed size buffer, so memory use does not depend on the size of the image:
+     * the size limit is checked while reading, the first bytes must be a PNG or JPEG signature,
+     * the SHA-256 hash is computed on the fly, and the bytes go to a temporary file that is then put into the object store.
+     * If the same image is already stored, the temporary file is dropped and only the reference count goes up.
+     *
+     * @param stream the image bytes.
+     * @param bookTitle the title of the book, only used for logging.
+     * @return the storage key of the uploaded image.
+     * @throws IOException if an error occurs while reading or writing the image.
+     * @throws ImageTooLargeException if the image is larger than the limit.
+     * @throws InvalidImageException if the image is not a PNG or JPEG.
+     */
+    public String uploadImageStream(InputStream stream, String bookTitle) throws IOException {
+        MessageDigest digest = sha256();
+        InputStream in = new DigestInputStream(new SizeLimitedInputStream(stream, maxImageBytes), digest);
+
+        // Check the signature before anything is written
+        byte[] header = in.readNBytes(PNG_SIGNATURE.length);
+        String extension = detectExtension(header);
+
+        Path temp = Files.createTempFile(root.resolve("tmp"), "upload-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(header);
+                in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
 
-        // Transfer the file to the specified path
-        file.transferTo(new File(imagePath));
-        return imagePath;
+            String storageKey = store(temp, hash, extension, contentTypeOf("." + extension), Files.size(temp));
+            logger.debug("Stored cover of '{}' as {}", bookTitle, storageKey);
+            return storageKey;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Gets the maximum size of an uploaded image.
+     *
+     * @return the limit in bytes.
+     */
+    public long getMaxImageBytes() {
+        return maxImageBytes;
+    }
+
+    private String detectExtension(byte[] header) {
+        if (header.length == PNG_SIGNATURE.length && Arrays.equals(header, PNG_SIGNATURE)) {
+            return "png";
+        }
+        if (header.length >= JPEG_SIGNATURE.length
+                && Arrays.equals(Arrays.copyOf(header, JPEG_SIGNATURE.length), JPEG_SIGNATURE)) {
+            return "jpg";
+        }
+        throw new InvalidImageException("only PNG and JPEG images are accepted");
     }
 
     /**
      * Downloads a book image from the file system using the image name.
      *
      * A byte array is used to store the image data.
+     * Content-addressed names are resolved straight from the hash, without a database query.
+     * Older images stored under the book title are still found through the book's image path.
      *
      * @param imageName the name of the image to be downloaded.
      * @return the image as a byte array.
      * @throws IOException if an error occurs during file reading.
      */
     public byte[] downloadImageFromFileSystem (String imageName) throws IOException {
+        try (InputStream in = openImage(imageName)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Opens a book image for reading, so it can be streamed to the client without loading it in memory.
+     *
+     * @param imageName the name or storage key of the image.
+     * @return a stream of the image, the caller has to close it.
+     * @throws IOException if no image with that name exists.
+     */
+    public InputStream openImage(String imageName) throws IOException {
+        String name = fileName(imageName);
+        if (CONTENT_ADDRESSED_NAME.matcher(name).matches()) {
+            return objectStore.open(storageKeyOf(name));
+        }
+        return Files.newInputStream(legacyPath(imageName));
+    }
+
+    /**
+     * Gets a URL the client can download a book image from directly, without the bytes passing through the application.
+     *
+     * @param imageName the name or storage key of the image.
+     * @return the URL, or empty if the image has to be served by the application.
+     */
+    public Optional<URI> downloadUrl(String imageName) {
+        String name = fileName(imageName);
+        if (!CONTENT_ADDRESSED_NAME.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        return objectStore.downloadUrl(storageKeyOf(name));
+    }
+
+    /**
+     * Gets the content type of an image from its name.
+     *
+     * @param imageName the name of the image.
+     * @return the content type of the image.
+     */
+    public String contentTypeOf(String imageName) {
+        return imageName.endsWith(".jpg") ? "image/jpeg" : "image/png";
+    }
+
+    /**
+     * Adds a reference to an image that is already stored, for a book saved with a storage key instead of an upload,
+     * e.g. a catalog import of an export. It joins the transaction of the caller, so the reference is only kept
+     * if the book is saved with it.
+     * Only the storage keys of content-addressed images are accepted, a book cannot point at any other file.
+     *
+     * @param storageKey the storage key of the image, as saved in the book's image path.
+     * @return true if the reference was added, false if the key does not name a stored image.
+     */
+    public boolean acquireImage(String storageKey) {
+        String imageName = fileName(storageKey);
+        if (!CONTENT_ADDRESSED_NAME.matcher(imageName).matches() || !storageKey.equals(storageKeyOf(imageName))) {
+            return false;
+        }
+        return storedImageRepository.incrementRefCount(imageName.substring(0, 64)) == 1;
+    }
+
+    /**
+     * Removes one reference to an image, and deletes the file when no book uses it anymore.
+     * Images stored before the content-addressed layout are left alone.
+     *
+     * @param storageKey the storage key of the image, as saved in the book's image path.
+     */
+    public void releaseImage(String storageKey) {
+        if (storageKey == null) {
+            return;
+        }
+        String imageName = fileName(storageKey);
+        if (!CONTENT_ADDRESSED_NAME.matcher(imageName).matches()) {
+            return;
+        }
+
+        String hash = imageName.substring(0, 64);
+        storedImageRepository.decrementRefCount(hash);
+        // Only the caller that removes the row deletes the file. The DELETE keeps the row locked until the file is gone,
+        // so an upload of the same image waits for the commit, finds no row and puts the file again, see store.
+        newTransaction.executeWithoutResult(status -> {
+            if (storedImageRepository.deleteIfUnreferenced(hash) == 1) {
+                try {
+                    objectStore.delete(storageKey);
+                } catch (IOException e) {
+                    logger.warn("Could not delete unreferenced image {}: {}", storageKey, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Puts a hashed temporary file into the store and records the reference.
+     *
+     * @param temp the temporary file holding the image.
+     * @param hash the SHA-256 hash of the image.
+     * @param extension the file extension of the image.
+     * @param contentType the content type of the image.
+     * @param size the size of the image in bytes.
+     * @return the storage key of the image.
+     * @throws IOException if the file cannot be stored.
+     */
+    String store(Path temp, String hash, String extension, String contentType, long size) throws IOException {
+        String storageKey = storageKeyOf(hash + "." + extension);
+
+        // Record the reference first, so a concurrent delete of the last book using this image cannot remove the file
+        if (storedImageRepository.incrementRefCount(hash) == 0) {
+            try {
+                storedImageRepository.save(new StoredImage(hash, storageKey, contentType, size));
+            } catch (DataIntegrityViolationException e) {
+                // Another upload of the same image created the row first
+                storedImageRepository.incrementRefCount(hash);
+            }
+        }
+
+        // Always put the object: it is immutable, so putting it again is harmless, while an existence check could see
+        // a copy that a release is about to delete. The reference recorded above keeps any later release from deleting it.
+        objectStore.put(storageKey, temp, contentType, size);
+        return storageKey;
+    }
+
+    /**
+     * Builds the storage key of a content-addressed image name, e.g. ab/cd/abcd....png.
+     *
+     * @param name the hash and extension of the image.
+     * @return the storage key of the image.
+     */
+    String storageKeyOf(String name) {
+        return name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name;
+    }
+
+    /**
+     * Finds the file of an image stored under the book title, before the content-addressed layout.
+     *
+     * @param imageName the name of the image.
+     * @return the path of the image file.
+     * @throws IOException if no image with that name exists.
+     */
+    Path legacyPath(String imageName) throws IOException {
         // Find the book with the specified image name
         // bookRepository is used to fetch book data from the database
         Optional<Book> book = bookRepository.findByImagePathContaining(imageName);
         if (!book.isPresent()) {
             throw new IOException("No book found with image name: " + imageName);
         }
-        String imagePath = book.get().getImagePath();
+        return new File(book.get().getImagePath()).toPath();
+    }
+
+    private String fileName(String imageName) {
+        return imageName.substring(imageName.lastIndexOf('/') + 1);
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The SizeLimitedInputStream class fails the upload as soon as more than the allowed number of bytes has been read,
+     * instead of reading the whole body first.
+     */
+    static class SizeLimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
 
-        // Read the image as a byte array to be returned and displayed
-        byte[] images = Files.readAllBytes(new File(imagePath).toPath());
-        return images;
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(long n) {
+            count += n;
+            if (count > maxBytes) {
+                throw new ImageTooLargeException(maxBytes);
+            }
+        }
     }
 }
@@ -0,0 +1,258 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.model.ImportJob;
+import com.it120p.librarymanagementsystem.model.ImportJobStatus;
+import com.it120p.librarymanagementsystem.repository.ImportJobRepository;
+import com.it120p.librarymanagementsystem.service.StorageService;
+import com.it120p.librarymanagementsystem.service.export.ExportFormat;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The CatalogImportService class imports books in bulk from a CSV or NDJSON file.
+ *
+ * The upload is saved to a temporary file and the import runs in the background, the caller gets the job ID right away
+ * and follows the progress through the ImportJob row.
+ * One thread reads the file and cuts it into chunks of raw records, a pool of workers parses, validates and inserts
+ * the chunks in parallel. Each chunk is inserted with one JDBC batch in its own transaction,
+ * and at most two chunks per worker are in flight, so the memory used does not depend on the size of the file.
+ * No Book entities are created, the rows go straight from the parser to the batch insert.
+ * An imagePath has to be the storage key of an image that is already stored, the book takes a reference to it.
+ *
+ * Imports run one at a time, a second upload waits until the first one is done.
+ */
+@Service
+public class CatalogImportService {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogImportService.class);
+
+    private static final String INSERT_BOOK =
+            "insert into book (title, author, genre, description, image_path, branch_id) values (?, ?, ?, ?, ?, ?)";
+
+    private final ImportJobRepository importJobRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final CatalogSnapshotService catalogSnapshotService;
+
+    private final StorageService storageService;
+
+    private final Path tempDir;
+
+    private final int chunkSize;
+
+    private final int workers;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "catalog-import"));
+
+    private final ExecutorService workerExecutor;
+
+    public CatalogImportService(ImportJobRepository importJobRepository, JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager, CatalogSnapshotService catalogSnapshotService,
+                                StorageService storageService,
+                                @Value("${it120p.app.storageRoot}") String storageRoot,
+                                @Value("${it120p.app.importChunkSize}") int chunkSize,
+                                @Value("${it120p.app.importWorkers}") int workers) throws IOException {
+        this.importJobRepository = importJobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.storageService = storageService;
+        this.tempDir = Paths.get(storageRoot).toAbsolutePath().normalize().resolve("tmp");
+        this.chunkSize = Math.max(1, chunkSize);
+        this.workers = Math.max(1, workers);
+        this.workerExecutor = Executors.newFixedThreadPool(this.workers);
+        Files.createDirectories(tempDir);
+    }
+
+    /**
+     * Starts an import.
+     *
+     * @param file the uploaded CSV or NDJSON file.
+     * @param format the format of the file.
+     * @return the created job, still RUNNING.
+     * @throws IOException if the upload cannot be saved.
+     */
+    public ImportJob startImport(MultipartFile file, ExportFormat format) throws IOException {
+        ImportJob job = new ImportJob();
+        job.setFileName(file.getOriginalFilename());
+        job = importJobRepository.save(job);
+
+        // The multipart part is removed when the request ends, keep a copy for the background job
+        Path spooled = Files.createTempFile(tempDir, "import-" + job.getId() + "-", ".tmp");
+        file.transferTo(spooled);
+
+        Long jobId = job.getId();
+        // The books go to the branch of the request, the import itself runs without one
+        Long branchId = BranchContext.currentOrDefault();
+        jobExecutor.execute(() -> run(jobId, spooled, format, branchId));
+        return job;
+    }
+
+    private void run(Long jobId, Path file, ExportFormat format, Long branchId) {
+        ErrorLog errorLog = new ErrorLog();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int maxInFlight = workers * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            CatalogRecordParser parser = new CatalogRecordParser(format, reader);
+
+            List<CatalogRecordParser.RawRecord> chunk = new ArrayList<>(chunkSize);
+            CatalogRecordParser.RawRecord record;
+            while (failure.get() == null && (record = parser.nextRecord()) != null) {
+                chunk.add(record);
+                if (chunk.size() == chunkSize) {
+                    submit(jobId, branchId, parser, chunk, inFlight, errorLog, failure);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty() && failure.get() == null) {
+                submit(jobId, branchId, parser, chunk, inFlight, errorLog, failure);
+            }
+
+            // Wait for the last chunks
+            inFlight.acquire(maxInFlight);
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete import file {}: {}", file, e.getMessage());
+            }
+        }
+
+        // Even a failed import may have inserted some chunks
+        catalogSnapshotService.refresh();
+
+        Throwable error = failure.get();
+        if (error == null) {
+            importJobRepository.finish(jobId, ImportJobStatus.COMPLETED, errorLog.toString(), new Date());
+        } else {
+            logger.error("Catalog import {} failed", jobId, error);
+            importJobRepository.finish(jobId, ImportJobStatus.FAILED,
+                    truncate("Import stopped: " + error.getMessage() + "\n" + errorLog), new Date());
+        }
+    }
+
+    /**
+     * Hands a chunk to a worker, blocking while too many chunks are in flight.
+     */
+    private void submit(Long jobId, Long branchId, CatalogRecordParser parser, List<CatalogRecordParser.RawRecord> chunk,
+                        Semaphore inFlight, ErrorLog errorLog, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        inFlight.acquire();
+        workerExecutor.execute(() -> {
+            try {
+                importChunk(jobId, branchId, parser, chunk, errorLog);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void importChunk(Long jobId, Long branchId, CatalogRecordParser parser, List<CatalogRecordParser.RawRecord> chunk,
+                             ErrorLog errorLog) {
+        List<CatalogRecordParser.BookRow> parsed = new ArrayList<>(chunk.size());
+        List<Long> lines = new ArrayList<>(chunk.size());
+        for (CatalogRecordParser.RawRecord record : chunk) {
+            try {
+                parsed.add(parser.parse(record));
+                lines.add(record.line());
+            } catch (CatalogRecordParser.InvalidRecordException e) {
+                errorLog.add(e.getMessage());
+            }
+        }
+
+        List<CatalogRecordParser.BookRow> rows = new ArrayList<>(parsed.size());
+        if (!parsed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                // The image references are taken in the transaction of the insert, a failed chunk takes none
+                for (int i = 0; i < parsed.size(); i++) {
+                    CatalogRecordParser.BookRow row = parsed.get(i);
+                    if (row.imagePath() != null && !storageService.acquireImage(row.imagePath())) {
+                        errorLog.add("line " + lines.get(i) + ": imagePath is not the storage key of a stored image");
+                    } else {
+                        rows.add(row);
+                    }
+                }
+                if (rows.isEmpty()) {
+                    return;
+                }
+                jdbcTemplate.batchUpdate(INSERT_BOOK, rows, rows.size(), (ps, row) -> {
+                    ps.setString(1, row.title());
+                    ps.setString(2, row.author());
+                    ps.setString(3, row.genre().name());
+                    ps.setString(4, row.description());
+                    ps.setString(5, row.imagePath());
+                    ps.setLong(6, branchId);
+                });
+            });
+        }
+        importJobRepository.addProgress(jobId, chunk.size(), rows.size(), chunk.size() - rows.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        workerExecutor.shutdownNow();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= ImportJob.MAX_ERRORS_LENGTH ? text : text.substring(0, ImportJob.MAX_ERRORS_LENGTH);
+    }
+
+    /**
+     * The ErrorLog class keeps the first validation errors of a job, up to the size of the errors column.
+     */
+    private static class ErrorLog {
+        private final StringBuilder text = new StringBuilder();
+        private boolean full;
+
+        synchronized void add(String error) {
+            if (full) {
+                return;
+            }
+            if (text.length() + error.length() + 1 > ImportJob.MAX_ERRORS_LENGTH - 4) {
+                text.append("...");
+                full = true;
+                return;
+            }
+            text.append(error).append('\n');
+        }
+
+        @Override
+        public synchronized String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.service.export.ExportFormat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CatalogRecordParser class turns the records of a catalog file into validated book rows.
+ *
+ * Reading and parsing are split so the parsing can run in parallel:
+ * nextRecord only finds where a record ends (a line for NDJSON, a line outside of quotes for CSV) and is called by one thread,
+ * parse turns the raw text into a BookRow and checks it, and can be called from any thread.
+ *
+ * The accepted columns are title, author, genre, description and imagePath, a CSV file needs a header line naming them.
+ * The limits are the column lengths of the Book entity.
+ */
+public class CatalogRecordParser {
+    static final int MAX_TITLE = 255;
+    static final int MAX_AUTHOR = 255;
+    static final int MAX_DESCRIPTION = 5000;
+    static final int MAX_IMAGE_PATH = 255;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The RawRecord record is the unparsed text of one record and the line it starts on.
+     */
+    public record RawRecord(long line, String text) {
+    }
+
+    /**
+     * The BookRow record is a validated row, ready to be inserted.
+     * The imagePath is only checked for its length here, the import takes a reference to the stored image it names
+     * in the transaction of the insert and rejects the row if there is none, see StorageService.acquireImage.
+     */
+    public record BookRow(String title, String author, EGenre genre, String description, String imagePath) {
+    }
+
+    /**
+     * The InvalidRecordException is thrown by parse when a record fails validation.
+     * It is checked on purpose, a bad row is expected input and must not stop the import.
+     */
+    public static class InvalidRecordException extends Exception {
+        public InvalidRecordException(long line, String message) {
+            super("line " + line + ": " + message);
+        }
+    }
+
+    private final ExportFormat format;
+
+    private final Reader reader;
+
+    /** The position of each column in a CSV record, -1 when the column is missing */
+    private int titleIndex = -1;
+    private int authorIndex = -1;
+    private int genreIndex = -1;
+    private int descriptionIndex = -1;
+    private int imagePathIndex = -1;
+
+    private long line = 1;
+
+    /**
+     * Constructs the parser and reads the CSV header.
+     *
+     * @param format the format of the file.
+     * @param reader the reader of the file, it should be buffered.
+     * @throws IOException if the file cannot be read or the CSV header is missing a required column.
+     */
+    public CatalogRecordParser(ExportFormat format, Reader reader) throws IOException {
+        this.format = format;
+        this.reader = reader;
+        if (format == ExportFormat.CSV) {
+            readHeader();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        RawRecord header = nextRecord();
+        if (header == null) {
+            throw new IOException("The CSV file is empty");
+        }
+        List<String> columns = splitCsv(header.text());
+        for (int i = 0; i < columns.size(); i++) {
+            switch (columns.get(i).trim()) {
+                case "title" -> titleIndex = i;
+                case "author" -> authorIndex = i;
+                case "genre" -> genreIndex = i;
+                case "description" -> descriptionIndex = i;
+                case "imagePath" -> imagePathIndex = i;
+                default -> {
+                    // Other columns, such as an exported id, are ignored
+                }
+            }
+        }
+        if (titleIndex < 0 || authorIndex < 0 || genreIndex < 0) {
+            throw new IOException("The CSV header needs the columns title, author and genre");
+        }
+    }
+
+    /**
+     * Reads the next record without parsing it.
+     * Blank lines are skipped.
+     *
+     * @return the next record, or null at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public RawRecord nextRecord() throws IOException {
+        StringBuilder text = new StringBuilder();
+        boolean inQuotes = false;
+        long start = line;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '\n') {
+                line++;
+                if (!inQuotes) {
+                    if (text.isEmpty() || (text.length() == 1 && text.charAt(0) == '\r')) {
+                        text.setLength(0);
+                        start = line;
+                        continue;
+                    }
+                    return new RawRecord(start, stripCarriageReturn(text));
+                }
+            } else if (c == '"' && format == ExportFormat.CSV) {
+                // A doubled quote inside a quoted field toggles twice, so it does not end the field
+                inQuotes = !inQuotes;
+            }
+            text.append((char) c);
+        }
+        return text.isEmpty() ? null : new RawRecord(start, stripCarriageReturn(text));
+    }
+
+    /**
+     * Parses and validates one record.
+     *
+     * @param record the record returned by nextRecord.
+     * @return the validated row.
+     * @throws InvalidRecordException if the record is malformed or a value is not allowed.
+     */
+    public BookRow parse(RawRecord record) throws InvalidRecordException {
+        String title;
+        String author;
+        String genre;
+        String description;
+        String imagePath;
+
+        if (format == ExportFormat.CSV) {
+            List<String> fields = splitCsv(record.text());
+            title = field(fields, titleIndex);
+            author = field(fields, authorIndex);
+            genre = field(fields, genreIndex);
+            description = field(fields, descriptionIndex);
+            imagePath = field(fields, imagePathIndex);
+        } else {
+            JsonNode node;
+            try {
+                node = MAPPER.readTree(record.text());
+            } catch (IOException e) {
+                throw new InvalidRecordException(record.line(), "not valid JSON");
+            }
+            if (node == null || !node.isObject()) {
+                throw new InvalidRecordException(record.line(), "not a JSON object");
+            }
+            title = text(node, "title");
+            author = text(node, "author");
+            genre = text(node, "genre");
+            description = text(node, "description");
+            imagePath = text(node, "imagePath");
+        }
+
+        return validate(record.line(), title, author, genre, description, imagePath);
+    }
+
+    private BookRow validate(long line, String title, String author, String genre, String description, String imagePath)
+            throws InvalidRecordException {
+        if (title == null || title.isBlank()) {
+            throw new InvalidRecordException(line, "title is required");
+        }
+        if (title.length() > MAX_TITLE) {
+            throw new InvalidRecordException(line, "title is longer than " + MAX_TITLE + " characters");
+        }
+        if (author == null || author.isBlank()) {
+            throw new InvalidRecordException(line, "author is required");
+        }
+        if (author.length() > MAX_AUTHOR) {
+            throw new InvalidRecordException(line, "author is longer than " + MAX_AUTHOR + " characters");
+        }
+        if (description != null && description.length() > MAX_DESCRIPTION) {
+            throw new InvalidRecordException(line, "description is longer than " + MAX_DESCRIPTION + " characters");
+        }
+        if (imagePath != null && imagePath.length() > MAX_IMAGE_PATH) {
+            throw new InvalidRecordException(line, "imagePath is longer than " + MAX_IMAGE_PATH + " characters");
+        }
+
+        EGenre eGenre;
+        try {
+            eGenre = EGenre.valueOf(genre == null ? "" : genre.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRecordException(line, "unknown genre '" + genre + "'");
+        }
+
+        return new BookRow(title.trim(), author.trim(), eGenre, emptyToNull(description), emptyToNull(imagePath));
+    }
+
+    /**
+     * Splits a CSV record into its fields (RFC 4180, quotes are doubled inside quoted fields).
+     */
+    static List<String> splitCsv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static String text(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static String stripCarriageReturn(StringBuilder text) {
+        int end = text.length();
+        if (end > 0 && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+}
@@ -0,0 +1,131 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.it120p.librarymanagementsystem.model.EGenre;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The CatalogSnapshot class is an immutable, already serialized copy of the whole catalog.
+ *
+ * Every book is kept as its JSON bytes, exactly as Jackson would write the Book entity, and the full list
+ * is kept as one ready-made JSON array. The genre and author indexes hold sorted arrays of book IDs.
+ * A snapshot is never changed after it is built, a catalog write builds a new one and swaps it in.
+ */
+public final class CatalogSnapshot {
+    private static final byte[] EMPTY_ARRAY = {'[', ']'};
+
+    private final Map<Long, byte[]> bookJson;
+
+    private final byte[] allBooksJson;
+
+    private final Map<EGenre, long[]> idsByGenre;
+
+    private final Map<String, long[]> idsByAuthor;
+
+    private final String etag;
+
+    CatalogSnapshot(Map<Long, byte[]> bookJson, byte[] allBooksJson,
+                    Map<EGenre, long[]> idsByGenre, Map<String, long[]> idsByAuthor, String etag) {
+        // The map is built for this snapshot only, wrapping it saves copying the JSON of every book on each write
+        this.bookJson = Collections.unmodifiableMap(bookJson);
+        this.allBooksJson = allBooksJson;
+        this.idsByGenre = Map.copyOf(idsByGenre);
+        this.idsByAuthor = Map.copyOf(idsByAuthor);
+        this.etag = etag;
+    }
+
+    /**
+     * Returns the JSON array of all books. The array is shared, it must not be modified.
+     *
+     * @return the JSON of all books.
+     */
+    public byte[] allBooksJson() {
+        return allBooksJson;
+    }
+
+    /**
+     * Returns the JSON of one book. The array is shared, it must not be modified.
+     *
+     * @param id the ID of the book.
+     * @return the JSON of the book, or null if it is not in the snapshot.
+     */
+    public byte[] bookJson(Long id) {
+        return bookJson.get(id);
+    }
+
+    /**
+     * Returns the JSON array of the books matching a genre and an author, either of them may be null.
+     * The array is put together from the JSON of each book, nothing is serialized again.
+     *
+     * @param genre the genre to match, or null for any genre.
+     * @param author the author to match ignoring case, or null for any author.
+     * @return the JSON array of the matching books.
+     */
+    public byte[] filter(EGenre genre, String author) {
+        if (genre == null && author == null) {
+            return allBooksJson;
+        }
+
+        long[] ids;
+        if (genre != null && author != null) {
+            ids = intersect(idsByGenre.get(genre), idsByAuthor.get(authorKey(author)));
+        } else if (genre != null) {
+            ids = idsByGenre.get(genre);
+        } else {
+            ids = idsByAuthor.get(authorKey(author));
+        }
+        if (ids == null || ids.length == 0) {
+            return EMPTY_ARRAY;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(bookJson.get(ids[i]));
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the entity tag of the snapshot, it only changes when the content of the catalog changes.
+     *
+     * @return the quoted entity tag.
+     */
+    public String etag() {
+        return etag;
+    }
+
+    public int size() {
+        return bookJson.size();
+    }
+
+    static String authorKey(String author) {
+        return author.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static long[] toSortedArray(List<Long> ids) {
+        long[] array = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        long[] smaller = a.length <= b.length ? a : b;
+        long[] larger = smaller == a ? b : a;
+        return Arrays.stream(smaller)
+                .filter(id -> Arrays.binarySearch(larger, id) >= 0)
+                .toArray();
+    }
+}
@@ -0,0 +1,293 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The CatalogSnapshotService class serves catalog reads from an in-memory CatalogSnapshot.
+ *
+ * Reads of the catalog outnumber writes by several orders of magnitude, so GET /books and GET /book/{id}
+ * are answered from the current snapshot without touching the database. A write in BookController passes the
+ * saved or deleted books to update, which serializes only those books and rebuilds the snapshots they belong to
+ * from the JSON already held in memory. A bulk import rebuilds everything from the database with refresh.
+ * Either way the new snapshots are swapped in with one volatile write, readers always see either the old
+ * or the new catalog, never a mix.
+ *
+ * A write on another node is picked up by the periodic refresh. A book missing from the snapshot
+ * is looked up in the database, so a book created elsewhere is never reported as not found.
+ *
+ * There is one snapshot per library branch, and one of all books for the requests without a branch.
+ * A request reads the snapshot of its branch, see BranchContext, so the catalog of a small branch stays small
+ * no matter how many branches there are. All snapshots are rebuilt from one query and swapped in together.
+ */
+@Service
+public class CatalogSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    /** The key of the snapshot of all branches, branch IDs start at 1 */
+    private static final Long ALL_BRANCHES = 0L;
+
+    private final BookRepository bookRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Set<Long> branchIds;
+
+    private volatile Map<Long, CatalogSnapshot> snapshots;
+
+    /** Every book of the last snapshots in ID order, copied on write and rebuilt from after a write. Guarded by this */
+    private List<Entry> entries;
+
+    public CatalogSnapshotService(BookRepository bookRepository, ObjectMapper objectMapper,
+                                  @Value("${it120p.app.branchIds}") Set<Long> branchIds) {
+        this.bookRepository = bookRepository;
+        this.objectMapper = objectMapper;
+        this.branchIds = Set.copyOf(branchIds);
+    }
+
+    /**
+     * Returns the current snapshot of the branch of the request, building the first snapshots if needed.
+     *
+     * @return the current snapshot of the branch, or of all books if the request has no branch.
+     */
+    public CatalogSnapshot current() {
+        Map<Long, CatalogSnapshot> current = snapshots;
+        if (current == null) {
+            current = refresh();
+        }
+        Long branchId = BranchContext.current();
+        CatalogSnapshot snapshot = current.get(branchId != null ? branchId : ALL_BRANCHES);
+        // Every configured branch has a snapshot, even without books, this only guards against a missing one
+        return snapshot != null ? snapshot : build(List.of());
+    }
+
+    /**
+     * Returns the JSON of one book, falling back to the database when the book is not in the snapshot.
+     *
+     * @param id the ID of the book.
+     * @return the JSON of the book, or null if the book does not exist.
+     */
+    public byte[] bookJson(Long id) {
+        byte[] json = current().bookJson(id);
+        if (json != null) {
+            return json;
+        }
+        return bookRepository.findById(id)
+                .filter(book -> BranchContext.isVisible(book.getBranchId()))
+                .map(this::toJson)
+                .orElse(null);
+    }
+
+    /**
+     * Builds the first snapshot when the application starts.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // The snapshot is built on the first read instead
+            logger.warn("Could not build the catalog snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot regularly, so writes made on other nodes show up here.
+     */
+    @Scheduled(fixedDelayString = "${it120p.app.catalogRefreshMs}", initialDelayString = "${it120p.app.catalogRefreshMs}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Rebuilds the snapshots of every branch from the database and swaps them in.
+     * Rebuilds run one at a time, readers keep using the previous snapshots meanwhile.
+     * The books of all branches are read, also when the rebuild is started by a request scoped to one branch.
+     *
+     * @return the new snapshots by branch ID.
+     */
+    public synchronized Map<Long, CatalogSnapshot> refresh() {
+        long start = System.currentTimeMillis();
+        List<Book> books = BranchContext.callUnscoped(() -> bookRepository.findAll(Sort.by("id")));
+
+        // Every book is serialized once, the snapshot of its branch and the one of all books share the bytes
+        List<Entry> built = new ArrayList<>(books.size());
+        for (Book book : books) {
+            built.add(toEntry(book));
+        }
+        entries = built;
+
+        Set<Long> affected = new HashSet<>(branchIds);
+        built.forEach(entry -> affected.add(entry.branchId()));
+        Map<Long, CatalogSnapshot> swapped = swap(Map.of(), affected);
+        logger.debug("Built catalog snapshots of {} books in {} branches in {} ms", books.size(), affected.size(),
+                System.currentTimeMillis() - start);
+        return swapped;
+    }
+
+    /**
+     * Applies the books saved and deleted by a write on this node, without reading the catalog from the database.
+     * Only the written books are serialized, and only the snapshot of all books and those of the branches the books
+     * were or are now in are rebuilt. The other branches keep their snapshot.
+     *
+     * @param saved the books as they were saved, with their IDs.
+     * @param deletedIds the IDs of the deleted books.
+     */
+    public synchronized void update(Collection<Book> saved, Collection<Long> deletedIds) {
+        if (entries == null) {
+            // No snapshot yet, the first one is built from the database and already has the write
+            refresh();
+            return;
+        }
+
+        // The list is in ID order, a book is found by binary search and the copy is a single array copy
+        List<Entry> updated = new ArrayList<>(entries);
+        Set<Long> affected = new HashSet<>();
+        for (Book book : saved) {
+            Entry entry = toEntry(book);
+            int index = indexOf(updated, book.getId());
+            if (index >= 0) {
+                affected.add(updated.set(index, entry).branchId());
+            } else {
+                updated.add(-index - 1, entry);
+            }
+            affected.add(entry.branchId());
+        }
+        for (Long id : deletedIds) {
+            int index = indexOf(updated, id);
+            if (index >= 0) {
+                affected.add(updated.remove(index).branchId());
+            }
+        }
+        entries = updated;
+        swap(snapshots, affected);
+    }
+
+    /**
+     * Rebuilds the snapshot of all books and of the given branches from the entries, keeps the others, and swaps them in.
+     */
+    private Map<Long, CatalogSnapshot> swap(Map<Long, CatalogSnapshot> previous, Set<Long> affected) {
+        Map<Long, List<Entry>> entriesByBranch = new HashMap<>();
+        affected.forEach(branchId -> entriesByBranch.put(branchId, new ArrayList<>()));
+        for (Entry entry : entries) {
+            List<Entry> branchEntries = entriesByBranch.get(entry.branchId());
+            if (branchEntries != null) {
+                branchEntries.add(entry);
+            }
+        }
+
+        Map<Long, CatalogSnapshot> built = new HashMap<>(previous);
+        built.put(ALL_BRANCHES, build(entries));
+        entriesByBranch.forEach((branchId, branchEntries) -> built.put(branchId, build(branchEntries)));
+
+        Map<Long, CatalogSnapshot> swapped = Map.copyOf(built);
+        snapshots = swapped;
+        return swapped;
+    }
+
+    /**
+     * Builds the snapshot of a list of books.
+     *
+     * @param books the entries of the books, in ID order.
+     * @return the snapshot.
+     */
+    private CatalogSnapshot build(List<Entry> books) {
+        Map<Long, byte[]> bookJson = HashMap.newHashMap(books.size());
+        Map<EGenre, List<Long>> genres = new EnumMap<>(EGenre.class);
+        Map<String, List<Long>> authors = new HashMap<>();
+        // The array is sized up front, the catalog can be several megabytes
+        int length = books.size() + 1;
+        for (Entry book : books) {
+            length += book.json().length;
+        }
+        ByteArrayOutputStream all = new ByteArrayOutputStream(length);
+        all.write('[');
+        for (Entry book : books) {
+            if (!bookJson.isEmpty()) {
+                all.write(',');
+            }
+            all.writeBytes(book.json());
+            bookJson.put(book.id(), book.json());
+
+            if (book.genre() != null) {
+                genres.computeIfAbsent(book.genre(), genre -> new ArrayList<>()).add(book.id());
+            }
+            if (book.authorKey() != null) {
+                authors.computeIfAbsent(book.authorKey(), author -> new ArrayList<>()).add(book.id());
+            }
+        }
+        all.write(']');
+        byte[] allBooksJson = all.toByteArray();
+
+        Map<EGenre, long[]> idsByGenre = new EnumMap<>(EGenre.class);
+        genres.forEach((genre, ids) -> idsByGenre.put(genre, CatalogSnapshot.toSortedArray(ids)));
+        Map<String, long[]> idsByAuthor = new HashMap<>();
+        authors.forEach((author, ids) -> idsByAuthor.put(author, CatalogSnapshot.toSortedArray(ids)));
+
+        // The tag depends on the content only, so it stays the same across rebuilds, restarts and nodes
+        CRC32 crc = new CRC32();
+        crc.update(allBooksJson);
+        String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + allBooksJson.length + "\"";
+
+        return new CatalogSnapshot(bookJson, allBooksJson, idsByGenre, idsByAuthor, etag);
+    }
+
+    private static int indexOf(List<Entry> entries, long id) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = entries.get(middle).id();
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private Entry toEntry(Book book) {
+        String authorKey = book.getAuthor() != null ? CatalogSnapshot.authorKey(book.getAuthor()) : null;
+        return new Entry(book.getId(), book.getBranchId(), book.getGenre(), authorKey, toJson(book));
+    }
+
+    private byte[] toJson(Book book) {
+        try {
+            return objectMapper.writeValueAsBytes(book);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize book " + book.getId(), e);
+        }
+    }
+
+    /**
+     * What the snapshots are built from for one book: its JSON and the fields the snapshots are indexed by.
+     */
+    private record Entry(Long id, Long branchId, EGenre genre, String authorKey, byte[] json) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.it120p.librarymanagementsystem.service.export;
+
+/**
+ * The ExportFormat enum lists the formats of the data exports.
+ * NDJSON writes one JSON object per line, CSV writes a header line followed by one line per record.
+ */
+public enum ExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
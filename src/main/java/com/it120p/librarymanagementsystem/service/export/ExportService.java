@@ -0,0 +1,145 @@
+package com.it120p.librarymanagementsystem.service.export;
+
+import com.it120p.librarymanagementsystem.config.ReadFromReplica;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The ExportService class writes whole tables to an output stream in NDJSON or CSV.
+ *
+ * The rows are read from a JPA Stream backed by a server-side cursor, so only the current row is held in memory.
+ * Every flushEvery records the persistence context is cleared and the output is flushed,
+ * which keeps the heap flat for millions of rows and sends the first bytes to the client right away.
+ * Each export runs in its own read-only transaction, on the replica when read/write routing is enabled,
+ * because it is called from the thread writing the response, after the controller has returned.
+ * The JPA Stream is only open while that transaction is.
+ */
+@Service
+public class ExportService {
+
+    private final OrderRepository orderRepository;
+
+    private final BookRepository bookRepository;
+
+    private final UserRepository userRepository;
+
+    private final EntityManager entityManager;
+
+    private final int flushEvery;
+
+    public ExportService(OrderRepository orderRepository, BookRepository bookRepository, UserRepository userRepository,
+                         EntityManager entityManager,
+                         @Value("${it120p.app.exportFlushEvery}") int flushEvery) {
+        this.orderRepository = orderRepository;
+        this.bookRepository = bookRepository;
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /**
+     * Exports every order with the IDs of its books.
+     *
+     * @param format the export format.
+     * @param out the stream to write to.
+     * @throws IOException if the export cannot be written.
+     */
+    @ReadFromReplica
+    public void exportOrders(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<OrderRepository.OrderExportRow> rows = orderRepository.streamExportRows();
+             RecordWriter writer = RecordWriter.create(format, out, "id", "userId", "username", "status",
+                     "borrowedAt", "dueDate", "returnedAt", "pickedUp", "renewCount", "bookIds")) {
+            Iterator<OrderRepository.OrderExportRow> iterator = rows.iterator();
+            OrderRepository.OrderExportRow current = null;
+            List<Long> bookIds = new ArrayList<>();
+            long written = 0;
+
+            while (iterator.hasNext()) {
+                OrderRepository.OrderExportRow row = iterator.next();
+                // The rows of one order are next to each other, write the order when the next one starts
+                if (current != null && !current.getId().equals(row.getId())) {
+                    writeOrder(writer, current, bookIds);
+                    bookIds.clear();
+                    afterRecord(writer, ++written);
+                }
+                current = row;
+                if (row.getBookId() != null) {
+                    bookIds.add(row.getBookId());
+                }
+            }
+            if (current != null) {
+                writeOrder(writer, current, bookIds);
+            }
+        }
+    }
+
+    /**
+     * Exports every book.
+     *
+     * @param format the export format.
+     * @param out the stream to write to.
+     * @throws IOException if the export cannot be written.
+     */
+    @ReadFromReplica
+    public void exportBooks(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<Book> books = bookRepository.streamAllBy();
+             RecordWriter writer = RecordWriter.create(format, out, "id", "title", "author", "genre",
+                     "description", "imagePath")) {
+            long written = 0;
+            for (Iterator<Book> iterator = books.iterator(); iterator.hasNext(); ) {
+                Book book = iterator.next();
+                writer.write(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                        book.getDescription(), book.getImagePath());
+                afterRecord(writer, ++written);
+            }
+        }
+    }
+
+    /**
+     * Exports every user, without the password hash.
+     *
+     * @param format the export format.
+     * @param out the stream to write to.
+     * @throws IOException if the export cannot be written.
+     */
+    @ReadFromReplica
+    public void exportUsers(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<User> users = userRepository.streamAllBy();
+             RecordWriter writer = RecordWriter.create(format, out, "id", "username", "name", "email")) {
+            long written = 0;
+            for (Iterator<User> iterator = users.iterator(); iterator.hasNext(); ) {
+                User user = iterator.next();
+                writer.write(user.getId(), user.getUsername(), user.getName(), user.getEmail());
+                afterRecord(writer, ++written);
+            }
+        }
+    }
+
+    private void writeOrder(RecordWriter writer, OrderRepository.OrderExportRow order, List<Long> bookIds) throws IOException {
+        writer.write(order.getId(), order.getUserId(), order.getUsername(), order.getStatus(), order.getBorrowedAt(),
+                order.getDueDate(), order.getReturnedAt(), order.getPickedUp(), order.getRenewCount(), bookIds);
+    }
+
+    /**
+     * Clears the persistence context and flushes the output every flushEvery records.
+     */
+    private void afterRecord(RecordWriter writer, long written) throws IOException {
+        if (written % flushEvery == 0) {
+            entityManager.clear();
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.it120p.librarymanagementsystem.service.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * The RecordWriter class writes export records to an output stream, one record at a time.
+ *
+ * Nothing is kept once a record is written, so the memory used does not depend on the number of records.
+ * Dates are written as ISO-8601 instants, collections as a JSON array (NDJSON) or separated by ';' (CSV).
+ */
+public abstract class RecordWriter implements AutoCloseable {
+
+    protected final String[] columns;
+
+    protected RecordWriter(String[] columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Creates a writer for the given format.
+     *
+     * @param format the export format.
+     * @param out the stream to write to, it is not closed by the writer.
+     * @param columns the names of the columns, in the order of the values passed to write.
+     * @return the writer.
+     * @throws IOException if the header cannot be written.
+     */
+    public static RecordWriter create(ExportFormat format, OutputStream out, String... columns) throws IOException {
+        return format == ExportFormat.CSV ? new Csv(out, columns) : new Ndjson(out, columns);
+    }
+
+    /**
+     * Writes one record.
+     *
+     * @param values the values of the record, one per column.
+     * @throws IOException if the record cannot be written.
+     */
+    public abstract void write(Object... values) throws IOException;
+
+    /**
+     * Sends the buffered records to the client.
+     *
+     * @throws IOException if the records cannot be written.
+     */
+    public abstract void flush() throws IOException;
+
+    @Override
+    public abstract void close() throws IOException;
+
+    private static Object plain(Object value) {
+        if (value instanceof Date date) {
+            return Instant.ofEpochMilli(date.getTime()).toString();
+        }
+        if (value instanceof Enum<?> e) {
+            return e.name();
+        }
+        return value;
+    }
+
+    private static class Ndjson extends RecordWriter {
+        private static final JsonFactory FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        private final JsonGenerator generator;
+
+        Ndjson(OutputStream out, String[] columns) throws IOException {
+            super(columns);
+            this.generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            // Put every record on its own line
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(Object... values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                generator.writeFieldName(columns[i]);
+                writeValue(values[i]);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value instanceof Collection<?> collection) {
+                generator.writeStartArray();
+                for (Object item : collection) {
+                    writeValue(item);
+                }
+                generator.writeEndArray();
+                return;
+            }
+            Object plain = plain(value);
+            if (plain == null) {
+                generator.writeNull();
+            } else if (plain instanceof Number || plain instanceof Boolean) {
+                generator.writeObject(plain);
+            } else {
+                generator.writeString(plain.toString());
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static class Csv extends RecordWriter {
+        private final Writer writer;
+
+        Csv(OutputStream out, String[] columns) throws IOException {
+            super(columns);
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writeLine(columns);
+        }
+
+        @Override
+        public void write(Object... values) throws IOException {
+            writeLine(values);
+        }
+
+        private void writeLine(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(Object value) throws IOException {
+            String text;
+            if (value instanceof Collection<?> collection) {
+                StringBuilder joined = new StringBuilder();
+                for (Object item : collection) {
+                    if (!joined.isEmpty()) {
+                        joined.append(';');
+                    }
+                    joined.append(plain(item));
+                }
+                text = joined.toString();
+            } else {
+                Object plain = plain(value);
+                text = plain == null ? "" : plain.toString();
+            }
+
+            // Quote the field when it contains a separator, a quote or a line break (RFC 4180)
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(text.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(text);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+}
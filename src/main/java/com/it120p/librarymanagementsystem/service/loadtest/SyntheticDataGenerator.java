@@ -0,0 +1,331 @@
+package com.it120p.librarymanagementsystem.service.loadtest;
+
+import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.model.ERole;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.service.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SyntheticDataGenerator class fills an empty database with users, books and orders for load tests.
+ *
+ * It only runs with the loadtest profile, see application-loadtest.properties and scripts/loadtest.sh.
+ * The rows are written with JDBC batches, no entities are created. The same seed always gives the same data,
+ * so two runs of the load test start from the same database.
+ *
+ * Every generated user has the same password, it is hashed once so thousands of users do not cost thousands of BCrypt rounds.
+ * The usernames are lt-user-1 to lt-user-N, the first ones are admins.
+ *
+ * The orders follow the shape of a real library: most of them are returned, some are still borrowed and a few are overdue.
+ * A book is in at most one open order at a time, returned orders can share books.
+ *
+ * The generator runs before the application is ready, so the catalog snapshot built by the warm-up
+ * of CatalogSnapshotService already holds the generated books.
+ */
+@Component
+@Profile("loadtest")
+public class SyntheticDataGenerator implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+    /** The prefix of the generated usernames, the load driver signs in with it */
+    public static final String USERNAME_PREFIX = "lt-user-";
+
+    private static final String INSERT_ROLE = "insert into roles (name) values (?)";
+    private static final String INSERT_USER = "insert into users (username, name, email, password) values (?, ?, ?, ?)";
+    private static final String INSERT_USER_ROLE = "insert into user_roles (user_id, role_id) values (?, ?)";
+    private static final String INSERT_BOOK =
+            "insert into book (title, author, genre, description, image_path) values (?, ?, ?, ?, ?)";
+    private static final String INSERT_ORDER = "insert into orders (user_id, status, borrowed_at, due_date, returned_at, " +
+            "is_picked_up, version, renew_count) values (?, ?, ?, ?, ?, ?, 0, ?)";
+    private static final String INSERT_ORDER_BOOK = "insert into order_books (order_id, book_id) values (?, ?)";
+
+    private static final String[] FIRST_NAMES = {"Ana", "Ben", "Carla", "Dante", "Elena", "Felix", "Grace", "Hugo",
+            "Iris", "Jonas", "Kira", "Luis", "Maya", "Noah", "Olga", "Paolo"};
+    private static final String[] LAST_NAMES = {"Reyes", "Santos", "Cruz", "Bautista", "Garcia", "Mendoza", "Torres",
+            "Flores", "Ramos", "Navarro", "Aquino", "Castillo"};
+    private static final String[] TITLE_WORDS = {"Silent", "River", "Glass", "Empire", "Shadow", "Garden", "Last",
+            "Northern", "Letters", "Storm", "Hidden", "Island", "Winter", "Crown", "Paper", "Lantern"};
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    // The loan period of a new order, see Order.onCreate
+    private static final int LOAN_DAYS = 7;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final PasswordEncoder encoder;
+
+    private final StorageService storageService;
+
+
+    private final int users;
+    private final int admins;
+    private final int books;
+    private final int orders;
+    private final int covers;
+    private final int batchSize;
+    private final long seed;
+    private final String password;
+    private final int renewalDays;
+    private final int maxRenewals;
+
+    public SyntheticDataGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  PasswordEncoder encoder, StorageService storageService,
+                                  @Value("${it120p.app.loadtest.users}") int users,
+                                  @Value("${it120p.app.loadtest.admins}") int admins,
+                                  @Value("${it120p.app.loadtest.books}") int books,
+                                  @Value("${it120p.app.loadtest.orders}") int orders,
+                                  @Value("${it120p.app.loadtest.covers}") int covers,
+                                  @Value("${it120p.app.loadtest.batchSize}") int batchSize,
+                                  @Value("${it120p.app.loadtest.seed}") long seed,
+                                  @Value("${it120p.app.loadtest.password}") String password,
+                                  @Value("${it120p.app.renewalDays}") int renewalDays,
+                                  @Value("${it120p.app.maxRenewals}") int maxRenewals) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.encoder = encoder;
+        this.storageService = storageService;
+        this.users = Math.max(1, users);
+        this.admins = Math.min(Math.max(0, admins), this.users);
+        this.books = Math.max(1, books);
+        this.orders = Math.max(0, orders);
+        this.covers = Math.max(1, covers);
+        this.batchSize = Math.max(1, batchSize);
+        this.seed = seed;
+        this.password = password;
+        this.renewalDays = renewalDays;
+        this.maxRenewals = maxRenewals;
+    }
+
+    /**
+     * Generates the data when the application starts, unless the database already has generated users.
+     */
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Integer existing = jdbcTemplate.queryForObject(
+                "select count(*) from users where username like ?", Integer.class, USERNAME_PREFIX + "%");
+        if (existing != null && existing > 0) {
+            logger.info("The database already has {} generated users, skipping the data generation", existing);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Random random = new Random(seed);
+
+        int userRoleId = ensureRole(ERole.ROLE_USER);
+        int adminRoleId = ensureRole(ERole.ROLE_ADMIN);
+        List<Long> userIds = insertUsers(userRoleId, adminRoleId);
+        List<String> coverKeys = uploadCovers(random);
+        List<Long> bookIds = insertBooks(random, coverKeys);
+        insertOrders(random, userIds, bookIds);
+
+        logger.info("Generated {} users, {} books and {} orders in {} ms (seed {})", users, books, orders,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), seed);
+    }
+
+    /**
+     * Finds the ID of a role, the role is created if it does not exist yet.
+     */
+    private int ensureRole(ERole role) {
+        List<Integer> ids = jdbcTemplate.queryForList("select id from roles where name = ?", Integer.class, role.name());
+        if (!ids.isEmpty()) {
+            return ids.get(0);
+        }
+        jdbcTemplate.update(INSERT_ROLE, role.name());
+        return jdbcTemplate.queryForObject("select id from roles where name = ?", Integer.class, role.name());
+    }
+
+    private List<Long> insertUsers(int userRoleId, int adminRoleId) {
+        // Every user gets the same password, hash it once
+        String hash = encoder.encode(password);
+        long maxId = maxId("users");
+
+        List<Object[]> rows = new ArrayList<>(users);
+        for (int i = 1; i <= users; i++) {
+            String first = FIRST_NAMES[i % FIRST_NAMES.length];
+            String last = LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+            rows.add(new Object[]{USERNAME_PREFIX + i, first + " " + last, USERNAME_PREFIX + i + "@example.com", hash});
+        }
+        insert(INSERT_USER, rows);
+
+        // The IDs are generated by the database, read them back in insertion order
+        List<Long> ids = newIds("users", maxId);
+        List<Object[]> roles = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            roles.add(new Object[]{ids.get(i), i < admins ? adminRoleId : userRoleId});
+        }
+        insert(INSERT_USER_ROLE, roles);
+        return ids;
+    }
+
+    /**
+     * Stores a few small covers, the books share them so the cover download has something to serve.
+     */
+    private List<String> uploadCovers(Random random) throws IOException {
+        List<String> keys = new ArrayList<>(covers);
+        for (int i = 0; i < covers; i++) {
+            BufferedImage image = new BufferedImage(120, 180, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(new Color(random.nextInt(0x1000000)));
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.WHITE);
+            graphics.drawString("Cover " + (i + 1), 10, 90);
+            graphics.dispose();
+
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            keys.add(storageService.uploadImageStream(new ByteArrayInputStream(png.toByteArray()), "Cover " + (i + 1)));
+        }
+        return keys;
+    }
+
+    private List<Long> insertBooks(Random random, List<String> coverKeys) {
+        EGenre[] genres = EGenre.values();
+        long maxId = maxId("book");
+
+        List<Object[]> rows = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+                    + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + (i + 1);
+            // A small pool of authors, so the author filter returns more than one book
+            String author = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            // Round robin, so every genre has books
+            EGenre genre = genres[i % genres.length];
+            String description = "A generated " + genre.name().toLowerCase().replace('_', ' ') + " book by " + author + ".";
+            rows.add(new Object[]{title, author, genre.name(), description, coverKeys.get(random.nextInt(coverKeys.size()))});
+        }
+        insert(INSERT_BOOK, rows);
+        return newIds("book", maxId);
+    }
+
+    private void insertOrders(Random random, List<Long> userIds, List<Long> bookIds) {
+        long now = System.currentTimeMillis();
+        long maxId = maxId("orders");
+        // The books in a borrowed or overdue order
+        BitSet onLoan = new BitSet(bookIds.size());
+
+        List<Object[]> rows = new ArrayList<>(orders);
+        List<int[]> orderBooks = new ArrayList<>(orders);
+        for (int i = 0; i < orders; i++) {
+            Long userId = userIds.get(random.nextInt(userIds.size()));
+            int roll = random.nextInt(100);
+            OrderStatus status = roll < 70 ? OrderStatus.RETURNED : roll < 92 ? OrderStatus.BORROWED : OrderStatus.OVERDUE;
+
+            int[] picked = pickBooks(random, bookIds.size(), status != OrderStatus.RETURNED ? onLoan : null);
+            if (picked.length == 0) {
+                // Every book is on loan, the remaining orders are returned ones
+                status = OrderStatus.RETURNED;
+                picked = pickBooks(random, bookIds.size(), null);
+            }
+
+            int renewCount = random.nextInt(10) < 7 ? 0 : 1 + random.nextInt(Math.max(1, maxRenewals));
+            long loanMs = (LOAN_DAYS + (long) renewCount * renewalDays) * DAY_MS;
+            long borrowedAt;
+            Long returnedAt = null;
+            boolean pickedUp;
+            switch (status) {
+                case BORROWED -> {
+                    // Still within the loan period
+                    borrowedAt = now - (long) (random.nextDouble() * (loanMs - DAY_MS));
+                    pickedUp = random.nextInt(10) < 8;
+                }
+                case OVERDUE -> {
+                    // Due up to 30 days ago
+                    borrowedAt = now - loanMs - DAY_MS - (long) (random.nextDouble() * 30 * DAY_MS);
+                    pickedUp = true;
+                }
+                default -> {
+                    // Borrowed within the last year and returned around the due date
+                    borrowedAt = now - loanMs - (long) (random.nextDouble() * 365 * DAY_MS);
+                    returnedAt = Math.min(now, borrowedAt + (long) (random.nextDouble() * (loanMs + 3 * DAY_MS)));
+                    pickedUp = true;
+                }
+            }
+
+            rows.add(new Object[]{userId, status.name(), new Timestamp(borrowedAt), new Timestamp(borrowedAt + loanMs),
+                    returnedAt == null ? null : new Timestamp(returnedAt), pickedUp, renewCount});
+            orderBooks.add(picked);
+        }
+        insert(INSERT_ORDER, rows);
+
+        List<Long> orderIds = newIds("orders", maxId);
+        List<Object[]> links = new ArrayList<>();
+        for (int i = 0; i < orderIds.size(); i++) {
+            for (int book : orderBooks.get(i)) {
+                links.add(new Object[]{orderIds.get(i), bookIds.get(book)});
+            }
+        }
+        insert(INSERT_ORDER_BOOK, links);
+    }
+
+    /**
+     * Picks one to three different books for an order.
+     *
+     * @param random the random generator.
+     * @param bookCount the number of books.
+     * @param onLoan the books on loan, they are skipped and the picked books are added, or null for a returned order.
+     * @return the indexes of the picked books, empty if no book is available.
+     */
+    private int[] pickBooks(Random random, int bookCount, BitSet onLoan) {
+        int wanted = Math.min(bookCount, random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(2));
+        List<Integer> picked = new ArrayList<>(wanted);
+        for (int attempt = 0; attempt < wanted * 10 && picked.size() < wanted; attempt++) {
+            int book = random.nextInt(bookCount);
+            if (onLoan != null && onLoan.get(book)) {
+                continue;
+            }
+            if (!picked.contains(book)) {
+                picked.add(book);
+                if (onLoan != null) {
+                    onLoan.set(book);
+                }
+            }
+        }
+        return picked.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Inserts the rows in batches, each batch in its own transaction.
+     */
+    private void insert(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Object[]> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+        }
+    }
+
+    private long maxId(String table) {
+        Long max = jdbcTemplate.queryForObject("select max(id) from " + table, Long.class);
+        return max == null ? 0 : max;
+    }
+
+    private List<Long> newIds(String table, long maxId) {
+        return jdbcTemplate.queryForList("select id from " + table + " where id > ? order by id", Long.class, maxId);
+    }
+}
@@ -0,0 +1,125 @@
+package com.it120p.librarymanagementsystem.service.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The CachingObjectStore class keeps a local copy of the hot objects of a remote store.
+ *
+ * The keys are content-addressed, so a cached copy can never be stale and needs no invalidation.
+ * A miss downloads the object once into the cache directory (through a temporary file and an atomic move),
+ * later reads are served from the local disk.
+ * The cache holds at most maxEntries objects, the least recently read one is removed first.
+ * Writes, deletes and existence checks go straight to the remote store.
+ */
+public class CachingObjectStore implements ObjectStore {
+    private static final Logger logger = LoggerFactory.getLogger(CachingObjectStore.class);
+
+    private final ObjectStore delegate;
+
+    private final Path cacheDir;
+
+    private final int maxEntries;
+
+    /** The cached keys in access order, guarded by its own lock */
+    private final LinkedHashMap<String, Boolean> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public CachingObjectStore(ObjectStore delegate, Path cacheDir, int maxEntries) throws IOException {
+        this.delegate = delegate;
+        this.cacheDir = cacheDir;
+        this.maxEntries = maxEntries;
+        Files.createDirectories(cacheDir);
+
+        // Start empty, files left by a previous run are not tracked and would never be evicted
+        try (Stream<Path> leftovers = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) leftovers::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, Path file, String contentType, long size) throws IOException {
+        delegate.put(key, file, contentType, size);
+    }
+
+    /**
+     * Asks the remote store only. Another instance may have deleted the object while a copy is still cached here,
+     * so a cached copy does not prove that the object exists.
+     */
+    @Override
+    public boolean exists(String key) throws IOException {
+        return delegate.exists(key);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        Path cached = cached(key);
+        if (!Files.exists(cached)) {
+            Path temp = Files.createTempFile(cacheDir, "fill-", ".tmp");
+            try {
+                try (InputStream in = delegate.open(key)) {
+                    Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        touch(key);
+        return Files.newInputStream(cached);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        delegate.delete(key);
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        Files.deleteIfExists(cached(key));
+    }
+
+    @Override
+    public Optional<URI> downloadUrl(String key) {
+        return delegate.downloadUrl(key);
+    }
+
+    /**
+     * Marks a key as recently read and evicts the oldest entries when the cache is full.
+     */
+    private void touch(String key) {
+        synchronized (entries) {
+            entries.put(key, Boolean.TRUE);
+            Iterator<Map.Entry<String, Boolean>> oldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && oldest.hasNext()) {
+                String evicted = oldest.next().getKey();
+                oldest.remove();
+                try {
+                    // A reader that already opened the file keeps reading it, the file is only unlinked
+                    Files.deleteIfExists(cached(evicted));
+                } catch (IOException e) {
+                    logger.warn("Could not evict cached image {}: {}", evicted, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The cache is flat, the file name of a storage key is already the unique hash.
+     */
+    private Path cached(String key) {
+        return cacheDir.resolve(key.substring(key.lastIndexOf('/') + 1));
+    }
+}
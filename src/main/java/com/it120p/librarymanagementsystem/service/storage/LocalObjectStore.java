@@ -0,0 +1,44 @@
+package com.it120p.librarymanagementsystem.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The LocalObjectStore class keeps the objects as files under a root directory of this node.
+ *
+ * The uploaded file is moved into place with an atomic move, readers either see no file or the whole image.
+ * This is the default store, it only works when a single node serves the covers (or the directory is shared).
+ */
+public class LocalObjectStore implements ObjectStore {
+
+    private final Path root;
+
+    public LocalObjectStore(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public void put(String key, Path file, String contentType, long size) throws IOException {
+        Path target = root.resolve(key);
+        Files.createDirectories(target.getParent());
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(root.resolve(key));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(root.resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(root.resolve(key));
+    }
+}
@@ -0,0 +1,66 @@
+package com.it120p.librarymanagementsystem.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * The ObjectStore interface is where the StorageService keeps the bytes of the cover images.
+ *
+ * Keys are content-addressed storage keys (e.g. ab/cd/abcd....png), so an object never changes once it is written.
+ * The LocalObjectStore keeps the objects in a directory of this node,
+ * the S3ObjectStore keeps them in an S3-compatible bucket that every node can read.
+ * Which one is used is chosen with the it120p.app.storage.type property, see ObjectStoreConfig.
+ */
+public interface ObjectStore {
+
+    /**
+     * Stores a file under a key.
+     * The file may be moved by the store, the caller should only delete it if it still exists afterwards.
+     *
+     * @param key the storage key of the object.
+     * @param file the file holding the object.
+     * @param contentType the content type of the object.
+     * @param size the size of the object in bytes.
+     * @throws IOException if the object cannot be stored.
+     */
+    void put(String key, Path file, String contentType, long size) throws IOException;
+
+    /**
+     * Checks if an object is stored under a key.
+     *
+     * @param key the storage key of the object.
+     * @return true if the object exists, false otherwise.
+     * @throws IOException if the store cannot be reached.
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Opens an object for reading.
+     *
+     * @param key the storage key of the object.
+     * @return a stream of the object, the caller has to close it.
+     * @throws IOException if the object does not exist or cannot be read.
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Deletes an object, nothing happens if it does not exist.
+     *
+     * @param key the storage key of the object.
+     * @throws IOException if the object cannot be deleted.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Gets a URL the client can download the object from directly, so the bytes do not pass through the application.
+     *
+     * @param key the storage key of the object.
+     * @return the URL, or empty if the object has to be served by the application.
+     */
+    default Optional<URI> downloadUrl(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,170 @@
+package com.it120p.librarymanagementsystem.service.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The S3ObjectStore class keeps the objects in a bucket of an S3-compatible object store.
+ *
+ * Any store that speaks the S3 API works: AWS S3, or MinIO on localhost for development (see application-s3-local.properties).
+ * Objects larger than the part size are sent with a multipart upload, so a failed part is retried on its own
+ * and no more than one part is held in memory.
+ * When presigned downloads are enabled, downloadUrl returns a short-lived signed URL and the client fetches the
+ * image from the bucket itself, the bytes never pass through the application.
+ *
+ * SDK errors are rethrown as IOException, so the StorageService handles both stores the same way.
+ */
+public class S3ObjectStore implements ObjectStore {
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectStore.class);
+
+    /** S3 rejects parts smaller than 5 MB, except the last one */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3;
+
+    private final S3Presigner presigner;
+
+    private final String bucket;
+
+    private final int partSize;
+
+    private final Duration presignTtl;
+
+    /**
+     * Constructs the S3ObjectStore.
+     *
+     * @param s3 the S3 client.
+     * @param presigner the presigner used for download URLs, or null to serve every download through the application.
+     * @param bucket the name of the bucket.
+     * @param partSize the size of the parts of a multipart upload, at least 5 MB.
+     * @param presignTtl how long a download URL stays valid.
+     */
+    public S3ObjectStore(S3Client s3, S3Presigner presigner, String bucket, int partSize, Duration presignTtl) {
+        this.s3 = s3;
+        this.presigner = presigner;
+        this.bucket = bucket;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        this.presignTtl = presignTtl;
+    }
+
+    /**
+     * Creates the bucket if it does not exist yet.
+     * Only meant for development against a local S3 stand-in, production buckets are created up front.
+     */
+    public void createBucketIfMissing() {
+        try {
+            s3.headBucket(b -> b.bucket(bucket));
+        } catch (NoSuchBucketException e) {
+            s3.createBucket(b -> b.bucket(bucket));
+            logger.info("Created bucket {}", bucket);
+        }
+    }
+
+    @Override
+    public void put(String key, Path file, String contentType, long size) throws IOException {
+        try {
+            if (size <= partSize) {
+                s3.putObject(b -> b.bucket(bucket).key(key).contentType(contentType).contentLength(size),
+                        RequestBody.fromFile(file));
+            } else {
+                multipartPut(key, file, contentType);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not upload " + key + " to bucket " + bucket, e);
+        }
+    }
+
+    /**
+     * Uploads a file in parts of partSize bytes.
+     * The upload is aborted if any part fails, so the bucket is not left with orphan parts.
+     */
+    private void multipartPut(String key, Path file, String contentType) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(key).contentType(contentType)).uploadId();
+        try (InputStream in = Files.newInputStream(file)) {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[partSize];
+            int read;
+            while ((read = in.readNBytes(buffer, 0, partSize)) > 0) {
+                int partNumber = parts.size() + 1;
+                String eTag = s3.uploadPart(b -> b.bucket(bucket).key(key).uploadId(uploadId).partNumber(partNumber),
+                        RequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, read))).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts)));
+        } catch (IOException | SdkException e) {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId));
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try {
+            s3.headObject(b -> b.bucket(bucket).key(key));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw new IOException("Could not check " + key + " in bucket " + bucket, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not check " + key + " in bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Could not download " + key + " from bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key + " from bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public Optional<URI> downloadUrl(String key) {
+        if (presigner == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(presigner.presignGetObject(p -> p.signatureDuration(presignTtl)
+                    .getObjectRequest(b -> b.bucket(bucket).key(key))).url().toURI());
+        } catch (URISyntaxException | SdkException e) {
+            // Fall back to serving the image through the application
+            logger.warn("Could not presign {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
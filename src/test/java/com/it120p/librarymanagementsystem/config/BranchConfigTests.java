@@ -0,0 +1,32 @@
+package com.it120p.librarymanagementsystem.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Checks that the branch scoped transaction manager gets the spring.transaction.* settings.
+ * The test slice does not load the customizers, so their auto-configuration is imported like in the application.
+ */
+@DataJpaTest(properties = {"spring.transaction.default-timeout=7", "spring.transaction.rollback-on-commit-failure=true"})
+@Import(BranchConfig.class)
+@ImportAutoConfiguration(TransactionManagerCustomizationAutoConfiguration.class)
+class BranchConfigTests {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void theSpringTransactionSettingsAreApplied() {
+        BranchScopedTransactionManager branchScoped = assertInstanceOf(BranchScopedTransactionManager.class, transactionManager);
+        assertEquals(7, branchScoped.getDefaultTimeout());
+        assertEquals(true, branchScoped.isRollbackOnCommitFailure());
+    }
+}
@@ -0,0 +1,82 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks the branch a request is scoped to, depending on the header and on the user making it.
+ */
+class BranchFilterTests {
+    private final BranchFilter branchFilter = new BranchFilter(Set.of(1L, 2L));
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void aUserIsScopedToTheHomeBranchWithoutTheHeader() throws Exception {
+        authenticate("ROLE_USER", 2L);
+        assertEquals(2L, branchOf(request(null), new MockHttpServletResponse()));
+    }
+
+    @Test
+    void aUserCannotPickAnotherBranch() throws Exception {
+        authenticate("ROLE_USER", 2L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNull(branchOf(request("1"), response));
+        assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    void anAdminPicksTheBranchWithTheHeader() throws Exception {
+        authenticate("ROLE_ADMIN", 2L);
+        assertEquals(1L, branchOf(request("1"), new MockHttpServletResponse()));
+        assertNull(branchOf(request(null), new MockHttpServletResponse()));
+    }
+
+    @Test
+    void anUnknownBranchIsRejected() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNull(branchOf(request("3"), response));
+        assertEquals(400, response.getStatus());
+    }
+
+    private static void authenticate(String role, Long branchId) {
+        UserDetailsImpl user = new UserDetailsImpl(1L, "reader", "Reader", "reader@example.com", branchId, "secret",
+                List.of(new SimpleGrantedAuthority(role)));
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    private static MockHttpServletRequest request(String branchHeader) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+        if (branchHeader != null) {
+            request.addHeader(BranchContext.HEADER, branchHeader);
+        }
+        return request;
+    }
+
+    /**
+     * Runs the filter and returns the branch the rest of the chain saw, or null if it was not scoped or not reached.
+     */
+    private Long branchOf(MockHttpServletRequest request, MockHttpServletResponse response) throws Exception {
+        AtomicReference<Long> seen = new AtomicReference<>();
+        branchFilter.doFilter(request, response, (req, res) -> seen.set(BranchContext.current()));
+        assertNull(BranchContext.current());
+        return seen.get();
+    }
+}
@@ -0,0 +1,95 @@
+package com.it120p.librarymanagementsystem.config;
+
+import com.it120p.librarymanagementsystem.model.FineEntryType;
+import com.it120p.librarymanagementsystem.model.FineLedgerEntry;
+import com.it120p.librarymanagementsystem.service.FineService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts the application with the replica-local profile and checks that a @ReadFromReplica read is served
+ * by the second H2 database once a heartbeat has reached it, and by the primary when it has none.
+ *
+ * The replica database does not receive the primary's writes, so the test plays the replication:
+ * it copies the primary into it, heartbeat included. A ledger entry written to the replica only
+ * tells which database served the read.
+ */
+@SpringBootTest(properties = {
+        // The scheduled check keeps writing heartbeats to the primary only, the copied one must stay recent enough
+        "it120p.app.replica.maxLagMs=600000"
+})
+@ActiveProfiles("replica-local")
+class ReplicaLocalRoutingTests {
+    private static final long USER_ID = 42L;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    @Autowired
+    private FineService fineService;
+
+    @TempDir
+    private Path tempDir;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(primaryDataSource);
+        // The replica pool is read-only, write to the replica database through a connection of its own
+        replica = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;MODE=MySQL", "sa", ""));
+        replica.execute("drop all objects");
+
+        // Writes the heartbeat to the primary, then copies the primary into the replica
+        replicaLagMonitor.check();
+        String script = tempDir.resolve("primary.sql").toString();
+        primary.execute("script to '" + script + "'");
+        replica.execute("runscript from '" + script + "'");
+        replica.update("insert into fine_ledger (user_id, entry_type, entry_date, amount, balance_after, created_at) "
+                        + "values (?, ?, ?, ?, ?, ?)",
+                USER_ID, FineEntryType.ACCRUAL.name(), new Date(), 0.25, 0.25, new Date());
+    }
+
+    @Test
+    void aReadFromReplicaIsServedByTheReplicaOnceItHasAHeartbeat() {
+        replicaLagMonitor.check();
+        assertFalse(replicaLagMonitor.isLagging());
+
+        List<FineLedgerEntry> ledger = fineService.getLedger(USER_ID, PageRequest.of(0, 10)).getContent();
+
+        assertEquals(1, ledger.size());
+    }
+
+    @Test
+    void aReadFromReplicaFallsBackToThePrimaryWithoutAHeartbeat() {
+        replica.update("delete from replication_heartbeat");
+        replicaLagMonitor.check();
+        assertTrue(replicaLagMonitor.isLagging());
+
+        List<FineLedgerEntry> ledger = fineService.getLedger(USER_ID, PageRequest.of(0, 10)).getContent();
+
+        assertEquals(0, ledger.size());
+    }
+}
@@ -0,0 +1,60 @@
+package com.it120p.librarymanagementsystem.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that only the transactions opted in with @ReadFromReplica are routed to the replica.
+ */
+class ReplicaRoutingDataSourceTests {
+    private boolean lagging;
+
+    private final ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(() -> lagging, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.endTransaction();
+        ReplicaRoutingDataSource.endTransaction();
+    }
+
+    @Test
+    void aRepositoryReadStaysOnThePrimary() {
+        ReplicaRoutingDataSource.beginTransaction(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void anOptedInReadGoesToTheReplicaUnlessItLags() {
+        ReplicaRoutingDataSource.beginTransaction(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(ReplicaRoutingDataSource.REPLICA, dataSource.determineCurrentLookupKey());
+
+        lagging = true;
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void theOuterTransactionIsRoutedAgainAfterAnInnerOne() {
+        ReplicaRoutingDataSource.beginTransaction(true);
+        ReplicaRoutingDataSource.beginTransaction(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+
+        ReplicaRoutingDataSource.endTransaction();
+        assertEquals(ReplicaRoutingDataSource.REPLICA, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void aWriteGoesToThePrimary() {
+        ReplicaRoutingDataSource.beginTransaction(true);
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+}
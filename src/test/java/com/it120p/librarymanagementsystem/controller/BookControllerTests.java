@@ -0,0 +1,109 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.exception.InvalidImageException;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.service.ActivityLog;
+import com.it120p.librarymanagementsystem.service.StorageService;
+import com.it120p.librarymanagementsystem.service.catalog.CatalogSnapshotService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that saving a book, with an uploaded image or with the storage key of a stored one,
+ * leaves the stored image with one reference per book using it.
+ */
+class BookControllerTests {
+    private static final String COVER = "images/3f/3f0c8e4c3a1f2b6d7e9a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e.png";
+    private static final String NEW_COVER = "images/aa/aa0c8e4c3a1f2b6d7e9a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e.png";
+
+    private StorageService storageService;
+    private BookRepository bookRepository;
+    private BookController bookController;
+    private final MockMultipartFile image = new MockMultipartFile("image", "cover.png", "image/png", new byte[]{1});
+
+    @BeforeEach
+    void setUp() {
+        storageService = mock(StorageService.class);
+        bookRepository = mock(BookRepository.class);
+        Book book = Book.builder().id(1L).title("Dune").author("Frank Herbert").imagePath(COVER).build();
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book));
+
+        bookController = new BookController();
+        ReflectionTestUtils.setField(bookController, "service", storageService);
+        ReflectionTestUtils.setField(bookController, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(bookController, "catalogSnapshotService", mock(CatalogSnapshotService.class));
+        ReflectionTestUtils.setField(bookController, "activityLog", mock(ActivityLog.class));
+    }
+
+    @Test
+    void uploadingTheSameCoverAgainReleasesTheExtraReference() throws Exception {
+        when(storageService.uploadImageToFileSystem(any(), anyString())).thenReturn(COVER);
+        when(bookRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        bookController.editBook(1L, Optional.of(image), "Dune", "Frank Herbert", "fiction", "");
+
+        // The upload took a second reference to the same image, the book still uses only one
+        verify(storageService).releaseImage(COVER);
+    }
+
+    @Test
+    void aFailedSaveReleasesTheNewCover() throws Exception {
+        when(storageService.uploadImageToFileSystem(any(), anyString())).thenReturn(NEW_COVER);
+        when(bookRepository.save(any())).thenThrow(new DataIntegrityViolationException("title too long"));
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> bookController.editBook(1L, Optional.of(image), "Dune", "Frank Herbert", "fiction", ""));
+
+        verify(storageService).releaseImage(NEW_COVER);
+        verify(storageService, never()).releaseImage(COVER);
+    }
+
+    @Test
+    void anEditWithoutImageKeepsTheReference() throws Exception {
+        when(bookRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        bookController.editBook(1L, Optional.empty(), "Dune", "Frank Herbert", "fiction", "");
+
+        verify(storageService, never()).releaseImage(anyString());
+    }
+
+    @Test
+    void importedBooksTakeAReferenceToTheirStoredImage() {
+        when(storageService.acquireImage(COVER)).thenReturn(true);
+        when(bookRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        bookController.newBooks(List.of(Book.builder().title("Emma").author("Jane Austen").imagePath(COVER).build()));
+
+        verify(storageService).acquireImage(COVER);
+        verify(storageService, never()).releaseImage(anyString());
+    }
+
+    @Test
+    void aBookPointingAtAnUnknownImageIsRejected() {
+        when(storageService.acquireImage(COVER)).thenReturn(true);
+        List<Book> books = List.of(
+                Book.builder().title("Emma").author("Jane Austen").imagePath(COVER).build(),
+                Book.builder().title("Ulysses").author("James Joyce").imagePath("/etc/passwd").build());
+
+        assertThrows(InvalidImageException.class, () -> bookController.newBooks(books));
+
+        // The reference taken for the first book is given back, nothing is saved
+        verify(storageService).releaseImage(COVER);
+        verify(bookRepository, never()).saveAll(any());
+    }
+}
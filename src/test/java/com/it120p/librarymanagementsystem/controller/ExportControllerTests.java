@@ -0,0 +1,55 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.service.export.ExportFormat;
+import com.it120p.librarymanagementsystem.service.export.ExportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks that an export streamed on an async thread keeps the branch of the request.
+ */
+class ExportControllerTests {
+
+    @Test
+    void theExportRunsInTheBranchOfTheRequest() throws Exception {
+        ExportService exportService = mock(ExportService.class);
+        AtomicReference<Long> exportedBranch = new AtomicReference<>();
+        doAnswer(invocation -> {
+            exportedBranch.set(BranchContext.current());
+            return null;
+        }).when(exportService).exportOrders(eq(ExportFormat.NDJSON), any());
+
+        ExportController exportController = new ExportController();
+        ReflectionTestUtils.setField(exportController, "exportService", exportService);
+
+        // The request thread is in branch 7 while the controller builds the response
+        AtomicReference<ResponseEntity<StreamingResponseBody>> response = new AtomicReference<>();
+        BranchContext.runIn(7L, () -> response.set(exportController.exportOrders("ndjson")));
+        assertNull(BranchContext.current());
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                response.get().getBody().writeTo(new ByteArrayOutputStream());
+                // The pooled thread is left without a branch
+                assertNull(BranchContext.current());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get();
+        assertEquals(7L, exportedBranch.get());
+    }
+}
@@ -0,0 +1,49 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.exception.InvalidLogFilterException;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
+import com.it120p.librarymanagementsystem.repository.LibraryLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks that the activity log filters are passed on together, and that invalid filters are rejected.
+ */
+class LibraryLogControllerTests {
+    private LibraryLogRepository libraryLogRepository;
+    private LibraryLogController libraryLogController;
+
+    @BeforeEach
+    void setUp() {
+        libraryLogRepository = mock(LibraryLogRepository.class);
+        libraryLogController = new LibraryLogController();
+        ReflectionTestUtils.setField(libraryLogController, "libraryLogRepository", libraryLogRepository);
+    }
+
+    @Test
+    void theFiltersAreCombined() {
+        libraryLogController.getLogs(0, 20, 40L, 3L, "return", "order", 7L);
+
+        verify(libraryLogRepository).findPage(3L, LibraryLogAction.RETURN, "ORDER", 7L, 40L, PageRequest.of(0, 20));
+    }
+
+    @Test
+    void anUnknownActionIsRejected() {
+        assertThrows(InvalidLogFilterException.class, () -> libraryLogController.getLogs(0, 20, null, null, "borrow", null, null));
+        verify(libraryLogRepository, never()).findPage(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void aTargetTypeWithoutTargetIdIsRejected() {
+        assertThrows(InvalidLogFilterException.class, () -> libraryLogController.getLogs(0, 20, null, null, null, "order", null));
+        verify(libraryLogRepository, never()).findPage(any(), any(), any(), any(), any(), any());
+    }
+}
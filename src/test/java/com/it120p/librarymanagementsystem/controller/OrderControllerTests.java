@@ -0,0 +1,132 @@
+package com.it120p.librarymanagementsystem.controller;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.OrderState;
+import com.it120p.librarymanagementsystem.security.services.UserDetailsImpl;
+import com.it120p.librarymanagementsystem.service.ActivityLog;
+import com.it120p.librarymanagementsystem.service.CirculationService;
+import com.it120p.librarymanagementsystem.service.OutboxService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the order endpoints that go by ID do not reach the orders of another branch.
+ * Order 1 belongs to branch 2, the requests are made from branch 1.
+ */
+class OrderControllerTests {
+    private OrderRepository orderRepository;
+    private OrderController orderController;
+    private UserDetailsImpl admin;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        Order order = new Order();
+        order.setId(1L);
+        order.setBranchId(2L);
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        when(orderRepository.findStatesByIdIn(anyCollection())).thenReturn(List.of(new State(1L, 2L)));
+
+        orderController = new OrderController();
+        ReflectionTestUtils.setField(orderController, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderController, "circulationService",
+                new CirculationService(orderRepository, mock(OutboxService.class), mock(ApplicationEventPublisher.class)));
+        ReflectionTestUtils.setField(orderController, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(orderController, "activityLog", mock(ActivityLog.class));
+
+        admin = new UserDetailsImpl(9L, "admin", "Admin", "admin@example.com", 1L, "secret",
+                List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    }
+
+    @Test
+    void getByIdDoesNotSeeAnotherBranch() {
+        inBranchOne(() -> orderController.getOrderById(1L, admin));
+        // Without a branch the admin sees every order
+        assertEquals(1L, orderController.getOrderById(1L, admin).getId());
+    }
+
+    @Test
+    void getUserDoesNotSeeAnotherBranch() {
+        inBranchOne(() -> orderController.getUserByOrderId(1L));
+    }
+
+    @Test
+    void deleteDoesNotReachAnotherBranch() {
+        inBranchOne(() -> orderController.deleteOrder(1L));
+        verify(orderRepository, never()).deleteById(anyLong());
+    }
+
+    @Test
+    void returnDoesNotReachAnotherBranch() {
+        inBranchOne(() -> orderController.returnOrder(1L));
+        verify(orderRepository, never()).markReturned(anyCollection(), any());
+    }
+
+    @Test
+    void pickupDoesNotReachAnotherBranch() {
+        inBranchOne(() -> orderController.pickupOrder(1L));
+        verify(orderRepository, never()).markPickedUp(anyCollection());
+    }
+
+    @Test
+    void overdueDoesNotReachAnotherBranch() {
+        inBranchOne(() -> orderController.overdueOrder(1L));
+        verify(orderRepository, never()).markOverdue(anyCollection());
+    }
+
+    private static void inBranchOne(Runnable request) {
+        BranchContext.runIn(1L, () -> assertThrows(OrderNotFoundException.class, request::run));
+    }
+
+    private record State(Long id, Long branchId) implements OrderState {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getBranchId() {
+            return branchId;
+        }
+
+        @Override
+        public OrderStatus getStatus() {
+            return OrderStatus.BORROWED;
+        }
+
+        @Override
+        public Boolean getPickedUp() {
+            return false;
+        }
+
+        @Override
+        public String getUserEmail() {
+            return "reader@example.com";
+        }
+
+        @Override
+        public String getUserName() {
+            return "Reader";
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.FineEntryType;
+import com.it120p.librarymanagementsystem.model.FineLedgerEntry;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the nightly fine accrual statements, FineLedgerRepository.accrue and FineBalanceRepository.applyAccruals,
+ * on an H2 database in MySQL mode and checks the running balances of the ledger and the stored balances.
+ * The accrual of a day is run the way FineService runs one shard: both statements in one transaction.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:fines;DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class FineLedgerRepositoryTests {
+    private static final BigDecimal FINE = new BigDecimal("0.25");
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private FineLedgerRepository fineLedgerRepository;
+
+    @Autowired
+    private FineBalanceRepository fineBalanceRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User ana;
+    private User ben;
+
+    @BeforeEach
+    void setUp() {
+        ana = userRepository.save(new User("ana", "Ana", "ana@example.com", "secret"));
+        ben = userRepository.save(new User("ben", "Ben", "ben@example.com", "secret"));
+        // Ana has two overdue orders and one that is not due yet, Ben has one overdue order and one returned late
+        order(ana, OrderStatus.OVERDUE, 5);
+        order(ana, OrderStatus.BORROWED, 1);
+        order(ana, OrderStatus.BORROWED, -3);
+        order(ben, OrderStatus.OVERDUE, 2);
+        order(ben, OrderStatus.RETURNED, 10);
+    }
+
+    @Test
+    void everyOverdueOrderIsFinedWithARunningBalance() {
+        assertEquals(3, accrue(TODAY));
+
+        assertEquals(List.of(amount("0.25"), amount("0.50")), balancesAfter(ana));
+        assertEquals(List.of(amount("0.25")), balancesAfter(ben));
+        assertEquals(amount("0.50"), fineBalanceRepository.findBalance(ana.getId()));
+        assertEquals(amount("0.25"), fineBalanceRepository.findBalance(ben.getId()));
+    }
+
+    @Test
+    void runningTheSameDayAgainFinesNothing() {
+        accrue(TODAY);
+
+        assertEquals(0, accrue(TODAY));
+
+        assertEquals(2, balancesAfter(ana).size());
+        assertEquals(amount("0.50"), fineBalanceRepository.findBalance(ana.getId()));
+        assertEquals(amount("0.25"), fineBalanceRepository.findBalance(ben.getId()));
+    }
+
+    @Test
+    void theNextAccrualStartsFromTheBalanceLeftByAPayment() {
+        // Yesterday only one order of Ana was overdue
+        assertEquals(2, accrue(TODAY.minusDays(1)));
+        // Like FineService.recordPayment
+        Date now = new Date();
+        assertEquals(1, fineBalanceRepository.pay(ana.getId(), amount("0.20"), now));
+        fineLedgerRepository.save(new FineLedgerEntry(ana.getId(), FineEntryType.PAYMENT, now, amount("-0.20"),
+                fineBalanceRepository.findBalance(ana.getId())));
+
+        assertEquals(3, accrue(TODAY));
+
+        assertEquals(List.of(amount("0.25"), amount("0.05"), amount("0.30"), amount("0.55")), balancesAfter(ana));
+        assertEquals(List.of(amount("0.25"), amount("0.50")), balancesAfter(ben));
+        assertEquals(amount("0.55"), fineBalanceRepository.findBalance(ana.getId()));
+        assertEquals(amount("0.50"), fineBalanceRepository.findBalance(ben.getId()));
+    }
+
+    /**
+     * Accrues the fines of a day on a single shard, like FineService.accrueShard.
+     */
+    private int accrue(LocalDate day) {
+        Date dayStart = Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        long fromId = fineLedgerRepository.findMaxId();
+        Date now = new Date();
+        int fined = fineLedgerRepository.accrue(day, dayStart, FINE, now, 1, 0);
+        if (fined > 0) {
+            fineBalanceRepository.applyAccruals(fromId, now, 1, 0);
+        }
+        return fined;
+    }
+
+    /**
+     * Creates an order that was due the given number of days before today, a negative number is a future due date.
+     */
+    private void order(User user, OrderStatus status, int daysOverdue) {
+        Order order = new Order();
+        order.setUser(user);
+        order = orderRepository.saveAndFlush(order);
+        order.setStatus(status);
+        order.setDue_date(Date.from(TODAY.minusDays(daysOverdue).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        orderRepository.saveAndFlush(order);
+    }
+
+    /**
+     * Lists the balance after each ledger entry of a user, oldest first.
+     */
+    private List<BigDecimal> balancesAfter(User user) {
+        return fineLedgerRepository.findByUserIdOrderByIdDesc(user.getId(), PageRequest.of(0, 100)).getContent().reversed().stream()
+                .map(FineLedgerEntry::getBalanceAfter)
+                .toList();
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+}
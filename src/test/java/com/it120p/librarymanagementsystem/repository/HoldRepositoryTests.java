@@ -0,0 +1,91 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.Hold;
+import com.it120p.librarymanagementsystem.model.HoldStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the queue order enforced by HoldRepository.existsAheadOf on an in-memory database.
+ */
+@DataJpaTest
+class HoldRepositoryTests {
+    private static final Long BOOK_ID = 1L;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void twoHoldersAreServedInOrder() {
+        Hold first = holdRepository.save(new Hold(BOOK_ID, 10L));
+        Hold second = holdRepository.save(new Hold(BOOK_ID, 20L));
+
+        // The book is free and nobody has it set aside yet: only the head of the queue may borrow it
+        assertFalse(holdRepository.existsAheadOf(BOOK_ID, 10L));
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 20L));
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 30L));
+
+        promote(first);
+        assertFalse(holdRepository.existsAheadOf(BOOK_ID, 10L));
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 20L));
+
+        assertEquals(1, holdRepository.fulfill(BOOK_ID, 10L));
+        assertFalse(holdRepository.existsAheadOf(BOOK_ID, 20L));
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 10L));
+
+        promote(second);
+        assertFalse(holdRepository.existsAheadOf(BOOK_ID, 20L));
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 10L));
+    }
+
+    @Test
+    void onlyTheHeadOfALongQueueMayBorrow() {
+        List<Hold> holds = new ArrayList<>();
+        for (long userId = 1; userId <= 50; userId++) {
+            holds.add(holdRepository.save(new Hold(BOOK_ID, userId)));
+        }
+
+        for (Hold hold : holds) {
+            // The hold at the head is served, and every other holder must still be refused
+            for (Hold other : holds) {
+                boolean isHead = other == hold;
+                if (other.getId() >= hold.getId()) {
+                    assertEquals(!isHead, holdRepository.existsAheadOf(BOOK_ID, other.getUserId()),
+                            "user " + other.getUserId() + " while " + hold.getUserId() + " is at the head");
+                }
+            }
+            promote(hold);
+            assertEquals(1, holdRepository.fulfill(BOOK_ID, hold.getUserId()));
+        }
+        assertEquals(0, holdRepository.countAhead(BOOK_ID, Long.MAX_VALUE));
+    }
+
+    @Test
+    void renewalIsRefusedWhileAnyoneWaits() {
+        holdRepository.save(new Hold(BOOK_ID, 20L));
+
+        // The borrower renewing has no hold of their own on the book
+        assertTrue(holdRepository.existsAheadOf(BOOK_ID, 10L));
+        assertFalse(holdRepository.existsAheadOf(2L, 10L));
+    }
+
+    private void promote(Hold hold) {
+        Date now = new Date();
+        assertEquals(1, holdRepository.promote(hold.getId(), BOOK_ID, now, new Date(now.getTime() + 60_000)));
+        entityManager.clear();
+        assertEquals(HoldStatus.READY, holdRepository.findById(hold.getId()).orElseThrow().getStatus());
+    }
+}
@@ -0,0 +1,74 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.LibraryLog;
+import com.it120p.librarymanagementsystem.model.LibraryLogAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the combined filters and the paging by ID of the activity log, on an in-memory database.
+ */
+@DataJpaTest
+class LibraryLogRepositoryTests {
+    @Autowired
+    private LibraryLogRepository libraryLogRepository;
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Oldest first: user 1 returns order 7 twice and signs in, user 2 returns order 7 and order 8
+        ids.add(save(1L, LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, 7L));
+        ids.add(save(1L, LibraryLogAction.LOGIN, null, null));
+        ids.add(save(2L, LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, 7L));
+        ids.add(save(1L, LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, 7L));
+        ids.add(save(2L, LibraryLogAction.RETURN, LibraryLog.TARGET_ORDER, 8L));
+    }
+
+    @Test
+    void everyGivenFilterIsApplied() {
+        assertEquals(List.of(ids.get(3), ids.get(0)),
+                idsOf(libraryLogRepository.findPage(1L, LibraryLogAction.RETURN, null, null, null, PageRequest.of(0, 10))));
+        assertEquals(List.of(ids.get(2)),
+                idsOf(libraryLogRepository.findPage(2L, null, LibraryLog.TARGET_ORDER, 7L, null, PageRequest.of(0, 10))));
+        assertEquals(5, libraryLogRepository.findPage(null, null, null, null, null, PageRequest.of(0, 10)).getNumberOfElements());
+    }
+
+    @Test
+    void theNextPageStartsAfterTheLastIdOfThePage() {
+        Slice<LibraryLog> first = libraryLogRepository.findPage(null, LibraryLogAction.RETURN, null, null, null, PageRequest.of(0, 2));
+        assertEquals(List.of(ids.get(4), ids.get(3)), idsOf(first));
+        assertTrue(first.hasNext());
+
+        Long last = first.getContent().get(1).getId();
+        Slice<LibraryLog> second = libraryLogRepository.findPage(null, LibraryLogAction.RETURN, null, null, last, PageRequest.of(0, 2));
+        assertEquals(List.of(ids.get(2), ids.get(0)), idsOf(second));
+        assertFalse(second.hasNext());
+    }
+
+    private Long save(Long actorId, LibraryLogAction action, String targetType, Long targetId) {
+        LibraryLog log = new LibraryLog();
+        log.setActorId(actorId);
+        log.setAction(action);
+        log.setTargetType(targetType);
+        log.setTargetId(targetId);
+        log.setCreated_at(new Date());
+        return libraryLogRepository.save(log).getId();
+    }
+
+    private static List<Long> idsOf(Slice<LibraryLog> slice) {
+        return slice.getContent().stream().map(LibraryLog::getId).toList();
+    }
+}
@@ -0,0 +1,91 @@
+package com.it120p.librarymanagementsystem.repository;
+
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that two relays never claim the same outbox events, on an in-memory database.
+ */
+@DataJpaTest
+class OutboxEventRepositoryTests {
+    private static final int MAX_ATTEMPTS = 5;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void anEventIsClaimedByOneRelayAtATime() {
+        for (int i = 0; i < 4; i++) {
+            outboxEventRepository.save(event());
+        }
+        Date now = new Date();
+        Date until = new Date(now.getTime() + 60_000);
+
+        // Both relays read the same candidates before either of them claims
+        List<Long> ids = outboxEventRepository.findClaimable(MAX_ATTEMPTS, now, PageRequest.of(0, 10));
+        assertEquals(4, ids.size());
+        assertEquals(4, outboxEventRepository.claim(ids, "first", MAX_ATTEMPTS, now, until));
+        assertEquals(0, outboxEventRepository.claim(ids, "second", MAX_ATTEMPTS, now, until));
+
+        assertEquals(4, outboxEventRepository.findByClaimedByOrderByIdAsc("first").size());
+        assertTrue(outboxEventRepository.findByClaimedByOrderByIdAsc("second").isEmpty());
+        assertTrue(outboxEventRepository.findClaimable(MAX_ATTEMPTS, now, PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    void aClaimIsTakenOverOnceItEnds() {
+        Long id = outboxEventRepository.save(event()).getId();
+        Date now = new Date();
+        assertEquals(1, outboxEventRepository.claim(List.of(id), "stopped", MAX_ATTEMPTS, now, new Date(now.getTime() + 1_000)));
+
+        Date later = new Date(now.getTime() + 2_000);
+        assertEquals(List.of(id), outboxEventRepository.findClaimable(MAX_ATTEMPTS, later, PageRequest.of(0, 10)));
+        assertEquals(1, outboxEventRepository.claim(List.of(id), "next", MAX_ATTEMPTS, later, new Date(later.getTime() + 1_000)));
+    }
+
+    @Test
+    void aFailedEventIsFreedForTheNextRun() {
+        Long id = outboxEventRepository.save(event()).getId();
+        Date now = new Date();
+        outboxEventRepository.claim(List.of(id), "relay", MAX_ATTEMPTS, now, new Date(now.getTime() + 60_000));
+
+        outboxEventRepository.markFailed(List.of(id), "SMTP timeout");
+        assertEquals(List.of(id), outboxEventRepository.findClaimable(MAX_ATTEMPTS, now, PageRequest.of(0, 10)));
+
+        outboxEventRepository.markSent(List.of(id), now);
+        assertTrue(outboxEventRepository.findClaimable(MAX_ATTEMPTS, now, PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    void aLongNoticeIsKeptWhole() {
+        OutboxEvent event = event();
+        event.setText("- The Name of the Rose is overdue.\n".repeat(500));
+        Long id = outboxEventRepository.saveAndFlush(event).getId();
+        entityManager.clear();
+
+        assertEquals(event.getText(), outboxEventRepository.findByIdInOrderByIdAsc(List.of(id)).get(0).getText());
+    }
+
+    private OutboxEvent event() {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(OrderEventType.RETURNED);
+        event.setRecipientEmail("reader@example.com");
+        event.setSubject("Book Returned");
+        event.setText("Thank you for returning the book.");
+        return event;
+    }
+}
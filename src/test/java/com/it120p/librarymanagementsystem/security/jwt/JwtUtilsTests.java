@@ -0,0 +1,59 @@
+package com.it120p.librarymanagementsystem.security.jwt;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Checks that JwtUtils accepts the tokens signed with its key and records why the others are rejected.
+ */
+class JwtUtilsTests {
+    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+
+    private SecurityEventLog securityEventLog;
+    private JwtUtils jwtUtils;
+
+    @BeforeEach
+    void setUp() {
+        securityEventLog = mock(SecurityEventLog.class);
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", Encoders.BASE64.encode(key.getEncoded()));
+        ReflectionTestUtils.setField(jwtUtils, "securityEventLog", securityEventLog);
+    }
+
+    @Test
+    void aTokenSignedWithTheKeyIsValid() {
+        assertTrue(jwtUtils.validateJwtToken(token(key)));
+        verifyNoInteractions(securityEventLog);
+    }
+
+    @Test
+    void aTokenSignedWithAnotherKeyIsRejected() {
+        assertFalse(jwtUtils.validateJwtToken(token(Keys.secretKeyFor(SignatureAlgorithm.HS256))));
+        verify(securityEventLog).record(eq(SecurityEventReason.INVALID_SIGNATURE), any(), anyString());
+    }
+
+    private String token(Key signingKey) {
+        return Jwts.builder()
+                .setSubject("reader")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
@@ -0,0 +1,178 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * The RateLimiterBenchmark class measures the throughput of the rate limiter with 1 to THREADS threads:
+ * <ul>
+ *     <li>one TokenBucket shared by every thread, the worst contention on its compare-and-set,
+ *     next to the same bucket behind a lock for comparison,</li>
+ *     <li>RateLimiter.tryAcquire with one client per thread, spread over the stripes,</li>
+ *     <li>RateLimiter.tryAcquire with every thread on the same client, a single hot key,</li>
+ *     <li>RateLimiter.tryAcquire with a new client on every call and full stripes, a flood of spoofed IPs
+ *     where every call evicts a bucket.</li>
+ * </ul>
+ * The buckets refill faster than the threads can take tokens, so every call takes the accepting path
+ * and writes the bucket, except in the rejected run, where the bucket is empty and the call only reads it.
+ *
+ * Run it with scripts/ratelimit-benchmark.sh.
+ */
+public class RateLimiterBenchmark {
+    private static final long RUN_MS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d processors, %d ms per run, millions of calls per second%n",
+                Runtime.getRuntime().availableProcessors(), RUN_MS);
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        // Each variant runs twice, the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            if (print) {
+                System.out.printf("%-26s", "threads");
+                threadCounts.forEach(threads -> System.out.printf("%10d", threads));
+                System.out.println();
+            }
+
+            run("shared bucket", print, threadCounts, threads -> {
+                TokenBucket bucket = new TokenBucket(1, Long.MAX_VALUE / 4, System.nanoTime());
+                return (thread, call) -> bucket.tryConsume(System.nanoTime());
+            });
+            run("shared bucket, locked", print, threadCounts, threads -> {
+                LockedBucket bucket = new LockedBucket(1, Long.MAX_VALUE / 4, System.nanoTime());
+                return (thread, call) -> bucket.tryConsume(System.nanoTime());
+            });
+            run("shared bucket, rejected", print, threadCounts, threads -> {
+                // One token per hour, taken by the first call
+                TokenBucket bucket = new TokenBucket(TimeUnit.HOURS.toNanos(1), TimeUnit.HOURS.toNanos(1), System.nanoTime());
+                return (thread, call) -> bucket.tryConsume(System.nanoTime());
+            });
+            run("limiter, client per thread", print, threadCounts, threads -> {
+                RateLimiter rateLimiter = rateLimiter(4096);
+                return (thread, call) -> rateLimiter.tryAcquire(0, "10.0." + thread / 256 + "." + thread % 256);
+            });
+            run("limiter, one client", print, threadCounts, threads -> {
+                RateLimiter rateLimiter = rateLimiter(4096);
+                return (thread, call) -> rateLimiter.tryAcquire(0, "10.0.0.1");
+            });
+            run("limiter, new clients", print, threadCounts, threads -> {
+                RateLimiter rateLimiter = rateLimiter(64);
+                return (thread, call) -> rateLimiter.tryAcquire(0, thread + "." + call);
+            });
+        }
+    }
+
+    /**
+     * Runs the calls of a variant for RUN_MS with each thread count and prints the throughput.
+     *
+     * @param label the name of the variant.
+     * @param print true to print the result, false for the warm up round.
+     * @param threadCounts the thread counts to run with.
+     * @param setUp creates the state of one run, and the call the threads make, for a thread count.
+     */
+    private static void run(String label, boolean print, List<Integer> threadCounts,
+                            IntFunction<Worker> setUp) throws InterruptedException {
+        if (print) {
+            System.out.printf("%-26s", label);
+        }
+        for (int threads : threadCounts) {
+            Worker worker = setUp.apply(threads);
+            AtomicBoolean running = new AtomicBoolean(true);
+            CountDownLatch start = new CountDownLatch(1);
+            LongAdder calls = new LongAdder();
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                Thread t = new Thread(() -> {
+                    awaitQuietly(start);
+                    long count = 0;
+                    while (running.get()) {
+                        worker.call(thread, count);
+                        count++;
+                    }
+                    calls.add(count);
+                });
+                t.start();
+                workers.add(t);
+            }
+            start.countDown();
+            Thread.sleep(RUN_MS);
+            running.set(false);
+            for (Thread t : workers) {
+                t.join();
+            }
+            if (print) {
+                System.out.printf("%10.2f", calls.sum() / (RUN_MS / 1000.0) / 1e6);
+            }
+        }
+        if (print) {
+            System.out.println();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RateLimiter rateLimiter(int maxBucketsPerStripe) {
+        RateLimitProperties.Route route = new RateLimitProperties.Route();
+        route.setPattern("/books");
+        // A token every nanosecond, the calls are never rejected
+        route.setCapacity(1_000_000);
+        route.setRefillTokens(1_000_000);
+        route.setRefillPeriodMs(1);
+
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxBucketsPerStripe(maxBucketsPerStripe);
+        properties.setRoutes(List.of(route));
+        return new RateLimiter(properties);
+    }
+
+    /**
+     * One call of a worker thread, given the number of the thread and the number of the call in that thread.
+     */
+    private interface Worker {
+        void call(int thread, long call);
+    }
+
+    /**
+     * The same bucket with a lock around the token count and the refill time, for comparison.
+     */
+    private static class LockedBucket {
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+        private long theoreticalArrivalTime;
+
+        LockedBucket(long emissionIntervalNanos, long burstToleranceNanos, long nowNanos) {
+            this.emissionIntervalNanos = emissionIntervalNanos;
+            this.burstToleranceNanos = burstToleranceNanos;
+            this.theoreticalArrivalTime = nowNanos;
+        }
+
+        synchronized long tryConsume(long nowNanos) {
+            long newTat = Math.max(theoreticalArrivalTime, nowNanos) + emissionIntervalNanos;
+            long aheadBy = newTat - nowNanos;
+            if (aheadBy > burstToleranceNanos) {
+                return aheadBy - burstToleranceNanos;
+            }
+            theoreticalArrivalTime = newTat;
+            return 0;
+        }
+    }
+}
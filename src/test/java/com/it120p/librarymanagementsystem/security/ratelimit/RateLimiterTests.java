@@ -0,0 +1,110 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the route matching and the eviction of the RateLimiter when the stripes are full.
+ */
+class RateLimiterTests {
+    private static final long IDLE_MS = 1000;
+
+    private RateLimiter rateLimiter(int maxBucketsPerStripe) {
+        RateLimitProperties.Route route = new RateLimitProperties.Route();
+        route.setPattern("/api/auth/**");
+        route.setCapacity(1);
+        route.setRefillTokens(1);
+        route.setRefillPeriodMs(60000);
+
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setStripes(2);
+        properties.setMaxBucketsPerStripe(maxBucketsPerStripe);
+        properties.setIdleEvictionMs(IDLE_MS);
+        properties.setRoutes(List.of(route));
+        return new RateLimiter(properties);
+    }
+
+    @Test
+    void onlyConfiguredRoutesAreLimited() {
+        RateLimiter rateLimiter = rateLimiter(10);
+        assertEquals(0, rateLimiter.findRoute("/api/auth/signin"));
+        assertEquals(-1, rateLimiter.findRoute("/books"));
+    }
+
+    @Test
+    void eachClientHasItsOwnBucket() {
+        RateLimiter rateLimiter = rateLimiter(10);
+        long now = System.nanoTime();
+
+        assertEquals(0, rateLimiter.tryAcquire(0, "10.0.0.1", now));
+        assertEquals(TimeUnit.MINUTES.toNanos(1), rateLimiter.tryAcquire(0, "10.0.0.1", now));
+        assertEquals(0, rateLimiter.tryAcquire(0, "10.0.0.2", now));
+    }
+
+    @Test
+    void aNewClientIsAdmittedWhenEveryStripeIsFullOfActiveBuckets() {
+        RateLimiter rateLimiter = rateLimiter(1);
+        long now = System.nanoTime();
+
+        // None of the buckets is idle, every new client has to take the place of an active one
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, rateLimiter.tryAcquire(0, "10.0.1." + i, now), "client " + i);
+            assertTrue(rateLimiter.size() <= 2);
+        }
+    }
+
+    @Test
+    void theLeastRecentlyUsedBucketIsEvicted() {
+        RateLimiter rateLimiter = rateLimiter(2);
+        long now = System.nanoTime();
+        // Find three clients of the same stripe, filling it with the first two
+        List<String> clients = sameStripe(rateLimiter, now, 3);
+
+        rateLimiter.tryAcquire(0, clients.get(0), now);
+        rateLimiter.tryAcquire(0, clients.get(1), now + 1000);
+        assertEquals(0, rateLimiter.tryAcquire(0, clients.get(2), now + 2000));
+
+        // The oldest client got a new, full bucket, the more recent one is still limited
+        assertEquals(0, rateLimiter.tryAcquire(0, clients.get(0), now + 3000));
+        assertTrue(rateLimiter.tryAcquire(0, clients.get(2), now + 3000) > 0);
+    }
+
+    @Test
+    void idleBucketsAreSwept() {
+        RateLimiter rateLimiter = rateLimiter(10);
+        // Long enough ago for the token to have been refilled and the bucket to have been full for the idle time
+        long longAgo = System.nanoTime() - TimeUnit.MINUTES.toNanos(1) - TimeUnit.MILLISECONDS.toNanos(10 * IDLE_MS);
+        rateLimiter.tryAcquire(0, "10.0.0.1", longAgo);
+        rateLimiter.tryAcquire(0, "10.0.0.2", longAgo);
+        assertEquals(2, rateLimiter.size());
+
+        rateLimiter.evictIdleBuckets();
+        assertEquals(0, rateLimiter.size());
+    }
+
+    /**
+     * Finds clients whose buckets land in one stripe, by tracking them one at a time in a limiter with one bucket per
+     * stripe: a client that replaces the first one shares its stripe.
+     */
+    private List<String> sameStripe(RateLimiter rateLimiter, long now, int count) {
+        RateLimiter probe = rateLimiter(100);
+        probe.tryAcquire(0, "10.0.2.0", now);
+        int stripeSize = probe.size();
+        List<String> clients = new ArrayList<>(List.of("10.0.2.0"));
+        for (int i = 1; clients.size() < count; i++) {
+            RateLimiter pair = rateLimiter(1);
+            pair.tryAcquire(0, "10.0.2.0", now);
+            pair.tryAcquire(0, "10.0.2." + i, now);
+            if (pair.size() == stripeSize) {
+                clients.add("10.0.2." + i);
+            }
+        }
+        return clients;
+    }
+}
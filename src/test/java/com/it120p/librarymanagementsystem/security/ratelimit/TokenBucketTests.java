@@ -0,0 +1,103 @@
+package com.it120p.librarymanagementsystem.security.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the GCRA arithmetic of the TokenBucket: a burst of capacity requests, then one request per emission interval.
+ */
+class TokenBucketTests {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int CAPACITY = 3;
+    private static final long START = 1_000_000_000_000L;
+
+    /** A full bucket, built the way the RateLimiter builds it */
+    private TokenBucket fullBucket() {
+        return new TokenBucket(INTERVAL, INTERVAL * CAPACITY, START - INTERVAL * CAPACITY);
+    }
+
+    @Test
+    void aFullBucketAllowsABurstOfItsCapacity() {
+        TokenBucket bucket = fullBucket();
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, bucket.tryConsume(START));
+        }
+        // The next token is one emission interval away
+        assertEquals(INTERVAL, bucket.tryConsume(START));
+        assertEquals(INTERVAL - 40, bucket.tryConsume(START + 40));
+    }
+
+    @Test
+    void oneTokenIsRefilledPerEmissionInterval() {
+        TokenBucket bucket = fullBucket();
+        for (int i = 0; i < CAPACITY; i++) {
+            bucket.tryConsume(START);
+        }
+
+        assertEquals(0, bucket.tryConsume(START + INTERVAL));
+        assertEquals(INTERVAL, bucket.tryConsume(START + INTERVAL));
+        assertEquals(0, bucket.tryConsume(START + 3 * INTERVAL));
+        assertEquals(0, bucket.tryConsume(START + 3 * INTERVAL));
+        assertTrue(bucket.tryConsume(START + 3 * INTERVAL) > 0);
+    }
+
+    @Test
+    void anIdleBucketDoesNotSaveMoreThanItsCapacity() {
+        TokenBucket bucket = fullBucket();
+        long later = START + 1000 * INTERVAL;
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, bucket.tryConsume(later));
+        }
+        assertEquals(INTERVAL, bucket.tryConsume(later));
+    }
+
+    @Test
+    void aBucketIsIdleOnceItHasRefilled() {
+        TokenBucket bucket = fullBucket();
+        bucket.tryConsume(START);
+
+        // After one token the TAT is one interval ahead of START
+        assertFalse(bucket.isIdle(START, 0));
+        assertTrue(bucket.isIdle(START + INTERVAL, 0));
+        assertFalse(bucket.isIdle(START + INTERVAL, INTERVAL));
+        assertTrue(bucket.isIdle(START + 2 * INTERVAL, INTERVAL));
+    }
+
+    @Test
+    void concurrentRequestsNeverTakeMoreThanTheCapacity() throws Exception {
+        TokenBucket bucket = fullBucket();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(() -> {
+                    int taken = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (bucket.tryConsume(START) == 0) {
+                            taken++;
+                        }
+                    }
+                    return taken;
+                });
+            }
+            int taken = 0;
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                taken += result.get();
+            }
+            assertEquals(CAPACITY, taken);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
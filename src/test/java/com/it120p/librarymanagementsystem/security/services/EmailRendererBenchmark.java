@@ -0,0 +1,143 @@
+package com.it120p.librarymanagementsystem.security.services;
+
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.OrderSummaryRow;
+import com.it120p.librarymanagementsystem.service.StorageService;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * The EmailRendererBenchmark class measures the time and the memory allocated to build and render
+ * one order summary email with 1, 10 and 50 books: EmailRenderer.loadOrderSummary followed by render,
+ * on the calling thread, with the template engine set up like the application's (classpath templates, cached).
+ *
+ * The order rows and the covers are served from memory, so no database or file read is measured.
+ * Every book has its own cover of COVER_BYTES, the covers are in the cover cache after the warm up round,
+ * so the numbers are the ones of a running application. The covers are embedded in the HTML as base64,
+ * they make most of its size.
+ *
+ * Run it with scripts/email-benchmark.sh.
+ */
+public class EmailRendererBenchmark {
+    private static final int[] BOOKS = {1, 10, 50};
+    private static final int COVER_BYTES = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        int emails = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        List<EmailRenderer> emailRenderers = new ArrayList<>();
+        for (int books : BOOKS) {
+            emailRenderers.add(emailRenderer(books));
+        }
+
+        System.out.printf("%d emails per size, covers of %d bytes%n", emails, COVER_BYTES);
+        // Each size runs twice, the first round warms up the JIT and the cover cache
+        for (int round = 0; round < 2; round++) {
+            for (int size = 0; size < BOOKS.length; size++) {
+                EmailRenderer emailRenderer = emailRenderers.get(size);
+                long htmlChars = 0;
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < emails; i++) {
+                    htmlChars += emailRenderer.render(emailRenderer.loadOrderSummary((long) i).orElseThrow()).length();
+                }
+                long elapsed = System.nanoTime() - start;
+                long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+                if (round == 1) {
+                    System.out.printf("%2d books %10.1f us per email %10.1f KB allocated per email %8.1f KB of HTML%n",
+                            BOOKS[size], elapsed / 1e3 / emails, allocated / 1024.0 / emails, htmlChars / 1024.0 / emails);
+                }
+            }
+        }
+        emailRenderers.forEach(EmailRenderer::shutdown);
+    }
+
+    private static EmailRenderer emailRenderer(int books) throws IOException {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(true);
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        List<OrderSummaryRow> rows = new ArrayList<>();
+        Date borrowedAt = new Date();
+        for (int i = 0; i < books; i++) {
+            rows.add(row(borrowedAt, "Book title " + i, "Author " + i, "cover-" + i + ".png"));
+        }
+        // The mocks do not record their calls, that would be counted as allocated by the renderer
+        OrderRepository orderRepository = mock(OrderRepository.class, withSettings().stubOnly());
+        when(orderRepository.findSummaryRowsById(anyLong())).thenReturn(rows);
+
+        byte[] cover = new byte[COVER_BYTES];
+        new Random(42).nextBytes(cover);
+        StorageService storageService = mock(StorageService.class, withSettings().stubOnly());
+        when(storageService.downloadImageFromFileSystem(anyString())).thenReturn(cover);
+        when(storageService.contentTypeOf(anyString())).thenReturn("image/png");
+
+        return new EmailRenderer(templateEngine, orderRepository, storageService, 1, 8L * 1024 * 1024);
+    }
+
+    private static OrderSummaryRow row(Date borrowedAt, String title, String author, String imagePath) {
+        return new OrderSummaryRow() {
+            @Override
+            public Long getId() {
+                return 1L;
+            }
+
+            @Override
+            public String getUserName() {
+                return "Reader";
+            }
+
+            @Override
+            public OrderStatus getStatus() {
+                return OrderStatus.BORROWED;
+            }
+
+            @Override
+            public Date getBorrowedAt() {
+                return borrowedAt;
+            }
+
+            @Override
+            public Date getDueDate() {
+                return borrowedAt;
+            }
+
+            @Override
+            public String getTitle() {
+                return title;
+            }
+
+            @Override
+            public String getAuthor() {
+                return author;
+            }
+
+            @Override
+            public String getImagePath() {
+                return imagePath;
+            }
+        };
+    }
+}
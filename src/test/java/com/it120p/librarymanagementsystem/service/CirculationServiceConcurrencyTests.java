@@ -0,0 +1,141 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.payload.response.TransitionOutcome;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Returns the same orders at two desks at once, on an in-memory database that runs in READ COMMITTED,
+ * and checks that every order is reported as returned, and notified, by one desk only.
+ * The desks commit on their own, so the test does not run in a transaction.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:circulation;DB_CLOSE_DELAY=-1;MODE=MySQL;LOCK_TIMEOUT=10000",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CirculationServiceConcurrencyTests {
+    private static final int ORDERS = 5;
+    private static final int ROUNDS = 30;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private OutboxService outboxService;
+    private CirculationService circulationService;
+    private TransactionTemplate transaction;
+    private List<Long> orderIds;
+
+    @BeforeEach
+    void setUp() {
+        outboxService = mock(OutboxService.class);
+        circulationService = new CirculationService(orderRepository, outboxService, mock(ApplicationEventPublisher.class));
+        transaction = new TransactionTemplate(transactionManager);
+        User user = userRepository.save(new User("reader", "Reader", "reader@example.com", "secret"));
+        orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            orderIds.add(orderRepository.save(order).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void twoDesksReturningTheSameOrdersReturnEachOrderOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CyclicBarrier start = new CyclicBarrier(2);
+        int desksThatReturned = 0;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                jdbcTemplate.update("update orders set status = 'BORROWED', returned_at = null");
+
+                // The desks scan the orders in a different order
+                List<Long> reversed = new ArrayList<>(orderIds);
+                Collections.reverse(reversed);
+                Future<Map<Long, TransitionOutcome>> first = executor.submit(() -> returnAtDesk(start, orderIds));
+                Future<Map<Long, TransitionOutcome>> second = executor.submit(() -> returnAtDesk(start, reversed));
+                Map<Long, TransitionOutcome> firstOutcomes = first.get(1, TimeUnit.MINUTES);
+                Map<Long, TransitionOutcome> secondOutcomes = second.get(1, TimeUnit.MINUTES);
+
+                for (Long id : orderIds) {
+                    long updated = List.of(firstOutcomes.get(id), secondOutcomes.get(id)).stream()
+                            .filter(outcome -> outcome == TransitionOutcome.UPDATED)
+                            .count();
+                    assertEquals(1, updated, "round " + round + ": order " + id + " was returned by " + updated + " desks");
+                }
+                for (Map<Long, TransitionOutcome> outcomes : List.of(firstOutcomes, secondOutcomes)) {
+                    if (outcomes.containsValue(TransitionOutcome.UPDATED)) {
+                        desksThatReturned++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The user gets one notice from each desk that returned some of the orders, and none from the other desk
+        verify(outboxService, times(desksThatReturned)).record(any(), anyString(), anyString(), any(OrderEventType.class),
+                anyString(), anyString());
+    }
+
+    /**
+     * Returns the orders in a transaction of its own, like a call through the proxy of the service.
+     */
+    private Map<Long, TransitionOutcome> returnAtDesk(CyclicBarrier start, List<Long> ids) throws Exception {
+        start.await(1, TimeUnit.MINUTES);
+        return transaction.execute(status -> circulationService.returnOrders(ids));
+    }
+}
@@ -0,0 +1,111 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.payload.response.TransitionOutcome;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.OrderState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the outcomes and notifications of the CirculationService, and that a desk does not change the orders
+ * of another branch. CirculationServiceConcurrencyTests runs two desks against a database.
+ */
+class CirculationServiceTests {
+    private OrderRepository orderRepository;
+    private OutboxService outboxService;
+    private CirculationService circulationService;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        outboxService = mock(OutboxService.class);
+        circulationService = new CirculationService(orderRepository, outboxService, mock(ApplicationEventPublisher.class));
+    }
+
+    @Test
+    void everyEligibleOrderIsUpdated() {
+        when(orderRepository.findStatesByIdIn(anyCollection())).thenReturn(List.of(
+                borrowed(1L, "a@example.com"), borrowed(2L, "b@example.com"), returned(3L, "a@example.com")));
+        when(orderRepository.markReturned(anyCollection(), any())).thenReturn(2);
+
+        Map<Long, TransitionOutcome> outcomes = circulationService.returnOrders(List.of(1L, 2L, 3L, 4L));
+
+        assertEquals(Map.of(1L, TransitionOutcome.UPDATED, 2L, TransitionOutcome.UPDATED,
+                3L, TransitionOutcome.UNCHANGED, 4L, TransitionOutcome.NOT_FOUND), outcomes);
+        verify(outboxService).record(eq(1L), eq("a@example.com"), anyString(), eq(OrderEventType.RETURNED), anyString(), anyString());
+        verify(outboxService).record(eq(2L), eq("b@example.com"), anyString(), eq(OrderEventType.RETURNED), anyString(), anyString());
+    }
+
+    @Test
+    void anOrderOfAnotherBranchIsNotFound() {
+        when(orderRepository.findStatesByIdIn(anyCollection())).thenReturn(List.of(
+                borrowed(1L, "a@example.com"), new State(2L, 2L, OrderStatus.BORROWED, "b@example.com")));
+        when(orderRepository.markReturned(anyCollection(), any())).thenReturn(1);
+
+        Map<Long, TransitionOutcome> outcomes = new HashMap<>();
+        BranchContext.runIn(1L, () -> outcomes.putAll(circulationService.returnOrders(List.of(1L, 2L))));
+
+        assertEquals(Map.of(1L, TransitionOutcome.UPDATED, 2L, TransitionOutcome.NOT_FOUND), outcomes);
+        verify(orderRepository).markReturned(eq(Set.of(1L)), any());
+        verify(outboxService, never()).record(eq(2L), anyString(), anyString(), any(), anyString(), anyString());
+    }
+
+    private static OrderState borrowed(Long id, String email) {
+        return new State(id, 1L, OrderStatus.BORROWED, email);
+    }
+
+    private static OrderState returned(Long id, String email) {
+        return new State(id, 1L, OrderStatus.RETURNED, email);
+    }
+
+    private record State(Long id, Long branchId, OrderStatus status, String email) implements OrderState {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getBranchId() {
+            return branchId;
+        }
+
+        @Override
+        public OrderStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public Boolean getPickedUp() {
+            return true;
+        }
+
+        @Override
+        public String getUserEmail() {
+            return email;
+        }
+
+        @Override
+        public String getUserName() {
+            return "Reader";
+        }
+    }
+}
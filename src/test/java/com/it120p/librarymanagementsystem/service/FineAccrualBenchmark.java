@@ -0,0 +1,85 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.LibraryManagementSystemApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The FineAccrualBenchmark class measures the nightly fine accrual, FineService.accrue, over OPEN_LOANS open loans.
+ *
+ * It starts the application with the loadtest profile, so the SyntheticDataGenerator fills the database.
+ * About 30% of the generated orders are open, the sizes of the data set are picked to get the asked number of them.
+ * The accrual is run for the day after the last due date, so every open loan is fined, the worst night there can be.
+ * The same day is then accrued again, which finds every order already fined and writes nothing.
+ *
+ * The database is an H2 file under target in the same JVM, the numbers tell how the statements scale,
+ * not how fast MySQL runs them. The generator skips a database that already has generated users,
+ * so a second run measures on the data of the first one, after clearing the fines it wrote.
+ * Delete target/fine-benchmark.mv.db to generate the data again, or to change the number of open loans.
+ * Run it with scripts/fine-benchmark.sh.
+ */
+public class FineAccrualBenchmark {
+
+    public static void main(String[] args) {
+        int openLoans = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // The generator makes 30 open orders out of 100, each with 1.45 books on average, a book is in one open order
+        int orders = openLoans / 30 * 100;
+        int books = openLoans * 2;
+        int users = Math.max(1, openLoans / 10);
+
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryManagementSystemApplication.class)
+                .profiles("loadtest")
+                // As arguments, so they override application-loadtest.properties
+                .run("--server.port=0",
+                        // A file database keeps a million orders off the heap, the generator needs it
+                        "--spring.datasource.url=jdbc:h2:file:./target/fine-benchmark;MODE=MySQL",
+                        // Keep the generated data for the next run, the loadtest profile creates the schema anew
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        // The catalog of millions of generated books is built once by the generator, not every minute
+                        "--it120p.app.catalogRefreshMs=86400000",
+                        "--it120p.app.loadtest.users=" + users,
+                        "--it120p.app.loadtest.books=" + books,
+                        "--it120p.app.loadtest.orders=" + orders,
+                        "--it120p.app.loadtest.batchSize=5000");
+        try {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            FineService fineService = context.getBean(FineService.class);
+
+            Long open = jdbcTemplate.queryForObject(
+                    "select count(*) from orders where status in ('BORROWED', 'OVERDUE')", Long.class);
+            Timestamp lastDue = jdbcTemplate.queryForObject(
+                    "select max(due_date) from orders where status in ('BORROWED', 'OVERDUE')", Timestamp.class);
+            LocalDate day = lastDue.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().plusDays(1);
+            System.out.printf("%d open loans of %d users ready in %.1f s%n", open, users, (System.nanoTime() - start) / 1e9);
+            // The fines of an earlier run on the same database
+            jdbcTemplate.update("delete from fine_ledger");
+            jdbcTemplate.update("delete from fine_balances");
+            jdbcTemplate.update("delete from job_leases where run_key = ?", day.toString());
+
+            long accrual = measure(() -> fineService.accrue(day));
+            Long fined = jdbcTemplate.queryForObject("select count(*) from fine_ledger", Long.class);
+            Long balances = jdbcTemplate.queryForObject("select count(*) from fine_balances", Long.class);
+            System.out.printf("%-16s %10.3f s, %d ledger entries, %d balances%n", "accrual", accrual / 1e9, fined, balances);
+
+            // The shards of the day are completed, clear their leases so the day is run again
+            jdbcTemplate.update("delete from job_leases where run_key = ?", day.toString());
+            long rerun = measure(() -> fineService.accrue(day));
+            Long after = jdbcTemplate.queryForObject("select count(*) from fine_ledger", Long.class);
+            System.out.printf("%-16s %10.3f s, %d new ledger entries%n", "same day again", rerun / 1e9, after - fined);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static long measure(Runnable run) {
+        long start = System.nanoTime();
+        run.run();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,220 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.exception.HoldNotAllowedException;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.Hold;
+import com.it120p.librarymanagementsystem.model.HoldStatus;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.HoldRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Places, cancels and checks out holds on one book from several threads at once, on an in-memory database,
+ * and checks that the book is never set aside twice, never set aside while it is on loan,
+ * and that no user is queued twice for it.
+ * The holds commit on their own, so the test does not run in a transaction.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:holds;DB_CLOSE_DELAY=-1;MODE=MySQL;LOCK_TIMEOUT=10000",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HoldServiceTests {
+    private static final int USERS = 4;
+    private static final int THREADS_PER_USER = 2;
+    private static final int ROUNDS = 40;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HoldService holdService;
+    private TransactionTemplate transaction;
+    private Book book;
+    private List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        holdService = new HoldService(holdRepository, orderRepository, bookRepository, userRepository,
+                mock(OutboxService.class), transactionManager, 48);
+        transaction = new TransactionTemplate(transactionManager);
+        book = bookRepository.save(Book.builder().title("Dune").author("Frank Herbert").build());
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(userRepository.save(new User("reader" + i, "Reader", "reader" + i + "@example.com", "secret")));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        holdRepository.deleteAll();
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void theSameUserIsQueuedOnce() {
+        Long userId = users.get(0).getId();
+        holdRepository.save(new Hold(book.getId(), userId));
+        // The second insert of a double click gets past the check, the unique key stops it
+        assertThrows(DataIntegrityViolationException.class, () -> holdRepository.save(new Hold(book.getId(), userId)));
+    }
+
+    @Test
+    void concurrentHoldsAndCheckoutsKeepTheQueueConsistent() throws Exception {
+        ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(USERS * THREADS_PER_USER + 1);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Samples the state of the book in one statement while the workers run
+        Future<?> sampler = executor.submit(() -> {
+            while (running.get()) {
+                check(violations);
+            }
+            return null;
+        });
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (User user : users) {
+            for (int i = 0; i < THREADS_PER_USER; i++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        playRound(user.getId());
+                    }
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(2, TimeUnit.MINUTES);
+        }
+        running.set(false);
+        sampler.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        check(violations);
+        assertTrue(violations.isEmpty(), String.join("\n", violations));
+        List<Map<String, Object>> duplicates = jdbcTemplate.queryForList(
+                "select user_id from holds where book_id = ? and status in ('WAITING', 'READY') group by user_id having count(*) > 1",
+                book.getId());
+        assertEquals(List.of(), duplicates);
+    }
+
+    /**
+     * One round of a user: place a hold, and then either cancel it or try to borrow the book and bring it back.
+     */
+    private void playRound(Long userId) {
+        try {
+            holdService.placeHold(book.getId(), userId);
+        } catch (HoldNotAllowedException e) {
+            // The user already waits for the book
+        }
+
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            holdRepository.findByUserIdOrderByIdDesc(userId).stream()
+                    .filter(hold -> hold.getStatus() == HoldStatus.WAITING || hold.getStatus() == HoldStatus.READY)
+                    .findFirst()
+                    .ifPresent(hold -> {
+                        try {
+                            holdService.cancelHold(hold.getId(), userId, false);
+                        } catch (HoldNotAllowedException e) {
+                            // The other thread of the user ended it first
+                        }
+                    });
+            return;
+        }
+
+        Long orderId;
+        try {
+            orderId = transaction.execute(status -> {
+                // Like OrderService.placeOrder
+                holdService.claimForCheckout(List.of(book.getId()), userId);
+                Order order = new Order();
+                order.setUser(userRepository.getReferenceById(userId));
+                order.setBooks(List.of(bookRepository.getReferenceById(book.getId())));
+                return orderRepository.save(order).getId();
+            });
+        } catch (HoldNotAllowedException e) {
+            return;
+        }
+        // Like CirculationService.returnOrders and the promotion that follows the commit
+        transaction.executeWithoutResult(status -> orderRepository.markReturned(List.of(orderId), new Date()));
+        holdService.promoteNext(book.getId());
+    }
+
+    private void check(ConcurrentLinkedQueue<String> violations) {
+        // One statement, so both counts come from the same snapshot
+        Map<String, Object> state = jdbcTemplate.queryForMap(
+                "select count(distinct h.id) as ready, count(distinct o.id) as loans from book b " +
+                        "left join holds h on h.book_id = b.id and h.status = 'READY' " +
+                        "left join order_books ob on ob.book_id = b.id " +
+                        "left join orders o on o.id = ob.order_id and o.status <> 'RETURNED' " +
+                        "where b.id = ?",
+                book.getId());
+        long ready = ((Number) state.get("READY")).longValue();
+        long loans = ((Number) state.get("LOANS")).longValue();
+        if (ready > 1) {
+            violations.add(ready + " READY holds");
+        }
+        if (ready > 0 && loans > 0) {
+            violations.add("A READY hold while the book is on loan");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.JobLease;
+import com.it120p.librarymanagementsystem.repository.JobLeaseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a shard is run once per run key, and that a failed shard is redone for its own run key.
+ * The leases commit on their own, so the test does not run in a transaction.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobLeaseServiceTests {
+    private static final String JOB = "accrueFines";
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    private final List<String> runs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        jobLeaseRepository.deleteAll();
+    }
+
+    @Test
+    void aShardIsRunOncePerRunKey() {
+        JobLeaseService first = jobLeaseService("first", (runKey, shard) -> runs.add(runKey + "/" + shard));
+        JobLeaseService second = jobLeaseService("second", (runKey, shard) -> runs.add(runKey + "/" + shard));
+
+        first.runSharded(JOB, "2026-10-18");
+        second.runSharded(JOB, "2026-10-18");
+        first.runSharded(JOB, "2026-10-18");
+        assertEquals(List.of("2026-10-18/0", "2026-10-18/1"), runs);
+
+        second.runSharded(JOB, "2026-10-19");
+        assertEquals(4, runs.size());
+    }
+
+    @Test
+    void aFailedShardIsRedoneForItsRunKeyOnceTheLeaseExpires() {
+        JobLeaseService failing = jobLeaseService("failing", (runKey, shard) -> {
+            if (shard == 1) {
+                throw new IllegalStateException("Lock wait timeout exceeded");
+            }
+            runs.add(runKey + "/" + shard);
+        });
+        JobLeaseService other = jobLeaseService("other", (runKey, shard) -> runs.add(runKey + "/" + shard));
+
+        failing.runSharded(JOB, "2026-10-18");
+        assertEquals(List.of("2026-10-18/0"), runs);
+
+        // The next night goes ahead, and the sweep leaves the failed shard alone while its lease lasts
+        other.runSharded(JOB, "2026-10-19");
+        other.catchUp();
+        assertEquals(List.of("2026-10-18/0", "2026-10-19/0", "2026-10-19/1"), runs);
+
+        expire(JOB + ":1:2026-10-18");
+        other.catchUp();
+        assertEquals("2026-10-18/1", runs.get(runs.size() - 1));
+        assertTrue(jobLeaseRepository.findUncompleted(new Date(Long.MAX_VALUE / 2)).isEmpty());
+        assertNotNull(jobLeaseRepository.findById(JOB + ":1:2026-10-18").orElseThrow().getCompletedAt());
+
+        other.catchUp();
+        assertEquals(4, runs.size());
+    }
+
+    private JobLeaseService jobLeaseService(String nodeId, JobLeaseService.ShardWork work) {
+        JobLeaseService jobLeaseService = new JobLeaseService(jobLeaseRepository, nodeId);
+        ReflectionTestUtils.setField(jobLeaseService, "shardCount", 2);
+        ReflectionTestUtils.setField(jobLeaseService, "leaseMs", 60_000L);
+        jobLeaseService.register(JOB, work);
+        return jobLeaseService;
+    }
+
+    private void expire(String leaseId) {
+        JobLease lease = jobLeaseRepository.findById(leaseId).orElseThrow();
+        lease.setLeaseUntil(new Date(System.currentTimeMillis() - 1000));
+        jobLeaseRepository.save(lease);
+    }
+}
@@ -0,0 +1,130 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.exception.OrderConflictException;
+import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.exception.OrderVersionRequiredException;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.payload.request.PatchOrderRequest;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks that a PUT of an order has to name the version it replaces, and that orders of other branches are not edited,
+ * on an in-memory database.
+ */
+@DataJpaTest
+class OrderServiceTests {
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private OrderService orderService;
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        orderService = new OrderService(orderRepository, userRepository, mock(OutboxService.class), mock(JobLeaseService.class),
+                mock(HoldService.class), mock(ApplicationEventPublisher.class), transactionManager);
+        ReflectionTestUtils.setField(orderService, "bookRepository", bookRepository);
+
+        User user = userRepository.save(new User("reader", "Reader", "reader@example.com", "secret"));
+        Book book = bookRepository.save(Book.builder().title("The Name of the Rose").author("Umberto Eco").build());
+        order = new Order();
+        order.setUser(user);
+        order.setBooks(List.of(book));
+        order = orderRepository.saveAndFlush(order);
+        entityManager.clear();
+    }
+
+    @Test
+    void aNewOrderStartsAtVersionZero() {
+        assertEquals(0L, order.getVersion());
+    }
+
+    @Test
+    void aReplacementWithoutVersionIsRefused() {
+        Order replacement = replacement(null);
+        assertThrows(OrderVersionRequiredException.class, () -> orderService.updateOrder(order.getId(), replacement));
+    }
+
+    @Test
+    void aReplacementOfAnOlderVersionIsRefused() {
+        orderService.updateOrder(order.getId(), replacement(0L));
+        entityManager.clear();
+
+        assertThrows(OrderConflictException.class, () -> orderService.updateOrder(order.getId(), replacement(0L)));
+    }
+
+    @Test
+    void aReplacementOfTheCurrentVersionIsSaved() {
+        Order updated = orderService.updateOrder(order.getId(), replacement(0L));
+        assertEquals(1L, updated.getVersion());
+        assertEquals(replacementDueDate(), updated.getDue_date());
+    }
+
+    @Test
+    void anOrderOfAnotherBranchIsNotReplaced() {
+        Order replacement = replacement(0L);
+        BranchContext.runIn(2L, () ->
+                assertThrows(OrderNotFoundException.class, () -> orderService.updateOrder(order.getId(), replacement)));
+    }
+
+    @Test
+    void anOrderOfAnotherBranchIsNotPatched() {
+        PatchOrderRequest patch = new PatchOrderRequest();
+        patch.setVersion(0L);
+        patch.setPickedUp(true);
+        BranchContext.runIn(2L, () ->
+                assertThrows(OrderNotFoundException.class, () -> orderService.patchOrder(order.getId(), patch)));
+
+        // The order is still patched from its own branch
+        BranchContext.runIn(BranchContext.DEFAULT_BRANCH_ID, () -> orderService.patchOrder(order.getId(), patch));
+    }
+
+    /**
+     * The body of a PUT, deserialized like Jackson does: the version is only set when the client sent it.
+     */
+    private Order replacement(Long version) {
+        Order replacement = new Order();
+        ReflectionTestUtils.setField(replacement, "version", version);
+        replacement.setUser(order.getUser());
+        replacement.setBooks(order.getBooks());
+        replacement.setBorrowed_at(order.getBorrowed_at());
+        replacement.setDue_date(replacementDueDate());
+        return replacement;
+    }
+
+    private Date replacementDueDate() {
+        return new Date(order.getDue_date().getTime() + 86_400_000L);
+    }
+}
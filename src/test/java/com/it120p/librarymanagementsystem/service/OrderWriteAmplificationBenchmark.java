@@ -0,0 +1,128 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.payload.request.PatchOrderRequest;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * The OrderWriteAmplificationBenchmark class measures the SQL statements and the time of one edit of an order
+ * with ORDER_BOOKS books, on the in-memory database:
+ * a PUT that replaces the books every time (as PUT /order/{id} did before), a PUT through OrderService.updateOrder,
+ * which keeps the books when they did not change, and a PATCH of the due date.
+ *
+ * It is not a test and is not run by the build, run it with
+ * ./mvnw test -Dtest=OrderWriteAmplificationBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+ */
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=warn"})
+class OrderWriteAmplificationBenchmark {
+    private static final int ORDER_BOOKS = 10;
+    private static final int EDITS = 500;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void measure() {
+        OrderService orderService = new OrderService(orderRepository, userRepository, mock(OutboxService.class),
+                mock(JobLeaseService.class), mock(HoldService.class), mock(ApplicationEventPublisher.class), transactionManager);
+        ReflectionTestUtils.setField(orderService, "bookRepository", bookRepository);
+
+        User user = userRepository.save(new User("reader", "Reader", "reader@example.com", "secret"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < ORDER_BOOKS; i++) {
+            books.add(bookRepository.save(Book.builder().title("Book " + i).author("Author").build()));
+        }
+        Order created = new Order();
+        created.setUser(user);
+        created.setBooks(books);
+        Long id = orderRepository.saveAndFlush(created).getId();
+
+        System.out.printf("One edit of an order with %d books, %d edits%n", ORDER_BOOKS, EDITS);
+        // Each variant runs twice, the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            run("put, books replaced", print, i -> {
+                Order order = orderRepository.findById(id).orElseThrow();
+                order.setBooks(new ArrayList<>(order.getBooks()));
+                order.setDue_date(dueDate(i));
+                orderRepository.saveAndFlush(order);
+            });
+            run("put", print, i -> {
+                Order order = orderRepository.findById(id).orElseThrow();
+                Order replacement = new Order();
+                ReflectionTestUtils.setField(replacement, "version", order.getVersion());
+                replacement.setUser(order.getUser());
+                replacement.setBooks(new ArrayList<>(order.getBooks()));
+                replacement.setBorrowed_at(order.getBorrowed_at());
+                replacement.setDue_date(dueDate(i));
+                entityManager.clear();
+                orderService.updateOrder(id, replacement);
+            });
+            run("patch", print, i -> {
+                Long version = orderRepository.findById(id).orElseThrow().getVersion();
+                PatchOrderRequest patch = new PatchOrderRequest();
+                patch.setVersion(version);
+                patch.setDueDate(dueDate(i));
+                entityManager.clear();
+                orderService.patchOrder(id, patch);
+            });
+        }
+    }
+
+    /**
+     * Runs the edits, each in a clean persistence context, and prints the statements per edit.
+     * The statements include the SELECT that loads the order.
+     */
+    private void run(String name, boolean print, Consumer<Integer> edit) {
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < EDITS; i++) {
+            entityManager.clear();
+            edit.accept(i);
+        }
+        long nanos = System.nanoTime() - start;
+        if (print) {
+            System.out.printf("%-20s %6.1f statements %8.3f ms per edit%n", name,
+                    (double) statistics.getPrepareStatementCount() / EDITS, nanos / 1e6 / EDITS);
+        }
+    }
+
+    private static Date dueDate(int i) {
+        return new Date(System.currentTimeMillis() + (i + 1) * 60_000L);
+    }
+}
@@ -0,0 +1,82 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.model.OrderEventType;
+import com.it120p.librarymanagementsystem.model.OutboxEvent;
+import com.it120p.librarymanagementsystem.repository.OutboxEventRepository;
+import com.it120p.librarymanagementsystem.security.services.EmailNotice;
+import com.it120p.librarymanagementsystem.security.services.EmailRenderer;
+import com.it120p.librarymanagementsystem.security.services.EmailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the OutboxRelay records the result of every email of a batch on its own events.
+ */
+class OutboxRelayTests {
+    private OutboxEventRepository outboxEventRepository;
+    private EmailService emailService;
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        emailService = mock(EmailService.class);
+        outboxRelay = new OutboxRelay(outboxEventRepository, mock(EmailRenderer.class), emailService, List.of());
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", 10);
+        ReflectionTestUtils.setField(outboxRelay, "maxAttempts", 5);
+        ReflectionTestUtils.setField(outboxRelay, "leaseMs", 60_000L);
+
+        List<OutboxEvent> batch = List.of(event(1L), event(2L), event(3L));
+        when(outboxEventRepository.findClaimable(anyInt(), any(), any())).thenReturn(List.of(1L, 2L, 3L));
+        when(outboxEventRepository.claim(anyList(), anyString(), anyInt(), any(), any())).thenReturn(3);
+        when(outboxEventRepository.findByClaimedByOrderByIdAsc(anyString())).thenReturn(batch);
+    }
+
+    @Test
+    void oneRefusedEmailDoesNotFailTheBatch() {
+        when(emailService.sendSimpleMailMessages(anyList())).thenAnswer(invocation -> {
+            List<EmailNotice> notices = invocation.getArgument(0);
+            return Map.of(notices.get(1), "550 Mailbox unavailable");
+        });
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository).markSent(eq(List.of(1L, 3L)), any());
+        verify(outboxEventRepository).markFailed(List.of(2L), "550 Mailbox unavailable");
+    }
+
+    @Test
+    void anUnreachableServerFailsEveryEmail() {
+        when(emailService.sendSimpleMailMessages(anyList())).thenThrow(new RuntimeException("Connection refused"));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, never()).markSent(anyList(), any());
+        verify(outboxEventRepository).markFailed(List.of(1L, 2L, 3L), "Connection refused");
+    }
+
+    private OutboxEvent event(Long id) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setEventType(OrderEventType.RETURNED);
+        event.setRecipientEmail("reader" + id + "@example.com");
+        event.setRecipientName("Reader " + id);
+        event.setSubject("Book Returned");
+        event.setText("Thank you for returning the book.");
+        return event;
+    }
+}
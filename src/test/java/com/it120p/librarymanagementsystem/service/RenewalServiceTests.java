@@ -0,0 +1,94 @@
+package com.it120p.librarymanagementsystem.service;
+
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.exception.OrderNotFoundException;
+import com.it120p.librarymanagementsystem.model.OrderStatus;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository.RenewalState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that an order is only renewed from the branch it belongs to.
+ */
+class RenewalServiceTests {
+    private OrderRepository orderRepository;
+    private RenewalService renewalService;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        renewalService = new RenewalService(orderRepository, mock(OutboxService.class), mock(HoldService.class));
+        ReflectionTestUtils.setField(renewalService, "renewalDays", 7);
+        ReflectionTestUtils.setField(renewalService, "maxRenewals", 2);
+        when(orderRepository.findRenewalStateById(1L)).thenReturn(Optional.of(new State(1L, 2L, 10L)));
+        when(orderRepository.renew(anyLong(), anyInt(), anyInt(), anyInt())).thenReturn(1);
+    }
+
+    @Test
+    void anOrderOfAnotherBranchIsNotFound() {
+        BranchContext.runIn(1L, () ->
+                assertThrows(OrderNotFoundException.class, () -> renewalService.renew(1L, 10L, true)));
+        verify(orderRepository, never()).renew(anyLong(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void anOrderOfTheBranchIsRenewed() {
+        BranchContext.runIn(2L, () -> assertEquals(1, renewalService.renew(1L, 10L, false).getRenewalsLeft()));
+    }
+
+    private record State(Long id, Long branchId, Long userId) implements RenewalState {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getBranchId() {
+            return branchId;
+        }
+
+        @Override
+        public Long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public OrderStatus getStatus() {
+            return OrderStatus.BORROWED;
+        }
+
+        @Override
+        public Integer getRenewCount() {
+            return 0;
+        }
+
+        @Override
+        public Date getDueDate() {
+            return new Date();
+        }
+
+        @Override
+        public String getUserEmail() {
+            return "reader@example.com";
+        }
+
+        @Override
+        public String getUserName() {
+            return "Reader";
+        }
+    }
+}
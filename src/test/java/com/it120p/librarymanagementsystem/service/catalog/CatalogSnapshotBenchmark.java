@@ -0,0 +1,67 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The CatalogSnapshotBenchmark class measures the cost of one book write on the catalog snapshots,
+ * rebuilt from the whole catalog (refresh, as every write did before) against applied to the snapshots (update).
+ *
+ * The catalog is served from memory, so the findAll of refresh costs no database time here:
+ * the numbers are a lower bound of the cost of refresh. Run it with scripts/catalog-benchmark.sh.
+ */
+public class CatalogSnapshotBenchmark {
+    private static final EGenre[] GENRES = EGenre.values();
+
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int writes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Set<Long> branchIds = Set.of(1L, 2L, 3L, 4L);
+
+        List<Book> books = new ArrayList<>();
+        for (long id = 1; id <= bookCount; id++) {
+            books.add(book(id, 1 + id % branchIds.size(), "Title " + id));
+        }
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.findAll(any(Sort.class))).thenReturn(books);
+        CatalogSnapshotService catalogSnapshotService = new CatalogSnapshotService(bookRepository, new ObjectMapper(), branchIds);
+        catalogSnapshotService.refresh();
+
+        System.out.printf("%d books in %d branches, %d writes%n", bookCount, branchIds.size(), writes);
+        // Each variant runs twice, the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            long refresh = measure(writes, i -> catalogSnapshotService.refresh());
+            long update = measure(writes, i -> catalogSnapshotService.update(
+                    List.of(book(1 + (long) i * 7919 % bookCount, 1 + (long) i % branchIds.size(), "Edited " + i)), List.of()));
+            if (round == 1) {
+                System.out.printf("%-8s %10.3f ms per write%n", "refresh", refresh / 1e6 / writes);
+                System.out.printf("%-8s %10.3f ms per write%n", "update", update / 1e6 / writes);
+            }
+        }
+    }
+
+    private static long measure(int writes, IntConsumer write) {
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            write.accept(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Book book(long id, long branchId, String title) {
+        return new Book(id, title, "Author " + id % 500, GENRES[(int) (id % GENRES.length)],
+                "A description of the book, long enough to look like a real one in the catalog.", "covers/" + id + ".png", branchId);
+    }
+}
@@ -0,0 +1,127 @@
+package com.it120p.librarymanagementsystem.service.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.it120p.librarymanagementsystem.config.BranchContext;
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.EGenre;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a write applied to the catalog snapshots gives the same snapshots as a rebuild from the database.
+ */
+class CatalogSnapshotServiceTests {
+    private static final Set<Long> BRANCHES = Set.of(1L, 2L, 3L);
+
+    private final List<Book> database = new ArrayList<>();
+    private BookRepository bookRepository;
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= 30; id++) {
+            database.add(book(id, 1 + id % 2, id % 3 == 0 ? EGenre.FANTASY : EGenre.MYSTERY, "Author " + id % 5));
+        }
+        bookRepository = mock(BookRepository.class);
+        when(bookRepository.findAll(any(Sort.class))).thenAnswer(invocation -> sorted());
+        catalogSnapshotService = new CatalogSnapshotService(bookRepository, new ObjectMapper(), BRANCHES);
+        catalogSnapshotService.refresh();
+    }
+
+    @Test
+    void anEditedBookIsAppliedWithoutReadingTheCatalog() {
+        Book edited = book(3L, 2L, EGenre.MYSTERY, "Umberto Eco");
+        save(edited);
+        catalogSnapshotService.update(List.of(edited), List.of());
+
+        verify(bookRepository, times(1)).findAll(any(Sort.class));
+        assertSameAsRebuild();
+        assertTrue(new String(snapshot(2L).filter(null, "umberto eco"), StandardCharsets.UTF_8).contains("\"id\":3"));
+    }
+
+    @Test
+    void aBookMovedToAnotherBranchLeavesItsOldBranch() {
+        Book moved = book(4L, 3L, EGenre.FANTASY, "Author 4");
+        save(moved);
+        catalogSnapshotService.update(List.of(moved), List.of());
+
+        assertSameAsRebuild();
+        assertNull(snapshot(1L).bookJson(4L));
+        assertEquals(1, snapshot(3L).size());
+    }
+
+    @Test
+    void newAndDeletedBooksAreApplied() {
+        Book created = book(31L, 1L, EGenre.FICTION, "New Author");
+        save(created);
+        database.removeIf(book -> book.getId() == 7L);
+        catalogSnapshotService.update(List.of(created), List.of(7L));
+
+        assertSameAsRebuild();
+        assertNull(snapshot(null).bookJson(7L));
+    }
+
+    /**
+     * Compares every snapshot with the one a new service builds from the database.
+     */
+    private void assertSameAsRebuild() {
+        CatalogSnapshotService rebuilt = new CatalogSnapshotService(bookRepository, new ObjectMapper(), BRANCHES);
+        rebuilt.refresh();
+        for (Long branchId : new Long[]{null, 1L, 2L, 3L}) {
+            CatalogSnapshot expected = snapshot(rebuilt, branchId);
+            CatalogSnapshot actual = snapshot(branchId);
+            assertArrayEquals(expected.allBooksJson(), actual.allBooksJson(), "branch " + branchId);
+            assertEquals(expected.etag(), actual.etag());
+            for (EGenre genre : EGenre.values()) {
+                assertArrayEquals(expected.filter(genre, null), actual.filter(genre, null));
+            }
+            for (int author = 0; author < 5; author++) {
+                assertArrayEquals(expected.filter(null, "Author " + author), actual.filter(null, "Author " + author));
+            }
+        }
+    }
+
+    private CatalogSnapshot snapshot(Long branchId) {
+        return snapshot(catalogSnapshotService, branchId);
+    }
+
+    private CatalogSnapshot snapshot(CatalogSnapshotService service, Long branchId) {
+        AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+        BranchContext.runIn(branchId, () -> snapshot.set(service.current()));
+        return snapshot.get();
+    }
+
+    private void save(Book book) {
+        database.removeIf(existing -> existing.getId().equals(book.getId()));
+        database.add(book);
+    }
+
+    private List<Book> sorted() {
+        List<Book> books = new ArrayList<>(database);
+        books.sort(Comparator.comparing(Book::getId));
+        return books;
+    }
+
+    private static Book book(Long id, Long branchId, EGenre genre, String author) {
+        return new Book(id, "Book " + id, author, genre, "A book.", "covers/" + id + ".png", branchId);
+    }
+}
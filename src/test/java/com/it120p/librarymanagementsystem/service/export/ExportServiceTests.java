@@ -0,0 +1,110 @@
+package com.it120p.librarymanagementsystem.service.export;
+
+import com.it120p.librarymanagementsystem.model.Book;
+import com.it120p.librarymanagementsystem.model.Order;
+import com.it120p.librarymanagementsystem.model.User;
+import com.it120p.librarymanagementsystem.repository.BookRepository;
+import com.it120p.librarymanagementsystem.repository.OrderRepository;
+import com.it120p.librarymanagementsystem.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams the exports from an H2 database in MySQL mode, the database of the loadtest and replica-local profiles.
+ * Each export runs in its own transaction, like it does on the thread writing the response.
+ */
+@DataJpaTest
+@Import(ExportService.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:export;DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "it120p.app.exportFlushEvery=2"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ExportServiceTests {
+    private static final int ORDERS = 5;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        List<Book> books = bookRepository.saveAll(List.of(
+                Book.builder().title("Dune").author("Frank Herbert").build(),
+                Book.builder().title("Emma").author("Jane Austen").build()));
+        User user = userRepository.save(new User("reader", "Reader", "reader@example.com", "secret"));
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setBooks(new ArrayList<>(books));
+            orderRepository.save(order);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void ordersAreStreamedWithTheirBooks() throws Exception {
+        List<String> lines = export(out -> exportService.exportOrders(ExportFormat.NDJSON, out));
+        assertEquals(ORDERS, lines.size());
+        lines.forEach(line -> assertTrue(line.contains("\"bookIds\":["), line));
+    }
+
+    @Test
+    void booksAreStreamed() throws Exception {
+        assertEquals(3, export(out -> exportService.exportBooks(ExportFormat.CSV, out)).size());
+    }
+
+    @Test
+    void usersAreStreamed() throws Exception {
+        List<String> lines = export(out -> exportService.exportUsers(ExportFormat.NDJSON, out));
+        assertEquals(1, lines.size());
+        assertFalse(lines.get(0).contains("secret"));
+    }
+
+    private static List<String> export(Export export) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    @FunctionalInterface
+    private interface Export {
+        void writeTo(ByteArrayOutputStream out) throws Exception;
+    }
+}
@@ -0,0 +1,41 @@
+package com.it120p.librarymanagementsystem.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the CachingObjectStore serves reads from its copy but answers existence checks from the remote store.
+ */
+class CachingObjectStoreTests {
+    private static final String KEY = "ab/cd/abcd.png";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void anObjectDeletedElsewhereDoesNotExistEvenWhenCached() throws IOException {
+        LocalObjectStore remote = new LocalObjectStore(dir.resolve("remote"));
+        CachingObjectStore cache = new CachingObjectStore(remote, dir.resolve("cache"), 10);
+        byte[] image = {1, 2, 3};
+        Path upload = Files.write(dir.resolve("upload.png"), image);
+        cache.put(KEY, upload, "image/png", image.length);
+
+        try (InputStream in = cache.open(KEY)) {
+            assertArrayEquals(image, in.readAllBytes());
+        }
+        assertTrue(cache.exists(KEY));
+
+        // Another instance deletes the object through its own cache
+        remote.delete(KEY);
+        assertFalse(cache.exists(KEY));
+    }
+}